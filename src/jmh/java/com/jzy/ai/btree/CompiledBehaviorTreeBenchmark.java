@@ -0,0 +1,119 @@
+package com.jzy.ai.btree;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jzy.ai.btree.branch.Selector;
+import com.jzy.ai.btree.branch.Sequence;
+import com.jzy.ai.btree.decorator.AlwaysSucceed;
+import com.jzy.ai.btree.decorator.Invert;
+
+/**
+ * 行为树生成执行类基准测试
+ * <p>
+ * 同一棵行为树（逃跑、攻击、追击、巡逻四个分支，30个节点）分别用{@link BehaviorTree#step()}（任务对象图）、
+ * {@link BehaviorTreeTemplate}解释执行和{@link BehaviorTreeCodeGenerator}生成的{@link CompiledBehaviorTree}执行一次step。
+ * 叶子根据计数器返回成功或失败，三种方式每次step经过的节点相同
+ * </p>
+ * 需要JDK运行：java -jar target/benchmarks.jar CompiledBehaviorTreeBenchmark
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompiledBehaviorTreeBenchmark {
+
+	private BehaviorTree<Monster> taskTree;
+	private BehaviorTreeInstance<Monster> interpreted;
+	private BehaviorTreeInstance<Monster> compiled;
+
+	/**
+	 * 黑板对象
+	 */
+	public static final class Monster {
+		int counter;
+	}
+
+	/**
+	 * 条件叶子，按计数器和编号伪随机返回成功或失败，没有运行数据
+	 */
+	public static final class Check extends LeafTask<Monster> implements SharedLeaf<Monster> {
+		private static final long serialVersionUID = 1L;
+		private final int id;
+
+		public Check() {
+			this(0);
+		}
+
+		Check(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public Status execute() {
+			return check(getObject());
+		}
+
+		@Override
+		public Status execute(BehaviorTreeInstance<Monster> instance, int slot) {
+			return check(instance.getObject());
+		}
+
+		private Status check(Monster monster) {
+			return (++monster.counter * 31 + id) % 7 < 3 ? Status.FAILED : Status.SUCCEEDED;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static BehaviorTree<Monster> createTree(Monster monster) {
+		Task<Monster> flee = new Sequence<>(new Check(0), new Check(1), new AlwaysSucceed<>(new Check(2)));
+		Task<Monster> attack = new Sequence<>(new Check(3), new Invert<>(new Check(4)),
+				new Selector<>(new Check(5), new Check(6), new Check(7)));
+		Task<Monster> chase = new Sequence<>(new Check(8),
+				new Selector<>(new Sequence<>(new Check(9), new Check(10)), new Invert<>(new Check(11))));
+		Task<Monster> patrol = new Selector<>(new Sequence<>(new Check(12), new Check(13)),
+				new Invert<>(new Check(14)), new AlwaysSucceed<>(new Check(15)));
+		BehaviorTree<Monster> tree = new BehaviorTree<>(new Selector<>(flee, attack, chase, patrol), monster);
+		tree.setName("benchmark");
+		return tree;
+	}
+
+	@Setup
+	public void setup() {
+		taskTree = createTree(new Monster());
+		interpreted = BehaviorTreeTemplate.compile(createTree(null)).newInstance(new Monster());
+		BehaviorTreeTemplate<Monster> template = BehaviorTreeTemplate.compile(createTree(null));
+		template.setCompiled(BehaviorTreeCodeGenerator.compile(template));
+		compiled = template.newInstance(new Monster());
+	}
+
+	@Benchmark
+	public void taskTree() {
+		taskTree.step();
+	}
+
+	@Benchmark
+	public void interpreted() {
+		interpreted.step();
+	}
+
+	@Benchmark
+	public void compiled() {
+		compiled.step();
+	}
+}
@@ -0,0 +1,110 @@
+package com.jzy.ai.pfa;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jzy.ai.nav.polygon.Polygon;
+import com.jzy.ai.nav.polygon.PolygonGraph;
+import com.jzy.ai.nav.polygon.PolygonGraphPath;
+import com.jzy.ai.nav.polygon.PolygonHeuristic;
+import com.jzy.ai.nav.polygon.PolygonNavMesh;
+
+/**
+ * 地标启发式基准测试
+ * <p>
+ * 同一组随机多边形对，分别用{@link PolygonHeuristic}（landmarkCount=0）和{@link LandmarkHeuristic}执行A*，
+ * 除耗时外通过{@link IndexedAStarPathFinder.Metrics}统计访问节点数（visitedNodes/searches）
+ * </p>
+ * 在项目根目录运行：java -jar target/benchmarks.jar LandmarkHeuristicBenchmark
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LandmarkHeuristicBenchmark {
+	/** 随机多边形对个数 */
+	private static final int PAIR_COUNT = 512;
+
+	/** 导航网格文件，相对项目根目录 */
+	@Param({ "1.navmesh", "101.navmesh" })
+	public String navMesh;
+
+	/** 地标个数，0使用多边形中心距离 */
+	@Param({ "0", "8" })
+	public int landmarkCount;
+
+	private IndexedAStarPathFinder<Polygon> pathFinder;
+	private Heuristic<Polygon> heuristic;
+	private Polygon[] starts;
+	private Polygon[] goals;
+	private final PolygonGraphPath path = new PolygonGraphPath();
+	private int index;
+
+	/**
+	 * 访问节点统计
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Counters {
+		public long searches;
+		public long visitedNodes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			searches = 0;
+			visitedNodes = 0;
+		}
+	}
+
+	@Setup
+	public void setup() throws IOException {
+		String data = new String(Files.readAllBytes(Paths.get(navMesh)), StandardCharsets.UTF_8);
+		PolygonGraph graph = new PolygonNavMesh(data).getGraph();
+		List<Polygon> polygons = graph.getPolygons();
+		pathFinder = new IndexedAStarPathFinder<>(graph, true);
+		Heuristic<Polygon> base = new PolygonHeuristic();
+		heuristic = landmarkCount > 0 ? new LandmarkHeuristic<>(graph, polygons, landmarkCount, base) : base;
+		starts = new Polygon[PAIR_COUNT];
+		goals = new Polygon[PAIR_COUNT];
+		Random random = new Random(7);
+		for (int i = 0; i < PAIR_COUNT; i++) {
+			starts[i] = polygons.get(random.nextInt(polygons.size()));
+			goals[i] = polygons.get(random.nextInt(polygons.size()));
+		}
+	}
+
+	@Benchmark
+	public boolean search(Counters counters) {
+		int i = index;
+		index = (i + 1) % PAIR_COUNT;
+		path.clear();
+		boolean found = pathFinder.searchConnectionPath(starts[i], goals[i], heuristic, path);
+		counters.searches++;
+		counters.visitedNodes += pathFinder.metrics.visitedNodes;
+		return found;
+	}
+}
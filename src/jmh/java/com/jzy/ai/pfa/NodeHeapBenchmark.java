@@ -0,0 +1,117 @@
+package com.jzy.ai.pfa;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 寻路开列表基准测试
+ * <p>
+ * 模拟A*开列表：堆中保持openListSize个节点，每3次操作中1次出堆后以更大的值重新入堆（扩展节点），
+ * 2次降低随机节点的值（找到更短路径）。比较{@link NodeBinaryHeap}先移除再添加（原{@link IndexedAStarPathFinder}的做法）、
+ * {@link NodeBinaryHeap#setValue(NodeBinaryHeap.Node, float)}和{@link NodeDaryHeap#setValue(NodeBinaryHeap.Node, float)}。<br>
+ * 自带地图A*开列表峰值为14-30个节点（{@link IndexedAStarPathFinder.Metrics#openListPeak}），大地图取更大的值
+ * </p>
+ * java -jar target/benchmarks.jar NodeHeapBenchmark
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NodeHeapBenchmark {
+	/** 预先生成的随机操作个数，2的幂 */
+	private static final int OPERATION_COUNT = 1 << 12;
+
+	/** 开列表节点个数 */
+	@Param({ "16", "32", "64", "256" })
+	public int openListSize;
+
+	private NodeBinaryHeap<Record> binaryHeap;
+	private Record[] binaryRecords;
+	private NodeDaryHeap<Record> daryHeap;
+	private Record[] daryRecords;
+	/** 降低值的节点下标 */
+	private int[] targets;
+	/** 值的变化量 */
+	private float[] deltas;
+	private int operation;
+
+	static final class Record extends NodeBinaryHeap.Node {
+		Record() {
+			super(0);
+		}
+	}
+
+	@Setup
+	public void setup() {
+		Random random = new Random(9);
+		binaryHeap = new NodeBinaryHeap<>();
+		daryHeap = new NodeDaryHeap<>();
+		binaryRecords = new Record[openListSize];
+		daryRecords = new Record[openListSize];
+		for (int i = 0; i < openListSize; i++) {
+			float value = random.nextFloat() * 1000;
+			binaryRecords[i] = binaryHeap.add(new Record(), value);
+			daryRecords[i] = daryHeap.add(new Record(), value);
+		}
+		targets = new int[OPERATION_COUNT];
+		deltas = new float[OPERATION_COUNT];
+		for (int i = 0; i < OPERATION_COUNT; i++) {
+			targets[i] = random.nextInt(openListSize);
+			deltas[i] = random.nextFloat();
+		}
+	}
+
+	@Benchmark
+	public Record binaryRemoveAdd() {
+		int i = operation++ & (OPERATION_COUNT - 1);
+		if (i % 3 == 0) {
+			Record record = binaryHeap.pop();
+			return binaryHeap.add(record, record.getValue() + deltas[i] * 10);
+		}
+		Record record = binaryRecords[targets[i]];
+		float value = record.getValue() - deltas[i];
+		binaryHeap.remove(record);
+		return binaryHeap.add(record, value);
+	}
+
+	@Benchmark
+	public Record binarySetValue() {
+		int i = operation++ & (OPERATION_COUNT - 1);
+		if (i % 3 == 0) {
+			Record record = binaryHeap.pop();
+			return binaryHeap.add(record, record.getValue() + deltas[i] * 10);
+		}
+		Record record = binaryRecords[targets[i]];
+		binaryHeap.setValue(record, record.getValue() - deltas[i]);
+		return record;
+	}
+
+	@Benchmark
+	public Record darySetValue() {
+		int i = operation++ & (OPERATION_COUNT - 1);
+		if (i % 3 == 0) {
+			Record record = daryHeap.pop();
+			return daryHeap.add(record, record.getValue() + deltas[i] * 10);
+		}
+		Record record = daryRecords[targets[i]];
+		daryHeap.setValue(record, record.getValue() - deltas[i]);
+		return record;
+	}
+}
@@ -1,20 +1,29 @@
 package com.jzy.ai.btree;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import com.jzy.ai.btree.annotation.TaskDependency;
+import com.jzy.ai.btree.branch.Parallel;
+import com.jzy.ai.msg.MessageDispatcher;
+import com.jzy.ai.msg.Telegram;
+import com.jzy.ai.msg.Telegraph;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * 行为树 <br>
+ * 事件驱动模式见{@link #setEventDriven(boolean)}
  * 
  * @author implicit-invocation
  * @author davebaol
  * @fix JiangZhiYong
  * @QQ 359135103 2017年11月22日 下午2:43:23
  */
-public class BehaviorTree<E> extends Task<E> {
+public class BehaviorTree<E> extends Task<E> implements Telegraph {
     private static final Logger LOGGER = LoggerFactory.getLogger(BehaviorTree.class);
 
     /** 根任务 */
@@ -23,11 +32,29 @@ public class BehaviorTree<E> extends Task<E> {
     /** 行为树所属对象 */
     private E object;
 
+    /** 黑板 */
+    private Blackboard blackboard;
+
     /** 监听器 */
     public List<Listener<E>> listeners;
     /**安全监测*/
     GuardEvaluator<E> guardEvaluator;
 
+    /** 事件驱动模式 */
+    private volatile boolean eventDriven;
+    /** 依赖的消息或黑板数据变化，下一帧需要从根节点执行；消息、监听器、并行和异步叶子可能在其他线程设置 */
+    private volatile boolean dirty = true;
+    /** 唯一运行中的叶子，事件驱动模式直接继续执行 */
+    private Task<E> runningLeaf;
+    /** 本次执行报告运行中的叶子个数 */
+    private int runningLeafCount;
+    /** 节点声明依赖的消息码，升序，延迟收集 */
+    private int[] dependMessages;
+    /** 节点声明依赖的黑板键，延迟收集 */
+    private Set<String> dependKeys;
+    /** 性能统计，见{@link BehaviorTreeProfiler} */
+    transient BehaviorTreeProfiler.TreeMetrics treeMetrics;
+
     /**
      * Creates a {@code BehaviorTree} with no root task and no blackboard object. Both the root task and the blackboard
      * object must be set before running this behavior tree, see {@link #addChild(Task) addChild()} and
@@ -78,6 +105,23 @@ public class BehaviorTree<E> extends Task<E> {
         this.object = object;
     }
 
+    @Override
+    public Blackboard getBlackboard() {
+        return blackboard;
+    }
+
+    /**
+     * 设置黑板，黑板值变化时通知行为树
+     * 
+     * @param blackboard
+     */
+    public void setBlackboard(Blackboard blackboard) {
+        this.blackboard = blackboard;
+        if (blackboard != null) {
+            blackboard.setTree(this);
+        }
+    }
+
     /**
      * This method will add a child, namely the root, to this behavior tree.
      * 
@@ -90,6 +134,11 @@ public class BehaviorTree<E> extends Task<E> {
         if (this.rootTask != null)
             throw new IllegalStateException("A behavior tree cannot have more than one root task");
         this.rootTask = child;
+        this.dependMessages = null;
+        this.dependKeys = null;
+        if (blackboard != null) {
+            blackboard.resetWatchedKeys();
+        }
         return 0;
     }
 
@@ -127,6 +176,25 @@ public class BehaviorTree<E> extends Task<E> {
      * 当游戏实体需要做出决策时，应该调用此方法:如果游戏是实时的，则在游戏循环或固定时间片之后调用此方法;如果游戏是基于回合的，则在实体回合调用
      */
     public void step() {
+        BehaviorTreeProfiler.TreeMetrics metrics = this.treeMetrics;
+        if (metrics != null && metrics.isEnabled()) {
+            metrics.step(this);
+        } else {
+            stepTree();
+        }
+    }
+
+    /**
+     * 执行一次
+     */
+    void stepTree() {
+        if (eventDriven && !dirty && runningLeaf != null && rootTask.status == Status.RUNNING) {
+            resumeRunningLeaf();
+            return;
+        }
+        dirty = false;
+        runningLeaf = null;
+        runningLeafCount = 0;
         if (rootTask.status == Status.RUNNING) {
             rootTask.run();
         } else {
@@ -138,6 +206,194 @@ public class BehaviorTree<E> extends Task<E> {
                 rootTask.fail();
             }
         }
+        checkRunningLeaf();
+    }
+
+    /**
+     * 直接继续执行运行中的叶子，跳过根节点到叶子路径上的节点（如{@link com.jzy.ai.btree.branch.DynamicGuardSelector}的防护条件检查）<br>
+     * 叶子结束后通过父节点回调继续执行，循环装饰节点的孩子结束后由循环装饰节点继续循环
+     */
+    private void resumeRunningLeaf() {
+        Task<E> leaf = runningLeaf;
+        runningLeaf = null;
+        runningLeafCount = 0;
+        leaf.run();
+        Task<E> loop;
+        while ((loop = findPendingLoop(leaf)) != null) {
+            loop.run();
+        }
+        checkRunningLeaf();
+    }
+
+    /**
+     * 查找孩子已结束、需要继续循环的循环装饰节点
+     * 
+     * @param leaf
+     * @return
+     */
+    private Task<E> findPendingLoop(Task<E> leaf) {
+        for (Task<E> task = leaf.control; task != null && task != this; task = task.control) {
+            if (task instanceof LoopDecorator && task.status == Status.RUNNING && ((LoopDecorator<E>) task).loop
+                    && ((LoopDecorator<E>) task).child.status != Status.RUNNING) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 只有一个运行中的叶子且不在并行节点下时，下一帧可以直接继续执行该叶子
+     */
+    private void checkRunningLeaf() {
+        if (runningLeafCount != 1 || rootTask.status != Status.RUNNING) {
+            runningLeaf = null;
+            return;
+        }
+        for (Task<E> task = runningLeaf.control; task != null && task != this; task = task.control) {
+            if (task instanceof Parallel) {
+                runningLeaf = null;
+                return;
+            }
+        }
+    }
+
+    /**
+     * 叶子报告运行中
+     * 
+     * @param leaf
+     */
+    void leafRunning(Task<E> leaf) {
+        runningLeaf = leaf;
+        runningLeafCount++;
+    }
+
+    /**
+     * 设置事件驱动模式 <br>
+     * 开启后{@link #step()}只在收到节点依赖的消息（{@link #handleMessage(Telegram)}）、依赖的黑板数据变化（{@link #notifyChanged(String)}）、
+     * 调用{@link #invalidate()}或运行中的叶子结束时从根节点执行，其他时候直接继续执行运行中的叶子。
+     * 节点通过{@link TaskDependency}声明依赖，未声明依赖的防护条件只在运行中的叶子结束后重新检查。<br>
+     * 并行节点下的叶子不跳过
+     * 
+     * @param eventDriven
+     */
+    public void setEventDriven(boolean eventDriven) {
+        this.eventDriven = eventDriven;
+        this.dirty = true;
+    }
+
+    public boolean isEventDriven() {
+        return eventDriven;
+    }
+
+    /**
+     * 下一帧从根节点执行
+     */
+    public void invalidate() {
+        dirty = true;
+    }
+
+    /**
+     * 黑板数据变化
+     * 
+     * @param key 黑板键
+     * @return true 有节点依赖该键
+     */
+    public boolean notifyChanged(String key) {
+        if (dependKeys == null) {
+            collectDependencies();
+        }
+        if (dependKeys.contains(key)) {
+            dirty = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 是否有节点依赖该黑板键
+     * 
+     * @param key
+     * @return
+     */
+    boolean isDependKey(String key) {
+        if (dependKeys == null) {
+            collectDependencies();
+        }
+        return dependKeys.contains(key);
+    }
+
+    /**
+     * 收到消息，有节点依赖该消息时下一帧从根节点执行
+     */
+    @Override
+    public boolean handleMessage(Telegram msg) {
+        if (Arrays.binarySearch(getDependMessages(), msg.message) >= 0) {
+            dirty = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 监听节点依赖的消息
+     * 
+     * @param dispatcher
+     */
+    public void addMessageListeners(MessageDispatcher dispatcher) {
+        dispatcher.addListeners(this, getDependMessages());
+    }
+
+    public void removeMessageListeners(MessageDispatcher dispatcher) {
+        dispatcher.removeListener(this, getDependMessages());
+    }
+
+    /**
+     * 节点声明依赖的消息码
+     * 
+     * @return 升序
+     */
+    public int[] getDependMessages() {
+        if (dependMessages == null) {
+            collectDependencies();
+        }
+        return dependMessages;
+    }
+
+    /**
+     * 收集所有节点（包括防护条件）声明的依赖
+     */
+    private void collectDependencies() {
+        Set<Integer> messages = new HashSet<>();
+        Set<String> keys = new HashSet<>();
+        if (rootTask != null) {
+            collectDependencies(rootTask, messages, keys);
+        }
+        int[] codes = new int[messages.size()];
+        int index = 0;
+        for (int message : messages) {
+            codes[index++] = message;
+        }
+        Arrays.sort(codes);
+        dependKeys = keys;
+        dependMessages = codes;
+    }
+
+    private static <E> void collectDependencies(Task<E> task, Set<Integer> messages, Set<String> keys) {
+        // 依赖随配置变化的任务（如效用选择器）直接实现注解接口
+        TaskDependency dependency = task instanceof TaskDependency ? (TaskDependency) task
+                : task.getClass().getAnnotation(TaskDependency.class);
+        if (dependency != null) {
+            for (int message : dependency.messages()) {
+                messages.add(message);
+            }
+            keys.addAll(Arrays.asList(dependency.keys()));
+        }
+        if (task.guard != null) {
+            collectDependencies(task.guard, messages, keys);
+        }
+        for (int i = 0, n = task.getChildCount(); i < n; i++) {
+            collectDependencies(task.getChild(i), messages, keys);
+        }
     }
 
     /**
@@ -173,7 +429,15 @@ public class BehaviorTree<E> extends Task<E> {
         removeListeners();
         this.rootTask = null;
         this.object = null;
+        this.blackboard = null;
         this.listeners = null;
+        this.runningLeaf = null;
+        this.runningLeafCount = 0;
+        this.dependMessages = null;
+        this.dependKeys = null;
+        this.treeMetrics = null;
+        this.eventDriven = false;
+        this.dirty = true;
         super.release();
     }
 
@@ -184,6 +448,8 @@ public class BehaviorTree<E> extends Task<E> {
     public void resetTask() {
         super.resetTask();
         tree = this;
+        runningLeaf = null;
+        dirty = true;
     }
 
     /**
@@ -0,0 +1,980 @@
+package com.jzy.ai.btree;
+
+import static com.jzy.ai.btree.BehaviorTreeConstants.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.dom4j.Attribute;
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jzy.ai.btree.branch.ConcurrentParallel;
+import com.jzy.ai.btree.branch.Parallel;
+import com.jzy.ai.btree.branch.RandomSelector;
+import com.jzy.ai.btree.branch.RandomSequence;
+import com.jzy.ai.btree.branch.Selector;
+import com.jzy.ai.btree.branch.Sequence;
+import com.jzy.ai.btree.branch.UtilitySelector;
+import com.jzy.ai.btree.decorator.AlwaysFail;
+import com.jzy.ai.btree.decorator.AlwaysSucceed;
+import com.jzy.ai.btree.decorator.Invert;
+import com.jzy.ai.btree.decorator.Random;
+import com.jzy.ai.btree.decorator.Repeat;
+import com.jzy.ai.btree.decorator.SemaphoreGuard;
+import com.jzy.ai.btree.decorator.UntilFail;
+import com.jzy.ai.btree.decorator.UntilSuccess;
+
+/**
+ * 行为树二进制格式
+ * <p>
+ * 离线把行为树xml编译为一个二进制文件（{@link #main(String[])}），启动时内存映射文件直接创建行为树，
+ * 没有xml解析、属性字符串转换和反射查找，和{@link BehaviorTreeManager#parseBehaviorTree(String)}创建的行为树相同。<br>
+ * 每棵树记录xml内容的哈希，重新加载时只创建哈希变化的树（{@link BehaviorTreeManager#loadBinaryBehaviorTree(String)}）
+ * </p>
+ * 文件格式，大端：
+ *
+ * <pre>
+ * 文件头：magic int、version short、树个数 int
+ * 目录：每棵树 id(int长度+UTF-8)、xml哈希 long、段偏移 int、段长度 int
+ * 树段：xml文件名常量 int、常量池、黑板键、根节点偏移 int、节点表
+ * 常量池：个数 int，每个常量 类型 byte + 值
+ * 黑板键：个数 short，每个键 名称常量 int、类型 byte、默认值常量 int(-1无)
+ * 节点：操作码 byte、名称常量 int、防护条件偏移 int、孩子个数 short、孩子偏移 int[]、操作码参数
+ * </pre>
+ *
+ * 节点按后序写入，偏移相对节点表开始位置
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public final class BehaviorTreeBinary {
+	private static final Logger LOGGER = LoggerFactory.getLogger(BehaviorTreeBinary.class);
+
+	/** 'BTB1' */
+	public static final int MAGIC = 0x42544231;
+	public static final short VERSION = 1;
+
+	// 操作码
+	static final byte OP_SELECTOR = 1;
+	static final byte OP_RANDOM_SELECTOR = 2;
+	static final byte OP_SEQUENCE = 3;
+	static final byte OP_RANDOM_SEQUENCE = 4;
+	/** 参数：policy byte、orchestrator byte */
+	static final byte OP_PARALLEL = 5;
+	/** 参数：policy byte、orchestrator byte、wait long */
+	static final byte OP_CONCURRENT_PARALLEL = 6;
+	/** 参数：类名常量 int、属性个数 short、(属性名常量 int、值常量 int)[] */
+	static final byte OP_LEAF = 7;
+	static final byte OP_ALWAYS_FAIL = 8;
+	static final byte OP_ALWAYS_SUCCEED = 9;
+	static final byte OP_INVERT = 10;
+	/** 参数：times int */
+	static final byte OP_REPEAT = 11;
+	/** 参数：信号量名称常量 int */
+	static final byte OP_SEMAPHORE_GUARD = 12;
+	static final byte OP_UNTIL_FAIL = 13;
+	static final byte OP_UNTIL_SUCCESS = 14;
+	/** 参数：success float */
+	static final byte OP_RANDOM = 15;
+	/**
+	 * 参数：topK int、threshold float，每个孩子 考虑因素个数 short、(黑板键常量 int、曲线 byte、min、max、slope、exponent、
+	 * xShift、yShift float)[]
+	 */
+	static final byte OP_UTILITY_SELECTOR = 16;
+
+	// 常量类型
+	static final byte CONST_STRING = 1;
+	static final byte CONST_INT = 2;
+	static final byte CONST_LONG = 3;
+	static final byte CONST_FLOAT = 4;
+	static final byte CONST_DOUBLE = 5;
+	static final byte CONST_BOOLEAN = 6;
+	static final byte CONST_SHORT = 7;
+	static final byte CONST_BYTE = 8;
+	/** 加载时按属性类型转换的字符串（黑板键、枚举、json） */
+	static final byte CONST_RAW = 9;
+
+	private BehaviorTreeBinary() {
+	}
+
+	/**
+	 * 离线编译
+	 *
+	 * @param args xml目录或文件、输出文件
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("usage: BehaviorTreeBinary <xml目录> <输出文件>");
+			return;
+		}
+		List<File> files = listXmlFiles(new File(args[0]));
+		compile(files, new File(args[1]));
+		System.out.println(String.format("编译行为树 %d 个到 %s", files.size(), args[1]));
+	}
+
+	/**
+	 * 目录下所有xml文件
+	 *
+	 * @param path 目录或文件
+	 * @return 按路径排序
+	 * @throws IOException
+	 */
+	static List<File> listXmlFiles(File path) throws IOException {
+		if (!path.exists()) {
+			throw new IllegalStateException(String.format("%s 行为树文件不存在", path));
+		}
+		try (Stream<Path> stream = Files.walk(path.toPath())) {
+			return stream.filter(p -> Files.isRegularFile(p) && p.toString().endsWith(".xml")).sorted()
+					.map(Path::toFile).collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * 编译行为树xml到二进制文件
+	 *
+	 * @param files xml文件
+	 * @param out   输出文件
+	 * @throws IOException            读写失败
+	 * @throws IllegalStateException  配置错误或id重复
+	 */
+	public static void compile(List<File> files, File out) throws IOException {
+		Files.write(out.toPath(), compile(files));
+	}
+
+	/**
+	 * 编译行为树xml
+	 *
+	 * @param files xml文件
+	 * @return 二进制文件内容
+	 * @throws IOException
+	 */
+	public static byte[] compile(List<File> files) throws IOException {
+		List<Section> sections = new ArrayList<>(files.size());
+		Map<String, String> ids = new HashMap<>();
+		for (File file : files) {
+			Section section = compileTree(file.getName(), Files.readAllBytes(file.toPath()));
+			String previous = ids.put(section.id, file.getPath());
+			if (previous != null) {
+				throw new IllegalStateException(
+						String.format("行为树 %s ID %s 与行为树 %s ID重复", file.getPath(), section.id, previous));
+			}
+			sections.add(section);
+		}
+
+		ByteArrayOutputStream directoryBytes = new ByteArrayOutputStream();
+		DataOutputStream directory = new DataOutputStream(directoryBytes);
+		for (Section section : sections) {
+			writeString(directory, section.id);
+			directory.writeLong(section.hash);
+			directory.writeInt(0);
+			directory.writeInt(section.bytes.length);
+		}
+		int offset = 4 + 2 + 4 + directory.size();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(offset + sections.stream().mapToInt(s -> s.bytes.length).sum());
+		DataOutputStream output = new DataOutputStream(bytes);
+		output.writeInt(MAGIC);
+		output.writeShort(VERSION);
+		output.writeInt(sections.size());
+		for (Section section : sections) {
+			writeString(output, section.id);
+			output.writeLong(section.hash);
+			output.writeInt(offset);
+			output.writeInt(section.bytes.length);
+			offset += section.bytes.length;
+		}
+		for (Section section : sections) {
+			output.write(section.bytes);
+		}
+		output.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * 编译一棵行为树
+	 *
+	 * @param fileName xml文件名，作为行为树名称
+	 * @param xml      xml文件内容
+	 * @return
+	 * @throws IOException
+	 */
+	static Section compileTree(String fileName, byte[] xml) throws IOException {
+		Document document;
+		try {
+			document = DocumentHelper.parseText(new String(xml, StandardCharsets.UTF_8));
+		} catch (Exception e) {
+			throw new IllegalStateException(String.format("%s 格式异常", fileName), e);
+		}
+		Element rootElement = document.getRootElement();
+		Element idElement = rootElement.element(XML_ID);
+		if (idElement == null) {
+			throw new IllegalStateException(String.format("%s 行为树id未配置", fileName));
+		}
+		Element treeElement = rootElement.element(XML_TREE);
+		if (treeElement == null || !treeElement.hasContent()) {
+			throw new IllegalStateException(String.format("%s 行为树节点未配置", fileName));
+		}
+		List<?> treeRootElements = treeElement.elements();
+		if (treeRootElements.size() > 1) {
+			throw new IllegalStateException(String.format("%s 行为树存在%d根节点", fileName, treeRootElements.size()));
+		}
+		Element blackboardElement = rootElement.element(XML_BLACKBOARD);
+		BlackboardSchema schema = BehaviorTreeManager.createBlackboardSchema(blackboardElement);
+
+		Writer writer = new Writer(fileName, schema);
+		int rootOffset = writer.writeNode((Element) treeRootElements.get(0));
+
+		ByteArrayOutputStream sectionBytes = new ByteArrayOutputStream();
+		DataOutputStream section = new DataOutputStream(sectionBytes);
+		int nameConst = writer.constant(CONST_STRING, fileName);
+		// 黑板键
+		List<BlackboardKey> keys = schema.getKeys();
+		int[][] keyConsts = new int[keys.size()][];
+		for (int i = 0; i < keys.size(); i++) {
+			BlackboardKey key = keys.get(i);
+			keyConsts[i] = new int[] { writer.constant(CONST_STRING, key.name), writer.defaultValue(schema, key) };
+		}
+		section.writeInt(nameConst);
+		writer.writeConstants(section);
+		section.writeShort(keys.size());
+		for (int i = 0; i < keys.size(); i++) {
+			section.writeInt(keyConsts[i][0]);
+			section.writeByte(keys.get(i).type);
+			section.writeInt(keyConsts[i][1]);
+		}
+		section.writeInt(rootOffset);
+		writer.nodes.flush();
+		writer.nodeBytes.writeTo(section);
+		section.flush();
+		return new Section(idElement.getTextTrim(), hash(xml), sectionBytes.toByteArray());
+	}
+
+	/**
+	 * xml内容哈希，FNV-1a
+	 *
+	 * @param bytes
+	 * @return
+	 */
+	public static long hash(byte[] bytes) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : bytes) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	private static void writeString(DataOutputStream output, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	/**
+	 * 内存映射二进制文件
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static MappedByteBuffer map(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	/**
+	 * 读取目录，不创建行为树
+	 *
+	 * @param buffer 二进制文件内容
+	 * @return 按文件中的顺序
+	 * @throws IllegalStateException 不是行为树二进制文件或版本不一致
+	 */
+	public static List<Entry> readDirectory(ByteBuffer buffer) {
+		if (buffer.getInt(0) != MAGIC) {
+			throw new IllegalStateException("不是行为树二进制文件");
+		}
+		short version = buffer.getShort(4);
+		if (version != VERSION) {
+			throw new IllegalStateException(String.format("行为树二进制文件版本 %d 不支持，需重新编译", version));
+		}
+		int count = buffer.getInt(6);
+		List<Entry> entries = new ArrayList<>(count);
+		int position = 10;
+		for (int i = 0; i < count; i++) {
+			int length = buffer.getInt(position);
+			String id = readString(buffer, position + 4, length);
+			position += 4 + length;
+			entries.add(new Entry(buffer, id, buffer.getLong(position), buffer.getInt(position + 8),
+					buffer.getInt(position + 12)));
+			position += 16;
+		}
+		return entries;
+	}
+
+	private static String readString(ByteBuffer buffer, int position, int length) {
+		byte[] bytes = new byte[length];
+		buffer.get(position, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * 编译中的树段
+	 */
+	static final class Section {
+		final String id;
+		final long hash;
+		final byte[] bytes;
+
+		Section(String id, long hash, byte[] bytes) {
+			this.id = id;
+			this.hash = hash;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * 二进制文件中的一棵行为树
+	 */
+	public static final class Entry {
+		private final ByteBuffer buffer;
+		/** 行为树id */
+		public final String id;
+		/** xml内容哈希 */
+		public final long hash;
+		/** 段偏移 */
+		private final int offset;
+		private final int length;
+
+		private Entry(ByteBuffer buffer, String id, long hash, int offset, int length) {
+			this.buffer = buffer;
+			this.id = id;
+			this.hash = hash;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		/**
+		 * 创建行为树
+		 *
+		 * @return
+		 * @throws IllegalStateException 数据损坏或叶子类已变化
+		 */
+		public BehaviorTree<Object> createBehaviorTree() {
+			if (offset < 0 || length < 0 || offset + length > buffer.limit()) {
+				throw new IllegalStateException(String.format("行为树 %s 数据越界", id));
+			}
+			return new Reader(buffer, offset).read();
+		}
+
+		@Override
+		public String toString() {
+			return id + "@" + Long.toHexString(hash);
+		}
+	}
+
+	/**
+	 * 编译一棵树的节点表和常量池
+	 */
+	private static final class Writer {
+		private final String fileName;
+		private final BlackboardSchema schema;
+		private final List<Object> constants = new ArrayList<>();
+		private final List<Byte> constantTypes = new ArrayList<>();
+		/** (类型, 值)-常量序号 */
+		private final Map<List<Object>, Integer> constantIndexes = new HashMap<>();
+		private final ByteArrayOutputStream nodeBytes = new ByteArrayOutputStream();
+		private final DataOutputStream nodes = new DataOutputStream(nodeBytes);
+
+		Writer(String fileName, BlackboardSchema schema) {
+			this.fileName = fileName;
+			this.schema = schema;
+		}
+
+		int constant(byte type, Object value) {
+			return constantIndexes.computeIfAbsent(Arrays.asList(type, value), k -> {
+				constants.add(value);
+				constantTypes.add(type);
+				return constants.size() - 1;
+			});
+		}
+
+		/**
+		 * 已转换的属性值
+		 *
+		 * @param value
+		 * @param source 配置的字符串
+		 * @return
+		 */
+		int constant(Object value, String source) {
+			if (value instanceof String) {
+				return constant(CONST_STRING, value);
+			} else if (value instanceof Integer) {
+				return constant(CONST_INT, value);
+			} else if (value instanceof Long) {
+				return constant(CONST_LONG, value);
+			} else if (value instanceof Float) {
+				return constant(CONST_FLOAT, value);
+			} else if (value instanceof Double) {
+				return constant(CONST_DOUBLE, value);
+			} else if (value instanceof Boolean) {
+				return constant(CONST_BOOLEAN, value);
+			} else if (value instanceof Short) {
+				return constant(CONST_SHORT, value);
+			} else if (value instanceof Byte) {
+				return constant(CONST_BYTE, value);
+			}
+			return constant(CONST_RAW, source);
+		}
+
+		int defaultValue(BlackboardSchema schema, BlackboardKey key) {
+			switch (key.type) {
+			case BlackboardKey.TYPE_INT:
+				return schema.intDefaults[key.slot] == 0 ? -1 : constant(CONST_INT, schema.intDefaults[key.slot]);
+			case BlackboardKey.TYPE_FLOAT:
+				return schema.floatDefaults[key.slot] == 0 ? -1 : constant(CONST_FLOAT, schema.floatDefaults[key.slot]);
+			case BlackboardKey.TYPE_LONG:
+				return schema.longDefaults[key.slot] == 0 ? -1 : constant(CONST_LONG, schema.longDefaults[key.slot]);
+			default:
+				return -1;
+			}
+		}
+
+		void writeConstants(DataOutputStream output) throws IOException {
+			output.writeInt(constants.size());
+			for (int i = 0; i < constants.size(); i++) {
+				byte type = constantTypes.get(i);
+				Object value = constants.get(i);
+				output.writeByte(type);
+				switch (type) {
+				case CONST_STRING:
+				case CONST_RAW:
+					writeString(output, (String) value);
+					break;
+				case CONST_INT:
+					output.writeInt((Integer) value);
+					break;
+				case CONST_LONG:
+					output.writeLong((Long) value);
+					break;
+				case CONST_FLOAT:
+					output.writeFloat((Float) value);
+					break;
+				case CONST_DOUBLE:
+					output.writeDouble((Double) value);
+					break;
+				case CONST_BOOLEAN:
+					output.writeBoolean((Boolean) value);
+					break;
+				case CONST_SHORT:
+					output.writeShort((Short) value);
+					break;
+				case CONST_BYTE:
+					output.writeByte((Byte) value);
+					break;
+				default:
+					throw new IllegalStateException("常量类型非法 " + type);
+				}
+			}
+		}
+
+		/**
+		 * 后序写入节点，和{@link BehaviorTreeManager}解析xml的规则相同
+		 *
+		 * @param element
+		 * @return 节点偏移
+		 * @throws IOException
+		 */
+		int writeNode(Element element) throws IOException {
+			int guard = -1;
+			List<Integer> children = new ArrayList<>();
+			Iterator<?> iterator = element.elementIterator();
+			while (iterator.hasNext()) {
+				Element child = (Element) iterator.next();
+				if (child.getName().equals(XML_CONSIDERATION)) {
+					continue;
+				}
+				int offset = writeNode(child);
+				if (child.getName().equalsIgnoreCase(XML_GUARD)) {
+					guard = offset;
+				} else {
+					children.add(offset);
+				}
+			}
+
+			int offset = nodes.size();
+			byte op = opcode(element);
+			nodes.writeByte(op);
+			Attribute nameAttr = element.attribute(XML_ATTRIBUTE_NAME);
+			if (nameAttr == null) {
+				nameAttr = element.attribute(XML_ATTRIBUTE_CLASS);
+			}
+			nodes.writeInt(nameAttr == null ? -1 : constant(CONST_STRING, nameAttr.getValue()));
+			nodes.writeInt(guard);
+			nodes.writeShort(children.size());
+			for (int child : children) {
+				nodes.writeInt(child);
+			}
+			writeOperands(op, element);
+			return offset;
+		}
+
+		private byte opcode(Element element) {
+			switch (element.getName()) {
+			case XML_SELECTOR:
+				return OP_SELECTOR;
+			case XML_RANDOM_SELECTOR:
+				return OP_RANDOM_SELECTOR;
+			case XML_SEQUENCE:
+			case XML_GUARD:
+				return OP_SEQUENCE;
+			case XML_RANDOM_SEQUENCE:
+				return OP_RANDOM_SEQUENCE;
+			case XML_PARALLEL:
+				Attribute concurrentAttr = element.attribute(XML_ATTRIBUTE_CONCURRENT);
+				return concurrentAttr != null && Boolean.parseBoolean(concurrentAttr.getValue())
+						? OP_CONCURRENT_PARALLEL
+						: OP_PARALLEL;
+			case XML_LEAF:
+				return OP_LEAF;
+			case XML_ALWAYS_FAIL:
+				return OP_ALWAYS_FAIL;
+			case XML_ALWAYS_SUCCEED:
+				return OP_ALWAYS_SUCCEED;
+			case XML_INVERT:
+				return OP_INVERT;
+			case XML_REPEAT:
+				return OP_REPEAT;
+			case XML_SEAMPHORE_GUARD:
+				return OP_SEMAPHORE_GUARD;
+			case XML_UNTIL_FAIL:
+				return OP_UNTIL_FAIL;
+			case XML_UNTIL_SUCCESS:
+				return OP_UNTIL_SUCCESS;
+			case XML_RANDOM:
+				return OP_RANDOM;
+			case XML_UTILITY_SELECTOR:
+				return OP_UTILITY_SELECTOR;
+			default:
+				throw new IllegalStateException(String.format("%s 节点 %s 名称非法", fileName, element.getName()));
+			}
+		}
+
+		private void writeOperands(byte op, Element element) throws IOException {
+			switch (op) {
+			case OP_PARALLEL:
+			case OP_CONCURRENT_PARALLEL:
+				Attribute policyAttr = element.attribute(XML_ATTRIBUTE_POLICY);
+				nodes.writeByte(policyAttr != null && Parallel.Policy.Selector.name().equalsIgnoreCase(policyAttr.getValue())
+						? Parallel.Policy.Selector.ordinal()
+						: Parallel.Policy.Sequence.ordinal());
+				Attribute orchestratorAttr = element.attribute(XML_ATTRIBUTE_ORCHESTRATOR);
+				nodes.writeByte(orchestratorAttr != null
+						&& Parallel.Orchestrator.Join.name().equalsIgnoreCase(orchestratorAttr.getValue())
+								? Parallel.Orchestrator.Join.ordinal()
+								: Parallel.Orchestrator.Resume.ordinal());
+				if (op == OP_CONCURRENT_PARALLEL) {
+					String wait = attributeValue(element, XML_ATTRIBUTE_WAIT);
+					nodes.writeLong(wait == null ? -1 : Long.parseLong(wait));
+				}
+				break;
+			case OP_REPEAT:
+				String times = attributeValue(element, XML_ATTRIBUTE_TIMES);
+				nodes.writeInt(times == null ? -1 : Integer.parseInt(times));
+				break;
+			case OP_SEMAPHORE_GUARD:
+				String name = attributeValue(element, XML_ATTRIBUTE_NAME);
+				if (name == null) {
+					throw new IllegalStateException(String.format("%s 信号量装饰器未设置name属性", fileName));
+				}
+				nodes.writeInt(constant(CONST_STRING, name));
+				break;
+			case OP_RANDOM:
+				String success = attributeValue(element, XML_ATTRIBUTE_SUCCESS);
+				nodes.writeFloat(success == null ? 0.5f : Float.parseFloat(success));
+				break;
+			case OP_LEAF:
+				writeLeaf(element);
+				break;
+			case OP_UTILITY_SELECTOR:
+				writeUtilitySelector(element);
+				break;
+			default:
+				break;
+			}
+		}
+
+		/**
+		 * 效用选择节点参数和孩子的考虑因素
+		 *
+		 * @param element
+		 * @throws IOException
+		 */
+		private void writeUtilitySelector(Element element) throws IOException {
+			String topK = attributeValue(element, XML_ATTRIBUTE_TOP_K);
+			nodes.writeInt(topK == null ? 0 : Integer.parseInt(topK));
+			String threshold = attributeValue(element, XML_ATTRIBUTE_THRESHOLD);
+			nodes.writeFloat(threshold == null ? 0 : Float.parseFloat(threshold));
+			for (Element child : element.elements()) {
+				if (child.getName().equalsIgnoreCase(XML_GUARD) || child.getName().equals(XML_CONSIDERATION)) {
+					continue;
+				}
+				List<Element> considerationElements = child.elements(XML_CONSIDERATION);
+				nodes.writeShort(considerationElements.size());
+				for (Element considerationElement : considerationElements) {
+					UtilitySelector.Consideration consideration = BehaviorTreeManager
+							.createConsideration(considerationElement);
+					nodes.writeInt(constant(CONST_STRING, consideration.key));
+					nodes.writeByte(consideration.curve.ordinal());
+					nodes.writeFloat(consideration.min);
+					nodes.writeFloat(consideration.max);
+					nodes.writeFloat(consideration.slope);
+					nodes.writeFloat(consideration.exponent);
+					nodes.writeFloat(consideration.xShift);
+					nodes.writeFloat(consideration.yShift);
+				}
+			}
+		}
+
+		/**
+		 * 叶子属性按{@link LeafTaskFactory.Property}类型转换后写入常量池，需要叶子类在类路径上
+		 *
+		 * @param element
+		 * @throws IOException
+		 */
+		private void writeLeaf(Element element) throws IOException {
+			String className = attributeValue(element, XML_ATTRIBUTE_CLASS);
+			if (className == null) {
+				throw new IllegalStateException(
+						String.format("xml %s %s节点 未配置class属性", element.getUniquePath(), element.getName()));
+			}
+			LeafTaskFactory factory;
+			try {
+				factory = LeafTaskFactory.get(className);
+			} catch (ClassNotFoundException e) {
+				throw new IllegalStateException(String.format("%s 叶子类 %s 不存在", fileName, className), e);
+			}
+			List<int[]> properties = new ArrayList<>();
+			for (Attribute attribute : element.attributes()) {
+				String name = attribute.getName();
+				if (name.equalsIgnoreCase(XML_ATTRIBUTE_CLASS) || name.equals(XML_ATTRIBUTE_NAME)) {
+					continue;
+				}
+				LeafTaskFactory.Property property = factory.getProperty(name);
+				if (property == null) {
+					LOGGER.warn("配置错误：{}AI 节点{} 属性{} 不存在", fileName, className, name);
+					continue;
+				}
+				String value = attribute.getValue();
+				if (value == null || value.isEmpty()) {
+					LOGGER.warn("配置错误：{}AI 节点{} 属性{} 为空", fileName, className, name);
+					continue;
+				}
+				// 转换检查配置，黑板键、枚举等加载时再转换
+				Object converted = property.convert(value, schema);
+				properties.add(new int[] { constant(CONST_STRING, name), constant(converted, value) });
+			}
+			nodes.writeInt(constant(CONST_STRING, className));
+			nodes.writeShort(properties.size());
+			for (int[] property : properties) {
+				nodes.writeInt(property[0]);
+				nodes.writeInt(property[1]);
+			}
+		}
+
+		private static String attributeValue(Element element, String name) {
+			Attribute attribute = element.attribute(name);
+			if (attribute == null || attribute.getValue() == null || attribute.getValue().isEmpty()) {
+				return null;
+			}
+			return attribute.getValue();
+		}
+	}
+
+	/**
+	 * 从树段创建行为树
+	 */
+	private static final class Reader {
+		private final ByteBuffer buffer;
+		private final Object[] constants;
+		private final String name;
+		private final BlackboardSchema schema;
+		/** 节点表开始位置 */
+		private final int nodeStart;
+		private final int rootOffset;
+		private int position;
+
+		Reader(ByteBuffer buffer, int offset) {
+			this.buffer = buffer;
+			this.position = offset;
+			int nameConst = readInt();
+			this.constants = readConstants();
+			this.name = (String) constants[nameConst];
+			this.schema = readSchema();
+			this.rootOffset = readInt();
+			this.nodeStart = position;
+		}
+
+		BehaviorTree<Object> read() {
+			BehaviorTree<Object> behaviorTree = new BehaviorTree<>(readNode(rootOffset));
+			behaviorTree.setName(name);
+			behaviorTree.setBlackboard(new Blackboard(schema));
+			return behaviorTree;
+		}
+
+		private int readInt() {
+			int value = buffer.getInt(position);
+			position += 4;
+			return value;
+		}
+
+		private short readShort() {
+			short value = buffer.getShort(position);
+			position += 2;
+			return value;
+		}
+
+		private byte readByte() {
+			return buffer.get(position++);
+		}
+
+		private Object[] readConstants() {
+			Object[] values = new Object[readInt()];
+			for (int i = 0; i < values.length; i++) {
+				byte type = readByte();
+				switch (type) {
+				case CONST_STRING:
+				case CONST_RAW:
+					int length = readInt();
+					values[i] = readString(buffer, position, length);
+					position += length;
+					break;
+				case CONST_INT:
+					values[i] = readInt();
+					break;
+				case CONST_LONG:
+					values[i] = buffer.getLong(position);
+					position += 8;
+					break;
+				case CONST_FLOAT:
+					values[i] = buffer.getFloat(position);
+					position += 4;
+					break;
+				case CONST_DOUBLE:
+					values[i] = buffer.getDouble(position);
+					position += 8;
+					break;
+				case CONST_BOOLEAN:
+					values[i] = readByte() != 0;
+					break;
+				case CONST_SHORT:
+					values[i] = readShort();
+					break;
+				case CONST_BYTE:
+					values[i] = readByte();
+					break;
+				default:
+					throw new IllegalStateException("常量类型非法 " + type);
+				}
+				if (type == CONST_RAW) {
+					// 和字符串区分
+					values[i] = new RawValue((String) values[i]);
+				}
+			}
+			return values;
+		}
+
+		private BlackboardSchema readSchema() {
+			BlackboardSchema schema = new BlackboardSchema();
+			int count = readShort();
+			for (int i = 0; i < count; i++) {
+				String keyName = (String) constants[readInt()];
+				BlackboardKey key = schema.addKey(keyName, readByte());
+				int defaultConst = readInt();
+				if (defaultConst < 0) {
+					continue;
+				}
+				Object value = constants[defaultConst];
+				switch (key.type) {
+				case BlackboardKey.TYPE_INT:
+					schema.intDefaults[key.slot] = (Integer) value;
+					break;
+				case BlackboardKey.TYPE_FLOAT:
+					schema.floatDefaults[key.slot] = (Float) value;
+					break;
+				case BlackboardKey.TYPE_LONG:
+					schema.longDefaults[key.slot] = (Long) value;
+					break;
+				default:
+					break;
+				}
+			}
+			return schema;
+		}
+
+		private Task<Object> readNode(int offset) {
+			position = nodeStart + offset;
+			byte op = readByte();
+			int nameConst = readInt();
+			int guard = readInt();
+			int[] children = new int[readShort()];
+			for (int i = 0; i < children.length; i++) {
+				children[i] = readInt();
+			}
+			Task<Object> task = createTask(op, children.length);
+			if (nameConst >= 0) {
+				task.setName((String) constants[nameConst]);
+			}
+			// 和xml解析顺序相同，防护条件在孩子前
+			if (guard >= 0) {
+				task.setGuard(readNode(guard));
+			}
+			for (int child : children) {
+				task.addChild(readNode(child));
+			}
+			return task;
+		}
+
+		/**
+		 * 创建节点并读取操作码参数
+		 *
+		 * @param op
+		 * @param childCount 孩子个数
+		 * @return
+		 */
+		private Task<Object> createTask(byte op, int childCount) {
+			switch (op) {
+			case OP_SELECTOR:
+				return new Selector<>();
+			case OP_RANDOM_SELECTOR:
+				return new RandomSelector<>();
+			case OP_SEQUENCE:
+				return new Sequence<>();
+			case OP_RANDOM_SEQUENCE:
+				return new RandomSequence<>();
+			case OP_PARALLEL:
+				return new Parallel<>(Parallel.Policy.values()[readByte()], Parallel.Orchestrator.values()[readByte()]);
+			case OP_CONCURRENT_PARALLEL:
+				ConcurrentParallel<Object> concurrentParallel = new ConcurrentParallel<>(
+						Parallel.Policy.values()[readByte()], Parallel.Orchestrator.values()[readByte()]);
+				concurrentParallel.setWaitMillis(buffer.getLong(position));
+				position += 8;
+				return concurrentParallel;
+			case OP_LEAF:
+				return createLeafTask();
+			case OP_ALWAYS_FAIL:
+				return new AlwaysFail<>();
+			case OP_ALWAYS_SUCCEED:
+				return new AlwaysSucceed<>();
+			case OP_INVERT:
+				return new Invert<>();
+			case OP_REPEAT:
+				return new Repeat<>(readInt());
+			case OP_SEMAPHORE_GUARD:
+				return new SemaphoreGuard<>((String) constants[readInt()]);
+			case OP_UNTIL_FAIL:
+				return new UntilFail<>();
+			case OP_UNTIL_SUCCESS:
+				return new UntilSuccess<>();
+			case OP_RANDOM:
+				float success = buffer.getFloat(position);
+				position += 4;
+				return new Random<>(success);
+			case OP_UTILITY_SELECTOR:
+				return createUtilitySelector(childCount);
+			default:
+				throw new IllegalStateException(String.format("%s 操作码 %d 非法", name, op));
+			}
+		}
+
+		private UtilitySelector<Object> createUtilitySelector(int childCount) {
+			UtilitySelector<Object> utilitySelector = new UtilitySelector<>();
+			utilitySelector.setTopK(readInt());
+			utilitySelector.setThreshold(buffer.getFloat(position));
+			position += 4;
+			for (int i = 0; i < childCount; i++) {
+				int count = readShort();
+				for (int j = 0; j < count; j++) {
+					String key = (String) constants[readInt()];
+					UtilitySelector.Curve curve = UtilitySelector.Curve.values()[readByte()];
+					float[] params = new float[6];
+					for (int p = 0; p < params.length; p++) {
+						params[p] = buffer.getFloat(position);
+						position += 4;
+					}
+					utilitySelector.addConsideration(i, new UtilitySelector.Consideration(key, curve, params[0],
+							params[1], params[2], params[3], params[4], params[5]));
+				}
+			}
+			return utilitySelector;
+		}
+
+		private LeafTask<Object> createLeafTask() {
+			String className = (String) constants[readInt()];
+			int count = readShort();
+			LeafTaskFactory factory;
+			try {
+				factory = LeafTaskFactory.get(className);
+			} catch (ClassNotFoundException e) {
+				throw new IllegalStateException(String.format("%s 叶子类 %s 不存在", name, className), e);
+			}
+			if (count == 0) {
+				return factory.newInstance();
+			}
+			List<LeafTaskFactory.Property> properties = new ArrayList<>(count);
+			List<Object> values = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				String propertyName = (String) constants[readInt()];
+				Object value = constants[readInt()];
+				LeafTaskFactory.Property property = factory.getProperty(propertyName);
+				if (property == null) {
+					LOGGER.warn("配置错误：{}AI 节点{} 属性{} 不存在，需重新编译", name, className, propertyName);
+					continue;
+				}
+				if (value instanceof RawValue) {
+					value = property.convert(((RawValue) value).value, schema);
+				} else if (!MethodType.methodType(property.type).wrap().returnType().isInstance(value)) {
+					// 编译后属性类型变化
+					value = property.convert(String.valueOf(value), schema);
+				}
+				properties.add(property);
+				values.add(value);
+			}
+			return factory.config(properties, values).create();
+		}
+	}
+
+	/**
+	 * 加载时转换的常量
+	 */
+	private static final class RawValue {
+		final String value;
+
+		RawValue(String value) {
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,599 @@
+package com.jzy.ai.btree;
+
+import static com.jzy.ai.btree.BehaviorTreeTemplate.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 行为树代码生成
+ * <p>
+ * 按{@link BehaviorTreeTemplate}节点表生成{@link CompiledBehaviorTree}子类源码，每个节点生成执行方法，
+ * 选择、顺序节点展开为switch，孩子调用直接写成方法调用，参数和槽位下标都是常量<br>
+ * 1、构建时：{@link #generate(BehaviorTreeTemplate, String, String)}输出源码加入工程，运行时
+ * {@link BehaviorTreeTemplate#setCompiled(CompiledBehaviorTree)}设置，模板结构变化后构造函数校验失败<br>
+ * 2、运行时：{@link #compile(BehaviorTreeTemplate)}使用JDK编译器在内存中编译加载，需要运行在JDK上<br>
+ * </p>
+ * 执行语义和模板解释执行相同，节点状态变化和叶子执行同样记录{@link BehaviorTreeProfiler}统计
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public final class BehaviorTreeCodeGenerator {
+	private static final Logger LOGGER = LoggerFactory.getLogger(BehaviorTreeCodeGenerator.class);
+
+	/** 运行时生成类的包名 */
+	public static final String GENERATED_PACKAGE = "com.jzy.ai.btree.generated";
+
+	private final BehaviorTreeTemplate<?> template;
+	private final StringBuilder source = new StringBuilder(4096);
+
+	private BehaviorTreeCodeGenerator(BehaviorTreeTemplate<?> template) {
+		this.template = template;
+	}
+
+	/**
+	 * 生成执行类源码
+	 *
+	 * @param template
+	 * @param packageName 包名，可为空
+	 * @param className   类名
+	 * @return java源码
+	 * @throws IllegalArgumentException 节点孩子个数非法
+	 */
+	public static String generate(BehaviorTreeTemplate<?> template, String packageName, String className) {
+		BehaviorTreeCodeGenerator generator = new BehaviorTreeCodeGenerator(template);
+		generator.generateClass(packageName, className);
+		return generator.source.toString();
+	}
+
+	/**
+	 * 运行时生成并编译执行类，不设置到模板
+	 *
+	 * @param template
+	 * @return
+	 * @throws IllegalStateException 没有JDK编译器或编译失败
+	 */
+	@SuppressWarnings("unchecked")
+	public static <E> CompiledBehaviorTree<E> compile(BehaviorTreeTemplate<E> template) {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			throw new IllegalStateException("没有JDK编译器，不能运行时生成行为树执行类");
+		}
+		String className = "BehaviorTree_" + Long.toHexString(template.getStructureHash());
+		String fullName = GENERATED_PACKAGE + "." + className;
+		String code = generate(template, GENERATED_PACKAGE, className);
+
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		StandardJavaFileManager standardManager = compiler.getStandardFileManager(diagnostics, null, null);
+		MemoryFileManager fileManager = new MemoryFileManager(standardManager);
+		List<String> options = new ArrayList<>();
+		options.add("-classpath");
+		options.add(classPath());
+		options.add("-nowarn");
+		JavaFileObject sourceFile = new SimpleJavaFileObject(
+				URI.create("string:///" + fullName.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension),
+				JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return code;
+			}
+		};
+		StringWriter out = new StringWriter();
+		Boolean success = compiler
+				.getTask(out, fileManager, diagnostics, options, null, Collections.singletonList(sourceFile)).call();
+		if (success == null || !success) {
+			throw new IllegalStateException(
+					String.format("行为树 %s 执行类编译失败：%s %s", template.getName(), diagnostics.getDiagnostics(), out));
+		}
+		try {
+			ClassLoader parent = BehaviorTreeCodeGenerator.class.getClassLoader();
+			Class<?> compiledClass = new MemoryClassLoader(parent, fileManager.classes).loadClass(fullName);
+			CompiledBehaviorTree<E> compiled = (CompiledBehaviorTree<E>) compiledClass
+					.getConstructor(BehaviorTreeTemplate.class).newInstance(template);
+			LOGGER.info("行为树 {} 生成执行类 {} 节点数 {}", template.getName(), fullName, template.getNodeCount());
+			return compiled;
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(String.format("行为树 %s 执行类加载失败", template.getName()), e);
+		}
+	}
+
+	/**
+	 * 编译类路径，包含本库所在位置
+	 *
+	 * @return
+	 */
+	private static String classPath() {
+		String classPath = System.getProperty("java.class.path", "");
+		CodeSource codeSource = CompiledBehaviorTree.class.getProtectionDomain().getCodeSource();
+		if (codeSource != null && codeSource.getLocation() != null) {
+			try {
+				classPath = new File(codeSource.getLocation().toURI()).getPath() + File.pathSeparator + classPath;
+			} catch (Exception e) {
+				LOGGER.warn("获取行为树类路径失败", e);
+			}
+		}
+		return classPath;
+	}
+
+	private void generateClass(String packageName, String className) {
+		int count = template.getNodeCount();
+		line(0, "// 由%s生成，行为树 %s，请勿手动修改", BehaviorTreeCodeGenerator.class.getSimpleName(),
+				comment(template.getName()));
+		if (packageName != null && !packageName.isEmpty()) {
+			line(0, "package %s;", packageName);
+		}
+		line(0, "");
+		line(0, "import com.jzy.ai.btree.BehaviorTreeInstance;");
+		line(0, "import com.jzy.ai.btree.BehaviorTreeTemplate;");
+		line(0, "import com.jzy.ai.btree.CompiledBehaviorTree;");
+		line(0, "import com.jzy.ai.btree.SharedLeaf;");
+		line(0, "");
+		line(0, "@SuppressWarnings(\"unused\")");
+		line(0, "public final class %s<E> extends CompiledBehaviorTree<E> {", className);
+		line(1, "/** 模板结构哈希 */");
+		line(1, "public static final long STRUCTURE_HASH = 0x%sL;", Long.toHexString(template.getStructureHash()));
+		for (int node = 0; node < count; node++) {
+			byte type = template.getType(node);
+			if (type == TYPE_RANDOM_SELECTOR || type == TYPE_RANDOM_SEQUENCE) {
+				StringBuilder children = new StringBuilder();
+				for (int i = 0; i < template.getChildCount(node); i++) {
+					children.append(i == 0 ? "" : ", ").append(template.getChild(node, i));
+				}
+				line(1, "private static final int[] CHILDREN_%d = { %s };", node, children);
+			}
+		}
+		for (int node = 0; node < count; node++) {
+			if (template.getType(node) == TYPE_SHARED_LEAF) {
+				line(1, "private final SharedLeaf<E> leaf%d;", node);
+			}
+		}
+		line(0, "");
+		line(1, "public %s(BehaviorTreeTemplate<E> template) {", className);
+		line(2, "super(template, STRUCTURE_HASH);");
+		for (int node = 0; node < count; node++) {
+			if (template.getType(node) == TYPE_SHARED_LEAF) {
+				line(2, "this.leaf%d = sharedLeaf(%d);", node, node);
+			}
+		}
+		line(1, "}");
+		line(0, "");
+		line(1, "@Override");
+		line(1, "public void step(BehaviorTreeInstance<E> in) {");
+		line(2, "execute0(in);");
+		line(1, "}");
+		for (int node = 0; node < count; node++) {
+			generateExecute(node);
+			if (template.getGuard(node) >= 0) {
+				generateGuard(node);
+			}
+			generateRun(node);
+			if (template.getType(node) == TYPE_PARALLEL) {
+				generateParallel(node);
+			}
+		}
+		line(0, "}");
+	}
+
+	/**
+	 * 运行中继续执行，否则进入节点并检查防护条件
+	 *
+	 * @param node
+	 */
+	private void generateExecute(int node) {
+		line(0, "");
+		line(1, "// %d %s", node, comment(template.getNodeName(node)));
+		line(1, "private byte execute%d(BehaviorTreeInstance<E> in) {", node);
+		line(2, "if (statuses(in)[%d] == RUNNING) {", node);
+		line(3, "return run%d(in);", node);
+		line(2, "}");
+		generateStart(2, node);
+		if (template.getGuard(node) >= 0) {
+			line(2, "if (!guard%d(in)) {", node);
+			line(3, "return finish(in, %d, FAILED);", node);
+			line(2, "}");
+		}
+		line(2, "return run%d(in);", node);
+		line(1, "}");
+	}
+
+	private void generateStart(int indent, int node) {
+		int offset = template.getSlotOffset(node);
+		switch (template.getType(node)) {
+		case TYPE_SELECTOR:
+		case TYPE_SEQUENCE:
+		case TYPE_RANDOM_SELECTOR:
+		case TYPE_RANDOM_SEQUENCE:
+			line(indent, "slots(in)[%d] = 0;", offset);
+			break;
+		case TYPE_PARALLEL:
+			if ((template.getParam(node) & PARALLEL_JOIN) != 0) {
+				line(indent, "resetChildren(in, %d);", node);
+			}
+			break;
+		case TYPE_REPEAT:
+			line(indent, "slots(in)[%d] = %d;", offset, template.getParam(node));
+			break;
+		case TYPE_SEMAPHORE_GUARD:
+			line(indent, "start(in, %d);", node);
+			break;
+		case TYPE_SHARED_LEAF:
+			line(indent, "leaf%d.start(in, %d);", node, offset);
+			break;
+		case TYPE_TASK_LEAF:
+			line(indent, "leafTask(in, %d).start();", node);
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * 防护条件，同{@link Task#checkGuard(Task)}
+	 *
+	 * @param node
+	 */
+	private void generateGuard(int node) {
+		int guard = template.getGuard(node);
+		line(0, "");
+		line(1, "private boolean guard%d(BehaviorTreeInstance<E> in) {", node);
+		if (template.getGuard(guard) >= 0) {
+			line(2, "if (!guard%d(in)) {", guard);
+			line(3, "return false;");
+			line(2, "}");
+		}
+		generateStart(2, guard);
+		line(2, "byte r = run%d(in);", guard);
+		line(2, "if (r == SUCCEEDED) {");
+		line(3, "return true;");
+		line(2, "} else if (r == FAILED) {");
+		line(3, "return false;");
+		line(2, "}");
+		line(2, "throw illegalGuard(in, %d);", guard);
+		line(1, "}");
+	}
+
+	private void generateRun(int node) {
+		int offset = template.getSlotOffset(node);
+		int childCount = template.getChildCount(node);
+		byte type = template.getType(node);
+		line(0, "");
+		line(1, "private byte run%d(BehaviorTreeInstance<E> in) {", node);
+		line(2, "byte r;");
+		switch (type) {
+		case TYPE_SELECTOR:
+		case TYPE_SEQUENCE:
+			generateBranch(node, type == TYPE_SELECTOR ? "SUCCEEDED" : "FAILED");
+			break;
+		case TYPE_RANDOM_SELECTOR:
+		case TYPE_RANDOM_SEQUENCE:
+			generateRandomBranch(node, type == TYPE_RANDOM_SELECTOR ? "SUCCEEDED" : "FAILED");
+			break;
+		case TYPE_PARALLEL:
+			line(2, "r = parallel%d(in);", node);
+			break;
+		case TYPE_ALWAYS_FAIL:
+			line(2, "r = execute%d(in);", child(node));
+			line(2, "if (r != RUNNING) {");
+			line(3, "r = FAILED;");
+			line(2, "}");
+			break;
+		case TYPE_ALWAYS_SUCCEED:
+			line(2, "r = execute%d(in);", child(node));
+			line(2, "if (r != RUNNING) {");
+			line(3, "r = SUCCEEDED;");
+			line(2, "}");
+			break;
+		case TYPE_INVERT:
+			line(2, "r = execute%d(in);", child(node));
+			line(2, "if (r == SUCCEEDED) {");
+			line(3, "r = FAILED;");
+			line(2, "} else if (r == FAILED) {");
+			line(3, "r = SUCCEEDED;");
+			line(2, "}");
+			break;
+		case TYPE_RANDOM:
+			line(2, childCount > 0 ? "r = execute" + child(node) + "(in);" : "r = FAILED;");
+			line(2, "if (r != RUNNING) {");
+			line(3, "r = random(%sf);", Float.toString(template.getFloatParam(node)));
+			line(2, "}");
+			break;
+		case TYPE_REPEAT:
+			line(2, "int[] s = slots(in);");
+			line(2, "r = SUCCEEDED;");
+			line(2, "while (s[%d] != 0) {", offset);
+			line(3, "if (execute%d(in) == RUNNING) {", child(node));
+			line(4, "r = RUNNING;");
+			line(4, "break;");
+			line(3, "}");
+			line(3, "if (s[%d] > 0) {", offset);
+			line(4, "s[%d]--;", offset);
+			line(3, "}");
+			line(2, "}");
+			break;
+		case TYPE_UNTIL_FAIL:
+			line(2, "do {");
+			line(3, "r = execute%d(in);", child(node));
+			line(2, "} while (r == SUCCEEDED);");
+			line(2, "if (r == FAILED) {");
+			line(3, "r = SUCCEEDED;");
+			line(2, "}");
+			break;
+		case TYPE_UNTIL_SUCCESS:
+			line(2, "do {");
+			line(3, "r = execute%d(in);", child(node));
+			line(2, "} while (r == FAILED);");
+			break;
+		case TYPE_SEMAPHORE_GUARD:
+			line(2, "r = slots(in)[%d] != 0 ? execute%d(in) : FAILED;", offset, child(node));
+			break;
+		case TYPE_SUCCESS:
+			line(2, "r = SUCCEEDED;");
+			break;
+		case TYPE_FAILURE:
+			line(2, "r = FAILED;");
+			break;
+		case TYPE_SHARED_LEAF:
+			line(2, "r = toStatus(profiling(in) ? profileLeaf(in, %d) : leaf%d.execute(in, %d));", node, node, offset);
+			break;
+		case TYPE_TASK_LEAF:
+			line(2, "r = toStatus(profiling(in) ? profileLeaf(in, %d) : leafTask(in, %d).execute());", node, node);
+			break;
+		default:
+			throw new IllegalArgumentException(String.format("行为树 %s 节点 %d 类型 %d 非法", template.getName(), node, type));
+		}
+		line(2, "if (r == RUNNING) {");
+		line(3, "statuses(in)[%d] = RUNNING;", node);
+		line(3, "statusUpdated(in, %d, RUNNING);", node);
+		line(3, "return RUNNING;");
+		line(2, "}");
+		switch (type) {
+		case TYPE_SEMAPHORE_GUARD:
+			line(2, "return finish(in, %d, r);", node);
+			break;
+		case TYPE_SHARED_LEAF:
+			line(2, "statuses(in)[%d] = r;", node);
+			line(2, "statusUpdated(in, %d, r);", node);
+			line(2, "leaf%d.end(in, %d);", node, offset);
+			line(2, "return r;");
+			break;
+		case TYPE_TASK_LEAF:
+			line(2, "statuses(in)[%d] = r;", node);
+			line(2, "statusUpdated(in, %d, r);", node);
+			line(2, "leafTask(in, %d).end();", node);
+			line(2, "return r;");
+			break;
+		default:
+			line(2, "statuses(in)[%d] = r;", node);
+			line(2, "statusUpdated(in, %d, r);", node);
+			line(2, "return r;");
+			break;
+		}
+		line(1, "}");
+	}
+
+	/**
+	 * 选择和顺序节点，按当前孩子下标跳转，依次向下执行
+	 *
+	 * @param node
+	 * @param stop
+	 */
+	private void generateBranch(int node, String stop) {
+		int offset = template.getSlotOffset(node);
+		int count = template.getChildCount(node);
+		if (count == 0) {
+			line(2, "r = %s;", "SUCCEEDED".equals(stop) ? "FAILED" : "SUCCEEDED");
+			return;
+		}
+		line(2, "int[] s = slots(in);");
+		line(2, "switch (s[%d]) {", offset);
+		for (int i = 0; i < count; i++) {
+			line(2, "case %d:", i);
+			line(3, "r = execute%d(in);", template.getChild(node, i));
+			line(3, "if (r == RUNNING || r == %s) {", stop);
+			line(4, "break;");
+			line(3, "}");
+			line(3, "s[%d] = %d;", offset, i + 1);
+		}
+		line(3, "break;");
+		line(2, "default:");
+		line(3, "throw new IllegalStateException(\"Invalid child index \" + s[%d]);", offset);
+		line(2, "}");
+	}
+
+	/**
+	 * 随机选择和顺序节点，槽位保存孩子顺序
+	 *
+	 * @param node
+	 * @param stop
+	 */
+	private void generateRandomBranch(int node, String stop) {
+		int offset = template.getSlotOffset(node);
+		int count = template.getChildCount(node);
+		if (count == 0) {
+			line(2, "r = %s;", "SUCCEEDED".equals(stop) ? "FAILED" : "SUCCEEDED");
+			return;
+		}
+		line(2, "int[] s = slots(in);");
+		line(2, "while (true) {");
+		line(3, "int cursor = s[%d];", offset);
+		line(3, "int index = %d + cursor;", offset + 1);
+		line(3, "if (statuses(in)[CHILDREN_%d[s[index]]] != RUNNING && cursor < %d) {", node, count - 1);
+		line(4, "int other = %d + random(cursor, %d);", offset + 1, count - 1);
+		line(4, "int tmp = s[index];");
+		line(4, "s[index] = s[other];");
+		line(4, "s[other] = tmp;");
+		line(3, "}");
+		line(3, "switch (s[index]) {");
+		for (int i = 0; i < count; i++) {
+			line(3, "case %d:", i);
+			line(4, "r = execute%d(in);", template.getChild(node, i));
+			line(4, "break;");
+		}
+		line(3, "default:");
+		line(4, "throw new IllegalStateException(\"Invalid child index \" + s[index]);");
+		line(3, "}");
+		line(3, "if (r == RUNNING || r == %s || ++s[%d] >= %d) {", stop, offset, count);
+		line(4, "break;");
+		line(3, "}");
+		line(2, "}");
+	}
+
+	/**
+	 * 并行节点，孩子依次展开
+	 *
+	 * @param node
+	 */
+	private void generateParallel(int node) {
+		int count = template.getChildCount(node);
+		boolean selector = (template.getParam(node) & PARALLEL_SELECTOR) != 0;
+		boolean join = (template.getParam(node) & PARALLEL_JOIN) != 0;
+		int last = count > 0 ? template.getChild(node, count - 1) : -1;
+		line(0, "");
+		line(1, "private byte parallel%d(BehaviorTreeInstance<E> in) {", node);
+		line(2, "byte[] st = statuses(in);");
+		line(2, "boolean noRunningTasks = true;");
+		line(2, "byte r;");
+		for (int i = 0; i < count; i++) {
+			int child = template.getChild(node, i);
+			int indent = 2;
+			if (join) {
+				line(2, "if (st[%d] != SUCCEEDED && st[%d] != FAILED) {", child, child);
+				indent = 3;
+			}
+			line(indent, "r = execute%d(in);", child);
+			line(indent, "if (r == RUNNING) {");
+			line(indent + 1, "noRunningTasks = false;");
+			line(indent, "} else if (r == SUCCEEDED) {");
+			if (selector) {
+				parallelEnd(indent + 1, node, i, "SUCCEEDED", join);
+			} else if (join || i == count - 1) {
+				line(indent + 1, join ? "if (noRunningTasks && st[" + last + "] == SUCCEEDED) {" : "if (noRunningTasks) {");
+				parallelEnd(indent + 2, node, i, "SUCCEEDED", join);
+				line(indent + 1, "}");
+			}
+			line(indent, "} else {");
+			if (!selector) {
+				parallelEnd(indent + 1, node, i, "FAILED", join);
+			} else if (i == count - 1) {
+				line(indent + 1, "if (noRunningTasks) {");
+				parallelEnd(indent + 2, node, i, "FAILED", join);
+				line(indent + 1, "}");
+			}
+			line(indent, "}");
+			if (join) {
+				line(2, "}");
+			}
+		}
+		line(2, "return RUNNING;");
+		line(1, "}");
+	}
+
+	private void parallelEnd(int indent, int node, int index, String result, boolean join) {
+		line(indent, "cancelChildren(in, %d, noRunningTasks ? %d : 0);", node, index + 1);
+		if (join) {
+			line(indent, "resetChildren(in, %d);", node);
+		}
+		line(indent, "return %s;", result);
+	}
+
+	/**
+	 * 装饰器唯一孩子
+	 *
+	 * @param node
+	 * @return
+	 */
+	private int child(int node) {
+		if (template.getChildCount(node) < 1) {
+			throw new IllegalArgumentException(
+					String.format("行为树 %s 节点 %d %s 没有孩子", template.getName(), node, template.getNodeName(node)));
+		}
+		return template.getChild(node, 0);
+	}
+
+	private void line(int indent, String format, Object... args) {
+		for (int i = 0; i < indent; i++) {
+			source.append('\t');
+		}
+		source.append(args.length == 0 ? format : String.format(format, args)).append('\n');
+	}
+
+	/**
+	 * 注释中的名称，去掉换行和unicode转义
+	 *
+	 * @param text
+	 * @return
+	 */
+	private static String comment(String text) {
+		return text == null ? "" : text.replaceAll("[\\r\\n]+", " ").replace('\\', '/');
+	}
+
+	/**
+	 * 内存中保存编译结果
+	 */
+	private static final class MemoryFileManager extends ForwardingJavaFileManager<JavaFileManager> {
+		final Map<String, ByteArrayOutputStream> classes = new HashMap<>();
+
+		MemoryFileManager(JavaFileManager fileManager) {
+			super(fileManager);
+		}
+
+		@Override
+		public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+				FileObject sibling) {
+			return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension),
+					kind) {
+				@Override
+				public OutputStream openOutputStream() {
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					classes.put(className, out);
+					return out;
+				}
+			};
+		}
+	}
+
+	/**
+	 * 加载内存中的类
+	 */
+	private static final class MemoryClassLoader extends ClassLoader {
+		private final Map<String, ByteArrayOutputStream> classes;
+
+		MemoryClassLoader(ClassLoader parent, Map<String, ByteArrayOutputStream> classes) {
+			super(parent);
+			this.classes = classes;
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			ByteArrayOutputStream out = classes.get(name);
+			if (out == null) {
+				return super.findClass(name);
+			}
+			byte[] bytes = out.toByteArray();
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+}
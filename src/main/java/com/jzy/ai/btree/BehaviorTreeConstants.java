@@ -21,6 +21,12 @@ public class BehaviorTreeConstants {
     /** 行为树标识节点 */
     public static final String XML_TREE = "Tree";
 
+    /** 黑板定义节点 */
+    public static final String XML_BLACKBOARD = "Blackboard";
+
+    /** 黑板键节点 */
+    public static final String XML_KEY = "Key";
+
     /** 选择器标识节点 */
     public static final String XML_SELECTOR = "Selector";
 
@@ -66,6 +72,12 @@ public class BehaviorTreeConstants {
     /** 随机节点标识 */
     public static final String XML_RANDOM = "Random";
 
+    /** 效用选择节点标识 */
+    public static final String XML_UTILITY_SELECTOR = "UtilitySelector";
+
+    /** 效用选择节点孩子的考虑因素标识 */
+    public static final String XML_CONSIDERATION = "Consideration";
+
     /** xml name属性 */
     public static final String XML_ATTRIBUTE_NAME = "name";
 
@@ -78,9 +90,51 @@ public class BehaviorTreeConstants {
     /** xml orchestrator属性 */
     public static final String XML_ATTRIBUTE_ORCHESTRATOR = "orchestrator";
 
+    /** xml concurrent属性，并行节点并发执行线程安全的叶子 */
+    public static final String XML_ATTRIBUTE_CONCURRENT = "concurrent";
+
+    /** xml wait属性，并发并行节点等待毫秒数 */
+    public static final String XML_ATTRIBUTE_WAIT = "wait";
+
     /** xml times属性 */
     public static final String XML_ATTRIBUTE_TIMES = "times";
 
     /** xml success属性 */
     public static final String XML_ATTRIBUTE_SUCCESS = "success";
+
+    /** xml type属性 */
+    public static final String XML_ATTRIBUTE_TYPE = "type";
+
+    /** xml value属性 */
+    public static final String XML_ATTRIBUTE_VALUE = "value";
+
+    /** xml topK属性，效用选择节点最多尝试的孩子个数 */
+    public static final String XML_ATTRIBUTE_TOP_K = "topK";
+
+    /** xml threshold属性，效用选择节点孩子的最低分数 */
+    public static final String XML_ATTRIBUTE_THRESHOLD = "threshold";
+
+    /** xml key属性，考虑因素输入的黑板键 */
+    public static final String XML_ATTRIBUTE_KEY = "key";
+
+    /** xml curve属性，考虑因素响应曲线 */
+    public static final String XML_ATTRIBUTE_CURVE = "curve";
+
+    /** xml min属性 */
+    public static final String XML_ATTRIBUTE_MIN = "min";
+
+    /** xml max属性 */
+    public static final String XML_ATTRIBUTE_MAX = "max";
+
+    /** xml slope属性 */
+    public static final String XML_ATTRIBUTE_SLOPE = "slope";
+
+    /** xml exponent属性 */
+    public static final String XML_ATTRIBUTE_EXPONENT = "exponent";
+
+    /** xml xShift属性 */
+    public static final String XML_ATTRIBUTE_X_SHIFT = "xShift";
+
+    /** xml yShift属性 */
+    public static final String XML_ATTRIBUTE_Y_SHIFT = "yShift";
 }
@@ -0,0 +1,107 @@
+package com.jzy.ai.btree;
+
+import com.jzy.ai.btree.Task.Status;
+
+/**
+ * 行为树实例，保存单个对象的运行数据
+ * <p>
+ * 结构数据在共享的{@link BehaviorTreeTemplate}中，实例只有节点状态数组和int槽位数组（分支当前孩子下标、随机顺序、
+ * 循环次数、叶子运行数据等），60个节点的行为树每个实例只占用一两百字节。<br>
+ * 自定义{@link LeafTask}叶子第一次执行时才按实例复制，不使用时不占用内存
+ * </p>
+ * 非线程安全，每个对象持有一个
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ * @param <E> 黑板对象
+ */
+public class BehaviorTreeInstance<E> {
+	private static final Status[] STATUSES = Status.values();
+
+	final BehaviorTreeTemplate<E> template;
+	/** 黑板对象 */
+	E object;
+	/** 黑板，模板没有定义黑板键时为null */
+	Blackboard blackboard;
+	/** 节点状态，{@link Status#ordinal()} */
+	final byte[] statuses;
+	/** 节点运行数据 */
+	final int[] slots;
+	/** 按实例复制的{@link LeafTask}叶子，延迟创建 */
+	LeafTask<E>[] leafTasks;
+	/** {@link LeafTask}叶子获取黑板对象使用，延迟创建 */
+	BehaviorTree<E> leafTree;
+	/** 模板节点统计，只在{@link BehaviorTreeProfiler}统计的step期间不为null */
+	BehaviorTreeProfiler.NodeMetrics[] metrics;
+
+	BehaviorTreeInstance(BehaviorTreeTemplate<E> template, E object, int[] initSlots) {
+		this.template = template;
+		this.object = object;
+		this.statuses = new byte[template.getNodeCount()];
+		this.slots = initSlots.clone();
+		BlackboardSchema schema = template.getBlackboardSchema();
+		if (schema != null && schema.size() > 0) {
+			this.blackboard = new Blackboard(schema);
+		}
+	}
+
+	/**
+	 * 执行一次，游戏循环或固定时间片调用
+	 */
+	public void step() {
+		template.step(this);
+	}
+
+	/**
+	 * 取消运行中的节点，下次从根节点重新开始
+	 */
+	public void reset() {
+		template.reset(this);
+	}
+
+	/**
+	 * 根节点状态
+	 *
+	 * @return
+	 */
+	public Status getStatus() {
+		return STATUSES[statuses[0]];
+	}
+
+	/**
+	 * 节点状态
+	 *
+	 * @param node 节点下标
+	 * @return
+	 */
+	public Status getStatus(int node) {
+		return STATUSES[statuses[node]];
+	}
+
+	public int getSlot(int index) {
+		return slots[index];
+	}
+
+	public void setSlot(int index, int value) {
+		slots[index] = value;
+	}
+
+	public E getObject() {
+		return object;
+	}
+
+	public void setObject(E object) {
+		this.object = object;
+		if (leafTree != null) {
+			leafTree.setObject(object);
+		}
+	}
+
+	public Blackboard getBlackboard() {
+		return blackboard;
+	}
+
+	public BehaviorTreeTemplate<E> getTemplate() {
+		return template;
+	}
+}
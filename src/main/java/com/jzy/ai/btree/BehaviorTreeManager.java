@@ -2,19 +2,18 @@ package com.jzy.ai.btree;
 
 
 import java.io.File;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
-import com.alibaba.fastjson.JSON;
 import com.jzy.ai.btree.branch.*;
 import com.jzy.ai.btree.decorator.*;
 import com.jzy.javalib.base.util.*;
-import com.jzy.javalib.math.geometry.Vector3;
 import org.dom4j.Attribute;
 import org.dom4j.Document;
 import org.dom4j.DocumentHelper;
@@ -40,6 +39,26 @@ public class BehaviorTreeManager {
      */
     private Map<String, BehaviorTree<? extends Object>> behaviorTrees;
 
+    /**
+     * 行为树模板，所有对象共享结构
+     */
+    private Map<String, BehaviorTreeTemplate<? extends Object>> behaviorTreeTemplates;
+
+    /**
+     * 行为树id-xml内容哈希，重新加载时跳过未修改的行为树
+     */
+    private Map<String, Long> behaviorTreeHashes = new HashMap<>();
+
+    /**
+     * xml文件路径-行为树id
+     */
+    private Map<String, String> behaviorTreeFiles = new HashMap<>();
+
+    /**
+     * 性能统计，克隆的行为树按id统计
+     */
+    private volatile BehaviorTreeProfiler profiler;
+
     private BehaviorTreeManager() {
 
     }
@@ -61,6 +80,19 @@ public class BehaviorTreeManager {
      * @param path
      */
     public void parseBehaviorTree(String path) {
+        parseBehaviorTree(path, false);
+    }
+
+    /**
+     * 重新加载行为树xml配置文件，只解析内容变化的文件，删除的文件对应的行为树移除
+     *
+     * @param path
+     */
+    public void reloadBehaviorTree(String path) {
+        parseBehaviorTree(path, true);
+    }
+
+    private void parseBehaviorTree(String path, boolean incremental) {
         List<File> files = new ArrayList<>();
         File f = new File(path);
         if (!f.exists()) {
@@ -68,19 +100,32 @@ public class BehaviorTreeManager {
         }
         FileUtil.getRfFiles(files, f, new String[]{".xml"});
         Map<String, BehaviorTree<? extends Object>> treeMap = new HashMap<>();
+        Map<String, BehaviorTreeTemplate<? extends Object>> templateMap = new HashMap<>();
+        Map<String, Long> hashMap = new HashMap<>();
+        Map<String, String> fileMap = new HashMap<>();
+        int changed = 0;
 
         if (!files.isEmpty()) {
             for (File file : files) {
                 try {
                     if (file.exists()) {
-                        // 加载行为树
-                        Args.Two<String, BehaviorTree<? extends Object>> tree = createBehaviorTree(file);
-                        if (treeMap.containsKey(tree.a())) {
-                            LOGGER.warn("配置问题：行为树 {} ID {} 与行为树 {} ID重复", file.getName(), tree.a(),
-                                    treeMap.get(tree.a()).getName());
+                        byte[] bytes = Files.readAllBytes(file.toPath());
+                        long hash = BehaviorTreeBinary.hash(bytes);
+                        String id = incremental ? behaviorTreeFiles.get(file.getPath()) : null;
+                        if (id != null && isUnchanged(id, hash)) {
+                            if (putBehaviorTree(treeMap, templateMap, hashMap, id, hash, behaviorTrees.get(id),
+                                    behaviorTreeTemplates.get(id), file.getName())) {
+                                fileMap.put(file.getPath(), id);
+                            }
                             continue;
                         }
-                        treeMap.put(tree.a(), tree.b());
+                        // 加载行为树
+                        Args.Two<String, BehaviorTree<? extends Object>> tree = createBehaviorTree(file, bytes);
+                        if (putBehaviorTree(treeMap, templateMap, hashMap, tree.a(), hash, tree.b(),
+                                compileTemplate(tree.a(), tree.b()), file.getName())) {
+                            fileMap.put(file.getPath(), tree.a());
+                            changed++;
+                        }
                         // LOGGER.debug("行为树{} 加入容器", tree.a());
                     }
                 } catch (Exception e) {
@@ -90,16 +135,110 @@ public class BehaviorTreeManager {
             }
         }
         behaviorTrees = treeMap;
+        behaviorTreeTemplates = templateMap;
+        behaviorTreeHashes = hashMap;
+        behaviorTreeFiles = fileMap;
+        LOGGER.info("加载行为树 {} 个，解析 {} 个", treeMap.size(), changed);
+    }
+
+    /**
+     * 加载{@link BehaviorTreeBinary}编译的二进制文件，文件内存映射后直接创建行为树，不解析xml <br>
+     * 已加载且xml内容哈希未变化的行为树保留，不在文件中的行为树移除；仍在的行为树保留xml文件对应关系，之后增量加载xml时不重复解析
+     *
+     * @param path 二进制文件
+     */
+    public void loadBinaryBehaviorTree(String path) {
+        List<BehaviorTreeBinary.Entry> entries;
+        try {
+            entries = BehaviorTreeBinary.readDirectory(BehaviorTreeBinary.map(new File(path)));
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("%s 行为树文件读取失败", path), e);
+        }
+        Map<String, BehaviorTree<? extends Object>> treeMap = new HashMap<>();
+        Map<String, BehaviorTreeTemplate<? extends Object>> templateMap = new HashMap<>();
+        Map<String, Long> hashMap = new HashMap<>();
+        int changed = 0;
+        for (BehaviorTreeBinary.Entry entry : entries) {
+            try {
+                if (isUnchanged(entry.id, entry.hash)) {
+                    putBehaviorTree(treeMap, templateMap, hashMap, entry.id, entry.hash, behaviorTrees.get(entry.id),
+                            behaviorTreeTemplates.get(entry.id), path);
+                    continue;
+                }
+                BehaviorTree<Object> tree = entry.createBehaviorTree();
+                if (putBehaviorTree(treeMap, templateMap, hashMap, entry.id, entry.hash, tree,
+                        compileTemplate(entry.id, tree), path)) {
+                    changed++;
+                }
+            } catch (Exception e) {
+                LOGGER.error(String.format("加载行为树:%s %s 异常", path, entry.id), e);
+            }
+        }
+        behaviorTrees = treeMap;
+        behaviorTreeTemplates = templateMap;
+        behaviorTreeHashes = hashMap;
+        // 二进制哈希即xml内容哈希，保留仍加载的行为树的文件对应关系
+        Map<String, String> fileMap = new HashMap<>();
+        for (Map.Entry<String, String> file : behaviorTreeFiles.entrySet()) {
+            if (treeMap.containsKey(file.getValue())) {
+                fileMap.put(file.getKey(), file.getValue());
+            }
+        }
+        behaviorTreeFiles = fileMap;
+        LOGGER.info("加载行为树 {} 个，创建 {} 个", treeMap.size(), changed);
+    }
+
+    /**
+     * 行为树已加载且xml内容未变化
+     *
+     * @param id
+     * @param hash xml内容哈希
+     * @return
+     */
+    private boolean isUnchanged(String id, long hash) {
+        Long loadedHash = behaviorTreeHashes.get(id);
+        return loadedHash != null && loadedHash == hash && behaviorTrees != null && behaviorTrees.containsKey(id);
+    }
+
+    /**
+     * 加入新加载的行为树
+     *
+     * @return id重复返回false
+     */
+    private boolean putBehaviorTree(Map<String, BehaviorTree<? extends Object>> treeMap,
+                                    Map<String, BehaviorTreeTemplate<? extends Object>> templateMap, Map<String, Long> hashMap,
+                                    String id, long hash, BehaviorTree<? extends Object> tree,
+                                    BehaviorTreeTemplate<? extends Object> template, String fileName) {
+        if (treeMap.containsKey(id)) {
+            LOGGER.warn("配置问题：行为树 {} ID {} 与行为树 {} ID重复", fileName, id, treeMap.get(id).getName());
+            return false;
+        }
+        treeMap.put(id, tree);
+        hashMap.put(id, hash);
+        if (template != null) {
+            templateMap.put(id, template);
+        }
+        return true;
+    }
+
+    private BehaviorTreeTemplate<? extends Object> compileTemplate(String id, BehaviorTree<? extends Object> tree) {
+        try {
+            return BehaviorTreeTemplate.compile(tree);
+        } catch (Exception e) {
+            LOGGER.warn("行为树 {} 不能编译为模板：{}", id, e.getMessage());
+            return null;
+        }
     }
 
     /**
      * 创建行为树
      *
      * @param file
+     * @param bytes 文件内容
      * @return
      */
-    private Args.Two<String, BehaviorTree<? extends Object>> createBehaviorTree(File file) {
-        String xmlStr = FileUtil.readTxtFile(file.getPath());
+    private Args.Two<String, BehaviorTree<? extends Object>> createBehaviorTree(File file, byte[] bytes) {
+        String xmlStr = new String(bytes, StandardCharsets.UTF_8);
         Document document = null;
         try {
             document = DocumentHelper.parseText(xmlStr);
@@ -123,46 +262,112 @@ public class BehaviorTreeManager {
         if (treeRootElements.size() > 1) {
             throw new RuntimeException(String.format("%s 行为树存在%d根节点", file.getPath(), treeRootElements.size()));
         }
+        // 黑板键需在创建叶子前解析
+        BlackboardSchema schema = createBlackboardSchema(rootElement.element(XML_BLACKBOARD));
         Element rootTaskElement = (Element) treeRootElements.get(0); // 行为树xml根节点
-        Task<Object> rootTask = createTask(rootTaskElement); // 行为树根任务
+        Task<Object> rootTask = createTask(rootTaskElement, schema); // 行为树根任务
         // 递归设置分支节点和叶子节点
-        addTask(rootTaskElement, rootTask);
+        addTask(rootTaskElement, rootTask, schema);
 
         BehaviorTree<? extends Object> behaviorTree = new BehaviorTree<>(rootTask);
         behaviorTree.setName(file.getName());
+        behaviorTree.setBlackboard(new Blackboard(schema));
         return Args.of(id, behaviorTree);
     }
 
+    /**
+     * 创建黑板结构 <br>
+     * &lt;Blackboard&gt;&lt;Key name="hp" type="int" value="100"/&gt;&lt;/Blackboard&gt;，type为int、float、long、object
+     *
+     * @param element 黑板节点，可为null
+     * @return
+     */
+    static BlackboardSchema createBlackboardSchema(Element element) {
+        BlackboardSchema schema = new BlackboardSchema();
+        if (element == null) {
+            return schema;
+        }
+        for (Element keyElement : element.elements(XML_KEY)) {
+            Attribute nameAttr = keyElement.attribute(XML_ATTRIBUTE_NAME);
+            Attribute typeAttr = keyElement.attribute(XML_ATTRIBUTE_TYPE);
+            if (nameAttr == null || typeAttr == null) {
+                throw new IllegalStateException(String.format("黑板键 %s 未配置name或type属性", keyElement.getUniquePath()));
+            }
+            BlackboardKey key = schema.addKey(nameAttr.getValue(), BlackboardKey.parseType(typeAttr.getValue()));
+            Attribute valueAttr = keyElement.attribute(XML_ATTRIBUTE_VALUE);
+            if (valueAttr != null && !StringUtil.isEmpty(valueAttr.getValue())) {
+                schema.setDefaultValue(key, valueAttr.getValue());
+            }
+        }
+        return schema;
+    }
+
     /**
      * 递归添加行为树子节点 <br>
      *
      * @param element xml配置节点
      * @param task    父任务
+     * @param schema  黑板结构
      */
     @SuppressWarnings("unchecked")
-    private void addTask(Element element, Task<Object> task) {
+    private void addTask(Element element, Task<Object> task, BlackboardSchema schema) {
         Iterator<Element> iterator = element.elementIterator();
         while (iterator.hasNext()) {
             Element secondElement = iterator.next();
-            Task<Object> secondTask = createTask(secondElement);
+            if (secondElement.getName().equals(XML_CONSIDERATION)) {
+                // 由效用选择节点解析
+                continue;
+            }
+            Task<Object> secondTask = createTask(secondElement, schema);
             if (secondElement.getName().equalsIgnoreCase(XML_GUARD)) {
                 task.setGuard(secondTask);
             } else {
-                task.addChild(secondTask);
+                int index = task.addChild(secondTask);
+                if (task instanceof UtilitySelector) {
+                    for (Element considerationElement : secondElement.elements(XML_CONSIDERATION)) {
+                        ((UtilitySelector<Object>) task).addConsideration(index, createConsideration(considerationElement));
+                    }
+                }
             }
             if (secondElement.hasContent()) {
-                addTask(secondElement, secondTask);
+                addTask(secondElement, secondTask, schema);
             }
         }
     }
 
+    /**
+     * 创建考虑因素 <br>
+     * &lt;Consideration key="hp" min="0" max="100" curve="Logistic" slope="10" exponent="1" xShift="0.5" yShift="0"/&gt;
+     *
+     * @param element
+     * @return
+     */
+    static UtilitySelector.Consideration createConsideration(Element element) {
+        String key = element.attributeValue(XML_ATTRIBUTE_KEY);
+        if (key == null || key.isEmpty()) {
+            throw new IllegalStateException(String.format("考虑因素 %s 未配置key属性", element.getUniquePath()));
+        }
+        String curve = element.attributeValue(XML_ATTRIBUTE_CURVE);
+        return new UtilitySelector.Consideration(key,
+                curve == null || curve.isEmpty() ? UtilitySelector.Curve.Linear : UtilitySelector.Curve.parse(curve),
+                floatAttribute(element, XML_ATTRIBUTE_MIN, 0), floatAttribute(element, XML_ATTRIBUTE_MAX, 1),
+                floatAttribute(element, XML_ATTRIBUTE_SLOPE, 1), floatAttribute(element, XML_ATTRIBUTE_EXPONENT, 1),
+                floatAttribute(element, XML_ATTRIBUTE_X_SHIFT, 0), floatAttribute(element, XML_ATTRIBUTE_Y_SHIFT, 0));
+    }
+
+    private static float floatAttribute(Element element, String name, float defaultValue) {
+        String value = element.attributeValue(name);
+        return value == null || value.isEmpty() ? defaultValue : Float.parseFloat(value);
+    }
+
     /**
      * 创建行为树节点
      *
      * @param element
+     * @param schema  黑板结构
      * @return
      */
-    private Task<Object> createTask(Element element) {
+    private Task<Object> createTask(Element element, BlackboardSchema schema) {
         if (element == null) {
             throw new RuntimeException("传入行为数节点为空");
         }
@@ -195,10 +400,32 @@ public class BehaviorTreeManager {
                         && Parallel.Orchestrator.Join.name().equalsIgnoreCase(orchestratorAttr.getValue())) {
                     orchestrator = Parallel.Orchestrator.Join;
                 }
-                task = new Parallel<>(policy, orchestrator);
+                Attribute concurrentAttr = element.attribute(XML_ATTRIBUTE_CONCURRENT);
+                if (concurrentAttr != null && Boolean.parseBoolean(concurrentAttr.getValue())) {
+                    ConcurrentParallel<Object> concurrentParallel = new ConcurrentParallel<>(policy, orchestrator);
+                    Attribute waitAttr = element.attribute(XML_ATTRIBUTE_WAIT);
+                    if (waitAttr != null && !StringUtil.isEmpty(waitAttr.getValue())) {
+                        concurrentParallel.setWaitMillis(Long.parseLong(waitAttr.getValue()));
+                    }
+                    task = concurrentParallel;
+                } else {
+                    task = new Parallel<>(policy, orchestrator);
+                }
+                break;
+            case XML_UTILITY_SELECTOR:
+                UtilitySelector<Object> utilitySelector = new UtilitySelector<>();
+                Attribute topKAttr = element.attribute(XML_ATTRIBUTE_TOP_K);
+                if (topKAttr != null && !StringUtil.isEmpty(topKAttr.getValue())) {
+                    utilitySelector.setTopK(Integer.parseInt(topKAttr.getValue()));
+                }
+                Attribute thresholdAttr = element.attribute(XML_ATTRIBUTE_THRESHOLD);
+                if (thresholdAttr != null && !StringUtil.isEmpty(thresholdAttr.getValue())) {
+                    utilitySelector.setThreshold(Float.parseFloat(thresholdAttr.getValue()));
+                }
+                task = utilitySelector;
                 break;
             case XML_LEAF:
-                task = createLeafTask(element);
+                task = createLeafTask(element, schema);
                 break;
             case XML_GUARD:
                 // note 防御暂时默认设置为顺序执行节点，依次检测
@@ -241,6 +468,7 @@ public class BehaviorTreeManager {
                     success = Float.parseFloat(successAttr.getValue());
                 }
                 task = new Random<>(success);
+                break;
             default:
                 throw new IllegalStateException(String.format("节点 %s 名称非法", element.getName()));
         }
@@ -259,13 +487,16 @@ public class BehaviorTreeManager {
     }
 
     /**
-     * 创建叶子任务
+     * 创建叶子任务 <br>
+     * 叶子类通过{@link LeafTaskFactory}缓存构造函数和属性setter，属性值解析时转换为对应类型；
+     * {@link BlackboardKey}类型的属性配置黑板键名，解析时转换为键
      *
      * @param element
+     * @param schema  黑板结构
      * @return
      */
     @SuppressWarnings({"unchecked",})
-    private LeafTask<Object> createLeafTask(Element element) {
+    private LeafTask<Object> createLeafTask(Element element, BlackboardSchema schema) {
         Attribute leafAttr = element.attribute(XML_ATTRIBUTE_CLASS);
         if (leafAttr == null) {
             throw new IllegalStateException(
@@ -273,23 +504,22 @@ public class BehaviorTreeManager {
         }
         String classStr = leafAttr.getValue();
         LeafTask<Object> leafTask = null;
-        Class<?> leafTaskClass = null;
         try {
-            leafTaskClass = Class.forName(classStr);
-            leafTask = (LeafTask<Object>) leafTaskClass.newInstance();
+            LeafTaskFactory factory = LeafTaskFactory.get(classStr);
 
             // 设置属性
             if (element.attributeCount() < 2) { // 没有设置属性参数
-                return leafTask;
+                return factory.newInstance();
             }
-            Map<String, Method> writeMethods = ClassUtil.getWriteMethod(leafTaskClass);
-            Map<String, String> attrMap = new HashMap<>();
-            for (Attribute attribute : (List<Attribute>) element.attributes()) {
+            List<LeafTaskFactory.Property> properties = new ArrayList<>();
+            List<Object> values = new ArrayList<>();
+            for (Attribute attribute : element.attributes()) {
                 String name = attribute.getName();
-                if (name.equalsIgnoreCase(XML_ATTRIBUTE_CLASS)) {
+                if (name.equalsIgnoreCase(XML_ATTRIBUTE_CLASS) || name.equals(XML_ATTRIBUTE_NAME)) {
                     continue;
                 }
-                if (!writeMethods.containsKey(name)) {
+                LeafTaskFactory.Property property = factory.getProperty(name);
+                if (property == null) {
                     LOGGER.warn("配置错误：{}AI 节点{} 属性{} 不存在", element.getDocument().getPath(), classStr, name);
                     continue;
                 }
@@ -297,35 +527,10 @@ public class BehaviorTreeManager {
                     LOGGER.warn("配置错误：{}AI 节点{} 属性{} 为空", element.getDocument().getPath(), classStr, name);
                     continue;
                 }
-
-                attrMap.put(name, attribute.getValue());
-            }
-
-            for (Map.Entry<String, Method> entry : writeMethods.entrySet()) {
-                if (!attrMap.containsKey(entry.getKey())) {
-                    continue;
-                }
-                Method method = entry.getValue();
-                Field field = leafTaskClass.getDeclaredField(entry.getKey());
-                if (field.getType().isAssignableFrom(int.class)) {
-                    method.invoke(leafTask, Integer.parseInt(attrMap.get(entry.getKey())));
-                } else if (field.getType().isAssignableFrom(float.class)) {
-                    method.invoke(leafTask, Float.parseFloat(attrMap.get(entry.getKey())));
-                } else if (field.getType().isAssignableFrom(double.class)) {
-                    method.invoke(leafTask, Double.parseDouble(attrMap.get(entry.getKey())));
-                } else if (field.getType().isAssignableFrom(long.class)) {
-                    method.invoke(leafTask, Long.parseLong(attrMap.get(entry.getKey())));
-                } else if (field.getType().isAssignableFrom(short.class)) {
-                    method.invoke(leafTask, Short.parseShort(attrMap.get(entry.getKey())));
-                } else if (field.getType().isAssignableFrom(boolean.class)) {
-                    method.invoke(leafTask, Boolean.parseBoolean(attrMap.get(entry.getKey())));
-                } else if (field.getType().isAssignableFrom(Vector3.class)) {
-                    method.invoke(leafTask, JSON.parseObject(attrMap.get(entry.getKey()), Vector3.class));
-                } else {
-                    method.invoke(leafTask, attrMap.get(entry.getKey()));
-                }
-
+                properties.add(property);
+                values.add(property.convert(attribute.getValue(), schema));
             }
+            leafTask = factory.config(properties, values).create();
         } catch (Exception e) {
             LOGGER.error(String.format("%s 创建叶子节点", element.getDocument().getPath()), e);
         }
@@ -346,11 +551,67 @@ public class BehaviorTreeManager {
             return null;
         }
         try {
-            return (BehaviorTree<Object>) ByteUtil.deepCopy(behaviorTree);
+            BehaviorTree<Object> tree = (BehaviorTree<Object>) ByteUtil.deepCopy(behaviorTree);
+            BehaviorTreeProfiler profiler = this.profiler;
+            if (profiler != null && tree != null) {
+                profiler.attach(tree, id);
+            }
+            return tree;
         } catch (Exception e) {
             LOGGER.error("克隆行为树", e);
         }
         return null;
     }
 
+    public BehaviorTreeProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * 设置性能统计，之后克隆的行为树和获取的行为树模板按配置id统计
+     *
+     * @param profiler 为null不统计
+     */
+    public void setProfiler(BehaviorTreeProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * 获取行为树模板，通过{@link BehaviorTreeTemplate#newInstance(Object)}创建对象的行为树实例，
+     * 比{@link #cloneBehaviorTree(String)}占用内存少
+     *
+     * @param id 唯一标识
+     * @return 不存在或包含模板不支持的节点返回null
+     */
+    @SuppressWarnings("unchecked")
+    public <E> BehaviorTreeTemplate<E> getBehaviorTreeTemplate(String id) {
+        BehaviorTreeTemplate<E> template = (BehaviorTreeTemplate<E>) behaviorTreeTemplates.get(id);
+        BehaviorTreeProfiler profiler = this.profiler;
+        if (profiler != null && template != null) {
+            profiler.attach(template, id);
+        }
+        return template;
+    }
+
+    /**
+     * 为高频使用的行为树模板生成执行类，模板实例之后按生成的代码执行，需运行在JDK上
+     *
+     * @param id 唯一标识
+     * @return 模板不存在或生成失败返回false，继续解释执行
+     */
+    public boolean compileBehaviorTreeTemplate(String id) {
+        BehaviorTreeTemplate<Object> template = getBehaviorTreeTemplate(id);
+        if (template == null) {
+            LOGGER.warn("行为树模板 {} 不存在", id);
+            return false;
+        }
+        try {
+            template.setCompiled(BehaviorTreeCodeGenerator.compile(template));
+            return true;
+        } catch (Exception e) {
+            LOGGER.error(String.format("行为树 %s 生成执行类", id), e);
+            return false;
+        }
+    }
+
 }
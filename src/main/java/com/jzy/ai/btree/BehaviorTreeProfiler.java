@@ -0,0 +1,588 @@
+package com.jzy.ai.btree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.jzy.ai.btree.Task.Status;
+import com.jzy.ai.util.LatencyHistogram;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 行为树性能统计
+ * <p>
+ * {@link #attach(BehaviorTree, String)}后统计每个节点的执行次数、运行中/成功/失败/取消次数、叶子{@link LeafTask#execute()}耗时，
+ * 以及每次{@link BehaviorTree#step()}的耗时分布。同名行为树的数据合并统计，节点按在树中的路径区分。<br>
+ * {@link #attach(BehaviorTreeTemplate, String)}统计模板的所有{@link BehaviorTreeInstance}，解释执行和{@link CompiledBehaviorTree}
+ * 生成的执行类都记录，节点路径和同名行为树相同，数据合并<br>
+ * 不同于{@link BehaviorTree.Listener}，统计直接记录在节点引用的计数器上，没有监听器列表遍历和虚方法回调；
+ * 未attach的行为树只多一次空判断，{@link #setEnabled(boolean)}可随时关闭统计<br>
+ * 开启{@link #setJfrEnabled(boolean)}后同时提交JFR事件（com.jzy.ai.btree.Step、com.jzy.ai.btree.LeafExecute），
+ * 可在JFR配置中设置阈值只记录慢的执行
+ * </p>
+ * 线程安全，行为树需在所属线程attach和detach，模板可在任意线程attach和detach
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class BehaviorTreeProfiler {
+	/** 是否统计 */
+	private volatile boolean enabled = true;
+	/** 是否提交JFR事件 */
+	private volatile boolean jfrEnabled;
+	/** 行为树名称-统计 */
+	private final Map<String, TreeMetrics> trees = new ConcurrentHashMap<>();
+
+	/**
+	 * 统计行为树，之后添加的节点不统计，需重新attach
+	 *
+	 * @param tree
+	 * @param treeName 同名行为树合并统计，一般为行为树配置id
+	 */
+	public <E> void attach(BehaviorTree<E> tree, String treeName) {
+		TreeMetrics metrics = trees.computeIfAbsent(treeName, name -> new TreeMetrics(this, name));
+		tree.treeMetrics = metrics;
+		if (tree.getChildCount() > 0) {
+			attach(metrics, tree.getChild(0), null, "", 0);
+		}
+	}
+
+	private static <E> void attach(TreeMetrics metrics, Task<E> task, NodeMetrics parent, String parentPath,
+			int index) {
+		String path = parentPath + (parent == null ? "" : "/") + index + ":" + label(task);
+		NodeMetrics node = metrics.node(task.getClass(), path, parent);
+		task.metrics = node;
+		if (task.guard != null) {
+			attachGuard(metrics, task.guard, node, path);
+		}
+		for (int i = 0, n = task.getChildCount(); i < n; i++) {
+			attach(metrics, task.getChild(i), node, path, i);
+		}
+	}
+
+	private static <E> void attachGuard(TreeMetrics metrics, Task<E> guard, NodeMetrics guarded, String guardedPath) {
+		String path = guardedPath + "#guard:" + label(guard);
+		NodeMetrics node = metrics.node(guard.getClass(), path, guarded);
+		guard.metrics = node;
+		if (guard.guard != null) {
+			attachGuard(metrics, guard.guard, node, path);
+		}
+		for (int i = 0, n = guard.getChildCount(); i < n; i++) {
+			attach(metrics, guard.getChild(i), node, path, i);
+		}
+	}
+
+	/**
+	 * 统计行为树模板的所有实例，之后创建的实例也统计。已attach到同名统计时不重复处理
+	 *
+	 * @param template
+	 * @param treeName 同名行为树合并统计，一般为行为树配置id
+	 */
+	public <E> void attach(BehaviorTreeTemplate<E> template, String treeName) {
+		TreeMetrics metrics = trees.computeIfAbsent(treeName, name -> new TreeMetrics(this, name));
+		NodeMetrics[] nodes = template.nodeMetrics;
+		if (nodes != null && nodes[0].tree == metrics) {
+			return;
+		}
+		nodes = new NodeMetrics[template.getNodeCount()];
+		attach(metrics, template, nodes, 0, "0:" + label(template, 0), null);
+		template.nodeMetrics = nodes;
+	}
+
+	private static void attach(TreeMetrics metrics, BehaviorTreeTemplate<?> template, NodeMetrics[] nodes, int node,
+			String path, NodeMetrics parent) {
+		NodeMetrics metric = metrics.node(template.getTaskClass(node), path, parent);
+		nodes[node] = metric;
+		int guard = template.getGuard(node);
+		if (guard >= 0) {
+			attach(metrics, template, nodes, guard, path + "#guard:" + label(template, guard), metric);
+		}
+		for (int i = 0, n = template.getChildCount(node); i < n; i++) {
+			int child = template.getChild(node, i);
+			attach(metrics, template, nodes, child, path + "/" + i + ":" + label(template, child), metric);
+		}
+	}
+
+	private static String label(Task<?> task) {
+		return label(task.getName(), task.getClass());
+	}
+
+	private static String label(BehaviorTreeTemplate<?> template, int node) {
+		return label(template.getNodeName(node), template.getTaskClass(node));
+	}
+
+	private static String label(String taskName, Class<?> taskClass) {
+		if (taskName != null) {
+			return taskName;
+		}
+		String name = taskClass.getSimpleName();
+		return name.isEmpty() ? taskClass.getName() : name;
+	}
+
+	/**
+	 * 停止统计行为树，已统计的数据保留
+	 *
+	 * @param tree
+	 */
+	public static <E> void detach(BehaviorTree<E> tree) {
+		tree.treeMetrics = null;
+		if (tree.getChildCount() > 0) {
+			detach(tree.getChild(0));
+		}
+	}
+
+	/**
+	 * 停止统计行为树模板，正在执行的实例本次step仍记录
+	 *
+	 * @param template
+	 */
+	public static <E> void detach(BehaviorTreeTemplate<E> template) {
+		template.nodeMetrics = null;
+	}
+
+	private static <E> void detach(Task<E> task) {
+		task.metrics = null;
+		if (task.guard != null) {
+			detach(task.guard);
+		}
+		for (int i = 0, n = task.getChildCount(); i < n; i++) {
+			detach(task.getChild(i));
+		}
+	}
+
+	/**
+	 * 所有行为树的统计快照
+	 *
+	 * @return 按名称排序
+	 */
+	public List<TreeSnapshot> snapshot() {
+		List<TreeSnapshot> snapshots = new ArrayList<>(trees.size());
+		for (TreeMetrics metrics : trees.values()) {
+			snapshots.add(metrics.snapshot());
+		}
+		snapshots.sort(Comparator.comparing(snapshot -> snapshot.name));
+		return snapshots;
+	}
+
+	/**
+	 * 行为树的统计快照
+	 *
+	 * @param treeName
+	 * @return 未统计返回null
+	 */
+	public TreeSnapshot snapshot(String treeName) {
+		TreeMetrics metrics = trees.get(treeName);
+		return metrics == null ? null : metrics.snapshot();
+	}
+
+	/**
+	 * 清空已统计的数据，attach的行为树继续统计
+	 */
+	public void reset() {
+		for (TreeMetrics metrics : trees.values()) {
+			metrics.reset();
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * 开启或关闭统计，运行时可切换
+	 *
+	 * @param enabled
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public boolean isJfrEnabled() {
+		return jfrEnabled;
+	}
+
+	/**
+	 * 开启或关闭JFR事件，统计关闭时也不提交
+	 *
+	 * @param jfrEnabled
+	 */
+	public void setJfrEnabled(boolean jfrEnabled) {
+		this.jfrEnabled = jfrEnabled;
+	}
+
+	/**
+	 * 行为树统计，同名行为树共享
+	 */
+	public static final class TreeMetrics {
+		private final BehaviorTreeProfiler profiler;
+		private final String name;
+		/** step耗时，纳秒 */
+		private final LatencyHistogram stepNanos = new LatencyHistogram();
+		/** 路径-节点统计 */
+		private final Map<String, NodeMetrics> nodes = new ConcurrentHashMap<>();
+		private final AtomicInteger nodeOrder = new AtomicInteger();
+
+		private TreeMetrics(BehaviorTreeProfiler profiler, String name) {
+			this.profiler = profiler;
+			this.name = name;
+		}
+
+		private NodeMetrics node(Class<?> taskClass, String path, NodeMetrics parent) {
+			return nodes.computeIfAbsent(path,
+					p -> new NodeMetrics(this, p, taskClass.getName(), parent, nodeOrder.getAndIncrement()));
+		}
+
+		boolean isEnabled() {
+			return profiler.enabled;
+		}
+
+		/**
+		 * 统计执行一次行为树
+		 *
+		 * @param tree
+		 */
+		void step(BehaviorTree<?> tree) {
+			StepEvent event = beginStep();
+			long start = System.nanoTime();
+			try {
+				tree.stepTree();
+			} finally {
+				endStep(event, start, tree.getStatus());
+			}
+		}
+
+		/**
+		 * 统计执行一次模板实例，执行期间实例持有节点统计
+		 *
+		 * @param template
+		 * @param instance
+		 * @param nodes    模板节点统计，按节点编号
+		 */
+		<E> void step(BehaviorTreeTemplate<E> template, BehaviorTreeInstance<E> instance, NodeMetrics[] nodes) {
+			StepEvent event = beginStep();
+			long start = System.nanoTime();
+			instance.metrics = nodes;
+			try {
+				template.stepTree(instance);
+			} finally {
+				instance.metrics = null;
+				endStep(event, start, instance.getStatus());
+			}
+		}
+
+		private StepEvent beginStep() {
+			if (!profiler.jfrEnabled) {
+				return null;
+			}
+			StepEvent event = new StepEvent();
+			event.begin();
+			return event;
+		}
+
+		private void endStep(StepEvent event, long start, Status status) {
+			stepNanos.record(System.nanoTime() - start);
+			if (event != null) {
+				event.end();
+				if (event.shouldCommit()) {
+					event.tree = name;
+					event.status = String.valueOf(status);
+					event.commit();
+				}
+			}
+		}
+
+		private TreeSnapshot snapshot() {
+			List<NodeMetrics> metrics = new ArrayList<>(nodes.values());
+			metrics.sort(Comparator.comparingInt(node -> node.order));
+			Map<NodeMetrics, long[]> totals = new HashMap<>();
+			for (NodeMetrics node : metrics) {
+				long self = node.nanos.sum();
+				for (NodeMetrics parent = node; parent != null; parent = parent.parent) {
+					totals.computeIfAbsent(parent, p -> new long[1])[0] += self;
+				}
+			}
+			List<NodeSnapshot> snapshots = new ArrayList<>(metrics.size());
+			for (NodeMetrics node : metrics) {
+				long[] total = totals.get(node);
+				snapshots.add(new NodeSnapshot(node, total == null ? 0 : total[0]));
+			}
+			return new TreeSnapshot(name, stepNanos.copy(), snapshots);
+		}
+
+		private void reset() {
+			stepNanos.reset();
+			for (NodeMetrics node : nodes.values()) {
+				node.reset();
+			}
+		}
+	}
+
+	/**
+	 * 节点统计，同名行为树相同路径的节点共享
+	 */
+	public static final class NodeMetrics {
+		private final TreeMetrics tree;
+		private final String path;
+		private final String type;
+		/** 父节点，防护条件的父节点为被防护的节点 */
+		private final NodeMetrics parent;
+		/** 在树中的顺序 */
+		private final int order;
+		private final LongAdder running = new LongAdder();
+		private final LongAdder succeeded = new LongAdder();
+		private final LongAdder failed = new LongAdder();
+		private final LongAdder cancelled = new LongAdder();
+		/** 叶子执行耗时，纳秒 */
+		private final LongAdder nanos = new LongAdder();
+
+		private NodeMetrics(TreeMetrics tree, String path, String type, NodeMetrics parent, int order) {
+			this.tree = tree;
+			this.path = path;
+			this.type = type;
+			this.parent = parent;
+			this.order = order;
+		}
+
+		boolean isEnabled() {
+			return tree.profiler.enabled;
+		}
+
+		TreeMetrics getTree() {
+			return tree;
+		}
+
+		/**
+		 * 节点状态变化
+		 *
+		 * @param status
+		 */
+		void statusUpdated(Status status) {
+			if (!tree.profiler.enabled) {
+				return;
+			}
+			switch (status) {
+			case RUNNING:
+				running.increment();
+				break;
+			case SUCCEEDED:
+				succeeded.increment();
+				break;
+			case FAILED:
+				failed.increment();
+				break;
+			case CANCELLED:
+				cancelled.increment();
+				break;
+			default:
+				break;
+			}
+		}
+
+		/**
+		 * 统计执行一次叶子
+		 *
+		 * @param leafTask
+		 * @return {@link LeafTask#execute()}的结果
+		 */
+		<E> Status execute(LeafTask<E> leafTask) {
+			LeafEvent event = beginLeaf();
+			long start = System.nanoTime();
+			Status result = null;
+			try {
+				result = leafTask.execute();
+				return result;
+			} finally {
+				endLeaf(event, start, result);
+			}
+		}
+
+		/**
+		 * 统计执行一次模板共享叶子
+		 *
+		 * @param leaf
+		 * @param instance
+		 * @param offset   叶子槽位起始下标
+		 * @return {@link SharedLeaf#execute(BehaviorTreeInstance, int)}的结果
+		 */
+		<E> Status execute(SharedLeaf<E> leaf, BehaviorTreeInstance<E> instance, int offset) {
+			LeafEvent event = beginLeaf();
+			long start = System.nanoTime();
+			Status result = null;
+			try {
+				result = leaf.execute(instance, offset);
+				return result;
+			} finally {
+				endLeaf(event, start, result);
+			}
+		}
+
+		private LeafEvent beginLeaf() {
+			if (!tree.profiler.jfrEnabled) {
+				return null;
+			}
+			LeafEvent event = new LeafEvent();
+			event.begin();
+			return event;
+		}
+
+		private void endLeaf(LeafEvent event, long start, Status result) {
+			nanos.add(System.nanoTime() - start);
+			if (event != null) {
+				event.end();
+				if (event.shouldCommit()) {
+					event.tree = tree.name;
+					event.node = path;
+					event.status = String.valueOf(result);
+					event.commit();
+				}
+			}
+		}
+
+		private void reset() {
+			running.reset();
+			succeeded.reset();
+			failed.reset();
+			cancelled.reset();
+			nanos.reset();
+		}
+	}
+
+	/**
+	 * 行为树统计快照
+	 */
+	public static final class TreeSnapshot {
+		/** 行为树名称 */
+		public final String name;
+		/** step耗时分布，纳秒 */
+		public final LatencyHistogram stepNanos;
+		/** 节点快照，按树中的顺序 */
+		public final List<NodeSnapshot> nodes;
+
+		private TreeSnapshot(String name, LatencyHistogram stepNanos, List<NodeSnapshot> nodes) {
+			this.name = name;
+			this.stepNanos = stepNanos;
+			this.nodes = Collections.unmodifiableList(nodes);
+		}
+
+		/**
+		 * 叶子执行耗时最多的节点
+		 *
+		 * @param limit 最多个数
+		 * @return 按{@link NodeSnapshot#selfNanos}降序
+		 */
+		public List<NodeSnapshot> getHotNodes(int limit) {
+			List<NodeSnapshot> hotNodes = new ArrayList<>(nodes);
+			hotNodes.removeIf(node -> node.selfNanos == 0);
+			hotNodes.sort(Comparator.comparingLong((NodeSnapshot node) -> node.selfNanos).reversed());
+			return hotNodes.size() > limit ? hotNodes.subList(0, limit) : hotNodes;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("BehaviorTree ").append(name).append(" step(ns) ").append(stepNanos).append('\n');
+			sb.append(String.format("%-60s %10s %12s %12s %8s %8s %8s %8s%n", "node", "ticks", "self(ns)", "total(ns)",
+					"success", "fail", "running", "cancel"));
+			for (NodeSnapshot node : nodes) {
+				sb.append(String.format("%-60s %10d %12d %12d %7.1f%% %7.1f%% %7.1f%% %8d%n", node.path, node.ticks,
+						node.selfNanos, node.totalNanos, node.getSuccessRatio() * 100, node.getFailRatio() * 100,
+						node.getRunningRatio() * 100, node.cancelled));
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * 节点统计快照
+	 */
+	public static final class NodeSnapshot {
+		/** 在树中的路径，序号:名称，防护条件为#guard:名称 */
+		public final String path;
+		/** 节点类名 */
+		public final String type;
+		/** 执行次数，运行中、成功、失败次数之和 */
+		public final long ticks;
+		public final long running;
+		public final long succeeded;
+		public final long failed;
+		public final long cancelled;
+		/** 叶子自身执行耗时，纳秒 */
+		public final long selfNanos;
+		/** 包括子孙节点和防护条件的叶子执行耗时，纳秒 */
+		public final long totalNanos;
+
+		private NodeSnapshot(NodeMetrics metrics, long totalNanos) {
+			this.path = metrics.path;
+			this.type = metrics.type;
+			this.running = metrics.running.sum();
+			this.succeeded = metrics.succeeded.sum();
+			this.failed = metrics.failed.sum();
+			this.cancelled = metrics.cancelled.sum();
+			this.ticks = running + succeeded + failed;
+			this.selfNanos = metrics.nanos.sum();
+			this.totalNanos = totalNanos;
+		}
+
+		public double getSuccessRatio() {
+			return ticks == 0 ? 0 : (double) succeeded / ticks;
+		}
+
+		public double getFailRatio() {
+			return ticks == 0 ? 0 : (double) failed / ticks;
+		}
+
+		public double getRunningRatio() {
+			return ticks == 0 ? 0 : (double) running / ticks;
+		}
+
+		/**
+		 * 平均每次执行的叶子耗时
+		 *
+		 * @return 纳秒
+		 */
+		public double getMeanNanos() {
+			return ticks == 0 ? 0 : (double) selfNanos / ticks;
+		}
+	}
+
+	/**
+	 * 行为树执行一次的JFR事件
+	 */
+	@Name("com.jzy.ai.btree.Step")
+	@Label("Behavior Tree Step")
+	@Category({ "GameAI", "Behavior Tree" })
+	@StackTrace(false)
+	static class StepEvent extends Event {
+		@Label("Tree")
+		String tree;
+		@Label("Status")
+		String status;
+	}
+
+	/**
+	 * 叶子执行一次的JFR事件
+	 */
+	@Name("com.jzy.ai.btree.LeafExecute")
+	@Label("Behavior Tree Leaf Execute")
+	@Category({ "GameAI", "Behavior Tree" })
+	@StackTrace(false)
+	static class LeafEvent extends Event {
+		@Label("Tree")
+		String tree;
+		@Label("Node")
+		String node;
+		@Label("Status")
+		String status;
+	}
+}
@@ -0,0 +1,991 @@
+package com.jzy.ai.btree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.jzy.ai.btree.Task.Status;
+import com.jzy.ai.btree.branch.Parallel;
+import com.jzy.ai.btree.branch.RandomSelector;
+import com.jzy.ai.btree.branch.RandomSequence;
+import com.jzy.ai.btree.branch.Selector;
+import com.jzy.ai.btree.branch.Sequence;
+import com.jzy.ai.btree.decorator.AlwaysFail;
+import com.jzy.ai.btree.decorator.AlwaysSucceed;
+import com.jzy.ai.btree.decorator.Invert;
+import com.jzy.ai.btree.decorator.Random;
+import com.jzy.ai.btree.decorator.Repeat;
+import com.jzy.ai.btree.decorator.SemaphoreGuard;
+import com.jzy.ai.btree.decorator.UntilFail;
+import com.jzy.ai.btree.decorator.UntilSuccess;
+import com.jzy.ai.btree.leaf.Failure;
+import com.jzy.ai.btree.leaf.Success;
+import com.jzy.ai.util.NonBlockingSemaphore;
+import com.jzy.ai.util.NonBlockingSemaphoreRepository;
+import com.jzy.javalib.base.util.ByteUtil;
+import com.jzy.javalib.base.util.MathUtil;
+
+/**
+ * 行为树模板，享元模式
+ * <p>
+ * 1、行为树结构只解析一次，按前序编号保存在不可变的节点表中（节点类型、孩子、防护条件、配置参数），根节点编号为0<br>
+ * 2、单个对象的运行数据保存在{@link BehaviorTreeInstance}的状态数组和int槽位中，模板解释执行，所有对象共享一份结构<br>
+ * 3、叶子节点实现{@link SharedLeaf}时所有实例共享；其他{@link LeafTask}作为适配，按实例延迟创建：xml配置的叶子按解析时的{@link LeafTaskFactory.Config}创建，
+ * 代码创建的叶子序列化复制，执行逻辑和原来一致<br>
+ * 4、热点行为树可通过{@link BehaviorTreeCodeGenerator}生成执行类{@link CompiledBehaviorTree}，设置后实例按生成的代码执行<br>
+ * </p>
+ * 执行语义和{@link BehaviorTree#step()}相同，不支持{@link BehaviorTree.Listener}，可通过{@link BehaviorTreeProfiler}统计。
+ * 模板创建后线程安全，实例非线程安全
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ * @param <E> 黑板对象
+ */
+public class BehaviorTreeTemplate<E> {
+	/** 节点类型 */
+	public static final byte TYPE_SELECTOR = 0;
+	public static final byte TYPE_SEQUENCE = 1;
+	public static final byte TYPE_RANDOM_SELECTOR = 2;
+	public static final byte TYPE_RANDOM_SEQUENCE = 3;
+	public static final byte TYPE_PARALLEL = 4;
+	public static final byte TYPE_ALWAYS_FAIL = 5;
+	public static final byte TYPE_ALWAYS_SUCCEED = 6;
+	public static final byte TYPE_INVERT = 7;
+	public static final byte TYPE_REPEAT = 8;
+	public static final byte TYPE_UNTIL_FAIL = 9;
+	public static final byte TYPE_UNTIL_SUCCESS = 10;
+	public static final byte TYPE_RANDOM = 11;
+	public static final byte TYPE_SEMAPHORE_GUARD = 12;
+	public static final byte TYPE_SUCCESS = 13;
+	public static final byte TYPE_FAILURE = 14;
+	public static final byte TYPE_SHARED_LEAF = 15;
+	public static final byte TYPE_TASK_LEAF = 16;
+
+	/** 并行节点参数，选择策略 */
+	public static final int PARALLEL_SELECTOR = 1;
+	/** 并行节点参数，Join协调 */
+	public static final int PARALLEL_JOIN = 2;
+
+	static final byte FRESH = (byte) Status.FRESH.ordinal();
+	static final byte RUNNING = (byte) Status.RUNNING.ordinal();
+	static final byte FAILED = (byte) Status.FAILED.ordinal();
+	static final byte SUCCEEDED = (byte) Status.SUCCEEDED.ordinal();
+	static final byte CANCELLED = (byte) Status.CANCELLED.ordinal();
+	private static final Status[] STATUSES = Status.values();
+
+	private final String name;
+	/** 节点类型 */
+	private final byte[] types;
+	/** 孩子在{@link #children}中的起始下标 */
+	private final int[] childStarts;
+	private final int[] childCounts;
+	/** 所有节点的孩子编号 */
+	private final int[] children;
+	/** 防护条件根节点编号，-1没有 */
+	private final int[] guards;
+	/** 运行数据在实例槽位中的起始下标 */
+	private final int[] slotOffsets;
+	/** 整数参数：重复次数、并行策略、适配叶子序号 */
+	private final int[] params;
+	/** 浮点参数：随机成功概率 */
+	private final float[] floatParams;
+	/** 对象参数：信号量名称、叶子对象 */
+	private final Object[] objects;
+	/** 节点名称，调试识别 */
+	private final String[] names;
+	/** 节点原来的任务类型，统计使用 */
+	private final Class<?>[] taskClasses;
+	/** 实例槽位初始值 */
+	private final int[] initSlots;
+	/** 按实例复制的叶子个数 */
+	private final int taskLeafCount;
+	/** 黑板结构 */
+	private final BlackboardSchema blackboardSchema;
+	/** 结构哈希 */
+	private final long structureHash;
+	/** 生成的执行类，为null时解释执行 */
+	private volatile CompiledBehaviorTree<E> compiled;
+	/** 节点统计，按节点编号，为null时不统计 */
+	volatile BehaviorTreeProfiler.NodeMetrics[] nodeMetrics;
+
+	private BehaviorTreeTemplate(String name, BlackboardSchema blackboardSchema, Compiler<E> compiler) {
+		int count = compiler.count;
+		this.name = name;
+		this.blackboardSchema = blackboardSchema;
+		this.types = Arrays.copyOf(compiler.types, count);
+		this.childStarts = Arrays.copyOf(compiler.childStarts, count);
+		this.childCounts = Arrays.copyOf(compiler.childCounts, count);
+		this.guards = Arrays.copyOf(compiler.guards, count);
+		this.slotOffsets = Arrays.copyOf(compiler.slotOffsets, count);
+		this.params = Arrays.copyOf(compiler.params, count);
+		this.floatParams = Arrays.copyOf(compiler.floatParams, count);
+		this.objects = Arrays.copyOf(compiler.objects, count);
+		this.names = Arrays.copyOf(compiler.names, count);
+		this.taskClasses = Arrays.copyOf(compiler.taskClasses, count);
+		this.children = new int[compiler.children.size()];
+		for (int i = 0; i < children.length; i++) {
+			children[i] = compiler.children.get(i);
+		}
+		this.initSlots = new int[compiler.slotCount];
+		for (int node = 0; node < count; node++) {
+			// 随机分支的孩子顺序初始为配置顺序
+			if (types[node] == TYPE_RANDOM_SELECTOR || types[node] == TYPE_RANDOM_SEQUENCE) {
+				for (int i = 0; i < childCounts[node]; i++) {
+					initSlots[slotOffsets[node] + 1 + i] = i;
+				}
+			}
+		}
+		this.taskLeafCount = compiler.taskLeafCount;
+		this.structureHash = computeStructureHash();
+	}
+
+	/**
+	 * 结构哈希，FNV-1a，包含节点类型、孩子、防护条件、槽位、参数和叶子类型
+	 *
+	 * @return
+	 */
+	private long computeStructureHash() {
+		long hash = 0xcbf29ce484222325L;
+		for (int node = 0; node < types.length; node++) {
+			hash = hash(hash, types[node]);
+			hash = hash(hash, childCounts[node]);
+			for (int i = 0; i < childCounts[node]; i++) {
+				hash = hash(hash, children[childStarts[node] + i]);
+			}
+			hash = hash(hash, guards[node]);
+			hash = hash(hash, slotOffsets[node]);
+			hash = hash(hash, params[node]);
+			hash = hash(hash, Float.floatToIntBits(floatParams[node]));
+			Object object = objects[node];
+			if (object instanceof String) {
+				hash = hash(hash, object.hashCode());
+			} else if (object != null) {
+				hash = hash(hash, object.getClass().getName().hashCode());
+			}
+		}
+		return hash(hash, initSlots.length);
+	}
+
+	private static long hash(long hash, int value) {
+		for (int i = 0; i < 4; i++) {
+			hash ^= (value >>> (i * 8)) & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * 编译行为树为模板，传入的行为树不会被修改
+	 *
+	 * @param tree 行为树，如{@link BehaviorTreeManager}解析的行为树
+	 * @return
+	 * @throws IllegalArgumentException 存在不支持的节点类型
+	 */
+	public static <E> BehaviorTreeTemplate<E> compile(BehaviorTree<E> tree) {
+		if (tree.getChildCount() < 1) {
+			throw new IllegalArgumentException(String.format("行为树 %s 没有根节点", tree.getName()));
+		}
+		Compiler<E> compiler = new Compiler<>();
+		compiler.compile(tree.getChild(0));
+		Blackboard blackboard = tree.getBlackboard();
+		return new BehaviorTreeTemplate<>(tree.getName(), blackboard == null ? null : blackboard.getSchema(), compiler);
+	}
+
+	/**
+	 * 创建实例
+	 *
+	 * @param object 黑板对象
+	 * @return
+	 */
+	public BehaviorTreeInstance<E> newInstance(E object) {
+		return new BehaviorTreeInstance<>(this, object, initSlots);
+	}
+
+	/**
+	 * 执行一次，和{@link BehaviorTree#step()}相同
+	 *
+	 * @param instance
+	 */
+	void step(BehaviorTreeInstance<E> instance) {
+		BehaviorTreeProfiler.NodeMetrics[] metrics = this.nodeMetrics;
+		if (metrics != null && metrics[0].isEnabled()) {
+			metrics[0].getTree().step(this, instance, metrics);
+		} else {
+			stepTree(instance);
+		}
+	}
+
+	/**
+	 * 执行一次，生成的执行类或解释执行
+	 *
+	 * @param instance
+	 */
+	void stepTree(BehaviorTreeInstance<E> instance) {
+		CompiledBehaviorTree<E> compiled = this.compiled;
+		if (compiled != null) {
+			compiled.step(instance);
+		} else {
+			execute(instance, 0);
+		}
+	}
+
+	/**
+	 * 取消运行中的节点，状态重置
+	 *
+	 * @param instance
+	 */
+	void reset(BehaviorTreeInstance<E> instance) {
+		if (instance.statuses[0] == RUNNING) {
+			BehaviorTreeProfiler.NodeMetrics[] metrics = this.nodeMetrics;
+			if (metrics != null && metrics[0].isEnabled()) {
+				instance.metrics = metrics;
+			}
+			try {
+				cancel(instance, 0);
+			} finally {
+				instance.metrics = null;
+			}
+		}
+		Arrays.fill(instance.statuses, FRESH);
+	}
+
+	/**
+	 * 运行中的节点继续执行，否则重新进入
+	 *
+	 * @param instance
+	 * @param node
+	 * @return 执行结果
+	 */
+	private byte execute(BehaviorTreeInstance<E> instance, int node) {
+		if (instance.statuses[node] == RUNNING) {
+			return run(instance, node);
+		}
+		start(instance, node);
+		if (!checkGuard(instance, node)) {
+			return finish(instance, node, FAILED);
+		}
+		return run(instance, node);
+	}
+
+	/**
+	 * 检查防护条件，同{@link Task#checkGuard(Task)}
+	 *
+	 * @param instance
+	 * @param node
+	 * @return
+	 */
+	private boolean checkGuard(BehaviorTreeInstance<E> instance, int node) {
+		int guard = guards[node];
+		if (guard < 0) {
+			return true;
+		}
+		if (!checkGuard(instance, guard)) {
+			return false;
+		}
+		start(instance, guard);
+		byte result = run(instance, guard);
+		if (result == SUCCEEDED) {
+			return true;
+		} else if (result == FAILED) {
+			return false;
+		}
+		throw new IllegalStateException("Illegal guard status '" + instance.getStatus(guard)
+				+ "'. Guards must either succeed or fail in one step.");
+	}
+
+	/**
+	 * 进入节点
+	 *
+	 * @param instance
+	 * @param node
+	 */
+	@SuppressWarnings("unchecked")
+	void start(BehaviorTreeInstance<E> instance, int node) {
+		int offset = slotOffsets[node];
+		switch (types[node]) {
+		case TYPE_SELECTOR:
+		case TYPE_SEQUENCE:
+		case TYPE_RANDOM_SELECTOR:
+		case TYPE_RANDOM_SEQUENCE:
+			instance.slots[offset] = 0;
+			break;
+		case TYPE_PARALLEL:
+			// Join协调结束的孩子不再执行，被取消后重新进入时也需要重置
+			if ((params[node] & PARALLEL_JOIN) != 0) {
+				resetChildren(instance, node);
+			}
+			break;
+		case TYPE_REPEAT:
+			instance.slots[offset] = params[node];
+			break;
+		case TYPE_SEMAPHORE_GUARD:
+			NonBlockingSemaphore semaphore = NonBlockingSemaphoreRepository.getSemaphore((String) objects[node]);
+			instance.slots[offset] = semaphore.acquire() ? 1 : 0;
+			break;
+		case TYPE_SHARED_LEAF:
+			((SharedLeaf<E>) objects[node]).start(instance, offset);
+			break;
+		case TYPE_TASK_LEAF:
+			getLeafTask(instance, node).start();
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * 节点成功、失败或取消
+	 *
+	 * @param instance
+	 * @param node
+	 */
+	@SuppressWarnings("unchecked")
+	void end(BehaviorTreeInstance<E> instance, int node) {
+		int offset = slotOffsets[node];
+		switch (types[node]) {
+		case TYPE_SEMAPHORE_GUARD:
+			if (instance.slots[offset] != 0) {
+				NonBlockingSemaphoreRepository.getSemaphore((String) objects[node]).release();
+				instance.slots[offset] = 0;
+			}
+			break;
+		case TYPE_SHARED_LEAF:
+			((SharedLeaf<E>) objects[node]).end(instance, offset);
+			break;
+		case TYPE_TASK_LEAF:
+			getLeafTask(instance, node).end();
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * 执行节点逻辑，记录状态
+	 *
+	 * @param instance
+	 * @param node
+	 * @return
+	 */
+	private byte run(BehaviorTreeInstance<E> instance, int node) {
+		byte result;
+		switch (types[node]) {
+		case TYPE_SELECTOR:
+			result = runBranch(instance, node, false, SUCCEEDED);
+			break;
+		case TYPE_SEQUENCE:
+			result = runBranch(instance, node, false, FAILED);
+			break;
+		case TYPE_RANDOM_SELECTOR:
+			result = runBranch(instance, node, true, SUCCEEDED);
+			break;
+		case TYPE_RANDOM_SEQUENCE:
+			result = runBranch(instance, node, true, FAILED);
+			break;
+		case TYPE_PARALLEL:
+			result = runParallel(instance, node);
+			break;
+		case TYPE_ALWAYS_FAIL:
+			result = execute(instance, children[childStarts[node]]);
+			if (result != RUNNING) {
+				result = FAILED;
+			}
+			break;
+		case TYPE_ALWAYS_SUCCEED:
+			result = execute(instance, children[childStarts[node]]);
+			if (result != RUNNING) {
+				result = SUCCEEDED;
+			}
+			break;
+		case TYPE_INVERT:
+			result = execute(instance, children[childStarts[node]]);
+			if (result == SUCCEEDED) {
+				result = FAILED;
+			} else if (result == FAILED) {
+				result = SUCCEEDED;
+			}
+			break;
+		case TYPE_RANDOM:
+			result = childCounts[node] > 0 ? execute(instance, children[childStarts[node]]) : FAILED;
+			if (result != RUNNING) {
+				result = MathUtil.random() <= floatParams[node] ? SUCCEEDED : FAILED;
+			}
+			break;
+		case TYPE_REPEAT:
+			result = runRepeat(instance, node);
+			break;
+		case TYPE_UNTIL_FAIL:
+			do {
+				result = execute(instance, children[childStarts[node]]);
+			} while (result == SUCCEEDED);
+			if (result == FAILED) {
+				result = SUCCEEDED;
+			}
+			break;
+		case TYPE_UNTIL_SUCCESS:
+			do {
+				result = execute(instance, children[childStarts[node]]);
+			} while (result == FAILED);
+			break;
+		case TYPE_SEMAPHORE_GUARD:
+			result = instance.slots[slotOffsets[node]] != 0 ? execute(instance, children[childStarts[node]]) : FAILED;
+			break;
+		case TYPE_SUCCESS:
+			result = SUCCEEDED;
+			break;
+		case TYPE_FAILURE:
+			result = FAILED;
+			break;
+		case TYPE_SHARED_LEAF:
+			result = toStatus(instance.metrics == null ? runSharedLeaf(instance, node) : profileLeaf(instance, node));
+			break;
+		case TYPE_TASK_LEAF:
+			result = toStatus(
+					instance.metrics == null ? getLeafTask(instance, node).execute() : profileLeaf(instance, node));
+			break;
+		default:
+			throw new IllegalStateException("Invalid node type " + types[node]);
+		}
+		if (result == RUNNING) {
+			instance.statuses[node] = RUNNING;
+			statusUpdated(instance, node, RUNNING);
+			return RUNNING;
+		}
+		return finish(instance, node, result);
+	}
+
+	@SuppressWarnings("unchecked")
+	Status runSharedLeaf(BehaviorTreeInstance<E> instance, int node) {
+		return ((SharedLeaf<E>) objects[node]).execute(instance, slotOffsets[node]);
+	}
+
+	/**
+	 * 执行叶子并统计耗时，实例正在被{@link BehaviorTreeProfiler}统计时使用
+	 *
+	 * @param instance
+	 * @param node
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	Status profileLeaf(BehaviorTreeInstance<E> instance, int node) {
+		BehaviorTreeProfiler.NodeMetrics metrics = instance.metrics[node];
+		if (types[node] == TYPE_SHARED_LEAF) {
+			return metrics.execute((SharedLeaf<E>) objects[node], instance, slotOffsets[node]);
+		}
+		return metrics.execute(getLeafTask(instance, node));
+	}
+
+	/**
+	 * 统计节点状态变化，实例没有被统计时只有一次空判断
+	 *
+	 * @param instance
+	 * @param node
+	 * @param status
+	 */
+	static void statusUpdated(BehaviorTreeInstance<?> instance, int node, byte status) {
+		BehaviorTreeProfiler.NodeMetrics[] metrics = instance.metrics;
+		if (metrics != null) {
+			metrics[node].statusUpdated(STATUSES[status]);
+		}
+	}
+
+	/**
+	 * 选择和顺序节点，同{@link SingleRunningChildBranch#run()}
+	 *
+	 * @param instance
+	 * @param node
+	 * @param random   随机顺序
+	 * @param stop     子节点返回该结果时结束
+	 * @return
+	 */
+	private byte runBranch(BehaviorTreeInstance<E> instance, int node, boolean random, byte stop) {
+		int[] slots = instance.slots;
+		int offset = slotOffsets[node];
+		int start = childStarts[node];
+		int count = childCounts[node];
+		while (true) {
+			int cursor = slots[offset];
+			int child;
+			if (random) {
+				int index = offset + 1 + cursor;
+				child = children[start + slots[index]];
+				// 选择新的孩子时和后面的随机交换
+				if (instance.statuses[child] != RUNNING && cursor < count - 1) {
+					int other = offset + 1 + MathUtil.random(cursor, count - 1);
+					int tmp = slots[index];
+					slots[index] = slots[other];
+					slots[other] = tmp;
+					child = children[start + slots[index]];
+				}
+			} else {
+				child = children[start + cursor];
+			}
+			byte result = execute(instance, child);
+			if (result == RUNNING || result == stop) {
+				return result;
+			}
+			if (++slots[offset] >= count) {
+				return result;
+			}
+		}
+	}
+
+	/**
+	 * 并行节点，同{@link Parallel.Orchestrator}和{@link Parallel.Policy}
+	 *
+	 * @param instance
+	 * @param node
+	 * @return
+	 */
+	private byte runParallel(BehaviorTreeInstance<E> instance, int node) {
+		byte[] statuses = instance.statuses;
+		int start = childStarts[node];
+		int count = childCounts[node];
+		boolean selector = (params[node] & PARALLEL_SELECTOR) != 0;
+		boolean join = (params[node] & PARALLEL_JOIN) != 0;
+		boolean noRunningTasks = true;
+		for (int i = 0; i < count; i++) {
+			int child = children[start + i];
+			if (join && (statuses[child] == SUCCEEDED || statuses[child] == FAILED)) {
+				continue;
+			}
+			byte childResult = execute(instance, child);
+			byte result = RUNNING;
+			if (childResult == RUNNING) {
+				noRunningTasks = false;
+			} else if (childResult == SUCCEEDED) {
+				if (selector) {
+					result = SUCCEEDED;
+				} else if (noRunningTasks
+						&& (join ? statuses[children[start + count - 1]] == SUCCEEDED : i == count - 1)) {
+					result = SUCCEEDED;
+				}
+			} else if (!selector || (noRunningTasks && i == count - 1)) {
+				result = FAILED;
+			}
+			if (result != RUNNING) {
+				cancelChildren(instance, node, noRunningTasks ? i + 1 : 0);
+				if (join) {
+					resetChildren(instance, node);
+				}
+				return result;
+			}
+		}
+		return RUNNING;
+	}
+
+	/**
+	 * 重复节点，同{@link Repeat}，次数为负数时无限循环
+	 *
+	 * @param instance
+	 * @param node
+	 * @return
+	 */
+	private byte runRepeat(BehaviorTreeInstance<E> instance, int node) {
+		int[] slots = instance.slots;
+		int offset = slotOffsets[node];
+		int child = children[childStarts[node]];
+		while (slots[offset] != 0) {
+			if (execute(instance, child) == RUNNING) {
+				return RUNNING;
+			}
+			if (slots[offset] > 0) {
+				slots[offset]--;
+			}
+		}
+		return SUCCEEDED;
+	}
+
+	byte finish(BehaviorTreeInstance<E> instance, int node, byte result) {
+		instance.statuses[node] = result;
+		statusUpdated(instance, node, result);
+		end(instance, node);
+		return result;
+	}
+
+	/**
+	 * 取消节点及运行中的子节点，同{@link Task#cancel()}
+	 *
+	 * @param instance
+	 * @param node
+	 */
+	private void cancel(BehaviorTreeInstance<E> instance, int node) {
+		cancelChildren(instance, node, 0);
+		instance.statuses[node] = CANCELLED;
+		statusUpdated(instance, node, CANCELLED);
+		end(instance, node);
+	}
+
+	void cancelChildren(BehaviorTreeInstance<E> instance, int node, int startIndex) {
+		for (int i = childStarts[node] + startIndex, n = childStarts[node] + childCounts[node]; i < n; i++) {
+			if (instance.statuses[children[i]] == RUNNING) {
+				cancel(instance, children[i]);
+			}
+		}
+	}
+
+	void resetChildren(BehaviorTreeInstance<E> instance, int node) {
+		for (int i = childStarts[node], n = i + childCounts[node]; i < n; i++) {
+			instance.statuses[children[i]] = FRESH;
+		}
+	}
+
+	/**
+	 * 叶子节点返回值检查，同{@link LeafTask#run()}
+	 *
+	 * @param status
+	 * @return
+	 */
+	static byte toStatus(Status status) {
+		if (status == null) {
+			throw new IllegalStateException("Invalid status 'null' returned by the execute method");
+		}
+		switch (status) {
+		case SUCCEEDED:
+			return SUCCEEDED;
+		case FAILED:
+			return FAILED;
+		case RUNNING:
+			return RUNNING;
+		default:
+			throw new IllegalStateException("Invalid status '" + status.name() + "' returned by the execute method");
+		}
+	}
+
+	/**
+	 * 实例的叶子任务，第一次使用时复制
+	 *
+	 * @param instance
+	 * @param node
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	LeafTask<E> getLeafTask(BehaviorTreeInstance<E> instance, int node) {
+		LeafTask<E>[] leafTasks = instance.leafTasks;
+		if (leafTasks == null) {
+			leafTasks = instance.leafTasks = new LeafTask[taskLeafCount];
+		}
+		LeafTask<E> leafTask = leafTasks[params[node]];
+		if (leafTask == null) {
+			leafTask = newLeafTask((LeafTask<E>) objects[node]);
+			if (instance.leafTree == null) {
+				instance.leafTree = new BehaviorTree<>(null, instance.object);
+				instance.leafTree.setBlackboard(instance.blackboard);
+			}
+			leafTask.tree = instance.leafTree;
+			leafTasks[params[node]] = leafTask;
+		}
+		return leafTask;
+	}
+
+	/**
+	 * 按原型创建实例的叶子任务，有解析时的配置时按配置创建（只调用构造函数和setter），否则序列化复制
+	 *
+	 * @param prototype
+	 * @return
+	 */
+	private static <E> LeafTask<E> newLeafTask(LeafTask<E> prototype) {
+		LeafTaskFactory.Config config = prototype.config;
+		if (config == null) {
+			return copyLeafTask(prototype);
+		}
+		LeafTask<E> leafTask = config.create();
+		leafTask.setName(prototype.getName());
+		return leafTask;
+	}
+
+	/**
+	 * 复制叶子任务，只复制叶子本身，不包含父节点和所属行为树
+	 *
+	 * @param leafTask
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private static <E> LeafTask<E> copyLeafTask(LeafTask<E> leafTask) {
+		Task<E> control = leafTask.control;
+		BehaviorTree<E> tree = leafTask.tree;
+		Task<E> guard = leafTask.guard;
+		leafTask.control = null;
+		leafTask.tree = null;
+		leafTask.guard = null;
+		try {
+			LeafTask<E> copy = (LeafTask<E>) ByteUtil.deepCopy(leafTask);
+			copy.status = Status.FRESH;
+			return copy;
+		} catch (Exception e) {
+			throw new IllegalStateException(String.format("复制叶子节点 %s 失败", leafTask.getClass().getName()), e);
+		} finally {
+			leafTask.control = control;
+			leafTask.tree = tree;
+			leafTask.guard = guard;
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * 黑板结构，实例按该结构创建黑板
+	 *
+	 * @return 没有黑板返回null
+	 */
+	public BlackboardSchema getBlackboardSchema() {
+		return blackboardSchema;
+	}
+
+	/**
+	 * 节点个数，包含防护条件节点
+	 *
+	 * @return
+	 */
+	public int getNodeCount() {
+		return types.length;
+	}
+
+	public byte getType(int node) {
+		return types[node];
+	}
+
+	public int getChildCount(int node) {
+		return childCounts[node];
+	}
+
+	public int getChild(int node, int index) {
+		return children[childStarts[node] + index];
+	}
+
+	/**
+	 * 防护条件根节点
+	 *
+	 * @param node
+	 * @return -1 没有防护条件
+	 */
+	public int getGuard(int node) {
+		return guards[node];
+	}
+
+	public String getNodeName(int node) {
+		return names[node];
+	}
+
+	/**
+	 * 节点编译前的任务类型
+	 *
+	 * @param node
+	 * @return
+	 */
+	Class<?> getTaskClass(int node) {
+		return taskClasses[node];
+	}
+
+	/**
+	 * 每个实例的槽位个数
+	 *
+	 * @return
+	 */
+	public int getSlotCount() {
+		return initSlots.length;
+	}
+
+	/**
+	 * 节点运行数据在实例槽位中的起始下标
+	 *
+	 * @param node
+	 * @return
+	 */
+	public int getSlotOffset(int node) {
+		return slotOffsets[node];
+	}
+
+	/**
+	 * 整数参数：重复次数、并行策略{@link #PARALLEL_SELECTOR}|{@link #PARALLEL_JOIN}、适配叶子序号
+	 *
+	 * @param node
+	 * @return
+	 */
+	public int getParam(int node) {
+		return params[node];
+	}
+
+	/**
+	 * 浮点参数：随机成功概率
+	 *
+	 * @param node
+	 * @return
+	 */
+	public float getFloatParam(int node) {
+		return floatParams[node];
+	}
+
+	/**
+	 * 对象参数：信号量名称、叶子对象
+	 *
+	 * @param node
+	 * @return
+	 */
+	Object getObject(int node) {
+		return objects[node];
+	}
+
+	/**
+	 * 结构哈希，结构相同的模板哈希相同，生成的执行类以此校验模板
+	 *
+	 * @return
+	 */
+	public long getStructureHash() {
+		return structureHash;
+	}
+
+	public CompiledBehaviorTree<E> getCompiled() {
+		return compiled;
+	}
+
+	/**
+	 * 设置生成的执行类，实例执行时不再解释节点表；为null时恢复解释执行
+	 *
+	 * @param compiled
+	 * @throws IllegalArgumentException 执行类不是由该模板创建
+	 */
+	public void setCompiled(CompiledBehaviorTree<E> compiled) {
+		if (compiled != null && compiled.getTemplate() != this) {
+			throw new IllegalArgumentException(String.format("行为树 %s 执行类模板不一致", name));
+		}
+		this.compiled = compiled;
+	}
+
+	/**
+	 * 行为树编译，前序遍历编号
+	 *
+	 * @param <E>
+	 */
+	private static final class Compiler<E> {
+		byte[] types = new byte[16];
+		int[] childStarts = new int[16];
+		int[] childCounts = new int[16];
+		int[] guards = new int[16];
+		int[] slotOffsets = new int[16];
+		int[] params = new int[16];
+		float[] floatParams = new float[16];
+		Object[] objects = new Object[16];
+		String[] names = new String[16];
+		Class<?>[] taskClasses = new Class<?>[16];
+		List<Integer> children = new ArrayList<>();
+		int count;
+		int slotCount;
+		int taskLeafCount;
+
+		/**
+		 * 编译节点及子节点
+		 *
+		 * @param task
+		 * @return 节点编号
+		 */
+		@SuppressWarnings("unchecked")
+		int compile(Task<E> task) {
+			if (count == types.length) {
+				grow();
+			}
+			int node = count++;
+			names[node] = task.getName();
+			int slots = 0;
+			Class<?> taskClass = task.getClass();
+			taskClasses[node] = taskClass;
+			if (taskClass == Selector.class) {
+				types[node] = TYPE_SELECTOR;
+				slots = 1;
+			} else if (taskClass == Sequence.class) {
+				types[node] = TYPE_SEQUENCE;
+				slots = 1;
+			} else if (taskClass == RandomSelector.class) {
+				types[node] = TYPE_RANDOM_SELECTOR;
+				slots = 1 + task.getChildCount();
+			} else if (taskClass == RandomSequence.class) {
+				types[node] = TYPE_RANDOM_SEQUENCE;
+				slots = 1 + task.getChildCount();
+			} else if (taskClass == Parallel.class) {
+				Parallel<E> parallel = (Parallel<E>) task;
+				types[node] = TYPE_PARALLEL;
+				params[node] = (parallel.policy == Parallel.Policy.Selector ? PARALLEL_SELECTOR : 0)
+						| (parallel.orchestrator == Parallel.Orchestrator.Join ? PARALLEL_JOIN : 0);
+			} else if (taskClass == AlwaysFail.class) {
+				types[node] = TYPE_ALWAYS_FAIL;
+			} else if (taskClass == AlwaysSucceed.class) {
+				types[node] = TYPE_ALWAYS_SUCCEED;
+			} else if (taskClass == Invert.class) {
+				types[node] = TYPE_INVERT;
+			} else if (taskClass == Repeat.class) {
+				types[node] = TYPE_REPEAT;
+				params[node] = ((Repeat<E>) task).times;
+				slots = 1;
+			} else if (taskClass == UntilFail.class) {
+				types[node] = TYPE_UNTIL_FAIL;
+			} else if (taskClass == UntilSuccess.class) {
+				types[node] = TYPE_UNTIL_SUCCESS;
+			} else if (taskClass == Random.class) {
+				types[node] = TYPE_RANDOM;
+				floatParams[node] = ((Random<E>) task).success;
+			} else if (taskClass == SemaphoreGuard.class) {
+				types[node] = TYPE_SEMAPHORE_GUARD;
+				objects[node] = ((SemaphoreGuard<E>) task).name;
+				slots = 1;
+			} else if (taskClass == Success.class) {
+				types[node] = TYPE_SUCCESS;
+			} else if (taskClass == Failure.class) {
+				types[node] = TYPE_FAILURE;
+			} else if (task instanceof SharedLeaf) {
+				types[node] = TYPE_SHARED_LEAF;
+				objects[node] = task;
+				slots = ((SharedLeaf<E>) task).getSlotCount();
+			} else if (task instanceof LeafTask) {
+				types[node] = TYPE_TASK_LEAF;
+				LeafTask<E> prototype = copyLeafTask((LeafTask<E>) task);
+				// 序列化复制不保留配置，实例叶子按配置创建
+				prototype.config = ((LeafTask<E>) task).config;
+				objects[node] = prototype;
+				params[node] = taskLeafCount++;
+			} else {
+				throw new IllegalArgumentException(String.format("行为树模板不支持节点 %s", taskClass.getName()));
+			}
+			slotOffsets[node] = slotCount;
+			slotCount += slots;
+
+			// 递归编译可能扩容数组，先保存到局部变量
+			int guard = task.getGuard() == null ? -1 : compile(task.getGuard());
+			guards[node] = guard;
+
+			int childCount = task.getChildCount();
+			int[] childNodes = new int[childCount];
+			for (int i = 0; i < childCount; i++) {
+				childNodes[i] = compile(task.getChild(i));
+			}
+			int minChildren = types[node] <= TYPE_SEMAPHORE_GUARD && types[node] != TYPE_RANDOM ? 1 : 0;
+			int maxChildren = types[node] <= TYPE_PARALLEL ? Integer.MAX_VALUE
+					: types[node] <= TYPE_SEMAPHORE_GUARD ? 1 : 0;
+			if (childCount < minChildren || childCount > maxChildren) {
+				throw new IllegalArgumentException(
+						String.format("行为树模板节点 %s 子节点个数 %d 非法", taskClass.getName(), childCount));
+			}
+			childStarts[node] = children.size();
+			childCounts[node] = childCount;
+			for (int childNode : childNodes) {
+				children.add(childNode);
+			}
+			return node;
+		}
+
+		private void grow() {
+			int capacity = types.length << 1;
+			types = Arrays.copyOf(types, capacity);
+			childStarts = Arrays.copyOf(childStarts, capacity);
+			childCounts = Arrays.copyOf(childCounts, capacity);
+			guards = Arrays.copyOf(guards, capacity);
+			slotOffsets = Arrays.copyOf(slotOffsets, capacity);
+			params = Arrays.copyOf(params, capacity);
+			floatParams = Arrays.copyOf(floatParams, capacity);
+			objects = Arrays.copyOf(objects, capacity);
+			names = Arrays.copyOf(names, capacity);
+			taskClasses = Arrays.copyOf(taskClasses, capacity);
+		}
+	}
+}
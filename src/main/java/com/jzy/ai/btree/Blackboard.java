@@ -0,0 +1,217 @@
+package com.jzy.ai.btree;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 行为树黑板，节点间共享数据
+ * <p>
+ * 1、按{@link BlackboardSchema}创建int、float、long、object数组，通过{@link BlackboardKey}按槽位读写，没有哈希和装箱<br>
+ * 2、值变化时，如果所属行为树有节点依赖该键（{@link com.jzy.ai.btree.annotation.TaskDependency#keys()}），
+ * 事件驱动模式下一帧从根节点执行；同时通知{@link Listener}<br>
+ * </p>
+ * 非线程安全
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class Blackboard implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final BlackboardSchema schema;
+	private final int[] ints;
+	private final float[] floats;
+	private final long[] longs;
+	private final Object[] objects;
+
+	/** 所属行为树 */
+	private BehaviorTree<?> tree;
+	/** 行为树依赖的键，下标为{@link BlackboardKey#index}，延迟计算 */
+	private boolean[] watchedKeys;
+	/** 监听器 */
+	private transient List<Listener> listeners;
+	/** 数据版本，每次变化加1，用于判断缓存的计算结果是否过期 */
+	private int version;
+
+	public Blackboard(BlackboardSchema schema) {
+		this.schema = schema;
+		this.ints = schema.intDefaults.clone();
+		this.floats = schema.floatDefaults.clone();
+		this.longs = schema.longDefaults.clone();
+		this.objects = new Object[schema.getSlotCount(BlackboardKey.TYPE_OBJECT)];
+	}
+
+	public int getInt(BlackboardKey key) {
+		checkType(key, BlackboardKey.TYPE_INT);
+		return ints[key.slot];
+	}
+
+	public void setInt(BlackboardKey key, int value) {
+		checkType(key, BlackboardKey.TYPE_INT);
+		if (ints[key.slot] != value) {
+			ints[key.slot] = value;
+			changed(key);
+		}
+	}
+
+	public float getFloat(BlackboardKey key) {
+		checkType(key, BlackboardKey.TYPE_FLOAT);
+		return floats[key.slot];
+	}
+
+	public void setFloat(BlackboardKey key, float value) {
+		checkType(key, BlackboardKey.TYPE_FLOAT);
+		if (floats[key.slot] != value) {
+			floats[key.slot] = value;
+			changed(key);
+		}
+	}
+
+	public long getLong(BlackboardKey key) {
+		checkType(key, BlackboardKey.TYPE_LONG);
+		return longs[key.slot];
+	}
+
+	public void setLong(BlackboardKey key, long value) {
+		checkType(key, BlackboardKey.TYPE_LONG);
+		if (longs[key.slot] != value) {
+			longs[key.slot] = value;
+			changed(key);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> T getObject(BlackboardKey key) {
+		checkType(key, BlackboardKey.TYPE_OBJECT);
+		return (T) objects[key.slot];
+	}
+
+	/**
+	 * 设置对象，引用不同时才通知变化，对象内部修改后需调用{@link #changed(BlackboardKey)}
+	 *
+	 * @param key
+	 * @param value
+	 */
+	public void setObject(BlackboardKey key, Object value) {
+		checkType(key, BlackboardKey.TYPE_OBJECT);
+		if (objects[key.slot] != value) {
+			objects[key.slot] = value;
+			changed(key);
+		}
+	}
+
+	/**
+	 * 通知键值变化
+	 *
+	 * @param key
+	 */
+	public void changed(BlackboardKey key) {
+		version++;
+		if (tree != null) {
+			if (watchedKeys == null) {
+				watchedKeys = new boolean[schema.size()];
+				for (BlackboardKey k : schema.getKeys()) {
+					watchedKeys[k.index] = tree.isDependKey(k.name);
+				}
+			}
+			if (watchedKeys[key.index]) {
+				tree.invalidate();
+			}
+		}
+		if (listeners != null) {
+			for (int i = 0, n = listeners.size(); i < n; i++) {
+				listeners.get(i).changed(this, key);
+			}
+		}
+	}
+
+	/**
+	 * 重置为默认值，不通知变化
+	 */
+	public void clear() {
+		version++;
+		System.arraycopy(schema.intDefaults, 0, ints, 0, ints.length);
+		System.arraycopy(schema.floatDefaults, 0, floats, 0, floats.length);
+		System.arraycopy(schema.longDefaults, 0, longs, 0, longs.length);
+		for (int i = 0; i < objects.length; i++) {
+			objects[i] = null;
+		}
+	}
+
+	private static void checkType(BlackboardKey key, byte type) {
+		if (key.type != type) {
+			throw new IllegalArgumentException(String.format("黑板键 %s 类型 %d 不是 %d", key.name, key.type, type));
+		}
+	}
+
+	/**
+	 * 设置所属行为树
+	 *
+	 * @param tree
+	 */
+	void setTree(BehaviorTree<?> tree) {
+		this.tree = tree;
+		this.watchedKeys = null;
+	}
+
+	/**
+	 * 行为树依赖变化后重新计算
+	 */
+	void resetWatchedKeys() {
+		this.watchedKeys = null;
+	}
+
+	public void addListener(Listener listener) {
+		if (listeners == null) {
+			listeners = new ArrayList<>();
+		}
+		listeners.add(listener);
+	}
+
+	public void removeListener(Listener listener) {
+		if (listeners != null) {
+			listeners.remove(listener);
+		}
+	}
+
+	/**
+	 * 获取键
+	 *
+	 * @param name
+	 * @return 不存在返回null
+	 */
+	public BlackboardKey getKey(String name) {
+		return schema.getKey(name);
+	}
+
+	public BlackboardSchema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * 数据版本，版本相同时数据未变化
+	 *
+	 * @return
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * 黑板数据变化监听
+	 *
+	 * @author JiangZhiYong
+	 * @mail 359135103@qq.com
+	 */
+	public interface Listener {
+
+		/**
+		 * 键值变化
+		 *
+		 * @param blackboard
+		 * @param key
+		 */
+		void changed(Blackboard blackboard, BlackboardKey key);
+	}
+}
@@ -0,0 +1,63 @@
+package com.jzy.ai.btree;
+
+import java.io.Serializable;
+
+/**
+ * 黑板键，由{@link BlackboardSchema}创建
+ * <p>
+ * 解析行为树时键名转换为类型和槽位，叶子节点保存键对象，读写黑板时直接按槽位访问对应类型的数组，不需要哈希和装箱
+ * </p>
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public final class BlackboardKey implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public static final byte TYPE_INT = 0;
+	public static final byte TYPE_FLOAT = 1;
+	public static final byte TYPE_LONG = 2;
+	public static final byte TYPE_OBJECT = 3;
+
+	/** 键名 */
+	public final String name;
+	/** 数据类型 */
+	public final byte type;
+	/** 在对应类型数组中的下标 */
+	public final int slot;
+	/** 在所有键中的序号 */
+	public final int index;
+
+	BlackboardKey(String name, byte type, int slot, int index) {
+		this.name = name;
+		this.type = type;
+		this.slot = slot;
+		this.index = index;
+	}
+
+	/**
+	 * 类型名称转换
+	 *
+	 * @param typeName int、float、long、object
+	 * @return
+	 */
+	public static byte parseType(String typeName) {
+		switch (typeName.toLowerCase()) {
+		case "int":
+			return TYPE_INT;
+		case "float":
+			return TYPE_FLOAT;
+		case "long":
+			return TYPE_LONG;
+		case "object":
+			return TYPE_OBJECT;
+		default:
+			throw new IllegalArgumentException(String.format("黑板类型 %s 非法", typeName));
+		}
+	}
+
+	@Override
+	public String toString() {
+		return name + "[" + type + ":" + slot + "]";
+	}
+}
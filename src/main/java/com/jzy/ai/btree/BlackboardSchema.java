@@ -0,0 +1,123 @@
+package com.jzy.ai.btree;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 黑板结构定义，同一行为树配置的所有黑板共享
+ * <p>
+ * 解析行为树xml时创建，所有键需在创建{@link Blackboard}前添加
+ * </p>
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class BlackboardSchema implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final Map<String, BlackboardKey> keyMap = new HashMap<>();
+	private final List<BlackboardKey> keys = new ArrayList<>();
+	/** 各类型槽位个数，下标为{@link BlackboardKey#type} */
+	private final int[] slotCounts = new int[4];
+
+	/** 默认值 */
+	int[] intDefaults = new int[0];
+	float[] floatDefaults = new float[0];
+	long[] longDefaults = new long[0];
+
+	/**
+	 * 添加键
+	 *
+	 * @param name
+	 * @param type {@link BlackboardKey#TYPE_INT}等
+	 * @return 已存在同类型的键时返回已有键
+	 * @throws IllegalStateException 已存在不同类型的同名键
+	 */
+	public BlackboardKey addKey(String name, byte type) {
+		BlackboardKey key = keyMap.get(name);
+		if (key != null) {
+			if (key.type != type) {
+				throw new IllegalStateException(String.format("黑板键 %s 类型冲突 %d %d", name, key.type, type));
+			}
+			return key;
+		}
+		int slot = slotCounts[type]++;
+		key = new BlackboardKey(name, type, slot, keys.size());
+		keyMap.put(name, key);
+		keys.add(key);
+		switch (type) {
+		case BlackboardKey.TYPE_INT:
+			intDefaults = Arrays.copyOf(intDefaults, slotCounts[type]);
+			break;
+		case BlackboardKey.TYPE_FLOAT:
+			floatDefaults = Arrays.copyOf(floatDefaults, slotCounts[type]);
+			break;
+		case BlackboardKey.TYPE_LONG:
+			longDefaults = Arrays.copyOf(longDefaults, slotCounts[type]);
+			break;
+		default:
+			break;
+		}
+		return key;
+	}
+
+	/**
+	 * 设置默认值
+	 *
+	 * @param key
+	 * @param value 字符串值，对象类型不支持
+	 */
+	public void setDefaultValue(BlackboardKey key, String value) {
+		switch (key.type) {
+		case BlackboardKey.TYPE_INT:
+			intDefaults[key.slot] = Integer.parseInt(value);
+			break;
+		case BlackboardKey.TYPE_FLOAT:
+			floatDefaults[key.slot] = Float.parseFloat(value);
+			break;
+		case BlackboardKey.TYPE_LONG:
+			longDefaults[key.slot] = Long.parseLong(value);
+			break;
+		default:
+			throw new IllegalArgumentException(String.format("黑板键 %s 不支持默认值", key.name));
+		}
+	}
+
+	/**
+	 * 获取键
+	 *
+	 * @param name
+	 * @return 不存在返回null
+	 */
+	public BlackboardKey getKey(String name) {
+		return keyMap.get(name);
+	}
+
+	/**
+	 * 所有键，按添加顺序
+	 *
+	 * @return
+	 */
+	public List<BlackboardKey> getKeys() {
+		return Collections.unmodifiableList(keys);
+	}
+
+	public int size() {
+		return keys.size();
+	}
+
+	/**
+	 * 指定类型的槽位个数
+	 *
+	 * @param type
+	 * @return
+	 */
+	public int getSlotCount(byte type) {
+		return slotCounts[type];
+	}
+}
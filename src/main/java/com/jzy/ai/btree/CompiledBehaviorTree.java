@@ -0,0 +1,194 @@
+package com.jzy.ai.btree;
+
+import com.jzy.ai.btree.Task.Status;
+import com.jzy.javalib.base.util.MathUtil;
+
+/**
+ * 生成的行为树执行类基类
+ * <p>
+ * {@link BehaviorTreeCodeGenerator}按{@link BehaviorTreeTemplate}节点表生成子类，每个节点生成专用方法，
+ * 孩子、槽位、参数都是常量，控制流直接调用，没有按节点类型分派和虚方法回调。运行数据仍保存在{@link BehaviorTreeInstance}中，
+ * 可以和解释执行随时切换<br>
+ * 生成类可能由其他类加载器加载，模板的包内方法通过本类的protected方法访问<br>
+ * 生成代码在节点状态变化和叶子执行处调用{@link #statusUpdated(BehaviorTreeInstance, int, byte)}、{@link #profileLeaf(BehaviorTreeInstance, int)}，
+ * 和解释执行一样记录{@link BehaviorTreeProfiler}统计，未统计时只有一次空判断
+ * </p>
+ * 线程安全，实例非线程安全
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ * @param <E> 黑板对象
+ */
+public abstract class CompiledBehaviorTree<E> {
+	protected static final byte FRESH = BehaviorTreeTemplate.FRESH;
+	protected static final byte RUNNING = BehaviorTreeTemplate.RUNNING;
+	protected static final byte FAILED = BehaviorTreeTemplate.FAILED;
+	protected static final byte SUCCEEDED = BehaviorTreeTemplate.SUCCEEDED;
+
+	protected final BehaviorTreeTemplate<E> template;
+
+	/**
+	 * @param template      模板
+	 * @param structureHash 生成代码时模板的结构哈希
+	 * @throws IllegalArgumentException 模板结构已变化
+	 */
+	protected CompiledBehaviorTree(BehaviorTreeTemplate<E> template, long structureHash) {
+		if (template.getStructureHash() != structureHash) {
+			throw new IllegalArgumentException(String.format("行为树 %s 结构已变化，需重新生成执行类", template.getName()));
+		}
+		this.template = template;
+	}
+
+	/**
+	 * 执行一次，和{@link BehaviorTreeInstance#step()}解释执行相同
+	 *
+	 * @param instance
+	 */
+	public abstract void step(BehaviorTreeInstance<E> instance);
+
+	public BehaviorTreeTemplate<E> getTemplate() {
+		return template;
+	}
+
+	protected static byte[] statuses(BehaviorTreeInstance<?> instance) {
+		return instance.statuses;
+	}
+
+	protected static int[] slots(BehaviorTreeInstance<?> instance) {
+		return instance.slots;
+	}
+
+	/**
+	 * 进入节点，信号量、叶子和Join并行节点使用
+	 *
+	 * @param instance
+	 * @param node
+	 */
+	protected final void start(BehaviorTreeInstance<E> instance, int node) {
+		template.start(instance, node);
+	}
+
+	/**
+	 * 结束节点，记录状态并调用{@link Task#end()}
+	 *
+	 * @param instance
+	 * @param node
+	 * @param result
+	 * @return
+	 */
+	protected final byte finish(BehaviorTreeInstance<E> instance, int node, byte result) {
+		return template.finish(instance, node, result);
+	}
+
+	/**
+	 * 取消运行中的孩子
+	 *
+	 * @param instance
+	 * @param node
+	 * @param startIndex 开始的孩子序号
+	 */
+	protected final void cancelChildren(BehaviorTreeInstance<E> instance, int node, int startIndex) {
+		template.cancelChildren(instance, node, startIndex);
+	}
+
+	protected final void resetChildren(BehaviorTreeInstance<E> instance, int node) {
+		template.resetChildren(instance, node);
+	}
+
+	/**
+	 * 共享叶子
+	 *
+	 * @param node
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	protected final SharedLeaf<E> sharedLeaf(int node) {
+		return (SharedLeaf<E>) template.getObject(node);
+	}
+
+	/**
+	 * 实例的适配叶子
+	 *
+	 * @param instance
+	 * @param node
+	 * @return
+	 */
+	protected final LeafTask<E> leafTask(BehaviorTreeInstance<E> instance, int node) {
+		return template.getLeafTask(instance, node);
+	}
+
+	/**
+	 * 实例是否正在被{@link BehaviorTreeProfiler}统计
+	 *
+	 * @param instance
+	 * @return
+	 */
+	protected static boolean profiling(BehaviorTreeInstance<?> instance) {
+		return instance.metrics != null;
+	}
+
+	/**
+	 * 执行叶子并统计耗时，{@link #profiling(BehaviorTreeInstance)}为true时使用
+	 *
+	 * @param instance
+	 * @param node
+	 * @return
+	 */
+	protected final Status profileLeaf(BehaviorTreeInstance<E> instance, int node) {
+		return template.profileLeaf(instance, node);
+	}
+
+	/**
+	 * 统计节点状态变化
+	 *
+	 * @param instance
+	 * @param node
+	 * @param status
+	 */
+	protected static void statusUpdated(BehaviorTreeInstance<?> instance, int node, byte status) {
+		BehaviorTreeTemplate.statusUpdated(instance, node, status);
+	}
+
+	/**
+	 * 叶子返回值检查
+	 *
+	 * @param status
+	 * @return
+	 */
+	protected static byte toStatus(Status status) {
+		return BehaviorTreeTemplate.toStatus(status);
+	}
+
+	/**
+	 * 随机装饰器
+	 *
+	 * @param success 成功概率
+	 * @return
+	 */
+	protected static byte random(float success) {
+		return MathUtil.random() <= success ? SUCCEEDED : FAILED;
+	}
+
+	/**
+	 * 随机分支交换位置
+	 *
+	 * @param start
+	 * @param end   包含
+	 * @return
+	 */
+	protected static int random(int start, int end) {
+		return MathUtil.random(start, end);
+	}
+
+	/**
+	 * 防护条件执行结果非法
+	 *
+	 * @param instance
+	 * @param guard
+	 * @return
+	 */
+	protected static IllegalStateException illegalGuard(BehaviorTreeInstance<?> instance, int guard) {
+		return new IllegalStateException("Illegal guard status '" + instance.getStatus(guard)
+				+ "'. Guards must either succeed or fail in one step.");
+	}
+}
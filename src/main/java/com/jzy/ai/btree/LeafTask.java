@@ -34,6 +34,8 @@ import com.jzy.ai.btree.annotation.TaskConstraint;
  */
 @TaskConstraint(minChildren = 0, maxChildren = 0)
 public abstract class LeafTask<E> extends Task<E> {
+	/** 创建叶子的配置，{@link BehaviorTreeTemplate}按配置为实例创建叶子；不是通过配置创建时为null */
+	transient LeafTaskFactory.Config config;
 
 	/** Creates a leaf task. */
 	public LeafTask() {
@@ -55,7 +57,17 @@ public abstract class LeafTask<E> extends Task<E> {
 	 */
 	@Override
 	public final void run() {
-		Status result = execute();
+		BehaviorTreeProfiler.NodeMetrics metrics = this.metrics;
+		applyResult(metrics != null && metrics.isEnabled() ? metrics.execute(this) : execute());
+	}
+
+	/**
+	 * 按{@link #execute()}的结果更新状态并通知父节点，{@link #execute()}在其他线程执行时由行为树线程调用
+	 * 
+	 * @param result
+	 *            {@link Status#RUNNING}、{@link Status#SUCCEEDED}或{@link Status#FAILED}
+	 */
+	public final void applyResult(Status result) {
 		if (result == null) {
 			throw new IllegalStateException("Invalid status 'null' returned by the execute method");
 		}
@@ -68,6 +80,7 @@ public abstract class LeafTask<E> extends Task<E> {
 			return;
 		case RUNNING:
 			running();
+			tree.leafRunning(this);
 			return;
 		default:
 			throw new IllegalStateException("Invalid status '" + result.name() + "' returned by the execute method");
@@ -0,0 +1,364 @@
+package com.jzy.ai.btree;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import com.alibaba.fastjson.JSON;
+import com.jzy.javalib.math.geometry.Vector3;
+
+/**
+ * 叶子任务工厂，每个叶子类只创建一次
+ * <p>
+ * 1、无参构造函数、属性setter通过{@link LambdaMetafactory}生成函数对象，创建叶子和设置属性和直接调用代码一样快；
+ * 类不可访问时退化为{@link MethodHandle}调用<br>
+ * 2、属性为public set方法（参数个数为1）和public非final字段，{@link Task}自身的方法除外<br>
+ * 3、xml配置的属性值解析一次转换为对应类型的值（{@link Config}），之后创建叶子不再解析字符串，
+ * 只调用缓存的构造函数和setter函数对象；创建的叶子保存配置，{@link BehaviorTreeTemplate}按配置为每个实例创建叶子<br>
+ * </p>
+ * 线程安全
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public final class LeafTaskFactory {
+	/** 工厂缓存，key为叶子类 */
+	private static final Map<Class<?>, LeafTaskFactory> FACTORIES = new ConcurrentHashMap<>();
+	/** 工厂缓存，key为叶子类名 */
+	private static final Map<String, LeafTaskFactory> NAMED_FACTORIES = new ConcurrentHashMap<>();
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+	private final Class<?> leafClass;
+	private final Supplier<Object> constructor;
+	/** 属性，key为属性名 */
+	private final Map<String, Property> properties;
+
+	private LeafTaskFactory(Class<?> leafClass) {
+		if (!LeafTask.class.isAssignableFrom(leafClass) || Modifier.isAbstract(leafClass.getModifiers())) {
+			throw new IllegalArgumentException(String.format("%s 不是可以实例化的叶子任务", leafClass.getName()));
+		}
+		this.leafClass = leafClass;
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		MethodHandle constructorHandle = findConstructor(lookup, leafClass);
+		this.constructor = createConstructor(lookup, leafClass, constructorHandle);
+		Map<String, Property> map = new LinkedHashMap<>();
+		for (Method method : leafClass.getMethods()) {
+			String name = method.getName();
+			if (name.length() < 4 || !name.startsWith("set") || method.getParameterCount() != 1
+					|| method.getReturnType() != void.class || Modifier.isStatic(method.getModifiers())
+					|| method.getDeclaringClass() == Task.class) {
+				continue;
+			}
+			String propertyName = Character.toLowerCase(name.charAt(3)) + name.substring(4);
+			Class<?> type = method.getParameterTypes()[0];
+			MethodHandle setter = findMethod(lookup, method);
+			map.put(propertyName,
+					new Property(propertyName, type, createSetter(lookup, leafClass, propertyName, setter)));
+		}
+		for (Field field : leafClass.getFields()) {
+			int modifiers = field.getModifiers();
+			if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers) || map.containsKey(field.getName())) {
+				continue;
+			}
+			// 字段句柄不能生成函数对象，适配为Object参数后直接调用句柄
+			field.setAccessible(true);
+			MethodHandle setter = unreflect(() -> lookup.unreflectSetter(field));
+			map.put(field.getName(), new Property(field.getName(), field.getType(), genericSetter(field.getName(), setter)));
+		}
+		this.properties = Collections.unmodifiableMap(map);
+	}
+
+	/**
+	 * 获取叶子类的工厂
+	 *
+	 * @param leafClass
+	 * @return
+	 * @throws IllegalArgumentException 不是叶子任务或没有无参构造函数
+	 */
+	public static LeafTaskFactory get(Class<?> leafClass) {
+		LeafTaskFactory factory = FACTORIES.get(leafClass);
+		if (factory == null) {
+			factory = FACTORIES.computeIfAbsent(leafClass, LeafTaskFactory::new);
+		}
+		return factory;
+	}
+
+	/**
+	 * 获取叶子类的工厂
+	 *
+	 * @param className 类全名
+	 * @return
+	 * @throws ClassNotFoundException
+	 */
+	public static LeafTaskFactory get(String className) throws ClassNotFoundException {
+		LeafTaskFactory factory = NAMED_FACTORIES.get(className);
+		if (factory == null) {
+			factory = get(Class.forName(className));
+			NAMED_FACTORIES.put(className, factory);
+		}
+		return factory;
+	}
+
+	/**
+	 * 清除缓存，叶子类热更新后调用
+	 */
+	public static void clear() {
+		FACTORIES.clear();
+		NAMED_FACTORIES.clear();
+	}
+
+	/**
+	 * 创建叶子
+	 *
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public <E> LeafTask<E> newInstance() {
+		return (LeafTask<E>) constructor.get();
+	}
+
+	/**
+	 * 创建配置
+	 *
+	 * @param properties 属性
+	 * @param values     对应属性已转换的值
+	 * @return
+	 */
+	public Config config(List<Property> properties, List<Object> values) {
+		return new Config(this, properties.toArray(new Property[properties.size()]), values.toArray());
+	}
+
+	/**
+	 * 获取属性
+	 *
+	 * @param name
+	 * @return 不存在返回null
+	 */
+	public Property getProperty(String name) {
+		return properties.get(name);
+	}
+
+	public Collection<Property> getProperties() {
+		return properties.values();
+	}
+
+	public Class<?> getLeafClass() {
+		return leafClass;
+	}
+
+	private static MethodHandle findConstructor(MethodHandles.Lookup lookup, Class<?> leafClass) {
+		Constructor<?> constructor;
+		try {
+			constructor = leafClass.getDeclaredConstructor();
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException(String.format("%s 没有无参构造函数", leafClass.getName()), e);
+		}
+		try {
+			return lookup.unreflectConstructor(constructor);
+		} catch (IllegalAccessException e) {
+			// 类或构造函数不可访问
+			constructor.setAccessible(true);
+			return unreflect(() -> lookup.unreflectConstructor(constructor));
+		}
+	}
+
+	private static MethodHandle findMethod(MethodHandles.Lookup lookup, Method method) {
+		try {
+			return lookup.unreflect(method);
+		} catch (IllegalAccessException e) {
+			method.setAccessible(true);
+			return unreflect(() -> lookup.unreflect(method));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Supplier<Object> createConstructor(MethodHandles.Lookup lookup, Class<?> leafClass,
+			MethodHandle handle) {
+		try {
+			CallSite site = LambdaMetafactory.metafactory(lookup, "get", MethodType.methodType(Supplier.class),
+					MethodType.methodType(Object.class), handle, MethodType.methodType(leafClass));
+			return (Supplier<Object>) site.getTarget().invokeExact();
+		} catch (Throwable e) {
+			// 类不可访问时不能生成函数对象，直接调用句柄
+			MethodHandle generic = handle.asType(CONSTRUCTOR_TYPE);
+			return () -> {
+				try {
+					return (Object) generic.invokeExact();
+				} catch (Throwable t) {
+					throw new IllegalStateException(String.format("创建叶子 %s 失败", leafClass.getName()), t);
+				}
+			};
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static BiConsumer<Object, Object> createSetter(MethodHandles.Lookup lookup, Class<?> leafClass,
+			String name, MethodHandle handle) {
+		try {
+			Class<?> type = handle.type().wrap().parameterType(1);
+			CallSite site = LambdaMetafactory.metafactory(lookup, "accept", MethodType.methodType(BiConsumer.class),
+					SETTER_TYPE, handle,
+					MethodType.methodType(void.class, leafClass, type));
+			return (BiConsumer<Object, Object>) site.getTarget().invokeExact();
+		} catch (Throwable e) {
+			return genericSetter(name, handle);
+		}
+	}
+
+	private static BiConsumer<Object, Object> genericSetter(String name, MethodHandle handle) {
+		MethodHandle generic = handle.asType(SETTER_TYPE);
+		return (task, value) -> {
+			try {
+				generic.invokeExact(task, value);
+			} catch (Throwable t) {
+				throw new IllegalStateException(String.format("设置属性 %s 失败", name), t);
+			}
+		};
+	}
+
+	private static MethodHandle unreflect(HandleSupplier supplier) {
+		try {
+			return supplier.get();
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	@FunctionalInterface
+	private interface HandleSupplier {
+		MethodHandle get() throws IllegalAccessException;
+	}
+
+	/**
+	 * 叶子属性
+	 *
+	 * @author JiangZhiYong
+	 * @mail 359135103@qq.com
+	 */
+	public static final class Property {
+		/** 属性名 */
+		public final String name;
+		/** 属性类型 */
+		public final Class<?> type;
+		final BiConsumer<Object, Object> setter;
+
+		Property(String name, Class<?> type, BiConsumer<Object, Object> setter) {
+			this.name = name;
+			this.type = type;
+			this.setter = setter;
+		}
+
+		/**
+		 * 配置字符串转换为属性类型的值
+		 *
+		 * @param value
+		 * @param schema 黑板结构，{@link BlackboardKey}类型属性使用
+		 * @return
+		 * @throws IllegalStateException 属性类型不支持字符串配置
+		 */
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		public Object convert(String value, BlackboardSchema schema) {
+			if (type == String.class) {
+				return value;
+			} else if (type == int.class || type == Integer.class) {
+				return Integer.valueOf(value);
+			} else if (type == float.class || type == Float.class) {
+				return Float.valueOf(value);
+			} else if (type == double.class || type == Double.class) {
+				return Double.valueOf(value);
+			} else if (type == long.class || type == Long.class) {
+				return Long.valueOf(value);
+			} else if (type == short.class || type == Short.class) {
+				return Short.valueOf(value);
+			} else if (type == byte.class || type == Byte.class) {
+				return Byte.valueOf(value);
+			} else if (type == boolean.class || type == Boolean.class) {
+				return Boolean.valueOf(value);
+			} else if (type == BlackboardKey.class) {
+				BlackboardKey key = schema == null ? null : schema.getKey(value);
+				if (key == null) {
+					throw new IllegalStateException(String.format("属性 %s 黑板键 %s 未定义", name, value));
+				}
+				return key;
+			} else if (type.isEnum()) {
+				return Enum.valueOf((Class<? extends Enum>) type, value);
+			} else if (type == Vector3.class) {
+				return JSON.parseObject(value, Vector3.class);
+			} else if (type.isAssignableFrom(String.class)) {
+				// Object、CharSequence等类型直接使用字符串
+				return value;
+			}
+			throw new IllegalStateException(String.format("属性 %s 类型 %s 不支持配置", name, type.getName()));
+		}
+
+		/**
+		 * 设置属性值
+		 *
+		 * @param leafTask
+		 * @param value    已转换的值
+		 */
+		public void set(LeafTask<?> leafTask, Object value) {
+			setter.accept(leafTask, value);
+		}
+	}
+
+	/**
+	 * 叶子配置，xml叶子节点解析一次
+	 * <p>
+	 * 保存已转换的属性值，{@link #create()}调用缓存的构造函数和setter函数对象，没有类型转换和反射；
+	 * 可变的属性值（{@link Vector3}）每次复制，创建的叶子之间不共享
+	 * </p>
+	 *
+	 * @author JiangZhiYong
+	 * @mail 359135103@qq.com
+	 */
+	public static final class Config {
+		private final LeafTaskFactory factory;
+		private final Property[] properties;
+		/** 对应属性已转换的值 */
+		private final Object[] values;
+
+		Config(LeafTaskFactory factory, Property[] properties, Object[] values) {
+			this.factory = factory;
+			this.properties = properties;
+			this.values = values;
+		}
+
+		/**
+		 * 创建配置好属性的叶子
+		 *
+		 * @return
+		 */
+		public <E> LeafTask<E> create() {
+			LeafTask<E> leafTask = factory.newInstance();
+			for (int i = 0; i < properties.length; i++) {
+				Object value = values[i];
+				if (value instanceof Vector3) {
+					value = ((Vector3) value).copy();
+				}
+				properties[i].setter.accept(leafTask, value);
+			}
+			leafTask.config = this;
+			return leafTask;
+		}
+
+		public LeafTaskFactory getFactory() {
+			return factory;
+		}
+	}
+}
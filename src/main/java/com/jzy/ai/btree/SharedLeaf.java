@@ -0,0 +1,56 @@
+package com.jzy.ai.btree;
+
+import com.jzy.ai.btree.Task.Status;
+
+/**
+ * 共享叶子节点，{@link BehaviorTreeTemplate}使用
+ * <p>
+ * 同一行为树模板的所有实例共用一个叶子对象，叶子对象只保存配置属性，运行数据保存在实例的int槽位中，
+ * 通过{@link #getSlotCount()}声明需要的槽位个数。<br>
+ * 没有实现该接口的{@link LeafTask}按实例复制后执行
+ * </p>
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ * @param <E> 黑板对象
+ */
+public interface SharedLeaf<E> {
+
+	/**
+	 * 执行叶子节点
+	 *
+	 * @param instance 行为树实例，{@link BehaviorTreeInstance#getObject()}获取黑板对象
+	 * @param slot     实例槽位起始下标
+	 * @return {@link Status#RUNNING}、{@link Status#SUCCEEDED}或{@link Status#FAILED}
+	 */
+	Status execute(BehaviorTreeInstance<E> instance, int slot);
+
+	/**
+	 * 进入节点时调用
+	 *
+	 * @param instance
+	 * @param slot
+	 */
+	default void start(BehaviorTreeInstance<E> instance, int slot) {
+
+	}
+
+	/**
+	 * 成功、失败或被取消时调用
+	 *
+	 * @param instance
+	 * @param slot
+	 */
+	default void end(BehaviorTreeInstance<E> instance, int slot) {
+
+	}
+
+	/**
+	 * 每个实例需要的int槽位个数
+	 *
+	 * @return
+	 */
+	default int getSlotCount() {
+		return 0;
+	}
+}
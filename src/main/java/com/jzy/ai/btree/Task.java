@@ -36,6 +36,8 @@ public abstract class Task<E> implements IMemoryObject,Serializable{
 	protected Task<E> guard;
 	/** 节点名称，调试识别 */
 	protected String name;
+	/** 性能统计，未统计为null */
+	transient BehaviorTreeProfiler.NodeMetrics metrics;
 
 	/**
 	 * 添加子任务
@@ -80,6 +82,18 @@ public abstract class Task<E> implements IMemoryObject,Serializable{
 		return tree.getObject();
 	}
 
+	/**
+	 * 所属行为树的黑板
+	 * 
+	 * @return 未设置返回null
+	 */
+	public Blackboard getBlackboard() {
+		if (tree == null) {
+			throw new IllegalStateException("行为树对象未设置");
+		}
+		return tree.getBlackboard();
+	}
+
 	public Task<E> getGuard() {
 		return guard;
 	}
@@ -168,6 +182,9 @@ public abstract class Task<E> implements IMemoryObject,Serializable{
 		if (tree.listeners != null && tree.listeners.size() > 0) {
 			tree.notifyStatusUpdated(this, previousStatus);
 		}
+		if (metrics != null) {
+			metrics.statusUpdated(Status.RUNNING);
+		}
 
 		if (control != null) {
 			control.childRunning(this, this);
@@ -196,6 +213,9 @@ public abstract class Task<E> implements IMemoryObject,Serializable{
 		if (tree.listeners != null && tree.listeners.size() > 0) {
 			tree.notifyStatusUpdated(this, previousStatus);
 		}
+		if (metrics != null) {
+			metrics.statusUpdated(Status.SUCCEEDED);
+		}
 
 		end();
 		if (control != null) {
@@ -213,6 +233,9 @@ public abstract class Task<E> implements IMemoryObject,Serializable{
 		if (tree.listeners != null && tree.listeners.size() > 0) {
 			tree.notifyStatusUpdated(this, previousStatus);
 		}
+		if (metrics != null) {
+			metrics.statusUpdated(Status.FAILED);
+		}
 
 		end();
 		if (control != null) {
@@ -246,6 +269,9 @@ public abstract class Task<E> implements IMemoryObject,Serializable{
 		status = Status.CANCELLED;
 		if (tree.listeners != null && tree.listeners.size() > 0)
 			tree.notifyStatusUpdated(this, previousStatus);
+		if (metrics != null) {
+			metrics.statusUpdated(Status.CANCELLED);
+		}
 		end();
 	}
 
@@ -287,6 +313,7 @@ public abstract class Task<E> implements IMemoryObject,Serializable{
 		guard = null;
 		status = Status.FRESH;
 		tree = null;
+		metrics = null;
 
 	}
 
@@ -0,0 +1,41 @@
+package com.jzy.ai.btree.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 任务依赖的消息码和黑板键，作用于任务类，一般用于防护条件和条件叶子
+ * <p>
+ * 行为树事件驱动模式下，只有收到依赖的消息或依赖的黑板数据变化时才从根节点重新执行，
+ * 否则直接继续执行运行中的叶子，见{@link com.jzy.ai.btree.BehaviorTree#setEventDriven(boolean)}
+ * </p>
+ * 依赖由节点配置决定时，任务类可直接实现该接口按实例返回，如{@link com.jzy.ai.btree.branch.UtilitySelector}；
+ * 依赖在行为树第一次使用时收集，之后修改配置不会更新
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Inherited
+@Documented
+public @interface TaskDependency {
+
+	/**
+	 * 依赖的消息码，{@link com.jzy.ai.msg.Telegram#message}
+	 *
+	 * @return
+	 */
+	public int[] messages() default {};
+
+	/**
+	 * 依赖的黑板键
+	 *
+	 * @return
+	 */
+	public String[] keys() default {};
+}
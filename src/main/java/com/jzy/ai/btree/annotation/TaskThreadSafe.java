@@ -0,0 +1,27 @@
+package com.jzy.ai.btree.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 叶子任务线程安全，作用于{@link com.jzy.ai.btree.LeafTask}类
+ * <p>
+ * {@link com.jzy.ai.btree.branch.ConcurrentParallel}下的该类叶子，{@link com.jzy.ai.btree.LeafTask#execute()}
+ * 提交到线程池执行，start、end、防护条件和结果通知仍在行为树线程。execute只能读取共享的游戏数据，
+ * 被取消时可能仍在执行（线程会被中断），需自行处理
+ * </p>
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Inherited
+@Documented
+public @interface TaskThreadSafe {
+
+}
@@ -0,0 +1,321 @@
+package com.jzy.ai.btree.branch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.jzy.ai.btree.LeafTask;
+import com.jzy.ai.btree.Task;
+import com.jzy.ai.btree.annotation.TaskAttribute;
+import com.jzy.ai.btree.annotation.TaskThreadSafe;
+
+/**
+ * 并发并行节点
+ * <p>
+ * 标记{@link TaskThreadSafe}的叶子孩子，每帧先在行为树线程start和检查防护条件，再把{@link LeafTask#execute()}
+ * 提交到线程池同时执行；其他孩子仍在行为树线程依次执行。之后按孩子顺序汇总结果，{@link Parallel.Policy}和
+ * {@link Parallel.Orchestrator}语义和{@link Parallel}相同，提前结束时取消未完成的兄弟节点<br>
+ * {@link #waitMillis}：小于0本帧等待全部完成；等于0不等待，未完成的孩子视为运行中，下一帧继续汇总；
+ * 大于0最多等待该毫秒数
+ * </p>
+ * 寻路、感知射线、目标评分等耗时叶子可以并发执行，状态回调都在行为树线程，不需要同步
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ * @param <E> 黑板对象
+ */
+public class ConcurrentParallel<E> extends Parallel<E> {
+	private static volatile Executor defaultExecutor = ForkJoinPool.commonPool();
+
+	/** 等待并发孩子的毫秒数 */
+	@TaskAttribute
+	public long waitMillis = -1;
+
+	/** 线程池，为null使用默认线程池 */
+	private transient Executor executor;
+	/** 孩子是否并发执行 */
+	private transient boolean[] concurrents;
+	/** 提交执行未汇总的孩子 */
+	private transient FutureTask<Status>[] futures;
+	/** 已start但防护条件未通过的孩子 */
+	private transient boolean[] guardFails;
+
+	public ConcurrentParallel() {
+		this(Policy.Sequence, Orchestrator.Resume);
+	}
+
+	public ConcurrentParallel(Policy policy, Orchestrator orchestrator) {
+		this(policy, orchestrator, new ArrayList<>());
+	}
+
+	public ConcurrentParallel(Policy policy, Orchestrator orchestrator, List<Task<E>> tasks) {
+		super(policy, orchestrator, tasks);
+	}
+
+	@Override
+	public void run() {
+		int n = children.size();
+		prepare(n);
+		noRunningTasks = true;
+		lastResult = null;
+		boolean join = orchestrator == Orchestrator.Join;
+
+		// 提交线程安全的叶子，上一帧未完成的继续等待
+		for (int i = 0; i < n; i++) {
+			if (!concurrents[i] || futures[i] != null) {
+				continue;
+			}
+			Task<E> child = children.get(i);
+			Status status = child.getStatus();
+			if (join && (status == Status.SUCCEEDED || status == Status.FAILED)) {
+				continue;
+			}
+			if (status != Status.RUNNING) {
+				child.setControl(this);
+				child.start();
+				if (!child.checkGuard(this)) {
+					guardFails[i] = true;
+					continue;
+				}
+			}
+			submit(i, (LeafTask<E>) child);
+		}
+
+		// 按孩子顺序汇总
+		long deadline = waitMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis) : 0;
+		for (currentChildIndex = 0; currentChildIndex < n; currentChildIndex++) {
+			Task<E> child = children.get(currentChildIndex);
+			if (concurrents[currentChildIndex]) {
+				if (guardFails[currentChildIndex]) {
+					guardFails[currentChildIndex] = false;
+					child.fail();
+				} else if (futures[currentChildIndex] != null) {
+					if (await(currentChildIndex, deadline)) {
+						((LeafTask<E>) child).applyResult(result(currentChildIndex));
+					} else {
+						// 未完成视为运行中
+						((LeafTask<E>) child).applyResult(Status.RUNNING);
+					}
+				}
+			} else {
+				Status status = child.getStatus();
+				if (status == Status.RUNNING) {
+					child.run();
+				} else if (!join || (status != Status.SUCCEEDED && status != Status.FAILED)) {
+					child.setControl(this);
+					child.start();
+					if (child.checkGuard(this)) {
+						child.run();
+					} else {
+						child.fail();
+					}
+				}
+			}
+
+			if (lastResult != null) { // 当前孩子已经成功或失败
+				cancelRunningChildren(noRunningTasks ? currentChildIndex + 1 : 0);
+				if (join) {
+					resetAllChildren();
+				}
+				if (lastResult) {
+					success();
+				} else {
+					fail();
+				}
+				return;
+			}
+		}
+		running();
+	}
+
+	/**
+	 * 孩子变化后重新计算
+	 *
+	 * @param n 孩子个数
+	 */
+	@SuppressWarnings("unchecked")
+	private void prepare(int n) {
+		if (concurrents != null && concurrents.length == n) {
+			return;
+		}
+		concurrents = new boolean[n];
+		for (int i = 0; i < n; i++) {
+			Task<E> child = children.get(i);
+			concurrents[i] = child instanceof LeafTask && child.getClass().isAnnotationPresent(TaskThreadSafe.class);
+		}
+		futures = new FutureTask[n];
+		guardFails = new boolean[n];
+	}
+
+	private void submit(int index, LeafTask<E> leafTask) {
+		FutureTask<Status> future = new FutureTask<>(leafTask::execute);
+		futures[index] = future;
+		try {
+			getExecutor().execute(future);
+		} catch (RejectedExecutionException e) {
+			// 线程池已满或关闭，当前线程执行
+			future.run();
+		}
+	}
+
+	/**
+	 * 按{@link #waitMillis}等待孩子执行完成
+	 *
+	 * @param index
+	 * @param deadline 最多等待到的时间，纳秒
+	 * @return 是否已完成
+	 */
+	private boolean await(int index, long deadline) {
+		FutureTask<Status> future = futures[index];
+		if (future.isDone() || waitMillis == 0) {
+			return future.isDone();
+		}
+		try {
+			if (waitMillis < 0) {
+				future.get();
+			} else {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return false;
+				}
+				future.get(remaining, TimeUnit.NANOSECONDS);
+			}
+			return true;
+		} catch (TimeoutException e) {
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException e) {
+			// 异常在获取结果时抛出
+			return true;
+		}
+	}
+
+	/**
+	 * 获取已完成孩子的执行结果，{@link LeafTask#execute()}的异常在行为树线程抛出，抛出前取消其他未完成的孩子
+	 *
+	 * @param index
+	 * @return
+	 */
+	private Status result(int index) {
+		FutureTask<Status> future = futures[index];
+		futures[index] = null;
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			abort(index);
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			abort(index);
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * 孩子执行异常，取消所有未完成的孩子，避免并行节点结束后兄弟节点仍在线程池执行
+	 *
+	 * @param index 异常的孩子
+	 */
+	private void abort(int index) {
+		Task<E> child = children.get(index);
+		if (child.getStatus() != Status.RUNNING) {
+			// 本帧start的孩子没有结果，取消保证start和end成对调用；运行中的孩子由cancelRunningChildren取消
+			child.cancel();
+		}
+		cancelRunningChildren(0);
+	}
+
+	/**
+	 * 同时取消未汇总的并发孩子，本帧已start但未通知结果的孩子也取消，保证start和end成对调用
+	 */
+	@Override
+	protected void cancelRunningChildren(int startIndex) {
+		if (futures != null) {
+			for (int i = startIndex; i < futures.length && i < children.size(); i++) {
+				Task<E> child = children.get(i);
+				FutureTask<Status> future = futures[i];
+				if (future != null) {
+					futures[i] = null;
+					future.cancel(true);
+					if (child.getStatus() != Status.RUNNING) {
+						child.cancel();
+					}
+				} else if (guardFails[i]) {
+					guardFails[i] = false;
+					child.cancel();
+				}
+			}
+		}
+		super.cancelRunningChildren(startIndex);
+	}
+
+	@Override
+	public void resetTask() {
+		super.resetTask();
+		concurrents = null;
+		futures = null;
+		guardFails = null;
+	}
+
+	@Override
+	public void release() {
+		waitMillis = -1;
+		executor = null;
+		concurrents = null;
+		futures = null;
+		guardFails = null;
+		super.release();
+	}
+
+	public Executor getExecutor() {
+		Executor executor = this.executor;
+		return executor != null ? executor : defaultExecutor;
+	}
+
+	/**
+	 * 设置线程池
+	 *
+	 * @param executor 为null使用默认线程池
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	public long getWaitMillis() {
+		return waitMillis;
+	}
+
+	public void setWaitMillis(long waitMillis) {
+		this.waitMillis = waitMillis;
+	}
+
+	/**
+	 * 设置默认线程池，默认{@link ForkJoinPool#commonPool()}
+	 *
+	 * @param executor
+	 */
+	public static void setDefaultExecutor(Executor executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("默认线程池不能为null");
+		}
+		defaultExecutor = executor;
+	}
+
+	public static Executor getDefaultExecutor() {
+		return defaultExecutor;
+	}
+}
@@ -74,9 +74,9 @@ public class Parallel<E> extends BranchTask<E> {
 	@TaskAttribute
 	public Orchestrator orchestrator;
 
-	private boolean noRunningTasks;
-	private Boolean lastResult;
-	private int currentChildIndex;
+	protected boolean noRunningTasks;
+	protected Boolean lastResult;
+	protected int currentChildIndex;
 
 	/**
 	 * Creates a parallel task with sequence policy, resume orchestrator and no
@@ -0,0 +1,570 @@
+package com.jzy.ai.btree.branch;
+
+import java.io.Serializable;
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.jzy.ai.btree.Blackboard;
+import com.jzy.ai.btree.BlackboardKey;
+import com.jzy.ai.btree.Task;
+import com.jzy.ai.btree.annotation.TaskAttribute;
+import com.jzy.ai.btree.annotation.TaskDependency;
+
+/**
+ * 效用选择器
+ * <p>
+ * 每个孩子配置若干{@link Consideration}，考虑因素从黑板读取输入，归一化后经过响应曲线得到0-1的分数，
+ * 孩子的分数为所有考虑因素分数的乘积（按个数补偿，避免因素多的孩子分数偏低）。start时按分数从高到低选出前{@link #topK}个
+ * 大于{@link #threshold}的孩子，像{@link Selector}一样依次执行直到成功，没有可选孩子时失败；没有考虑因素的孩子分数为1<br>
+ * 分数按考虑因素批量计算到复用的float数组，前k个孩子原地部分选择排序，不分配对象；黑板{@link Blackboard#getVersion()}
+ * 未变化时直接使用上次的结果<br>
+ * 孩子运行中时每次执行重新评分（黑板未变化时没有开销），排名在运行中孩子之前（含）的孩子变化时取消运行中的孩子，
+ * 从分数最高的孩子重新开始，见{@link #reevaluate}；考虑因素的黑板键作为{@link TaskDependency}，事件驱动模式下变化时从根节点执行
+ * </p>
+ * xml配置：
+ *
+ * <pre>
+ * &lt;UtilitySelector topK="2" threshold="0.1"&gt;
+ *     &lt;Sequence name="逃跑"&gt;
+ *         &lt;Consideration key="hp" min="0" max="100" curve="Logistic" slope="-10" xShift="0.3"/&gt;
+ *         ...
+ *     &lt;/Sequence&gt;
+ * &lt;/UtilitySelector&gt;
+ * </pre>
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ * @param <E> 黑板对象
+ */
+public class UtilitySelector<E> extends Selector<E> implements TaskDependency {
+	private static final int[] NO_MESSAGES = new int[0];
+
+	/** 最多尝试的孩子个数，小于等于0不限制 */
+	@TaskAttribute
+	public int topK;
+
+	/** 分数不大于该值的孩子不执行 */
+	@TaskAttribute
+	public float threshold;
+
+	/** 黑板未变化时使用上次的分数，{@link #input(Consideration, Blackboard)}读取黑板以外的数据时需关闭 */
+	public boolean cacheScores = true;
+
+	/** 孩子运行中时重新评分，排名变化时切换孩子 */
+	public boolean reevaluate = true;
+
+	/** 孩子的考虑因素，下标为孩子序号 */
+	private List<List<Consideration>> considerations = new ArrayList<>();
+
+	/** 考虑因素，按孩子顺序展开 */
+	private transient Consideration[] flatConsiderations;
+	/** 孩子考虑因素在展开数组中的开始位置，长度为孩子个数+1 */
+	private transient int[] considerationStarts;
+	/** 黑板键，延迟从黑板获取 */
+	private transient BlackboardKey[] keys;
+	/** 考虑因素的输入和分数 */
+	private transient float[] values;
+	/** 孩子分数 */
+	private transient float[] scores;
+	/** 孩子序号，前{@link #selectedCount}个按分数降序 */
+	private transient int[] order;
+	/** 重新评分前的排名 */
+	private transient int[] previousOrder;
+	/** 可执行的孩子个数 */
+	private transient int selectedCount;
+	/** 计算分数时的黑板 */
+	private transient Blackboard scoredBlackboard;
+	/** 计算分数时的黑板版本 */
+	private transient int scoredVersion;
+
+	public UtilitySelector() {
+		super();
+	}
+
+	@SafeVarargs
+	public UtilitySelector(Task<E>... tasks) {
+		super(tasks);
+	}
+
+	public UtilitySelector(List<Task<E>> tasks) {
+		super(tasks);
+	}
+
+	/**
+	 * 添加孩子的考虑因素
+	 *
+	 * @param childIndex    孩子序号
+	 * @param consideration
+	 */
+	public void addConsideration(int childIndex, Consideration consideration) {
+		while (considerations.size() <= childIndex) {
+			considerations.add(new ArrayList<>());
+		}
+		considerations.get(childIndex).add(consideration);
+		invalidate();
+	}
+
+	/**
+	 * 孩子的考虑因素
+	 *
+	 * @param childIndex
+	 * @return 不可修改
+	 */
+	public List<Consideration> getConsiderations(int childIndex) {
+		if (childIndex >= considerations.size()) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(considerations.get(childIndex));
+	}
+
+	@Override
+	protected int addChildToTask(Task<E> child) {
+		int index = super.addChildToTask(child);
+		invalidate();
+		return index;
+	}
+
+	@Override
+	public void start() {
+		super.start();
+		score();
+	}
+
+	@Override
+	public void run() {
+		if (runningChild != null && reevaluate && rankChanged()) {
+			runningChild.cancel();
+			runningChild = null;
+			currentChildIndex = 0;
+		}
+		if (runningChild != null) {
+			runningChild.run();
+		} else if (currentChildIndex < selectedCount) {
+			runningChild = children.get(order[currentChildIndex]);
+			runningChild.setControl(this);
+			runningChild.start();
+			if (!runningChild.checkGuard(this)) {
+				runningChild.fail();
+			} else {
+				run();
+			}
+		} else {
+			// 没有可选的孩子
+			fail();
+		}
+	}
+
+	@Override
+	public void childFail(Task<E> runningTask) {
+		runningChild = null;
+		if (++currentChildIndex < selectedCount) {
+			run();
+		} else {
+			fail();
+		}
+	}
+
+	/**
+	 * 运行中重新评分
+	 *
+	 * @return 排名在运行中孩子之前（含）的孩子是否变化
+	 */
+	private boolean rankChanged() {
+		Blackboard blackboard = getBlackboard();
+		if (flatConsiderations == null || flatConsiderations.length == 0 || cacheScores && blackboard != null
+				&& blackboard == scoredBlackboard && blackboard.getVersion() == scoredVersion) {
+			return false;
+		}
+		int count = currentChildIndex + 1;
+		System.arraycopy(order, 0, previousOrder, 0, count);
+		score();
+		if (selectedCount < count) {
+			return true;
+		}
+		for (int i = 0; i < count; i++) {
+			if (order[i] != previousOrder[i]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 计算孩子分数并选出前{@link #topK}个
+	 */
+	protected void score() {
+		int n = children.size();
+		if (flatConsiderations == null) {
+			prepare(n);
+		}
+		Blackboard blackboard = getBlackboard();
+		if (!cacheScores || blackboard == null || blackboard != scoredBlackboard
+				|| blackboard.getVersion() != scoredVersion) {
+			calculateScores(n, blackboard);
+			scoredBlackboard = blackboard;
+			scoredVersion = blackboard == null ? 0 : blackboard.getVersion();
+		}
+		select(n);
+	}
+
+	/**
+	 * 计算孩子分数
+	 *
+	 * @param n          孩子个数
+	 * @param blackboard
+	 */
+	private void calculateScores(int n, Blackboard blackboard) {
+		// 输入，归一化到0-1
+		Consideration[] flat = flatConsiderations;
+		float[] values = this.values;
+		for (int i = 0; i < flat.length; i++) {
+			values[i] = input(flat[i], blackboard);
+		}
+		for (int i = 0; i < flat.length; i++) {
+			Consideration consideration = flat[i];
+			float x = (values[i] - consideration.min) * consideration.invRange;
+			values[i] = x < 0 ? 0 : x > 1 ? 1 : x;
+		}
+		// 响应曲线
+		for (int i = 0; i < flat.length; i++) {
+			values[i] = flat[i].response(values[i]);
+		}
+		// 孩子分数，补偿因素个数
+		int[] starts = considerationStarts;
+		for (int c = 0; c < n; c++) {
+			int start = starts[c];
+			int count = starts[c + 1] - start;
+			float score = 1;
+			for (int i = start; i < start + count && score > 0; i++) {
+				score *= values[i];
+			}
+			if (count > 1 && score > 0) {
+				float makeUp = (1 - score) * (1 - 1f / count);
+				score += makeUp * score;
+			}
+			scores[c] = score;
+		}
+	}
+
+	/**
+	 * 部分选择排序，选出分数最高的前k个，分数相同时序号小的在前
+	 *
+	 * @param n 孩子个数
+	 */
+	private void select(int n) {
+		int limit = topK > 0 && topK < n ? topK : n;
+		int[] order = this.order;
+		float[] scores = this.scores;
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+		int count = 0;
+		for (; count < limit; count++) {
+			int best = -1;
+			float bestScore = threshold;
+			for (int i = count; i < n; i++) {
+				float score = scores[order[i]];
+				if (score > bestScore && score > 0
+						|| best >= 0 && score == bestScore && order[i] < order[best]) {
+					best = i;
+					bestScore = score;
+				}
+			}
+			if (best < 0) {
+				break;
+			}
+			int tmp = order[count];
+			order[count] = order[best];
+			order[best] = tmp;
+		}
+		selectedCount = count;
+	}
+
+	/**
+	 * 考虑因素的原始输入，默认读取黑板键，可重写读取其他数据（需关闭{@link #cacheScores}）
+	 *
+	 * @param consideration
+	 * @param blackboard    可能为null
+	 * @return 归一化前的值
+	 */
+	protected float input(Consideration consideration, Blackboard blackboard) {
+		int index = consideration.index;
+		BlackboardKey key = keys[index];
+		if (key == null) {
+			if (blackboard == null) {
+				throw new IllegalStateException(String.format("%s 没有黑板，不能读取考虑因素 %s", getName(), consideration.key));
+			}
+			key = blackboard.getKey(consideration.key);
+			if (key == null) {
+				throw new IllegalStateException(String.format("%s 考虑因素黑板键 %s 未定义", getName(), consideration.key));
+			}
+			keys[index] = key;
+		}
+		switch (key.type) {
+		case BlackboardKey.TYPE_INT:
+			return blackboard.getInt(key);
+		case BlackboardKey.TYPE_FLOAT:
+			return blackboard.getFloat(key);
+		case BlackboardKey.TYPE_LONG:
+			return blackboard.getLong(key);
+		default:
+			throw new IllegalStateException(String.format("%s 考虑因素黑板键 %s 不是数值类型", getName(), consideration.key));
+		}
+	}
+
+	/**
+	 * 展开考虑因素，分配计算用的数组
+	 *
+	 * @param n 孩子个数
+	 */
+	private void prepare(int n) {
+		int[] starts = new int[n + 1];
+		List<Consideration> flat = new ArrayList<>();
+		for (int c = 0; c < n; c++) {
+			starts[c] = flat.size();
+			if (c < considerations.size()) {
+				for (Consideration consideration : considerations.get(c)) {
+					consideration.index = flat.size();
+					flat.add(consideration);
+				}
+			}
+		}
+		starts[n] = flat.size();
+		considerationStarts = starts;
+		flatConsiderations = flat.toArray(new Consideration[0]);
+		keys = new BlackboardKey[flat.size()];
+		values = new float[flat.size()];
+		scores = new float[n];
+		order = new int[n];
+		previousOrder = new int[n];
+	}
+
+	/**
+	 * 孩子或考虑因素变化后重新展开
+	 */
+	private void invalidate() {
+		flatConsiderations = null;
+		scoredBlackboard = null;
+		selectedCount = 0;
+	}
+
+	/**
+	 * 孩子的分数，start后有效
+	 *
+	 * @param childIndex
+	 * @return
+	 */
+	public float getScore(int childIndex) {
+		return scores == null ? 0 : scores[childIndex];
+	}
+
+	/**
+	 * 可执行的孩子个数，start后有效
+	 *
+	 * @return
+	 */
+	public int getSelectedCount() {
+		return selectedCount;
+	}
+
+	/**
+	 * 按分数排名的孩子
+	 *
+	 * @param rank 小于{@link #getSelectedCount()}
+	 * @return
+	 */
+	public Task<E> getSelectedChild(int rank) {
+		if (rank >= selectedCount) {
+			throw new IndexOutOfBoundsException("rank can't be >= selected count: " + rank + " >= " + selectedCount);
+		}
+		return children.get(order[rank]);
+	}
+
+	@Override
+	public void resetTask() {
+		super.resetTask();
+		// 重新关联行为树后黑板可能变化
+		keys = flatConsiderations == null ? null : new BlackboardKey[flatConsiderations.length];
+		scoredBlackboard = null;
+		selectedCount = 0;
+	}
+
+	@Override
+	public void release() {
+		topK = 0;
+		threshold = 0;
+		cacheScores = true;
+		reevaluate = true;
+		considerations.clear();
+		invalidate();
+		super.release();
+	}
+
+	/**
+	 * 依赖的黑板键，考虑因素的输入
+	 */
+	@Override
+	public String[] keys() {
+		Set<String> keys = new LinkedHashSet<>();
+		for (List<Consideration> list : considerations) {
+			for (Consideration consideration : list) {
+				keys.add(consideration.key);
+			}
+		}
+		return keys.toArray(new String[0]);
+	}
+
+	@Override
+	public int[] messages() {
+		return NO_MESSAGES;
+	}
+
+	@Override
+	public Class<? extends Annotation> annotationType() {
+		return TaskDependency.class;
+	}
+
+	public int getTopK() {
+		return topK;
+	}
+
+	public void setTopK(int topK) {
+		this.topK = topK;
+	}
+
+	public float getThreshold() {
+		return threshold;
+	}
+
+	public void setThreshold(float threshold) {
+		this.threshold = threshold;
+	}
+
+	/**
+	 * 响应曲线，x为归一化后的输入，m斜率、k指数、c为x偏移、b为y偏移，结果限制在0-1
+	 */
+	public enum Curve {
+		/** y = m(x-c)+b */
+		Linear,
+		/** y = m(x-c)^k+b */
+		Polynomial,
+		/** y = k/(1+e^(-m(x-c)))+b */
+		Logistic,
+		/** x &gt;= c 时 y = m+b，否则 y = b */
+		Step,
+		;
+
+		/**
+		 * 解析曲线名称，忽略大小写
+		 *
+		 * @param name
+		 * @return
+		 * @throws IllegalArgumentException 名称非法
+		 */
+		public static Curve parse(String name) {
+			for (Curve curve : values()) {
+				if (curve.name().equalsIgnoreCase(name)) {
+					return curve;
+				}
+			}
+			throw new IllegalArgumentException(String.format("响应曲线 %s 不存在", name));
+		}
+	}
+
+	/**
+	 * 考虑因素
+	 *
+	 * @author JiangZhiYong
+	 * @mail 359135103@qq.com
+	 */
+	public static final class Consideration implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		/** 输入的黑板键，int、float或long类型 */
+		public final String key;
+		public final Curve curve;
+		/** 输入范围，归一化到0-1 */
+		public final float min;
+		public final float max;
+		/** 斜率m */
+		public final float slope;
+		/** 指数k */
+		public final float exponent;
+		/** x偏移c */
+		public final float xShift;
+		/** y偏移b */
+		public final float yShift;
+
+		/** 1/(max-min) */
+		final float invRange;
+		/** 在展开数组中的位置 */
+		transient int index;
+
+		/**
+		 * 线性，输入范围0-1
+		 *
+		 * @param key
+		 */
+		public Consideration(String key) {
+			this(key, Curve.Linear, 0, 1, 1, 1, 0, 0);
+		}
+
+		public Consideration(String key, Curve curve, float min, float max, float slope, float exponent, float xShift,
+				float yShift) {
+			if (key == null || key.isEmpty()) {
+				throw new IllegalArgumentException("考虑因素未设置黑板键");
+			}
+			if (max == min) {
+				throw new IllegalArgumentException(String.format("考虑因素 %s 输入范围min和max相同", key));
+			}
+			this.key = key;
+			this.curve = curve == null ? Curve.Linear : curve;
+			this.min = min;
+			this.max = max;
+			this.slope = slope;
+			this.exponent = exponent;
+			this.xShift = xShift;
+			this.yShift = yShift;
+			this.invRange = 1 / (max - min);
+		}
+
+		/**
+		 * 响应曲线
+		 *
+		 * @param x 归一化后的输入
+		 * @return 0-1
+		 */
+		public float response(float x) {
+			float y;
+			switch (curve) {
+			case Linear:
+				y = slope * (x - xShift) + yShift;
+				break;
+			case Polynomial:
+				y = slope * (float) Math.pow(x - xShift, exponent) + yShift;
+				break;
+			case Logistic:
+				y = exponent / (1 + (float) Math.exp(-slope * (x - xShift))) + yShift;
+				break;
+			case Step:
+				y = (x >= xShift ? slope : 0) + yShift;
+				break;
+			default:
+				y = 0;
+				break;
+			}
+			// NaN（如负数的小数次幂）视为0
+			return y > 0 ? (y < 1 ? y : 1) : 0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s(%s,%s-%s,m=%s,k=%s,c=%s,b=%s)", key, curve, min, max, slope, exponent, xShift,
+					yShift);
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package com.jzy.ai.btree.leaf;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jzy.ai.btree.LeafTask;
+
+/**
+ * 异步叶子<br>
+ * start时通过{@link #startAsync()}开始异步操作（寻路、数据库查询等），完成前每帧返回{@link Status#RUNNING}，
+ * 完成后在之后的执行中按结果返回成功或失败，不阻塞行为树线程也不需要自己轮询状态。<br>
+ * 叶子被取消（行为树cancel、并行节点提前结束、防护条件打断）时取消{@link CompletableFuture}，
+ * 异步操作可通过{@link CompletableFuture#isCancelled()}提前结束
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ * @param <E> 黑板对象
+ * @param <T> 异步结果类型
+ */
+public abstract class AsyncLeafTask<E, T> extends LeafTask<E> {
+	private static final Logger LOGGER = LoggerFactory.getLogger(AsyncLeafTask.class);
+
+	/** 进行中的异步操作 */
+	private transient CompletableFuture<T> future;
+
+	/**
+	 * 开始异步操作，在行为树线程调用
+	 *
+	 * @return 不能为null
+	 */
+	protected abstract CompletableFuture<T> startAsync();
+
+	/**
+	 * 异步操作完成，在行为树线程调用<br>
+	 * 默认结果为{@link Status}时直接返回，为false时失败，其他成功
+	 *
+	 * @param result
+	 * @return {@link Status#SUCCEEDED}、{@link Status#FAILED}，返回{@link Status#RUNNING}时下一帧重新开始异步操作
+	 */
+	protected Status onComplete(T result) {
+		if (result instanceof Status) {
+			return (Status) result;
+		}
+		return Boolean.FALSE.equals(result) ? Status.FAILED : Status.SUCCEEDED;
+	}
+
+	/**
+	 * 异步操作异常，在行为树线程调用，默认失败
+	 *
+	 * @param cause
+	 * @return
+	 */
+	protected Status onFailure(Throwable cause) {
+		LOGGER.warn(String.format("%s 异步执行异常", getName() != null ? getName() : getClass().getName()), cause);
+		return Status.FAILED;
+	}
+
+	/**
+	 * 异步操作被取消，在行为树线程调用，默认不处理
+	 *
+	 * @param future
+	 */
+	protected void onCancel(CompletableFuture<T> future) {
+	}
+
+	@Override
+	public final void start() {
+		future = startAsync();
+		if (future == null) {
+			throw new IllegalStateException(String.format("%s startAsync返回null", getClass().getName()));
+		}
+	}
+
+	@Override
+	public final Status execute() {
+		CompletableFuture<T> future = this.future;
+		if (future == null) {
+			// onComplete返回运行中，重新开始
+			start();
+			future = this.future;
+		}
+		if (!future.isDone()) {
+			return Status.RUNNING;
+		}
+		this.future = null;
+		T result;
+		try {
+			result = future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return onFailure(e);
+		} catch (ExecutionException | CompletionException e) {
+			return onFailure(e.getCause() != null ? e.getCause() : e);
+		} catch (CancellationException e) {
+			return onFailure(e);
+		}
+		return onComplete(result);
+	}
+
+	/**
+	 * 成功、失败或取消，未完成的异步操作被取消
+	 */
+	@Override
+	public final void end() {
+		CompletableFuture<T> future = this.future;
+		if (future != null) {
+			this.future = null;
+			future.cancel(true);
+			onCancel(future);
+		}
+	}
+
+	/**
+	 * 进行中的异步操作
+	 *
+	 * @return 未开始或已完成返回null
+	 */
+	public CompletableFuture<T> getFuture() {
+		return future;
+	}
+
+	@Override
+	public void release() {
+		end();
+		super.release();
+	}
+}
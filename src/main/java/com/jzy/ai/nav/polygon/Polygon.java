@@ -31,6 +31,10 @@ public class Polygon implements Shape {
 	public List<Vector3> points;
 	/** y轴，所有顶点平均高度 */
 	public float y;
+	/** 顶点最低高度 */
+	public float minY;
+	/** 顶点最高高度 */
+	public float maxY;
 	/** 中心坐标 */
 	public Vector3 center;
 	/** 面积 */
@@ -49,6 +53,10 @@ public class Polygon implements Shape {
 	public transient List<Connection<Polygon>> connections;
 	/** 预先生成的随机点 */
 	public List<Vector3> randomPoints = new ArrayList<>();
+	/** 动态阻挡，阻挡后不能进出该多边形，通过{@link PolygonGraph#setBlocked(Polygon, boolean)}修改 */
+	public transient boolean blocked;
+	/** 所在分块槽位，分块地图使用，见{@link PolygonTiledGraph} */
+	public transient int tileSlot;
 
 	public Polygon(int index, List<Vector3> points, int[] vectorIndexs) {
 		this.index = index;
@@ -95,8 +103,12 @@ public class Polygon implements Shape {
 		calculateRadius();
 		calculateIsConvex();
 		// y坐标
+		minY = Float.POSITIVE_INFINITY;
+		maxY = Float.NEGATIVE_INFINITY;
 		for (Vector3 point : points) {
 			y += point.y;
+			minY = Math.min(minY, point.y);
+			maxY = Math.max(maxY, point.y);
 		}
 		y = y / points.size();
 	}
@@ -238,6 +250,86 @@ public class Polygon implements Shape {
 		return Intersector.isPointInPolygon(points, point);
 	}
 
+	/**
+	 * 多边形表面在xz坐标处的高度
+	 * <p>
+	 * 多边形按第一个顶点扇形剖分为三角形，在包含坐标的三角形平面上插值；斜坡、楼梯等顶点高度不同的多边形比平均高度精确。
+	 * 坐标在多边形外时使用最近三角形所在平面外推
+	 * </p>
+	 * 
+	 * @param x
+	 * @param z
+	 * @return
+	 */
+	public float getHeight(float x, float z) {
+		Vector3 a = points.get(0);
+		float height = y;
+		float bestWeight = Float.NEGATIVE_INFINITY;
+		for (int i = 1, n = points.size() - 1; i < n; i++) {
+			Vector3 b = points.get(i);
+			Vector3 c = points.get(i + 1);
+			float det = (b.z - c.z) * (a.x - c.x) + (c.x - b.x) * (a.z - c.z);
+			if (det == 0) {
+				continue;
+			}
+			// 重心坐标
+			float wa = ((b.z - c.z) * (x - c.x) + (c.x - b.x) * (z - c.z)) / det;
+			float wb = ((c.z - a.z) * (x - c.x) + (a.x - c.x) * (z - c.z)) / det;
+			float wc = 1 - wa - wb;
+			float weight = Math.min(wa, Math.min(wb, wc));
+			if (weight > bestWeight) {
+				bestWeight = weight;
+				height = wa * a.y + wb * b.y + wc * c.y;
+				if (weight >= 0) {
+					break;
+				}
+			}
+		}
+		return height;
+	}
+
+	/**
+	 * 多边形上离坐标点最近的点（xz平面），坐标点在多边形内部时为坐标点自身
+	 * 
+	 * @param point
+	 * @param out
+	 *            输出坐标，高度为多边形平均高度，为null时只计算距离
+	 * @return xz平面距离平方
+	 */
+	public float getNearestPoint(Vector3 point, Vector3 out) {
+		if (isInnerPoint(point)) {
+			if (out != null) {
+				out.set(point.x, y, point.z);
+			}
+			return 0;
+		}
+		float minDst2 = Float.POSITIVE_INFINITY;
+		float nearestX = point.x;
+		float nearestZ = point.z;
+		Vector3 pointIBefore = points.get(points.size() - 1);
+		for (int i = 0; i < points.size(); i++) {
+			Vector3 pointI = points.get(i);
+			float dx = pointI.x - pointIBefore.x;
+			float dz = pointI.z - pointIBefore.z;
+			float len2 = dx * dx + dz * dz;
+			float t = len2 == 0 ? 0
+					: Math.max(0, Math.min(1, ((point.x - pointIBefore.x) * dx + (point.z - pointIBefore.z) * dz) / len2));
+			float x = pointIBefore.x + dx * t;
+			float z = pointIBefore.z + dz * t;
+			float dst2 = (point.x - x) * (point.x - x) + (point.z - z) * (point.z - z);
+			if (dst2 < minDst2) {
+				minDst2 = dst2;
+				nearestX = x;
+				nearestZ = z;
+			}
+			pointIBefore = pointI;
+		}
+		if (out != null) {
+			out.set(nearestX, y, nearestZ);
+		}
+		return minDst2;
+	}
+
 	/**
 	 * 是否包含另外一个多边形
 	 * 
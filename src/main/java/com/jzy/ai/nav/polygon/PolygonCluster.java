@@ -0,0 +1,50 @@
+package com.jzy.ai.nav.polygon;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.jzy.ai.pfa.Connection;
+import com.jzy.javalib.math.geometry.Vector3;
+
+/**
+ * 多边形区域，分层寻路的抽象节点
+ * <br>
+ * 同一网格单元内相互连通的多边形组成一个区域
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class PolygonCluster {
+	/** 区域序号 */
+	public final int index;
+	/** 区域内的多边形 */
+	public final List<Polygon> polygons = new ArrayList<>();
+	/** 中心坐标，多边形中心平均值 */
+	public final Vector3 center = new Vector3();
+	/** 和相邻区域的连接 */
+	public final List<Connection<PolygonCluster>> connections = new ArrayList<>();
+
+	public PolygonCluster(int index) {
+		this.index = index;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * 计算中心坐标
+	 */
+	void calculateCenter() {
+		center.set(0, 0, 0);
+		for (Polygon polygon : polygons) {
+			center.add(polygon.center);
+		}
+		center.scl(1f / polygons.size());
+	}
+
+	@Override
+	public String toString() {
+		return "PolygonCluster [index=" + index + ", polygons=" + polygons.size() + ", center=" + center + "]";
+	}
+}
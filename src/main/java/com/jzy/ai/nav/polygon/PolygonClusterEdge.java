@@ -0,0 +1,44 @@
+package com.jzy.ai.nav.polygon;
+
+import com.jzy.ai.pfa.Connection;
+
+/**
+ * 相邻区域的连接
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class PolygonClusterEdge implements Connection<PolygonCluster> {
+	/** 源区域 */
+	public final PolygonCluster fromNode;
+	/** 指向的区域 */
+	public final PolygonCluster toNode;
+	/** 经过共享边中点的区域中心距离，取所有边界共享边的最小值 */
+	float cost;
+
+	public PolygonClusterEdge(PolygonCluster fromNode, PolygonCluster toNode, float cost) {
+		this.fromNode = fromNode;
+		this.toNode = toNode;
+		this.cost = cost;
+	}
+
+	@Override
+	public float getCost() {
+		return cost;
+	}
+
+	@Override
+	public PolygonCluster getFromNode() {
+		return fromNode;
+	}
+
+	@Override
+	public PolygonCluster getToNode() {
+		return toNode;
+	}
+
+	@Override
+	public String toString() {
+		return "PolygonClusterEdge [fromNode=" + fromNode.index + ", toNode=" + toNode.index + ", cost=" + cost + "]";
+	}
+}
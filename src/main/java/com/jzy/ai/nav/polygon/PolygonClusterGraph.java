@@ -0,0 +1,167 @@
+package com.jzy.ai.nav.polygon;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jzy.ai.pfa.Connection;
+import com.jzy.ai.pfa.IndexedGraph;
+import com.jzy.javalib.math.geometry.Vector3;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 多边形区域图，分层寻路的抽象层
+ * <p>
+ * 1、按多边形中心坐标将多边形划分到边长为clusterSize的网格单元<br>
+ * 2、同一网格单元内相互连通的多边形组成一个区域，保证区域内部连通<br>
+ * 3、区域之间存在共享边则相连，消耗为经过共享边中点的两区域中心距离（取最小值）<br>
+ * </p>
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class PolygonClusterGraph implements IndexedGraph<PolygonCluster> {
+	private static final Logger LOGGER = LoggerFactory.getLogger(PolygonClusterGraph.class);
+
+	private final PolygonGraph graph;
+	/** 网格单元边长 */
+	private final float clusterSize;
+	private final List<PolygonCluster> clusters = new ArrayList<>();
+	/** 多边形序号对应的区域序号 */
+	private final int[] clusterIds;
+
+	/**
+	 * @param graph       多边形图
+	 * @param clusterSize 区域网格边长，一般为多边形平均尺寸的数倍
+	 */
+	public PolygonClusterGraph(PolygonGraph graph, float clusterSize) {
+		this.graph = graph;
+		this.clusterSize = clusterSize;
+		this.clusterIds = new int[graph.getNodeCount()];
+		Arrays.fill(clusterIds, -1);
+		createClusters();
+		createClusterEdges();
+		LOGGER.debug("地图：{} 多边形个数：{} 区域个数：{}", graph.getPolygonData().getMapID(), graph.getNodeCount(),
+				clusters.size());
+	}
+
+	/**
+	 * 划分区域
+	 */
+	private void createClusters() {
+		float startX = graph.getPolygonData().getStartX() * graph.getScale();
+		float startZ = graph.getPolygonData().getStartZ() * graph.getScale();
+		int[] cells = new int[clusterIds.length];
+		for (Polygon polygon : graph.getPolygons()) {
+			int cellX = (int) ((polygon.center.x - startX) / clusterSize);
+			int cellZ = (int) ((polygon.center.z - startZ) / clusterSize);
+			cells[polygon.getIndex()] = (cellX << 16) ^ cellZ;
+		}
+
+		// 同一网格内广度优先划分连通区域
+		Deque<Polygon> queue = new ArrayDeque<>();
+		for (Polygon polygon : graph.getPolygons()) {
+			if (clusterIds[polygon.getIndex()] >= 0) {
+				continue;
+			}
+			PolygonCluster cluster = new PolygonCluster(clusters.size());
+			clusters.add(cluster);
+			clusterIds[polygon.getIndex()] = cluster.index;
+			queue.add(polygon);
+			while (!queue.isEmpty()) {
+				Polygon current = queue.poll();
+				cluster.polygons.add(current);
+				for (Connection<Polygon> connection : graph.getConnections(current)) {
+					Polygon neighbor = connection.getToNode();
+					int index = neighbor.getIndex();
+					if (clusterIds[index] < 0 && cells[index] == cells[current.getIndex()]) {
+						clusterIds[index] = cluster.index;
+						queue.add(neighbor);
+					}
+				}
+			}
+			cluster.calculateCenter();
+		}
+	}
+
+	/**
+	 * 计算区域之间的连接
+	 */
+	private void createClusterEdges() {
+		Map<Long, PolygonClusterEdge> edges = new HashMap<>();
+		Vector3 portal = new Vector3();
+		for (Polygon polygon : graph.getPolygons()) {
+			PolygonCluster from = clusters.get(clusterIds[polygon.getIndex()]);
+			for (Connection<Polygon> connection : graph.getConnections(polygon)) {
+				PolygonCluster to = clusters.get(clusterIds[connection.getToNode().getIndex()]);
+				if (from == to) {
+					continue;
+				}
+				PolygonEdge edge = (PolygonEdge) connection;
+				portal.set(edge.leftVertex).add(edge.rightVertex).scl(0.5f);
+				float cost = from.center.dst(portal) + portal.dst(to.center);
+				long key = ((long) from.index << 32) | to.index;
+				PolygonClusterEdge clusterEdge = edges.get(key);
+				if (clusterEdge == null) {
+					clusterEdge = new PolygonClusterEdge(from, to, cost);
+					edges.put(key, clusterEdge);
+					from.connections.add(clusterEdge);
+				} else if (cost < clusterEdge.cost) {
+					clusterEdge.cost = cost;
+				}
+			}
+		}
+	}
+
+	@Override
+	public List<Connection<PolygonCluster>> getConnections(PolygonCluster fromNode) {
+		return fromNode.connections;
+	}
+
+	@Override
+	public int getIndex(PolygonCluster node) {
+		return node.getIndex();
+	}
+
+	@Override
+	public int getNodeCount() {
+		return clusters.size();
+	}
+
+	/**
+	 * 多边形所在区域
+	 *
+	 * @param polygon
+	 * @return
+	 */
+	public PolygonCluster getCluster(Polygon polygon) {
+		return clusters.get(clusterIds[polygon.getIndex()]);
+	}
+
+	/**
+	 * 多边形所在区域序号
+	 *
+	 * @param polygonIndex
+	 * @return
+	 */
+	public int getClusterId(int polygonIndex) {
+		return clusterIds[polygonIndex];
+	}
+
+	public List<PolygonCluster> getClusters() {
+		return clusters;
+	}
+
+	public PolygonGraph getGraph() {
+		return graph;
+	}
+
+	public float getClusterSize() {
+		return clusterSize;
+	}
+}
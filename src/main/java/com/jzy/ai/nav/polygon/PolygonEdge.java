@@ -21,6 +21,10 @@ public class PolygonEdge implements Connection<Polygon> {
 	public Polygon toNode;
 	/**两多边形中心点间的距离*/
 	private float cost;
+	/** 是否可通行，动态阻挡 */
+	boolean enabled = true;
+	/** 消耗倍数，不小于1 */
+	float costMultiplier = 1;
 	
 	public PolygonEdge(Polygon fromNode, Polygon toNode, Vector3 rightVertex, Vector3 leftVertex) {
 		this.fromNode = fromNode;
@@ -31,12 +35,32 @@ public class PolygonEdge implements Connection<Polygon> {
 
 	@Override
 	public float getCost() {
+		return getBaseCost() * costMultiplier;
+	}
+
+	/**
+	 * 两多边形中心点间的距离，不含消耗倍数
+	 */
+	@Override
+	public float getBaseCost() {
 		if(cost==0) {
 			cost=fromNode.center.dst(toNode.center);
 		}
 		return cost;
 	}
 
+	/**
+	 * 共享边可通行且两侧多边形都没有被阻挡
+	 */
+	@Override
+	public boolean isEnabled() {
+		return enabled && !fromNode.blocked && !toNode.blocked;
+	}
+
+	public float getCostMultiplier() {
+		return costMultiplier;
+	}
+
 	@Override
 	public Polygon getFromNode() {
 		return fromNode;
@@ -0,0 +1,194 @@
+package com.jzy.ai.nav.polygon;
+
+import com.jzy.ai.pfa.IndexedDijkstraPathFinder;
+import com.jzy.ai.pfa.NextHopTable;
+import com.jzy.ai.steer.behaviors.FollowFlowField;
+import com.jzy.javalib.math.geometry.Vector3;
+
+/**
+ * 多边形流场
+ * <p>
+ * 以目标点所在多边形为起点，在多边形图上反向执行一次Dijkstra扫描（{@link IndexedDijkstraPathFinder}），记录每个多边形到目标的消耗以及朝向目标的下一条共享边。
+ * 任意位置查询时，定位所在多边形，返回指向下一条共享边（目标多边形内直接指向目标点）的单位向量，供{@link FollowFlowField}使用。
+ * </p>
+ * <p>
+ * 一次扫描可服务任意数量的追击者，避免大量怪物追同一个目标时各自执行A*寻路。
+ * 流场创建后目标不变，可跨线程共享；目标在同一个多边形内移动时通过{@link #withGoal(Vector3)}创建新流场，共用扫描结果，不重新扫描。
+ * 图动态阻挡变化后在下次查询时重新完整扫描，新结果整体替换旧结果，查询不会读到扫描了一半的数据。
+ * </p>
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class PolygonFlowField implements FollowFlowField.FlowField<Vector3> {
+	/** 共享边端点收缩比例，避免贴着拐角行走 */
+	private static final float PORTAL_MARGIN = 0.1f;
+
+	private final PolygonGraph graph;
+	/** 目标多边形的扫描结果，同一目标多边形的流场共用 */
+	private final Sweep sweep;
+	/** 目标点 */
+	private final Vector3 goal;
+
+	/**
+	 * @param graph       图
+	 * @param goalPolygon 目标点所在多边形
+	 * @param goalPoint   目标点
+	 */
+	public PolygonFlowField(PolygonGraph graph, Polygon goalPolygon, Vector3 goalPoint) {
+		this(new Sweep(graph, goalPolygon), goalPoint);
+	}
+
+	PolygonFlowField(Sweep sweep, Vector3 goalPoint) {
+		this.graph = sweep.graph;
+		this.sweep = sweep;
+		this.goal = new Vector3(goalPoint);
+	}
+
+	/**
+	 * 同一目标多边形内的新目标点
+	 *
+	 * @param goalPoint 目标点，需在{@link #getGoalPolygon()}内
+	 * @return 共用扫描结果的新流场
+	 */
+	public PolygonFlowField withGoal(Vector3 goalPoint) {
+		return new PolygonFlowField(sweep, goalPoint);
+	}
+
+	@Override
+	public Vector3 lookup(Vector3 position) {
+		return lookup(position, new Vector3());
+	}
+
+	/**
+	 * 获取坐标点的流向
+	 *
+	 * @param position 坐标点
+	 * @param out      输出的单位向量
+	 * @return 流向，不在行走层或不可达返回null
+	 */
+	public Vector3 lookup(Vector3 position, Vector3 out) {
+		Polygon polygon = graph.getQuadTree().get(position, null);
+		if (polygon == null) {
+			return null;
+		}
+		return lookup(polygon, position, out);
+	}
+
+	/**
+	 * 获取坐标点的流向
+	 *
+	 * @param polygon  坐标点所在多边形
+	 * @param position 坐标点
+	 * @param out      输出的单位向量
+	 * @return 流向，不可达返回null
+	 */
+	public Vector3 lookup(Polygon polygon, Vector3 position, Vector3 out) {
+		if (polygon == sweep.goalPolygon) {
+			out.set(goal.x - position.x, 0, goal.z - position.z);
+			return out.nor();
+		}
+		PolygonEdge edge = (PolygonEdge) sweep.getTable().getNextConnection(polygon.getIndex());
+		if (edge == null) {
+			return null;
+		}
+		// 坐标在共享边上的投影，限制在收缩后的边内
+		Vector3 a = edge.rightVertex;
+		Vector3 b = edge.leftVertex;
+		float dx = b.x - a.x;
+		float dz = b.z - a.z;
+		float len2 = dx * dx + dz * dz;
+		float t = len2 == 0 ? 0.5f : ((position.x - a.x) * dx + (position.z - a.z) * dz) / len2;
+		t = Math.max(PORTAL_MARGIN, Math.min(1 - PORTAL_MARGIN, t));
+		out.set(a.x + dx * t - position.x, 0, a.z + dz * t - position.z);
+		return out.nor();
+	}
+
+	/**
+	 * 多边形到目标的消耗
+	 *
+	 * @param polygon
+	 * @return 不可达返回{@link Float#POSITIVE_INFINITY}
+	 */
+	public float getCost(Polygon polygon) {
+		return sweep.getTable().getCost(polygon.getIndex());
+	}
+
+	/**
+	 * 多边形朝向目标的下一条共享边
+	 *
+	 * @param polygon
+	 * @return 目标多边形或不可达返回null
+	 */
+	public PolygonEdge getNextEdge(Polygon polygon) {
+		return (PolygonEdge) sweep.getTable().getNextConnection(polygon.getIndex());
+	}
+
+	public Polygon getGoalPolygon() {
+		return sweep.goalPolygon;
+	}
+
+	/**
+	 * @return 副本
+	 */
+	public Vector3 getGoal() {
+		return new Vector3(goal);
+	}
+
+	/**
+	 * 目标多边形的扫描结果
+	 * <p>
+	 * 第一次查询时扫描；每次扫描写入新的下一跳表，完成后和图版本号一起替换，已取得旧表的查询继续读取旧表
+	 * </p>
+	 */
+	static final class Sweep {
+		final PolygonGraph graph;
+		final Polygon goalPolygon;
+		private final IndexedDijkstraPathFinder<Polygon> pathFinder;
+		/** 最新扫描结果，未扫描为null */
+		private volatile Result result;
+
+		Sweep(PolygonGraph graph, Polygon goalPolygon) {
+			this.graph = graph;
+			this.goalPolygon = goalPolygon;
+			this.pathFinder = new IndexedDijkstraPathFinder<>(graph);
+		}
+
+		/**
+		 * 当前图版本的下一跳表，图动态修改后重新扫描
+		 *
+		 * @return
+		 */
+		NextHopTable<Polygon> getTable() {
+			Result result = this.result;
+			if (result == null || result.generation != graph.getGeneration()) {
+				synchronized (this) {
+					result = this.result;
+					if (result == null || result.generation != graph.getGeneration()) {
+						result = search();
+						this.result = result;
+					}
+				}
+			}
+			return result.table;
+		}
+
+		private Result search() {
+			int generation = graph.getGeneration();
+			NextHopTable<Polygon> table = pathFinder.createTable();
+			pathFinder.search(goalPolygon, table);
+			return new Result(generation, table);
+		}
+	}
+
+	/** 扫描结果，创建后不再修改 */
+	private static final class Result {
+		final int generation;
+		final NextHopTable<Polygon> table;
+
+		Result(int generation, NextHopTable<Polygon> table) {
+			this.generation = generation;
+			this.table = table;
+		}
+	}
+}
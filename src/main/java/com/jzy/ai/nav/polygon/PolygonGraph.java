@@ -12,8 +12,8 @@ import java.util.TreeMap;
 
 import com.jzy.ai.nav.triangle.Triangle;
 import com.jzy.ai.pfa.Connection;
+import com.jzy.ai.pfa.GraphComponents;
 import com.jzy.ai.pfa.IndexedGraph;
-import com.jzy.ai.quadtree.QuadTree;
 import com.jzy.ai.quadtree.polygon.PolygonGuadTree;
 import com.jzy.javalib.math.geometry.Vector3;
 import org.slf4j.Logger;
@@ -28,6 +28,10 @@ import org.slf4j.LoggerFactory;
  */
 public class PolygonGraph implements IndexedGraph<Polygon> {
 	private static final Logger LOGGER = LoggerFactory.getLogger(PolygonGraph.class);
+	/** 射线检测边相交参数精度 */
+	private static final float RAYCAST_PRECISION = 0.0001f;
+	/** 射线检测穿过共享边的距离精度 */
+	private static final float SEGMENT_PRECISION = 0.01f;
 
 	private List<Polygon> polygons = new ArrayList<>();
 
@@ -40,7 +44,15 @@ public class PolygonGraph implements IndexedGraph<Polygon> {
 	private final Map<Integer, Map<Integer, List<Vector3>>> allRandomPointsInPath = new HashMap<>();
 	private final List<Vector3> allPoints = new ArrayList<>();
 	/** 缓存多边形 */
-	private QuadTree<Vector3, Polygon> quadTree;
+	private PolygonGuadTree quadTree;
+	/** 多边形所在连通分量编号 */
+	private volatile int[] components;
+	/** 连通分量个数 */
+	private int componentCount;
+	/** 连通分量标记对应的版本号 */
+	private volatile int componentGeneration;
+	/** 动态阻挡版本号 */
+	private volatile int generation;
 
 	public PolygonGraph(PolygonData polygonData, int scale) {
 		this.scale = scale;
@@ -63,7 +75,10 @@ public class PolygonGraph implements IndexedGraph<Polygon> {
 		calculateIndexConnections(polygonData.getPathPolygonIndexs());// 计算共享边
 		sharedEdges = createSharedEdgesMap(indexConnections, polygons);// 创建共享边对应关系
 		initPathRandomPoint();
-		LOGGER.debug("地图：{} 多边形个数：{} 共享边：{}", polygonData.getMapID(), polygons.size(), indexConnections.size());
+		components = new int[getNodeCount()];
+		componentCount = GraphComponents.label(this, polygons, components);// 计算连通分量
+		LOGGER.debug("地图：{} 多边形个数：{} 共享边：{} 连通分量：{}", polygonData.getMapID(), polygons.size(),
+				indexConnections.size(), componentCount);
 	}
 
 	@SuppressWarnings("unchecked")
@@ -379,10 +394,315 @@ public class PolygonGraph implements IndexedGraph<Polygon> {
 		return allRandomPointsInPath;
 	}
 
-	public QuadTree<Vector3, Polygon> getQuadTree() {
+	public PolygonGuadTree getQuadTree() {
 		return quadTree;
 	}
 
+	/**
+	 * 多边形所在连通分量编号
+	 * 
+	 * @param polygon
+	 * @return
+	 */
+	public int getComponent(Polygon polygon) {
+		return getComponents()[polygon.getIndex()];
+	}
+
+	/**
+	 * 两个多边形是否连通，O(1)，动态阻挡变化后第一次调用时重新标记
+	 * 
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	public boolean isConnected(Polygon from, Polygon to) {
+		int[] components = getComponents();
+		return components[from.getIndex()] == components[to.getIndex()];
+	}
+
+	public int getComponentCount() {
+		getComponents();
+		return componentCount;
+	}
+
+	/**
+	 * 当前版本的连通分量标记
+	 * 
+	 * @return
+	 */
+	private int[] getComponents() {
+		if (componentGeneration != generation) {
+			synchronized (this) {
+				if (componentGeneration != generation) {
+					int[] labels = new int[getNodeCount()];
+					componentCount = GraphComponents.label(this, polygons, labels);
+					components = labels;
+					componentGeneration = generation;
+				}
+			}
+		}
+		return components;
+	}
+
+	/**
+	 * 设置相邻多边形之间的共享边是否可通行（双向），开关门等使用
+	 * 
+	 * @param a
+	 * @param b
+	 * @param enabled
+	 * @return 不相邻返回false
+	 */
+	public synchronized boolean setConnectionEnabled(Polygon a, Polygon b, boolean enabled) {
+		List<PolygonEdge> edges = getEdges(a, b);
+		if (edges.isEmpty()) {
+			return false;
+		}
+		boolean changed = false;
+		for (PolygonEdge edge : edges) {
+			if (edge.enabled != enabled) {
+				edge.enabled = enabled;
+				changed = true;
+			}
+		}
+		if (changed) {
+			generation++;
+		}
+		return true;
+	}
+
+	/**
+	 * 设置相邻多边形之间共享边的消耗倍数（双向），沼泽、危险区域等使用
+	 * 
+	 * @param a
+	 * @param b
+	 * @param multiplier
+	 *            消耗倍数，小于1按1处理，保证启发式估值不超过实际消耗
+	 * @return 不相邻返回false
+	 */
+	public synchronized boolean setConnectionCostMultiplier(Polygon a, Polygon b, float multiplier) {
+		List<PolygonEdge> edges = getEdges(a, b);
+		if (edges.isEmpty()) {
+			return false;
+		}
+		multiplier = Math.max(1, multiplier);
+		boolean changed = false;
+		for (PolygonEdge edge : edges) {
+			if (edge.costMultiplier != multiplier) {
+				edge.costMultiplier = multiplier;
+				changed = true;
+			}
+		}
+		if (changed) {
+			generation++;
+		}
+		return true;
+	}
+
+	/**
+	 * 设置多边形阻挡，阻挡后所有共享边不可通行，放置建筑等使用
+	 * <p>
+	 * 位于阻挡多边形内的单位也无法寻路离开，需要先移出
+	 * </p>
+	 * 
+	 * @param polygon
+	 * @param blocked
+	 */
+	public synchronized void setBlocked(Polygon polygon, boolean blocked) {
+		if (polygon.blocked != blocked) {
+			polygon.blocked = blocked;
+			generation++;
+		}
+	}
+
+	/**
+	 * 两个相邻多边形之间双向的所有共享边
+	 * 
+	 * @param a
+	 * @param b
+	 * @return 不相邻返回空列表
+	 */
+	public List<PolygonEdge> getEdges(Polygon a, Polygon b) {
+		List<PolygonEdge> edges = new ArrayList<>();
+		for (Connection<Polygon> connection : getConnections(a)) {
+			if (connection.getToNode() == b) {
+				edges.add((PolygonEdge) connection);
+			}
+		}
+		for (Connection<Polygon> connection : getConnections(b)) {
+			if (connection.getToNode() == a) {
+				edges.add((PolygonEdge) connection);
+			}
+		}
+		return edges;
+	}
+
+	/**
+	 * 动态阻挡版本号，每次修改通行状态或消耗后递增
+	 * <p>
+	 * 缓存的路径、下一跳表、单位的路径走廊记录生成时的版本号，版本号变化后失效
+	 * </p>
+	 * 
+	 * @return
+	 */
+	public int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * 射线检测（xz平面），从起点沿直线行走，依次穿过共享边
+	 * 
+	 * @param startPolygon
+	 *            起点所在多边形
+	 * @param from
+	 *            起点
+	 * @param to
+	 *            终点
+	 * @param outEdges
+	 *            输出经过的共享边，可为null
+	 * @return true 直线可达终点，false 被不可通行的边阻挡
+	 */
+	public boolean raycast(Polygon startPolygon, Vector3 from, Vector3 to, List<Connection<Polygon>> outEdges) {
+		return raycast(startPolygon, from, to, outEdges, null);
+	}
+
+	/**
+	 * 射线检测（xz平面），从起点沿直线行走，依次穿过共享边，复杂度为经过的多边形个数
+	 * 
+	 * @param startPolygon
+	 *            起点所在多边形
+	 * @param from
+	 *            起点
+	 * @param to
+	 *            终点
+	 * @param outEdges
+	 *            输出经过的共享边，可为null
+	 * @param hit
+	 *            输出结束时所在多边形，被阻挡时输出阻挡的边和碰撞点，可为null
+	 * @return true 直线可达终点，false 被不可通行的边阻挡
+	 */
+	public boolean raycast(Polygon startPolygon, Vector3 from, Vector3 to, List<Connection<Polygon>> outEdges,
+			PolygonRaycastHit hit) {
+		if (hit != null) {
+			hit.clear();
+		}
+		float dx = to.x - from.x;
+		float dz = to.z - from.z;
+		float length = (float) Math.sqrt(dx * dx + dz * dz);
+		// 穿过顶点时用碰撞点前方的探测点选择下一个多边形
+		float probeT = length == 0 ? 0 : SEGMENT_PRECISION / length;
+		Vector3 probe = new Vector3();
+		Polygon polygon = startPolygon;
+		Polygon previous = null;
+		PolygonEdge enter = null;
+		float enterT = 0;
+		for (int step = 0; step < polygons.size(); step++) {
+			if (polygon.isInnerPoint(to)) {
+				setHit(hit, polygon, null, null, from, dx, dz, 1);
+				return true;
+			}
+			// 离开多边形的边：相交边中射线参数最大的
+			float exitT = -1;
+			Vector3 exitA = null;
+			Vector3 exitB = null;
+			List<Vector3> points = polygon.points;
+			Vector3 a = points.get(points.size() - 1);
+			for (int i = 0; i < points.size(); i++) {
+				Vector3 b = points.get(i);
+				float ex = b.x - a.x;
+				float ez = b.z - a.z;
+				float denom = dx * ez - dz * ex;
+				if (denom != 0) {
+					float ax = a.x - from.x;
+					float az = a.z - from.z;
+					float t = (ax * ez - az * ex) / denom;
+					float s = (ax * dz - az * dx) / denom;
+					if (s >= -RAYCAST_PRECISION && s <= 1 + RAYCAST_PRECISION && t > exitT) {
+						exitT = t;
+						exitA = a;
+						exitB = b;
+					}
+				}
+				a = b;
+			}
+			if (exitT < 0) {
+				// 只擦过多边形顶点，阻挡在进入的边上
+				setHit(hit, polygon, enter == null ? null : enter.rightVertex, enter == null ? null : enter.leftVertex,
+						from, dx, dz, enterT);
+				return false;
+			}
+			if (exitT >= 1) {
+				// 终点在多边形边上
+				setHit(hit, polygon, null, null, from, dx, dz, 1);
+				return true;
+			}
+			float hitX = from.x + dx * exitT;
+			float hitZ = from.z + dz * exitT;
+			float nextT = Math.min(1, exitT + probeT);
+			probe.set(from.x + dx * nextT, from.y, from.z + dz * nextT);
+			PolygonEdge exit = null;
+			List<Connection<Polygon>> connections = getConnections(polygon);
+			for (int i = 0; i < connections.size(); i++) {
+				PolygonEdge edge = (PolygonEdge) connections.get(i);
+				// 碰撞点在顶点上时可能和来时的多边形相邻，不能返回
+				if (edge.toNode == previous || !edge.isEnabled()
+						|| !isOnSegment(hitX, hitZ, edge.rightVertex, edge.leftVertex)) {
+					continue;
+				}
+				if (exit == null) {
+					exit = edge;
+				}
+				if (edge.toNode.isInnerPoint(probe)) {
+					exit = edge;
+					break;
+				}
+			}
+			if (exit == null) {
+				setHit(hit, polygon, exitA, exitB, from, dx, dz, exitT);
+				return false;
+			}
+			if (outEdges != null) {
+				outEdges.add(exit);
+			}
+			previous = polygon;
+			polygon = exit.getToNode();
+			enter = exit;
+			enterT = exitT;
+		}
+		setHit(hit, polygon, null, null, from, dx, dz, enterT);
+		return false;
+	}
+
+	private static void setHit(PolygonRaycastHit hit, Polygon polygon, Vector3 edgeStart, Vector3 edgeEnd, Vector3 from,
+			float dx, float dz, float t) {
+		if (hit == null) {
+			return;
+		}
+		hit.polygon = polygon;
+		hit.edgeStart = edgeStart;
+		hit.edgeEnd = edgeEnd;
+		hit.t = t;
+		hit.point.set(from.x + dx * t, from.y, from.z + dz * t);
+	}
+
+	/**
+	 * 点是否在线段上（xz平面）
+	 * 
+	 * @param x
+	 * @param z
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	private static boolean isOnSegment(float x, float z, Vector3 a, Vector3 b) {
+		float ex = b.x - a.x;
+		float ez = b.z - a.z;
+		float len2 = ex * ex + ez * ez;
+		float t = len2 == 0 ? 0 : Math.max(0, Math.min(1, ((x - a.x) * ex + (z - a.z) * ez) / len2));
+		float px = a.x + ex * t - x;
+		float pz = a.z + ez * t - z;
+		return px * px + pz * pz <= SEGMENT_PRECISION * SEGMENT_PRECISION;
+	}
+
 	/**
 	 * 存储相互连接多边形的关系 Class for storing the edge connection data between two adjacent
 	 * triangles.
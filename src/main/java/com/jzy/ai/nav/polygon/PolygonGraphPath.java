@@ -16,9 +16,17 @@ public class PolygonGraphPath extends DefaultGraphPath<Connection<Polygon>> {
     public Vector3 start;
     public Vector3 end;
     public Polygon startPolygon;
+    /** 起点终点直线可达，路径为射线经过的共享边 */
+    public boolean straight;
 
     public Polygon getEndPolygon() {
         return (getCount() > 0) ? get(getCount() - 1).getToNode() : startPolygon;
     }
 
+    @Override
+    public void clear() {
+        super.clear();
+        straight = false;
+    }
+
 }
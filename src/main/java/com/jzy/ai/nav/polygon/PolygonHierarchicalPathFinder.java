@@ -0,0 +1,211 @@
+package com.jzy.ai.nav.polygon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.jzy.ai.pfa.Connection;
+import com.jzy.ai.pfa.DefaultGraphPath;
+import com.jzy.ai.pfa.GraphPath;
+import com.jzy.ai.pfa.Heuristic;
+import com.jzy.ai.pfa.IndexedAStarPathFinder;
+import com.jzy.ai.pfa.IndexedGraph;
+import com.jzy.ai.pfa.PathFinder;
+
+/**
+ * 分层寻路（HPA*）
+ * <p>
+ * 1、先在{@link PolygonClusterGraph}区域图上执行A*，得到经过的区域序列<br>
+ * 2、再在多边形图上执行A*，只展开区域序列（及其相邻区域，由corridorWidth控制）内的多边形<br>
+ * 3、走廊内找不到路径时退回全图A*<br>
+ * </p>
+ * 长距离寻路展开的节点数量从全图降低到走廊范围，路径接近最优。起点终点在同一区域时直接在全图执行A*。
+ * <p>
+ * 非线程安全，外部需同步
+ * </p>
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class PolygonHierarchicalPathFinder implements PathFinder<Polygon> {
+	private final PolygonClusterGraph clusterGraph;
+	private final IndexedAStarPathFinder<PolygonCluster> clusterPathFinder;
+	private final Heuristic<PolygonCluster> clusterHeuristic = (node, endNode) -> node.center.dst(endNode.center);
+	private final DefaultGraphPath<PolygonCluster> clusterPath = new DefaultGraphPath<>();
+	/** 走廊内的多边形图 */
+	private final CorridorGraph corridorGraph;
+	private final IndexedAStarPathFinder<Polygon> corridorPathFinder;
+	/** 全图寻路 */
+	private final IndexedAStarPathFinder<Polygon> pathFinder;
+	/** 走廊向外扩展的区域层数 */
+	private int corridorWidth = 1;
+
+	/**
+	 * @param graph       多边形图
+	 * @param clusterSize 区域网格边长
+	 */
+	public PolygonHierarchicalPathFinder(PolygonGraph graph, float clusterSize) {
+		this(new PolygonClusterGraph(graph, clusterSize), false);
+	}
+
+	public PolygonHierarchicalPathFinder(PolygonClusterGraph clusterGraph, boolean calculateMetrics) {
+		this.clusterGraph = clusterGraph;
+		this.clusterPathFinder = new IndexedAStarPathFinder<>(clusterGraph, calculateMetrics);
+		this.corridorGraph = new CorridorGraph(clusterGraph);
+		this.corridorPathFinder = new IndexedAStarPathFinder<>(corridorGraph, calculateMetrics);
+		this.pathFinder = new IndexedAStarPathFinder<>(clusterGraph.getGraph(), calculateMetrics);
+	}
+
+	@Override
+	public boolean searchConnectionPath(Polygon startNode, Polygon endNode, Heuristic<Polygon> heuristic,
+			GraphPath<Connection<Polygon>> outPath) {
+		if (startNode == null || endNode == null) {
+			return false;
+		}
+		PolygonCluster startCluster = clusterGraph.getCluster(startNode);
+		PolygonCluster endCluster = clusterGraph.getCluster(endNode);
+		if (startCluster == endCluster) {
+			return pathFinder.searchConnectionPath(startNode, endNode, heuristic, outPath);
+		}
+
+		clusterPath.clear();
+		if (!clusterPathFinder.searchNodePath(startCluster, endCluster, clusterHeuristic, clusterPath)) {
+			// 区域不连通，多边形之间一定不连通
+			return false;
+		}
+		corridorGraph.open(clusterPath, corridorWidth);
+		if (corridorPathFinder.searchConnectionPath(startNode, endNode, heuristic, outPath)) {
+			return true;
+		}
+		outPath.clear();
+		return pathFinder.searchConnectionPath(startNode, endNode, heuristic, outPath);
+	}
+
+	@Override
+	public boolean searchNodePath(Polygon startNode, Polygon endNode, Heuristic<Polygon> heuristic,
+			GraphPath<Polygon> outPath) {
+		if (startNode == null || endNode == null) {
+			return false;
+		}
+		PolygonCluster startCluster = clusterGraph.getCluster(startNode);
+		PolygonCluster endCluster = clusterGraph.getCluster(endNode);
+		if (startCluster == endCluster) {
+			return pathFinder.searchNodePath(startNode, endNode, heuristic, outPath);
+		}
+
+		clusterPath.clear();
+		if (!clusterPathFinder.searchNodePath(startCluster, endCluster, clusterHeuristic, clusterPath)) {
+			return false;
+		}
+		corridorGraph.open(clusterPath, corridorWidth);
+		if (corridorPathFinder.searchNodePath(startNode, endNode, heuristic, outPath)) {
+			return true;
+		}
+		outPath.clear();
+		return pathFinder.searchNodePath(startNode, endNode, heuristic, outPath);
+	}
+
+	public PolygonClusterGraph getClusterGraph() {
+		return clusterGraph;
+	}
+
+	/**
+	 * 走廊内多边形寻路统计，用于和全图寻路对比展开节点数
+	 *
+	 * @return 未开启统计返回null
+	 */
+	public IndexedAStarPathFinder.Metrics getCorridorMetrics() {
+		return corridorPathFinder.metrics;
+	}
+
+	public int getCorridorWidth() {
+		return corridorWidth;
+	}
+
+	/**
+	 * 设置走廊向外扩展的区域层数，0只包含区域路径，越大路径越接近最优但展开节点越多
+	 *
+	 * @param corridorWidth
+	 */
+	public void setCorridorWidth(int corridorWidth) {
+		this.corridorWidth = Math.max(0, corridorWidth);
+	}
+
+	/**
+	 * 只包含走廊内区域的多边形图
+	 * <p>
+	 * 连接列表复用同一个缓存对象，{@link IndexedAStarPathFinder}每次展开只遍历一个节点的连接，可以安全复用
+	 * </p>
+	 */
+	private static class CorridorGraph implements IndexedGraph<Polygon> {
+		private final PolygonClusterGraph clusterGraph;
+		private final PolygonGraph graph;
+		/** 区域是否在走廊内，值等于openId时在走廊内 */
+		private final int[] opened;
+		private int openId;
+		private final List<Connection<Polygon>> connections = new ArrayList<>();
+		private final List<PolygonCluster> frontier = new ArrayList<>();
+		private final List<PolygonCluster> next = new ArrayList<>();
+
+		CorridorGraph(PolygonClusterGraph clusterGraph) {
+			this.clusterGraph = clusterGraph;
+			this.graph = clusterGraph.getGraph();
+			this.opened = new int[clusterGraph.getNodeCount()];
+		}
+
+		/**
+		 * 打开走廊
+		 *
+		 * @param clusterPath 区域路径
+		 * @param width       向外扩展层数
+		 */
+		void open(GraphPath<PolygonCluster> clusterPath, int width) {
+			if (++openId < 0) {
+				openId = 1;
+				Arrays.fill(opened, 0);
+			}
+			frontier.clear();
+			for (PolygonCluster cluster : clusterPath) {
+				opened[cluster.index] = openId;
+				frontier.add(cluster);
+			}
+			for (int i = 0; i < width; i++) {
+				next.clear();
+				for (PolygonCluster cluster : frontier) {
+					for (Connection<PolygonCluster> connection : cluster.connections) {
+						PolygonCluster neighbor = connection.getToNode();
+						if (opened[neighbor.index] != openId) {
+							opened[neighbor.index] = openId;
+							next.add(neighbor);
+						}
+					}
+				}
+				frontier.clear();
+				frontier.addAll(next);
+			}
+		}
+
+		@Override
+		public List<Connection<Polygon>> getConnections(Polygon fromNode) {
+			connections.clear();
+			List<Connection<Polygon>> all = graph.getConnections(fromNode);
+			for (int i = 0; i < all.size(); i++) {
+				Connection<Polygon> connection = all.get(i);
+				if (opened[clusterGraph.getClusterId(connection.getToNode().getIndex())] == openId) {
+					connections.add(connection);
+				}
+			}
+			return connections;
+		}
+
+		@Override
+		public int getIndex(Polygon node) {
+			return node.getIndex();
+		}
+
+		@Override
+		public int getNodeCount() {
+			return graph.getNodeCount();
+		}
+	}
+}
@@ -2,7 +2,15 @@ package com.jzy.ai.nav.polygon;
 
 import com.alibaba.fastjson.JSON;
 import com.jzy.ai.nav.NavMesh;
+import com.jzy.ai.pfa.Connection;
+import com.jzy.ai.pfa.ConnectionPathCache;
+import com.jzy.ai.pfa.Heuristic;
 import com.jzy.ai.pfa.IndexedAStarPathFinder;
+import com.jzy.ai.pfa.IndexedBidirectionalAStarPathFinder;
+import com.jzy.ai.pfa.LandmarkHeuristic;
+import com.jzy.ai.pfa.NextHopTable;
+import com.jzy.ai.pfa.NextHopTableCache;
+import com.jzy.ai.quadtree.polygon.PolygonGuadTree;
 import com.jzy.javalib.base.util.MathUtil;
 import com.jzy.javalib.math.geometry.Vector3;
 import org.slf4j.Logger;
@@ -10,6 +18,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.stream.IntStream;
 //import com.game.model.enums.ConstantConfig;
 
 /**
@@ -34,10 +43,38 @@ import java.util.Map.Entry;
 public final class PolygonNavMesh extends NavMesh {
 	private static final Logger LOGGER = LoggerFactory.getLogger(PolygonNavMesh.class);
 	/** 高度验证精度 */
-	private static final int HIGH_PRECISION = 6;
+	static final int HIGH_PRECISION = 6;
+	/** 流场缓存默认个数 */
+	private static final int FLOW_FIELD_CACHE_SIZE = 16;
+	/** 共享路径下一跳表有效时间（毫秒） */
+	private static final long NEXT_HOP_TTL = 1000;
+	/** 批量查询按四叉树格子分桶的最小坐标个数 */
+	private static final int CLASSIFY_SORT_SIZE = 64;
+	/** 批量查询分桶的四叉树层数，4^6个桶 */
+	private static final int CLASSIFY_BUCKET_LEVEL = 6;
+	/** 批量查询并行计算的最小坐标个数 */
+	private static final int CLASSIFY_PARALLEL_SIZE = 4096;
+	/** 批量查询并行计算每段坐标个数 */
+	private static final int CLASSIFY_CHUNK_SIZE = 1024;
 	private final PolygonGraph graph;
-	private final PolygonHeuristic heuristic;// 计算寻路消耗
+	private volatile Heuristic<Polygon> heuristic;// 计算寻路消耗
 	private final IndexedAStarPathFinder<Polygon> pathFinder;
+	/** 流场扫描结果缓存，key为目标多边形序号，按访问顺序淘汰 */
+	private final Map<Integer, PolygonFlowField.Sweep> flowFields;
+	/** 热点目标的下一跳表缓存 */
+	private final NextHopTableCache<Polygon> nextHopTables;
+	/** 多边形路径缓存，默认关闭 */
+	private volatile ConnectionPathCache<Polygon> pathCache;
+	/** 分层寻路，大地图使用，默认关闭 */
+	private volatile PolygonHierarchicalPathFinder hierarchicalPathFinder;
+	/** 双向A*寻路，默认关闭 */
+	private volatile IndexedBidirectionalAStarPathFinder<Polygon> bidirectionalPathFinder;
+	/** 缓存对应的图动态阻挡版本号 */
+	private volatile int cacheGeneration;
+	/** 寻路前先射线检测，直线可达时不搜索，默认开启 */
+	private volatile boolean raycastShortcut = true;
+	/** 3D地图坐标和所在多边形表面的最大高度差 */
+	private volatile float heightTolerance = HIGH_PRECISION;
 
 	public PolygonNavMesh(String navMeshStr) {
 		this(navMeshStr, 1);
@@ -51,6 +88,15 @@ public final class PolygonNavMesh extends NavMesh {
 		graph = new PolygonGraph(JSON.parseObject(navMeshStr, PolygonData.class), scale);
 		pathFinder = new IndexedAStarPathFinder<Polygon>(graph);
 		heuristic = new PolygonHeuristic();
+		nextHopTables = new NextHopTableCache<>(graph, NEXT_HOP_TTL, FLOW_FIELD_CACHE_SIZE);
+		flowFields = new LinkedHashMap<Integer, PolygonFlowField.Sweep>(FLOW_FIELD_CACHE_SIZE, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Entry<Integer, PolygonFlowField.Sweep> eldest) {
+				return size() > FLOW_FIELD_CACHE_SIZE;
+			}
+		};
 	}
 
 	/**
@@ -74,8 +120,17 @@ public final class PolygonNavMesh extends NavMesh {
 				return false;
 			}
 		}
+		// 不连通，无需搜索
+		if (fromPolygon != null && !graph.isConnected(fromPolygon, toPolygon)) {
+			LOGGER.debug("地图{} 点{}和点{}不连通", getMapId(), fromPoint.toString(), toPoint.toString());
+			return false;
+		}
+		// 直线可达，无需搜索
+		if (fromPolygon != null && raycastShortcut && findStraightPath(fromPoint, toPoint, fromPolygon, toPolygon, path)) {
+			return true;
+		}
 		synchronized (pathFinder) {
-			if (pathFinder.searchConnectionPath(fromPolygon, toPolygon, heuristic, path)) {
+			if (searchConnectionPath(fromPolygon, toPolygon, path)) {
 				path.start = new Vector3(fromPoint);
 				path.end = new Vector3(toPoint);
 				path.startPolygon = fromPolygon;
@@ -85,6 +140,133 @@ public final class PolygonNavMesh extends NavMesh {
 		return false;
 	}
 
+	/**
+	 * 射线检测直线路径
+	 *
+	 * @param fromPoint
+	 * @param toPoint
+	 * @param fromPolygon
+	 * @param toPolygon
+	 * @param path        输出射线经过的共享边
+	 * @return false 被阻挡、经过消耗倍数大于1的边（A*可能绕行）或到达的不是终点所在多边形（3D地图重叠层）
+	 */
+	private boolean findStraightPath(Vector3 fromPoint, Vector3 toPoint, Polygon fromPolygon, Polygon toPolygon,
+			PolygonGraphPath path) {
+		path.startPolygon = fromPolygon;
+		if (graph.raycast(fromPolygon, fromPoint, toPoint, path.nodes) && path.getEndPolygon() == toPolygon
+				&& !hasCostMultiplier(path.nodes)) {
+			path.start = new Vector3(fromPoint);
+			path.end = new Vector3(toPoint);
+			path.straight = true;
+			return true;
+		}
+		path.clear();
+		path.startPolygon = null;
+		return false;
+	}
+
+	/**
+	 * 是否经过消耗倍数大于1的边
+	 *
+	 * @param edges
+	 * @return
+	 */
+	private static boolean hasCostMultiplier(List<Connection<Polygon>> edges) {
+		for (int i = 0; i < edges.size(); i++) {
+			if (((PolygonEdge) edges.get(i)).getCostMultiplier() > 1) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 射线检测，起点到终点是否直线可达
+	 * <p>
+	 * AI判断能否直接冲锋、追击目标是否可见等使用，复杂度为直线经过的多边形个数
+	 * </p>
+	 *
+	 * @param fromPoint
+	 * @param toPoint
+	 * @return 起点不在行走层返回false
+	 */
+	public boolean raycast(Vector3 fromPoint, Vector3 toPoint) {
+		return raycast(fromPoint, toPoint, null);
+	}
+
+	/**
+	 * 射线检测，起点到终点是否直线可达
+	 *
+	 * @param fromPoint
+	 * @param toPoint
+	 * @param hit       输出阻挡的边和碰撞点，可为null
+	 * @return 起点不在行走层返回false
+	 */
+	public boolean raycast(Vector3 fromPoint, Vector3 toPoint, PolygonRaycastHit hit) {
+		Polygon fromPolygon = getPolygon(fromPoint);
+		if (fromPolygon == null) {
+			if (hit != null) {
+				hit.clear();
+			}
+			return false;
+		}
+		boolean threeDimensional = graph.getPolygonData().isThreeDimensional();
+		PolygonRaycastHit result = hit == null && threeDimensional ? new PolygonRaycastHit() : hit;
+		if (!graph.raycast(fromPolygon, fromPoint, toPoint, null, result)) {
+			return false;
+		}
+		// 3D地图终点可能在重叠的其他层
+		return !threeDimensional
+				|| Math.abs(result.polygon.getHeight(toPoint.x, toPoint.z) - toPoint.y) <= heightTolerance;
+	}
+
+	/**
+	 * 寻路时是否先进行射线检测，直线可达时不进行A*搜索和漏斗算法，默认开启
+	 *
+	 * @param raycastShortcut
+	 */
+	public void setRaycastShortcut(boolean raycastShortcut) {
+		this.raycastShortcut = raycastShortcut;
+	}
+
+	public boolean isRaycastShortcut() {
+		return raycastShortcut;
+	}
+
+	/**
+	 * A*查询多边形路径，开启路径缓存时先查缓存，命中后只需计算拐点；开启分层寻路时先在区域图上搜索
+	 *
+	 * @param fromPolygon
+	 * @param toPolygon
+	 * @param path
+	 * @return
+	 */
+	private boolean searchConnectionPath(Polygon fromPolygon, Polygon toPolygon, PolygonGraphPath path) {
+		checkGeneration();
+		ConnectionPathCache<Polygon> cache = pathCache;
+		if (cache != null && fromPolygon != null && toPolygon != null && cache.get(fromPolygon, toPolygon, path)) {
+			return true;
+		}
+		PolygonHierarchicalPathFinder hierarchical = hierarchicalPathFinder;
+		IndexedBidirectionalAStarPathFinder<Polygon> bidirectional = bidirectionalPathFinder;
+		Heuristic<Polygon> heuristic = this.heuristic;
+		boolean found;
+		if (hierarchical != null) {
+			found = hierarchical.searchConnectionPath(fromPolygon, toPolygon, heuristic, path);
+		} else if (bidirectional != null) {
+			found = bidirectional.searchConnectionPath(fromPolygon, toPolygon, heuristic, path);
+		} else {
+			found = pathFinder.searchConnectionPath(fromPolygon, toPolygon, heuristic, path);
+		}
+		if (!found) {
+			return false;
+		}
+		if (cache != null) {
+			cache.put(fromPolygon, toPolygon, path);
+		}
+		return true;
+	}
+
 	/**
 	 * 查询路径
 	 * <p>
@@ -103,7 +285,11 @@ public final class PolygonNavMesh extends NavMesh {
 			return pointPath.getVectors();
 		}
 		// 计算坐标点
-		pointPath.calculateForGraphPath(polygonGraphPath, false);
+		if (polygonGraphPath.straight) {
+			pointPath.calculateForStraightPath(polygonGraphPath);
+		} else {
+			pointPath.calculateForGraphPath(polygonGraphPath, false);
+		}
 
 		return pointPath.getVectors();
 	}
@@ -126,9 +312,16 @@ public final class PolygonNavMesh extends NavMesh {
 			return list;
 		}
 		PolygonPointPath pointPath = new PolygonPointPath();
+		if (!graph.isConnected(fromPolygon, toPolygon)) {
+			return pointPath.getVectors();
+		}
 		PolygonGraphPath polygonGraphPath = new PolygonGraphPath();
+		if (raycastShortcut && findStraightPath(fromPoint, toPoint, fromPolygon, toPolygon, polygonGraphPath)) {
+			pointPath.calculateForStraightPath(polygonGraphPath);
+			return pointPath.getVectors();
+		}
 		synchronized (pathFinder) {
-			if (pathFinder.searchConnectionPath(fromPolygon, toPolygon, heuristic, polygonGraphPath)) {
+			if (searchConnectionPath(fromPolygon, toPolygon, polygonGraphPath)) {
 				polygonGraphPath.start = fromPoint;
 				polygonGraphPath.end = toPoint;
 				polygonGraphPath.startPolygon = fromPolygon;
@@ -142,6 +335,178 @@ public final class PolygonNavMesh extends NavMesh {
 
 	}
 
+	/**
+	 * 查询共享路径
+	 * <p>
+	 * 多个单位追击同一目标时使用，目标多边形的下一跳表在有效期内只搜索一次，之后每次查询复杂度为路径长度
+	 * </p>
+	 *
+	 * @param fromPoint
+	 * @param toPoint
+	 * @param path
+	 * @return
+	 */
+	public boolean findSharedPath(Vector3 fromPoint, Vector3 toPoint, PolygonGraphPath path) {
+		path.clear();
+		Polygon fromPolygon = getPolygon(fromPoint);
+		if (fromPolygon == null) {
+			LOGGER.warn("点{}不在地图{}行走层", fromPoint.toString(), getMapId());
+			return false;
+		}
+		Polygon toPolygon = getPolygon(toPoint);
+		if (toPolygon == null) {
+			LOGGER.warn("点{}不在地图{}行走层", toPoint.toString(), getMapId());
+			return false;
+		}
+		if (!graph.isConnected(fromPolygon, toPolygon)) {
+			return false;
+		}
+		checkGeneration();
+		NextHopTable<Polygon> table = nextHopTables.get(toPolygon);
+		if (!table.getConnectionPath(graph, fromPolygon, path)) {
+			return false;
+		}
+		path.start = new Vector3(fromPoint);
+		path.end = new Vector3(toPoint);
+		path.startPolygon = fromPolygon;
+		return true;
+	}
+
+	/**
+	 * 查询共享路径
+	 *
+	 * @param fromPoint
+	 * @param toPoint
+	 * @param pointPath
+	 * @return
+	 * @see #findSharedPath(Vector3, Vector3, PolygonGraphPath)
+	 */
+	public List<Vector3> findSharedPath(Vector3 fromPoint, Vector3 toPoint, PolygonPointPath pointPath) {
+		PolygonGraphPath polygonGraphPath = new PolygonGraphPath();
+		if (!findSharedPath(fromPoint, toPoint, polygonGraphPath)) {
+			return pointPath.getVectors();
+		}
+		pointPath.calculateForGraphPath(polygonGraphPath, false);
+		return pointPath.getVectors();
+	}
+
+	/**
+	 * 查询路径走廊，追击等需要每帧更新路径的单位使用
+	 *
+	 * @param fromPoint
+	 * @param toPoint
+	 * @param corridor  输出的走廊
+	 * @return
+	 * @see PolygonPathCorridor
+	 */
+	public boolean findCorridor(Vector3 fromPoint, Vector3 toPoint, PolygonPathCorridor corridor) {
+		PolygonGraphPath path = new PolygonGraphPath();
+		if (!findPath(fromPoint, toPoint, path)) {
+			return false;
+		}
+		corridor.reset(path);
+		return true;
+	}
+
+	/**
+	 * 查询到最近可达点的路径
+	 * <p>
+	 * 目标点不可达（不在行走层或和起点不连通）时，改为寻路到起点连通区域内离目标点最近的点
+	 * </p>
+	 *
+	 * @param fromPoint
+	 * @param toPoint
+	 * @param pointPath
+	 * @return
+	 */
+	public List<Vector3> findNearestPath(Vector3 fromPoint, Vector3 toPoint, PolygonPointPath pointPath) {
+		Vector3 target = getNearestReachablePoint(fromPoint, toPoint);
+		if (target == null) {
+			return pointPath.getVectors();
+		}
+		return findPath(fromPoint, target, pointPath);
+	}
+
+	/**
+	 * 离坐标点最近的行走层坐标
+	 * <p>
+	 * 技能击退、客户端上报坐标等落在行走层外时，修正到查询范围内最近的多边形内部或边上
+	 * </p>
+	 *
+	 * @param point        坐标点
+	 * @param searchRadius 查询半径，限制查询消耗
+	 * @return 坐标在行走层内返回副本，范围内没有行走层返回null
+	 */
+	public Vector3 findNearestPoint(Vector3 point, float searchRadius) {
+		Vector3 out = new Vector3();
+		if (findNearestPoint(point, searchRadius, out) == null) {
+			return null;
+		}
+		return out;
+	}
+
+	/**
+	 * 离坐标点最近的行走层坐标，不创建对象，每帧修正大量单位坐标使用
+	 *
+	 * @param point        坐标点
+	 * @param searchRadius 查询半径，限制查询消耗
+	 * @param out          输出最近点，高度为多边形表面高度，不能和point为同一对象
+	 * @return 最近点所在多边形，范围内没有行走层返回null，out不修改
+	 */
+	public Polygon findNearestPoint(Vector3 point, float searchRadius, Vector3 out) {
+		Polygon polygon = getPolygon(point);
+		if (polygon != null) {
+			out.set(point.x, polygon.getHeight(point.x, point.z), point.z);
+			return polygon;
+		}
+		float tolerance = graph.getPolygonData().isThreeDimensional() ? heightTolerance : Float.POSITIVE_INFINITY;
+		polygon = graph.getQuadTree().getNearest(point, searchRadius, tolerance, out);
+		if (polygon != null) {
+			out.y = polygon.getHeight(out.x, out.z);
+		}
+		return polygon;
+	}
+
+	/**
+	 * 起点连通区域内离目标点最近的点
+	 *
+	 * @param fromPoint 起点
+	 * @param toPoint   目标点
+	 * @return 目标点可达返回目标点副本，起点不在行走层返回null
+	 */
+	public Vector3 getNearestReachablePoint(Vector3 fromPoint, Vector3 toPoint) {
+		Polygon fromPolygon = getPolygon(fromPoint);
+		if (fromPolygon == null) {
+			return null;
+		}
+		Polygon toPolygon = getPolygon(toPoint);
+		if (toPolygon != null && graph.isConnected(fromPolygon, toPolygon)) {
+			return new Vector3(toPoint);
+		}
+		int component = graph.getComponent(fromPolygon);
+		Vector3 nearest = new Vector3();
+		Vector3 tmp = new Vector3();
+		float minDst2 = Float.POSITIVE_INFINITY;
+		for (Polygon polygon : graph.getPolygons()) {
+			if (graph.getComponent(polygon) != component) {
+				continue;
+			}
+			// 外接圆都比当前结果远，跳过
+			float dx = polygon.center.x - toPoint.x;
+			float dz = polygon.center.z - toPoint.z;
+			float outer = (float) Math.sqrt(dx * dx + dz * dz) - polygon.radius;
+			if (outer > 0 && outer * outer >= minDst2) {
+				continue;
+			}
+			float dst2 = polygon.getNearestPoint(toPoint, tmp);
+			if (dst2 < minDst2) {
+				minDst2 = dst2;
+				nearest.set(tmp);
+			}
+		}
+		return nearest;
+	}
+
 	/**
 	 * 查询有高度路径
 	 * 
@@ -162,63 +527,179 @@ public final class PolygonNavMesh extends NavMesh {
 		return pointPath.getVectors();
 	}
 
+	/**
+	 * 获取目标点的流场
+	 * <p>
+	 * 扫描结果按目标点所在多边形缓存，同一多边形内的目标共用一次扫描，每次调用返回各自目标点的流场，互不影响；大量单位追击同一目标时只需扫描一次
+	 * </p>
+	 *
+	 * @param goal 目标点
+	 * @return 目标不在行走层返回null
+	 */
+	public PolygonFlowField getFlowField(Vector3 goal) {
+		Polygon goalPolygon = getPolygon(goal);
+		if (goalPolygon == null) {
+			LOGGER.warn("点{}不在地图{}行走层", goal.toString(), getMapId());
+			return null;
+		}
+		checkGeneration();
+		PolygonFlowField.Sweep sweep;
+		synchronized (flowFields) {
+			sweep = flowFields.get(goalPolygon.getIndex());
+			if (sweep == null) {
+				// 扫描延迟到第一次查询，同时获取的调用者等待同一次扫描
+				sweep = new PolygonFlowField.Sweep(graph, goalPolygon);
+				flowFields.put(goalPolygon.getIndex(), sweep);
+			}
+		}
+		return new PolygonFlowField(sweep, goal);
+	}
+
+	/**
+	 * 图动态阻挡变化后清除缓存的路径和下一跳表，流场在查询时自行重新扫描
+	 */
+	private void checkGeneration() {
+		int generation = graph.getGeneration();
+		if (generation == cacheGeneration) {
+			return;
+		}
+		cacheGeneration = generation;
+		ConnectionPathCache<Polygon> cache = pathCache;
+		if (cache != null) {
+			cache.clear();
+		}
+		nextHopTables.clear();
+	}
+
 	/**
 	 * 坐标点所在的多边形
+	 * <p>
+	 * 3D地图存在桥、多层建筑等上下重叠的多边形，只返回表面高度和坐标相差{@link #getHeightTolerance()}以内的多边形；
+	 * 只有平面坐标时使用{@link #getPolygon(float, float)}
+	 * </p>
 	 * 
 	 * @param point
 	 * @return
 	 */
 	public Polygon getPolygon(Vector3 point) {
-		// // 3D地图，有navmesh地图重叠，验证坐标高度
-		// // NOTE 3D地图获取数据需要全部遍历，有计算误差，可能查找到错误多边形
-		// if (graph.getPolygonData().isThreeDimensional()) {
-		// Polygon p = null;
-		// float minDistance = Byte.MAX_VALUE;
-		// int count = 0;
-		// for (Polygon polygon : graph.getPolygons()) {
-		// if (polygon.isInnerPoint(point)) {
-		// float distance = Math.abs(polygon.center.y - point.y);
-		// // 高度验证，高度不能太高，会进入其他区域，不精准
-		// if (distance > ConstantConfig.getInstance().getDefaultAttackHight()) {
-		// continue;
-		// }
-		//
-		// //
-		// LOGGER.debug("距离{}，坐标点:{},多边形：{}",distance,point.toString(),polygon.toString());
-		// if (distance < minDistance) {
-		// p = polygon;
-		// minDistance = distance;
-		// count++;
-		// }
-		// }
-		// }
-		// if (LOGGER.isDebugEnabled() && count > 1) {
-		// LOGGER.debug("坐标点：{} 所在多边形--{}", point.toString(), p.toString());
-		// }
-		// return p;
-		// } else {
-		// Optional<Polygon> findFirst = graph.getPolygons().stream().filter(p ->
-		// p.isInnerPoint(point)).findFirst();
-		// if (findFirst.isPresent()) {
-		// return findFirst.get();
-		// }
-		// }
-		//
-		// return null;
-
-		Polygon polygon = graph.getQuadTree().get(point, null);
+		if (graph.getPolygonData().isThreeDimensional()) {
+			return graph.getQuadTree().get(point, heightTolerance);
+		}
+		return graph.getQuadTree().get(point, null);
+	}
 
-		return polygon;
+	/**
+	 * 批量查询坐标所在多边形
+	 * <p>
+	 * 服务器每帧校验所有玩家坐标、瞬移、技能目标点等使用，一次调用替代逐个{@link #isPointInPath(Vector3)}：<br>
+	 * 1、坐标按四叉树格子编码计数排序后查询，相邻坐标访问相同的节点和多边形<br>
+	 * 2、坐标个数超过{@value #CLASSIFY_PARALLEL_SIZE}时排序后分段并行查询<br>
+	 * </p>
+	 *
+	 * @param points     坐标数组，stride为2时依次为x、z（和{@link #getPointInPath(float, float)}相同），为3时依次为x、y、z（3D地图按高度判断所在层）
+	 * @param stride     每个坐标占用的个数，2或3
+	 * @param outIndexs  输出所在多边形序号，不在行走层为-1，长度不小于坐标个数
+	 * @param outHeights 输出所在多边形表面高度，不在行走层为NaN，可为null
+	 * @return 在行走层的坐标个数
+	 */
+	public int classifyPoints(float[] points, int stride, int[] outIndexs, float[] outHeights) {
+		if (stride != 2 && stride != 3) {
+			throw new IllegalArgumentException("坐标stride只能为2或3：" + stride);
+		}
+		int count = points.length / stride;
+		if (count < CLASSIFY_SORT_SIZE) {
+			return classifyPoints(points, stride, null, 0, count, outIndexs, outHeights);
+		}
+		// 按格子编码计数排序
+		PolygonGuadTree quadTree = graph.getQuadTree();
+		int[] keys = new int[count];
+		int[] starts = new int[(1 << (CLASSIFY_BUCKET_LEVEL << 1)) + 1];
+		for (int i = 0; i < count; i++) {
+			int offset = i * stride;
+			keys[i] = quadTree.getCellKey(points[offset], points[offset + stride - 1], CLASSIFY_BUCKET_LEVEL);
+			starts[keys[i] + 1]++;
+		}
+		for (int i = 1; i < starts.length; i++) {
+			starts[i] += starts[i - 1];
+		}
+		int[] order = new int[count];
+		for (int i = 0; i < count; i++) {
+			order[starts[keys[i]]++] = i;
+		}
+		if (count < CLASSIFY_PARALLEL_SIZE) {
+			return classifyPoints(points, stride, order, 0, count, outIndexs, outHeights);
+		}
+		int chunks = (count + CLASSIFY_CHUNK_SIZE - 1) / CLASSIFY_CHUNK_SIZE;
+		return IntStream.range(0, chunks).parallel().map(chunk -> classifyPoints(points, stride, order,
+				chunk * CLASSIFY_CHUNK_SIZE, Math.min(count, (chunk + 1) * CLASSIFY_CHUNK_SIZE), outIndexs, outHeights))
+				.sum();
+	}
+
+	/**
+	 * 批量查询一段坐标
+	 *
+	 * @param points
+	 * @param stride
+	 * @param order      排序后的坐标序号，为null时按原顺序
+	 * @param from
+	 * @param to
+	 * @param outIndexs
+	 * @param outHeights
+	 * @return 在行走层的坐标个数
+	 */
+	private int classifyPoints(float[] points, int stride, int[] order, int from, int to, int[] outIndexs,
+			float[] outHeights) {
+		PolygonGuadTree quadTree = graph.getQuadTree();
+		boolean layered = stride == 3 && graph.getPolygonData().isThreeDimensional();
+		Vector3 point = new Vector3();
+		int found = 0;
+		for (int k = from; k < to; k++) {
+			int i = order == null ? k : order[k];
+			int offset = i * stride;
+			if (stride == 3) {
+				point.set(points[offset], points[offset + 1], points[offset + 2]);
+			} else {
+				point.set(points[offset], 0, points[offset + 1]);
+			}
+			Polygon polygon = layered ? quadTree.get(point, heightTolerance) : quadTree.get(point, null);
+			if (polygon == null) {
+				outIndexs[i] = -1;
+				if (outHeights != null) {
+					outHeights[i] = Float.NaN;
+				}
+				continue;
+			}
+			outIndexs[i] = polygon.getIndex();
+			if (outHeights != null) {
+				outHeights[i] = polygon.getHeight(point.x, point.z);
+			}
+			found++;
+		}
+		return found;
+	}
+
+	/**
+	 * xz平面坐标所在的多边形，没有高度，不按高度差过滤
+	 * <p>
+	 * 屏幕点击等只有平面坐标的查询使用
+	 * </p>
+	 * 
+	 * @param x
+	 * @param z
+	 * @return
+	 */
+	public Polygon getPolygon(float x, float z) {
+		return graph.getQuadTree().get(new Vector3(x, z), null);
 	}
 
 	@Override
 	public Vector3 getPointInPath(float x, float z) {
-		Vector3 vector3 = new Vector3(x, z);
-		Polygon polygon = getPolygon(vector3);
+		Polygon polygon = getPolygon(x, z);
 		if (polygon == null) {
 			LOGGER.info("地图{}坐标({},{})不在路径中", getMapId(), x, z);
 			return null;
 		}
+		Vector3 vector3 = new Vector3(x, z);
 		vector3.y = polygon.y;
 		return vector3;
 	}
@@ -227,6 +708,114 @@ public final class PolygonNavMesh extends NavMesh {
 		return graph;
 	}
 
+	public NextHopTableCache<Polygon> getNextHopTables() {
+		return nextHopTables;
+	}
+
+	/**
+	 * 设置多边形路径缓存容量
+	 * <p>
+	 * 按起点终点多边形缓存A*结果，适合巡逻、回出生点等重复路线
+	 * </p>
+	 *
+	 * @param capacity 最大缓存路径数，小于等于0关闭缓存
+	 */
+	public void setPathCacheCapacity(int capacity) {
+		pathCache = capacity > 0 ? new ConnectionPathCache<>(graph, capacity) : null;
+	}
+
+	/**
+	 * 设置地标（ALT）启发式
+	 * <p>
+	 * 迷宫类地图多边形中心直线距离估值偏小，A*几乎展开整个地图；地标启发式预先计算地标到所有多边形的距离，估值更准确。
+	 * 距离按中心距离、所有共享边可通行计算，当前的阻挡和消耗倍数不影响距离表，之后动态修改仍可采纳
+	 * </p>
+	 *
+	 * @param landmarkCount 地标个数，小于等于0使用多边形中心距离
+	 */
+	public void setLandmarkCount(int landmarkCount) {
+		PolygonHeuristic polygonHeuristic = new PolygonHeuristic();
+		heuristic = landmarkCount > 0
+				? new LandmarkHeuristic<>(graph, graph.getPolygons(), landmarkCount, polygonHeuristic)
+				: polygonHeuristic;
+	}
+
+	/**
+	 * 使用已保存的地标距离表
+	 *
+	 * @param distances [地标][多边形序号]，{@link LandmarkHeuristic#getDistances()}导出
+	 */
+	public void setLandmarkDistances(float[][] distances) {
+		heuristic = new LandmarkHeuristic<>(graph, distances, new PolygonHeuristic());
+	}
+
+	public Heuristic<Polygon> getHeuristic() {
+		return heuristic;
+	}
+
+	/**
+	 * 开启分层寻路
+	 * <p>
+	 * 大地图长距离寻路先在区域图上搜索，再只在经过的区域内搜索多边形，初始化需要划分区域
+	 * </p>
+	 *
+	 * @param clusterSize 区域网格边长，小于等于0关闭
+	 */
+	public void setHierarchicalClusterSize(float clusterSize) {
+		PolygonHierarchicalPathFinder finder = clusterSize > 0 ? new PolygonHierarchicalPathFinder(graph, clusterSize)
+				: null;
+		synchronized (pathFinder) {
+			hierarchicalPathFinder = finder;
+		}
+	}
+
+	public PolygonHierarchicalPathFinder getHierarchicalPathFinder() {
+		return hierarchicalPathFinder;
+	}
+
+	/**
+	 * 开启双向A*寻路
+	 * <p>
+	 * 长距离寻路从起点和终点同时搜索，减少终点附近展开的节点；开启分层寻路时优先使用分层寻路
+	 * </p>
+	 *
+	 * @param bidirectional
+	 */
+	public void setBidirectionalSearch(boolean bidirectional) {
+		IndexedBidirectionalAStarPathFinder<Polygon> finder = bidirectional
+				? new IndexedBidirectionalAStarPathFinder<>(graph)
+				: null;
+		synchronized (pathFinder) {
+			bidirectionalPathFinder = finder;
+		}
+	}
+
+	public boolean isBidirectionalSearch() {
+		return bidirectionalPathFinder != null;
+	}
+
+	/**
+	 * 设置3D地图坐标和所在多边形表面的最大高度差，需小于重叠层之间的高度差
+	 *
+	 * @param heightTolerance
+	 */
+	public void setHeightTolerance(float heightTolerance) {
+		this.heightTolerance = heightTolerance;
+	}
+
+	public float getHeightTolerance() {
+		return heightTolerance;
+	}
+
+	/**
+	 * 多边形路径缓存，可获取命中统计
+	 *
+	 * @return 未开启返回null
+	 */
+	public ConnectionPathCache<Polygon> getPathCache() {
+		return pathCache;
+	}
+
 	/**
 	 * 获取矩形
 	 * 
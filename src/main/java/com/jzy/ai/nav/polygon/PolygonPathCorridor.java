@@ -0,0 +1,440 @@
+package com.jzy.ai.nav.polygon;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.jzy.ai.pfa.Connection;
+import com.jzy.javalib.math.geometry.Vector3;
+
+/**
+ * 路径走廊
+ * <p>
+ * 保存单位当前位置到目标经过的多边形序列，单位移动和目标移动时增量维护，避免每帧重新寻路：<br>
+ * 1、单位移动：沿走廊前进时裁剪头部，偏离到相邻多边形时补到头部<br>
+ * 2、目标移动：仍在走廊尾部附近时裁剪尾部，否则从尾部回退几个多边形做小范围局部搜索，只修复尾部<br>
+ * 3、可见性优化：射线检测可直达前方拐点时，用直线经过的多边形替换走廊头部<br>
+ * </p>
+ * 各方法返回false时需要调用{@link PolygonNavMesh#findPath(Vector3, Vector3, PolygonGraphPath)}重新寻路。
+ * 3D分层地图（桥、多层建筑）判断坐标所在多边形时同时比较表面高度，见{@link #setHeightTolerance(float)}。
+ * <p>
+ * 非线程安全，每个单位持有一个
+ * </p>
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class PolygonPathCorridor {
+	/** 单位移动时沿走廊向前查找的多边形个数 */
+	private static final int MOVE_LOOK_AHEAD = 4;
+	/** 目标移动时从走廊尾部回退的多边形个数 */
+	private static final int REPAIR_BACKTRACK = 3;
+	/** 局部修复最多展开的多边形个数 */
+	private static final int MAX_REPAIR_NODES = 64;
+	/** 坐标在多边形边上的距离精度 */
+	private static final float EDGE_PRECISION = 0.01f;
+
+	private final PolygonGraph graph;
+	/** 3D分层地图，按高度区分上下重叠的多边形 */
+	private final boolean layered;
+	/** 3D地图坐标和所在多边形表面的最大高度差 */
+	private float heightTolerance;
+	/** 走廊多边形，第一个为单位所在多边形，最后一个为目标所在多边形 */
+	private final List<Polygon> polygons = new ArrayList<>();
+	/** 相邻多边形之间的共享边，个数为多边形个数-1 */
+	private final List<Connection<Polygon>> edges = new ArrayList<>();
+	private final Vector3 position = new Vector3();
+	private final Vector3 target = new Vector3();
+	/** 走廊生成时图的动态阻挡版本号 */
+	private int generation;
+
+	/** 局部搜索数据，按展开顺序存放 */
+	private final Polygon[] repairNodes = new Polygon[MAX_REPAIR_NODES];
+	private final int[] repairParents = new int[MAX_REPAIR_NODES];
+	private final float[] repairCosts = new float[MAX_REPAIR_NODES];
+	private final float[] repairTotalCosts = new float[MAX_REPAIR_NODES];
+	private final boolean[] repairClosed = new boolean[MAX_REPAIR_NODES];
+	@SuppressWarnings("unchecked")
+	private final Connection<Polygon>[] repairConnections = new Connection[MAX_REPAIR_NODES];
+	private final List<Connection<Polygon>> tmpEdges = new ArrayList<>();
+
+	public PolygonPathCorridor(PolygonGraph graph) {
+		this(graph, PolygonNavMesh.HIGH_PRECISION);
+	}
+
+	/**
+	 * 使用导航网格的高度容差
+	 *
+	 * @param navMesh
+	 */
+	public PolygonPathCorridor(PolygonNavMesh navMesh) {
+		this(navMesh.getGraph(), navMesh.getHeightTolerance());
+	}
+
+	/**
+	 * @param graph
+	 * @param heightTolerance 3D地图坐标和所在多边形表面的最大高度差，见{@link PolygonNavMesh#setHeightTolerance(float)}
+	 */
+	public PolygonPathCorridor(PolygonGraph graph, float heightTolerance) {
+		this.graph = graph;
+		this.layered = graph.getPolygonData().isThreeDimensional();
+		this.heightTolerance = heightTolerance;
+	}
+
+	/**
+	 * 使用寻路结果重置走廊
+	 *
+	 * @param path {@link PolygonNavMesh#findPath(Vector3, Vector3, PolygonGraphPath)}的结果
+	 */
+	public void reset(PolygonGraphPath path) {
+		polygons.clear();
+		edges.clear();
+		polygons.add(path.startPolygon);
+		for (Connection<Polygon> connection : path) {
+			edges.add(connection);
+			polygons.add(connection.getToNode());
+		}
+		position.set(path.start);
+		target.set(path.end);
+		generation = graph.getGeneration();
+	}
+
+	/**
+	 * 单位位置更新
+	 *
+	 * @param newPosition
+	 * @return false 偏离走廊，需要重新寻路
+	 */
+	public boolean movePosition(Vector3 newPosition) {
+		if (polygons.isEmpty()) {
+			return false;
+		}
+		Polygon current = polygons.get(0);
+		if (contains(current, newPosition)) {
+			position.set(newPosition);
+			return true;
+		}
+		// 沿走廊前进
+		int lookAhead = Math.min(polygons.size() - 1, MOVE_LOOK_AHEAD);
+		for (int i = 1; i <= lookAhead; i++) {
+			if (contains(polygons.get(i), newPosition)) {
+				polygons.subList(0, i).clear();
+				edges.subList(0, i).clear();
+				position.set(newPosition);
+				return true;
+			}
+		}
+		// 偏离到相邻多边形
+		List<Connection<Polygon>> connections = graph.getConnections(current);
+		for (int i = 0; i < connections.size(); i++) {
+			Connection<Polygon> connection = connections.get(i);
+			Polygon neighbor = connection.getToNode();
+			if (!connection.isEnabled() || !contains(neighbor, newPosition)) {
+				continue;
+			}
+			Connection<Polygon> back = findConnection(neighbor, current);
+			if (back == null) {
+				return false;
+			}
+			polygons.add(0, neighbor);
+			edges.add(0, back);
+			position.set(newPosition);
+			return true;
+		}
+		// 坐标在顶点或边上，isInnerPoint判断不在任何多边形内
+		for (int i = 0; i <= lookAhead; i++) {
+			if (onEdge(polygons.get(i), newPosition)) {
+				polygons.subList(0, i).clear();
+				edges.subList(0, i).clear();
+				position.set(newPosition);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 目标位置更新
+	 *
+	 * @param newTarget
+	 * @return false 局部修复失败，需要重新寻路
+	 */
+	public boolean moveTarget(Vector3 newTarget) {
+		if (polygons.isEmpty()) {
+			return false;
+		}
+		int last = polygons.size() - 1;
+		if (contains(polygons.get(last), newTarget)) {
+			target.set(newTarget);
+			return true;
+		}
+		// 目标退回到走廊内
+		for (int i = last - 1; i >= Math.max(0, last - MOVE_LOOK_AHEAD); i--) {
+			if (contains(polygons.get(i), newTarget)) {
+				trimEnd(i);
+				target.set(newTarget);
+				return true;
+			}
+		}
+		// 从尾部回退后局部搜索
+		Polygon goal = layered ? graph.getQuadTree().get(newTarget, heightTolerance)
+				: graph.getQuadTree().get(newTarget, null);
+		if (goal == null) {
+			if (onEdge(polygons.get(last), newTarget)) {
+				target.set(newTarget);
+				return true;
+			}
+			return false;
+		}
+		int from = Math.max(0, last - REPAIR_BACKTRACK);
+		tmpEdges.clear();
+		if (!localSearch(polygons.get(from), goal, tmpEdges)) {
+			return false;
+		}
+		trimEnd(from);
+		for (Connection<Polygon> connection : tmpEdges) {
+			edges.add(connection);
+			polygons.add(connection.getToNode());
+		}
+		target.set(newTarget);
+		return true;
+	}
+
+	/**
+	 * 可见性优化，单位到前方拐点直线可达时，用直线经过的多边形替换走廊头部
+	 *
+	 * @param next 走廊上前方的拐点，一般为{@link #getCorners(PolygonPointPath)}的第二个点
+	 * @return true 走廊被缩短
+	 */
+	public boolean optimizeVisibility(Vector3 next) {
+		if (polygons.size() < 3) {
+			return false;
+		}
+		tmpEdges.clear();
+		graph.raycast(polygons.get(0), position, next, tmpEdges);
+		// 直线经过的多边形中最远的走廊多边形
+		for (int i = tmpEdges.size() - 1; i >= 0; i--) {
+			int index = polygons.lastIndexOf(tmpEdges.get(i).getToNode());
+			if (index < 0) {
+				continue;
+			}
+			if (index <= i + 1) {
+				return false;
+			}
+			polygons.subList(1, index + 1).clear();
+			edges.subList(0, index).clear();
+			for (int j = i; j >= 0; j--) {
+				edges.add(0, tmpEdges.get(j));
+				polygons.add(1, tmpEdges.get(j).getToNode());
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 走廊是否仍然有效
+	 * <p>
+	 * 图没有动态修改时直接返回，否则检查走廊经过的共享边是否都可通行
+	 * </p>
+	 *
+	 * @return false 需要重新寻路
+	 */
+	public boolean isValid() {
+		if (polygons.isEmpty()) {
+			return false;
+		}
+		int graphGeneration = graph.getGeneration();
+		if (generation == graphGeneration) {
+			return true;
+		}
+		for (int i = 0; i < edges.size(); i++) {
+			if (!edges.get(i).isEnabled()) {
+				return false;
+			}
+		}
+		generation = graphGeneration;
+		return true;
+	}
+
+	/**
+	 * 计算单位到目标的拐点
+	 *
+	 * @param pointPath
+	 * @return 拐点列表，包含单位位置和目标
+	 */
+	public List<Vector3> getCorners(PolygonPointPath pointPath) {
+		PolygonGraphPath path = new PolygonGraphPath();
+		path.start = position;
+		path.end = target;
+		path.startPolygon = polygons.get(0);
+		for (int i = 0; i < edges.size(); i++) {
+			path.add(edges.get(i));
+		}
+		pointPath.calculateForGraphPath(path, false);
+		return pointPath.getVectors();
+	}
+
+	/**
+	 * 有限范围A*，只展开{@link #MAX_REPAIR_NODES}个多边形
+	 *
+	 * @param start
+	 * @param goal
+	 * @param outEdges
+	 * @return
+	 */
+	private boolean localSearch(Polygon start, Polygon goal, List<Connection<Polygon>> outEdges) {
+		int count = 1;
+		repairNodes[0] = start;
+		repairParents[0] = -1;
+		repairConnections[0] = null;
+		repairCosts[0] = 0;
+		repairTotalCosts[0] = start.center.dst(goal.center);
+		repairClosed[0] = false;
+		boolean found = false;
+		while (true) {
+			// 开列表很小，线性查找消耗最小节点
+			int current = -1;
+			for (int i = 0; i < count; i++) {
+				if (!repairClosed[i] && (current < 0 || repairTotalCosts[i] < repairTotalCosts[current])) {
+					current = i;
+				}
+			}
+			if (current < 0) {
+				break;
+			}
+			if (repairNodes[current] == goal) {
+				found = true;
+				for (int i = current; repairParents[i] >= 0; i = repairParents[i]) {
+					outEdges.add(repairConnections[i]);
+				}
+				Collections.reverse(outEdges);
+				break;
+			}
+			repairClosed[current] = true;
+			List<Connection<Polygon>> connections = graph.getConnections(repairNodes[current]);
+			for (int i = 0; i < connections.size(); i++) {
+				Connection<Polygon> connection = connections.get(i);
+				if (!connection.isEnabled()) {
+					continue;
+				}
+				Polygon node = connection.getToNode();
+				float cost = repairCosts[current] + connection.getCost();
+				int index = indexOf(node, count);
+				if (index < 0) {
+					if (count == MAX_REPAIR_NODES) {
+						continue;
+					}
+					index = count++;
+					repairNodes[index] = node;
+					repairClosed[index] = false;
+				} else if (repairClosed[index] || repairCosts[index] <= cost) {
+					continue;
+				}
+				repairParents[index] = current;
+				repairConnections[index] = connection;
+				repairCosts[index] = cost;
+				repairTotalCosts[index] = cost + node.center.dst(goal.center);
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			repairNodes[i] = null;
+			repairConnections[i] = null;
+		}
+		return found;
+	}
+
+	private int indexOf(Polygon node, int count) {
+		for (int i = 0; i < count; i++) {
+			if (repairNodes[i] == node) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * 保留到index的多边形
+	 *
+	 * @param index
+	 */
+	private void trimEnd(int index) {
+		polygons.subList(index + 1, polygons.size()).clear();
+		edges.subList(index, edges.size()).clear();
+	}
+
+	/**
+	 * 坐标在多边形内，3D分层地图同时要求在多边形表面高度容差内，和{@link PolygonNavMesh#getPolygon(Vector3)}一致
+	 *
+	 * @param polygon
+	 * @param point
+	 * @return
+	 */
+	private boolean contains(Polygon polygon, Vector3 point) {
+		return polygon.isInnerPoint(point) && onLayer(polygon, point);
+	}
+
+	/**
+	 * 坐标在多边形顶点或边上，isInnerPoint判断不在多边形内
+	 *
+	 * @param polygon
+	 * @param point
+	 * @return
+	 */
+	private boolean onEdge(Polygon polygon, Vector3 point) {
+		return polygon.getNearestPoint(point, null) <= EDGE_PRECISION * EDGE_PRECISION && onLayer(polygon, point);
+	}
+
+	private boolean onLayer(Polygon polygon, Vector3 point) {
+		return !layered || Math.abs(polygon.getHeight(point.x, point.z) - point.y) <= heightTolerance;
+	}
+
+	private Connection<Polygon> findConnection(Polygon from, Polygon to) {
+		List<Connection<Polygon>> connections = graph.getConnections(from);
+		for (int i = 0; i < connections.size(); i++) {
+			Connection<Polygon> connection = connections.get(i);
+			if (connection.getToNode() == to && connection.isEnabled()) {
+				return connection;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 走廊多边形，只读
+	 *
+	 * @return
+	 */
+	public List<Polygon> getPolygons() {
+		return Collections.unmodifiableList(polygons);
+	}
+
+	public Polygon getFirstPolygon() {
+		return polygons.isEmpty() ? null : polygons.get(0);
+	}
+
+	public Polygon getLastPolygon() {
+		return polygons.isEmpty() ? null : polygons.get(polygons.size() - 1);
+	}
+
+	public Vector3 getPosition() {
+		return position;
+	}
+
+	public Vector3 getTarget() {
+		return target;
+	}
+
+	public float getHeightTolerance() {
+		return heightTolerance;
+	}
+
+	/**
+	 * 设置3D地图坐标和所在多边形表面的最大高度差，需小于重叠层之间的高度差
+	 *
+	 * @param heightTolerance
+	 */
+	public void setHeightTolerance(float heightTolerance) {
+		this.heightTolerance = heightTolerance;
+	}
+}
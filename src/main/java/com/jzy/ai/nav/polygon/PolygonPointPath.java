@@ -201,6 +201,28 @@ public class PolygonPointPath implements Iterable<Vector3> {
 		}
 	}
 
+	/**
+	 * 直线路径，起点终点直线可达时不需要漏斗算法，只生成起点和终点两个坐标点
+	 * 
+	 * @param polygonlePath
+	 *            射线检测生成的路径，见{@link PolygonGraphPath#straight}
+	 */
+	public void calculateForStraightPath(PolygonGraphPath polygonlePath) {
+		clear();
+		nodes = polygonlePath.nodes;
+		this.start = new Vector3(polygonlePath.start);
+		this.end = new Vector3(polygonlePath.end);
+		this.startPolygon = polygonlePath.startPolygon;
+		addPoint(start, startPolygon);
+		lastPointAdded.fromNode = startPolygon;
+		EdgePoint endPoint = new EdgePoint(end, polygonlePath.getEndPolygon());
+		endPoint.fromNode = startPolygon;
+		for (int i = 0; i < nodes.size(); i++) {
+			endPoint.connectingEdges.add((PolygonEdge) nodes.get(i));
+		}
+		addPoint(endPoint);
+	}
+
 	/**
 	 * 清理数据 <br>
 	 * Clear the stored path data.
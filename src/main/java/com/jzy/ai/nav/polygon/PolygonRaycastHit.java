@@ -0,0 +1,31 @@
+package com.jzy.ai.nav.polygon;
+
+import com.jzy.javalib.math.geometry.Vector3;
+
+/**
+ * 射线检测碰撞结果
+ * <p>
+ * 可重复使用，每帧大量检测时避免创建对象
+ * </p>
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class PolygonRaycastHit {
+	/** 射线结束时所在的多边形，可达时为终点所在多边形 */
+	public Polygon polygon;
+	/** 阻挡边的顶点，多边形边界或动态阻挡的共享边，可达时为null */
+	public Vector3 edgeStart;
+	public Vector3 edgeEnd;
+	/** 碰撞点（xz平面），高度为起点高度，可达时为终点 */
+	public final Vector3 point = new Vector3();
+	/** 碰撞点在射线上的比例，0为起点，1为终点（可达） */
+	public float t;
+
+	public void clear() {
+		polygon = null;
+		edgeStart = null;
+		edgeEnd = null;
+		t = 0;
+	}
+}
@@ -0,0 +1,94 @@
+package com.jzy.ai.nav.polygon;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.jzy.ai.pfa.Connection;
+import com.jzy.javalib.math.geometry.Vector3;
+
+/**
+ * 地图分块
+ * <p>
+ * 每个分块是独立的多边形图，多边形序号为分块内序号；跨分块的共享边在加载时由{@link PolygonTiledGraph}缝合
+ * </p>
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class PolygonTile {
+	/** 边界方向：x最小边 */
+	public static final int BORDER_MIN_X = 0;
+	/** 边界方向：x最大边 */
+	public static final int BORDER_MAX_X = 1;
+	/** 边界方向：z最小边 */
+	public static final int BORDER_MIN_Z = 2;
+	/** 边界方向：z最大边 */
+	public static final int BORDER_MAX_Z = 3;
+
+	/** 分块x坐标 */
+	final int tileX;
+	/** 分块z坐标 */
+	final int tileZ;
+	/** 分块在图中的槽位 */
+	final int slot;
+	/** 分块内的多边形图 */
+	final PolygonGraph graph;
+	/** 多边形的连接，分块内共享边加跨分块共享边，下标为多边形序号 */
+	final List<List<Connection<Polygon>>> connections;
+	/** 位于分块四条边界上的多边形边，下标为边界方向 */
+	final List<List<BorderEdge>> borders = new ArrayList<>(4);
+	/** 最后访问时间 */
+	volatile long accessTime;
+
+	PolygonTile(int tileX, int tileZ, int slot, PolygonGraph graph) {
+		this.tileX = tileX;
+		this.tileZ = tileZ;
+		this.slot = slot;
+		this.graph = graph;
+		this.connections = new ArrayList<>(graph.getNodeCount());
+		for (int i = 0; i < graph.getNodeCount(); i++) {
+			connections.add(new ArrayList<>());
+		}
+		for (Polygon polygon : graph.getPolygons()) {
+			connections.get(polygon.getIndex()).addAll(graph.getConnections(polygon));
+		}
+		for (int i = 0; i < 4; i++) {
+			borders.add(new ArrayList<>());
+		}
+	}
+
+	public int getTileX() {
+		return tileX;
+	}
+
+	public int getTileZ() {
+		return tileZ;
+	}
+
+	public int getSlot() {
+		return slot;
+	}
+
+	public PolygonGraph getGraph() {
+		return graph;
+	}
+
+	public long getAccessTime() {
+		return accessTime;
+	}
+
+	/**
+	 * 分块边界上的多边形边，顶点按多边形顶点顺序
+	 */
+	static class BorderEdge {
+		final Polygon polygon;
+		final Vector3 a;
+		final Vector3 b;
+
+		BorderEdge(Polygon polygon, Vector3 a, Vector3 b) {
+			this.polygon = polygon;
+			this.a = a;
+			this.b = b;
+		}
+	}
+}
@@ -0,0 +1,304 @@
+package com.jzy.ai.nav.polygon;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jzy.ai.nav.polygon.PolygonTile.BorderEdge;
+import com.jzy.ai.pfa.Connection;
+import com.jzy.ai.pfa.IndexedGraph;
+import com.jzy.javalib.math.geometry.Vector3;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 分块多边形图，无缝大地图使用
+ * <p>
+ * 1、地图按固定边长tileSize划分为分块，每个分块是独立的{@link PolygonGraph}<br>
+ * 2、分块加载时和已加载的相邻分块缝合：两侧位于同一条分块边界上且重叠的多边形边生成跨分块共享边<br>
+ * 3、分块卸载或替换时只断开和相邻分块的共享边，不影响其他分块<br>
+ * </p>
+ * 节点序号为 槽位 * maxPolygonsPerTile + 分块内多边形序号，节点总数固定，寻路器的节点记录数组只需创建一次，
+ * 内存随同时加载的分块个数增长，和整个世界大小无关。
+ * <p>
+ * 分块加载、卸载和寻路需要外部同步（{@link PolygonTiledNavMesh}在寻路器上同步）。
+ * 分块替换后旧多边形对象失效，缓存的路径需根据{@link #getGeneration()}判断
+ * </p>
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class PolygonTiledGraph implements IndexedGraph<Polygon> {
+	private static final Logger LOGGER = LoggerFactory.getLogger(PolygonTiledGraph.class);
+	/** 边界判断精度 */
+	private static final float BORDER_PRECISION = 0.01f;
+
+	/** 分块原点x坐标 */
+	private final float originX;
+	/** 分块原点z坐标 */
+	private final float originZ;
+	/** 分块边长 */
+	private final float tileSize;
+	/** 每个分块最大多边形个数 */
+	private final int maxPolygonsPerTile;
+	/** 槽位对应的分块 */
+	private final PolygonTile[] slots;
+	/** 已加载分块，key为分块坐标 */
+	private final Map<Long, PolygonTile> tiles = new HashMap<>();
+	/** 分块变化版本号 */
+	private volatile int generation;
+
+	/**
+	 * @param originX            分块原点x坐标（缩放后）
+	 * @param originZ            分块原点z坐标（缩放后）
+	 * @param tileSize           分块边长（缩放后）
+	 * @param maxTiles           同时加载的最大分块数
+	 * @param maxPolygonsPerTile 每个分块最大多边形个数
+	 */
+	public PolygonTiledGraph(float originX, float originZ, float tileSize, int maxTiles, int maxPolygonsPerTile) {
+		this.originX = originX;
+		this.originZ = originZ;
+		this.tileSize = tileSize;
+		this.maxPolygonsPerTile = maxPolygonsPerTile;
+		this.slots = new PolygonTile[maxTiles];
+	}
+
+	@Override
+	public List<Connection<Polygon>> getConnections(Polygon fromNode) {
+		return slots[fromNode.tileSlot].connections.get(fromNode.getIndex());
+	}
+
+	@Override
+	public int getIndex(Polygon node) {
+		return node.tileSlot * maxPolygonsPerTile + node.getIndex();
+	}
+
+	@Override
+	public int getNodeCount() {
+		return slots.length * maxPolygonsPerTile;
+	}
+
+	/**
+	 * 加载或替换分块
+	 *
+	 * @param tileX
+	 * @param tileZ
+	 * @param graph 分块多边形图
+	 * @return 超出容量返回null
+	 */
+	public synchronized PolygonTile setTile(int tileX, int tileZ, PolygonGraph graph) {
+		if (graph.getNodeCount() > maxPolygonsPerTile) {
+			LOGGER.error("分块({},{})多边形个数{}超过上限{}", tileX, tileZ, graph.getNodeCount(), maxPolygonsPerTile);
+			return null;
+		}
+		long key = tileKey(tileX, tileZ);
+		PolygonTile old = tiles.get(key);
+		int slot;
+		if (old != null) {
+			unlink(old);
+			slot = old.slot;
+		} else {
+			slot = freeSlot();
+			if (slot < 0) {
+				LOGGER.error("分块({},{})加载失败，已加载分块数达到上限{}", tileX, tileZ, slots.length);
+				return null;
+			}
+		}
+		PolygonTile tile = new PolygonTile(tileX, tileZ, slot, graph);
+		for (Polygon polygon : graph.getPolygons()) {
+			polygon.tileSlot = slot;
+		}
+		collectBorders(tile);
+		slots[slot] = tile;
+		tiles.put(key, tile);
+
+		stitch(tile, tiles.get(tileKey(tileX - 1, tileZ)), PolygonTile.BORDER_MIN_X);
+		stitch(tile, tiles.get(tileKey(tileX + 1, tileZ)), PolygonTile.BORDER_MAX_X);
+		stitch(tile, tiles.get(tileKey(tileX, tileZ - 1)), PolygonTile.BORDER_MIN_Z);
+		stitch(tile, tiles.get(tileKey(tileX, tileZ + 1)), PolygonTile.BORDER_MAX_Z);
+		generation++;
+		LOGGER.debug("分块({},{})加载到槽位{} 多边形：{} 已加载分块：{}", tileX, tileZ, slot, graph.getNodeCount(), tiles.size());
+		return tile;
+	}
+
+	/**
+	 * 卸载分块
+	 *
+	 * @param tileX
+	 * @param tileZ
+	 * @return 未加载返回null
+	 */
+	public synchronized PolygonTile removeTile(int tileX, int tileZ) {
+		PolygonTile tile = tiles.remove(tileKey(tileX, tileZ));
+		if (tile == null) {
+			return null;
+		}
+		unlink(tile);
+		slots[tile.slot] = null;
+		generation++;
+		return tile;
+	}
+
+	public synchronized PolygonTile getTile(int tileX, int tileZ) {
+		return tiles.get(tileKey(tileX, tileZ));
+	}
+
+	/**
+	 * 已加载的分块
+	 *
+	 * @return 副本
+	 */
+	public synchronized List<PolygonTile> getTiles() {
+		return new ArrayList<>(tiles.values());
+	}
+
+	/**
+	 * 坐标点所在的多边形
+	 *
+	 * @param point
+	 * @return 分块未加载或不在行走层返回null
+	 */
+	public Polygon getPolygon(Vector3 point) {
+		PolygonTile tile = getTile(getTileX(point.x), getTileZ(point.z));
+		if (tile == null) {
+			return null;
+		}
+		return tile.graph.getQuadTree().get(point, null);
+	}
+
+	public int getTileX(float x) {
+		return (int) Math.floor((x - originX) / tileSize);
+	}
+
+	public int getTileZ(float z) {
+		return (int) Math.floor((z - originZ) / tileSize);
+	}
+
+	/**
+	 * 分块变化版本号，每次加载、替换、卸载分块后递增
+	 *
+	 * @return
+	 */
+	public int getGeneration() {
+		return generation;
+	}
+
+	public float getTileSize() {
+		return tileSize;
+	}
+
+	public int getMaxPolygonsPerTile() {
+		return maxPolygonsPerTile;
+	}
+
+	/**
+	 * 收集位于分块边界上的多边形边
+	 *
+	 * @param tile
+	 */
+	private void collectBorders(PolygonTile tile) {
+		float minX = originX + tile.tileX * tileSize;
+		float minZ = originZ + tile.tileZ * tileSize;
+		float[] borderValues = { minX, minX + tileSize, minZ, minZ + tileSize };
+		for (Polygon polygon : tile.graph.getPolygons()) {
+			List<Vector3> points = polygon.points;
+			for (int i = 0; i < points.size(); i++) {
+				Vector3 a = points.get(i);
+				Vector3 b = points.get((i + 1) % points.size());
+				for (int side = 0; side < 4; side++) {
+					float borderValue = borderValues[side];
+					float av = side < 2 ? a.x : a.z;
+					float bv = side < 2 ? b.x : b.z;
+					if (Math.abs(av - borderValue) < BORDER_PRECISION && Math.abs(bv - borderValue) < BORDER_PRECISION) {
+						tile.borders.get(side).add(new BorderEdge(polygon, a, b));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * 缝合相邻分块，两侧重叠的边界边生成双向共享边
+	 *
+	 * @param tile
+	 * @param neighbor 相邻分块，可为null
+	 * @param side     相邻分块在tile的边界方向
+	 */
+	private void stitch(PolygonTile tile, PolygonTile neighbor, int side) {
+		if (neighbor == null) {
+			return;
+		}
+		// x边界沿z轴比较，z边界沿x轴比较
+		boolean alongZ = side < 2;
+		int portals = 0;
+		for (BorderEdge edge : tile.borders.get(side)) {
+			float edgeA = alongZ ? edge.a.z : edge.a.x;
+			float edgeB = alongZ ? edge.b.z : edge.b.x;
+			for (BorderEdge other : neighbor.borders.get(side ^ 1)) {
+				float otherA = alongZ ? other.a.z : other.a.x;
+				float otherB = alongZ ? other.b.z : other.b.x;
+				float low = Math.max(Math.min(edgeA, edgeB), Math.min(otherA, otherB));
+				float high = Math.min(Math.max(edgeA, edgeB), Math.max(otherA, otherB));
+				if (high - low <= BORDER_PRECISION) {
+					continue;
+				}
+				// 重叠部分的两个端点，按tile多边形顶点顺序
+				Vector3 right = interpolate(edge, edgeA, edgeB, edgeA < edgeB ? low : high);
+				Vector3 left = interpolate(edge, edgeA, edgeB, edgeA < edgeB ? high : low);
+				tile.connections.get(edge.polygon.getIndex())
+						.add(new PolygonEdge(edge.polygon, other.polygon, right, left));
+				neighbor.connections.get(other.polygon.getIndex())
+						.add(new PolygonEdge(other.polygon, edge.polygon, left, right));
+				portals++;
+			}
+		}
+		LOGGER.debug("分块({},{})和({},{})缝合共享边：{}", tile.tileX, tile.tileZ, neighbor.tileX, neighbor.tileZ, portals);
+	}
+
+	/**
+	 * 边界边上指定坐标的点
+	 *
+	 * @param edge
+	 * @param from  a点沿边界坐标
+	 * @param to    b点沿边界坐标
+	 * @param value 沿边界坐标
+	 * @return
+	 */
+	private static Vector3 interpolate(BorderEdge edge, float from, float to, float value) {
+		float t = to == from ? 0 : (value - from) / (to - from);
+		return new Vector3(edge.a.x + (edge.b.x - edge.a.x) * t, edge.a.y + (edge.b.y - edge.a.y) * t,
+				edge.a.z + (edge.b.z - edge.a.z) * t);
+	}
+
+	/**
+	 * 断开分块和相邻分块的共享边
+	 *
+	 * @param tile
+	 */
+	private void unlink(PolygonTile tile) {
+		for (List<Connection<Polygon>> connections : tile.connections) {
+			for (Connection<Polygon> connection : connections) {
+				Polygon toNode = connection.getToNode();
+				if (toNode.tileSlot == tile.slot) {
+					continue;
+				}
+				Polygon fromNode = connection.getFromNode();
+				slots[toNode.tileSlot].connections.get(toNode.getIndex()).removeIf(c -> c.getToNode() == fromNode);
+			}
+		}
+	}
+
+	private int freeSlot() {
+		for (int i = 0; i < slots.length; i++) {
+			if (slots[i] == null) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static long tileKey(int tileX, int tileZ) {
+		return ((long) tileX << 32) | (tileZ & 0xFFFFFFFFL);
+	}
+}
@@ -0,0 +1,227 @@
+package com.jzy.ai.nav.polygon;
+
+import java.util.List;
+
+import com.alibaba.fastjson.JSON;
+import com.jzy.ai.nav.NavMesh;
+import com.jzy.ai.pfa.IndexedAStarPathFinder;
+import com.jzy.javalib.base.util.TimeUtil;
+import com.jzy.javalib.math.geometry.Vector3;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 分块多边形寻路，无缝大地图使用
+ * <p>
+ * 地图按固定边长切分为多个分块navmesh文件，玩家移动时按需加载周围分块，长时间未访问的分块卸载，
+ * 单个分块可以热更新替换，不影响其他分块。
+ * </p>
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class PolygonTiledNavMesh extends NavMesh {
+	private static final Logger LOGGER = LoggerFactory.getLogger(PolygonTiledNavMesh.class);
+
+	private final PolygonTiledGraph graph;
+	private final PolygonHeuristic heuristic = new PolygonHeuristic();
+	private final IndexedAStarPathFinder<Polygon> pathFinder;
+	/** 分块数据加载 */
+	private final TileLoader tileLoader;
+	/** 放大倍数 */
+	private final int scale;
+
+	/**
+	 * @param originX            分块原点x坐标（缩放后）
+	 * @param originZ            分块原点z坐标（缩放后）
+	 * @param tileSize           分块边长（缩放后）
+	 * @param maxTiles           同时加载的最大分块数
+	 * @param maxPolygonsPerTile 每个分块最大多边形个数
+	 * @param scale              放大倍数
+	 * @param tileLoader         分块数据加载
+	 */
+	public PolygonTiledNavMesh(float originX, float originZ, float tileSize, int maxTiles, int maxPolygonsPerTile,
+			int scale, TileLoader tileLoader) {
+		this.graph = new PolygonTiledGraph(originX, originZ, tileSize, maxTiles, maxPolygonsPerTile);
+		this.pathFinder = new IndexedAStarPathFinder<>(graph);
+		this.scale = scale;
+		this.tileLoader = tileLoader;
+	}
+
+	/**
+	 * 加载分块
+	 *
+	 * @param tileX
+	 * @param tileZ
+	 * @return 没有分块数据或超出容量返回false
+	 */
+	public boolean loadTile(int tileX, int tileZ) {
+		String navMeshStr = tileLoader.load(tileX, tileZ);
+		if (navMeshStr == null) {
+			return false;
+		}
+		return loadTile(tileX, tileZ, navMeshStr);
+	}
+
+	/**
+	 * 加载或热更新替换分块
+	 * <p>
+	 * 在调用线程解析分块数据，只在替换时和寻路互斥
+	 * </p>
+	 *
+	 * @param tileX
+	 * @param tileZ
+	 * @param navMeshStr 分块导航网格数据
+	 * @return 超出容量返回false
+	 */
+	public boolean loadTile(int tileX, int tileZ, String navMeshStr) {
+		PolygonGraph tileGraph = new PolygonGraph(JSON.parseObject(navMeshStr, PolygonData.class), scale);
+		PolygonTile tile;
+		synchronized (pathFinder) {
+			tile = graph.setTile(tileX, tileZ, tileGraph);
+		}
+		if (tile == null) {
+			return false;
+		}
+		tile.accessTime = TimeUtil.currentTimeMillis();
+		return true;
+	}
+
+	/**
+	 * 卸载分块
+	 *
+	 * @param tileX
+	 * @param tileZ
+	 * @return 未加载返回false
+	 */
+	public boolean unloadTile(int tileX, int tileZ) {
+		synchronized (pathFinder) {
+			return graph.removeTile(tileX, tileZ) != null;
+		}
+	}
+
+	/**
+	 * 加载坐标点周围的分块，已加载的分块刷新访问时间
+	 *
+	 * @param position 玩家坐标
+	 * @param radius   加载半径（分块个数），0只加载所在分块
+	 * @return 本次新加载的分块个数
+	 */
+	public int loadTilesAround(Vector3 position, int radius) {
+		int centerX = graph.getTileX(position.x);
+		int centerZ = graph.getTileZ(position.z);
+		long now = TimeUtil.currentTimeMillis();
+		int count = 0;
+		for (int x = centerX - radius; x <= centerX + radius; x++) {
+			for (int z = centerZ - radius; z <= centerZ + radius; z++) {
+				PolygonTile tile = graph.getTile(x, z);
+				if (tile != null) {
+					tile.accessTime = now;
+				} else if (loadTile(x, z)) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 卸载长时间未访问的分块
+	 *
+	 * @param idleTime 未访问时间（毫秒）
+	 * @return 卸载的分块个数
+	 */
+	public int unloadIdleTiles(long idleTime) {
+		long expireTime = TimeUtil.currentTimeMillis() - idleTime;
+		int count = 0;
+		for (PolygonTile tile : graph.getTiles()) {
+			if (tile.accessTime < expireTime && unloadTile(tile.tileX, tile.tileZ)) {
+				count++;
+			}
+		}
+		if (count > 0) {
+			LOGGER.debug("卸载分块：{} 剩余分块：{}", count, graph.getTiles().size());
+		}
+		return count;
+	}
+
+	/**
+	 * 查询路径，起点终点所在分块及经过的分块需已加载
+	 *
+	 * @param fromPoint
+	 * @param toPoint
+	 * @param path
+	 * @return
+	 */
+	public boolean findPath(Vector3 fromPoint, Vector3 toPoint, PolygonGraphPath path) {
+		path.clear();
+		synchronized (pathFinder) {
+			Polygon fromPolygon = graph.getPolygon(fromPoint);
+			Polygon toPolygon = graph.getPolygon(toPoint);
+			if (pathFinder.searchConnectionPath(fromPolygon, toPolygon, heuristic, path)) {
+				path.start = new Vector3(fromPoint);
+				path.end = new Vector3(toPoint);
+				path.startPolygon = fromPolygon;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 查询路径
+	 *
+	 * @param fromPoint
+	 * @param toPoint
+	 * @param pointPath
+	 * @return
+	 */
+	public List<Vector3> findPath(Vector3 fromPoint, Vector3 toPoint, PolygonPointPath pointPath) {
+		PolygonGraphPath polygonGraphPath = new PolygonGraphPath();
+		if (!findPath(fromPoint, toPoint, polygonGraphPath)) {
+			return pointPath.getVectors();
+		}
+		pointPath.calculateForGraphPath(polygonGraphPath, false);
+		return pointPath.getVectors();
+	}
+
+	/**
+	 * 坐标点所在的多边形
+	 *
+	 * @param point
+	 * @return
+	 */
+	public Polygon getPolygon(Vector3 point) {
+		return graph.getPolygon(point);
+	}
+
+	@Override
+	public Vector3 getPointInPath(float x, float z) {
+		Vector3 vector3 = new Vector3(x, z);
+		Polygon polygon = getPolygon(vector3);
+		if (polygon == null) {
+			return null;
+		}
+		vector3.y = polygon.y;
+		return vector3;
+	}
+
+	public PolygonTiledGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * 分块数据加载
+	 */
+	@FunctionalInterface
+	public interface TileLoader {
+		/**
+		 * 加载分块导航网格数据
+		 *
+		 * @param tileX
+		 * @param tileZ
+		 * @return 没有数据返回null
+		 */
+		String load(int tileX, int tileZ);
+	}
+}
@@ -317,7 +317,7 @@ public class PolygonMeshWindow {
 
 						//双击渲染选中的多边形
 						if(e.getClickCount()>1) {
-							Polygon polygon = polygonViewPane.getPlayer().getMap().getPolygon(new Vector3(e.getX(), e.getY()));
+							Polygon polygon = polygonViewPane.getPlayer().getMap().getPolygon(e.getX(), e.getY());
 							if(polygon!=null) {
 								polygonViewPane.setRenderPolygon(polygon);
 
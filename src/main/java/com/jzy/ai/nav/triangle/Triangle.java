@@ -33,6 +33,8 @@ public class Triangle implements Shape{
 	public transient List<Connection<Triangle>> connections;
 	/**三角形顶点序号*/
 	public int[] vectorIndex;
+	/** 动态阻挡，阻挡后不能进出该三角形，通过{@link TriangleGraph#setBlocked(Triangle, boolean)}修改 */
+	public transient boolean blocked;
 
 	public Triangle(Vector3 a, Vector3 b, Vector3 c, int index,int ...vectorIndex) {
 		this.a = a;
@@ -145,6 +147,23 @@ public class Triangle implements Shape{
 		return true;
 	}
 
+	/**
+	 * 三角形平面在xz坐标处的高度，重心坐标插值
+	 * 
+	 * @param x
+	 * @param z
+	 * @return
+	 */
+	public float getHeight(float x, float z) {
+		float det = (b.z - c.z) * (a.x - c.x) + (c.x - b.x) * (a.z - c.z);
+		if (det == 0) {
+			return y;
+		}
+		float wa = ((b.z - c.z) * (x - c.x) + (c.x - b.x) * (z - c.z)) / det;
+		float wb = ((c.z - a.z) * (x - c.x) + (a.x - c.x) * (z - c.z)) / det;
+		return wa * a.y + wb * b.y + (1 - wa - wb) * c.y;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -19,6 +19,10 @@ public class TriangleEdge implements Connection<Triangle> {
 	public Triangle fromNode;
 	/** 指向的三角形 */
 	public Triangle toNode;
+	/** 是否可通行，动态阻挡 */
+	boolean enabled = true;
+	/** 消耗倍数，不小于1 */
+	float costMultiplier = 1;
 
 	public TriangleEdge(Vector3 rightVertex, Vector3 leftVertex) {
 		this(null, null, rightVertex, leftVertex);
@@ -33,9 +37,26 @@ public class TriangleEdge implements Connection<Triangle> {
 
 	@Override
 	public float getCost() {
+		return costMultiplier;
+	}
+
+	@Override
+	public float getBaseCost() {
 		return 1;
 	}
 
+	/**
+	 * 共享边可通行且两侧三角形都没有被阻挡
+	 */
+	@Override
+	public boolean isEnabled() {
+		return enabled && !fromNode.blocked && (toNode == null || !toNode.blocked);
+	}
+
+	public float getCostMultiplier() {
+		return costMultiplier;
+	}
+
 	@Override
 	public Triangle getFromNode() {
 		return fromNode;
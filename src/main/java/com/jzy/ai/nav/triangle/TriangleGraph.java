@@ -4,6 +4,7 @@ package com.jzy.ai.nav.triangle;
 import com.alibaba.fastjson.JSON;
 import com.jzy.ai.nav.NavMeshData;
 import com.jzy.ai.pfa.Connection;
+import com.jzy.ai.pfa.GraphComponents;
 import com.jzy.ai.pfa.IndexedGraph;
 import com.jzy.javalib.math.geometry.Vector3;
 import org.slf4j.LoggerFactory;
@@ -31,6 +32,10 @@ public class TriangleGraph implements IndexedGraph<Triangle> {
 	private int numDisconnectedEdges; // 不相连边的个数
 	private int numConnectedEdges; // 相互连接边的数目
 	private int numTotalEdges; // 三角形总边数
+	private volatile int[] components; // 三角形所在连通分量编号
+	private int componentCount; // 连通分量个数
+	private volatile int componentGeneration; // 连通分量标记对应的版本号
+	private volatile int generation; // 动态阻挡版本号
 
     public TriangleGraph(NavMeshData navMeshData,int scale) {
 		super();
@@ -54,8 +59,10 @@ public class TriangleGraph implements IndexedGraph<Triangle> {
 		}
 		numConnectedEdges /= 2;
 		numTotalEdges = numConnectedEdges + numDisconnectedEdges;
-		LOGGER.debug("地图{} 三角形{} 总共边{} 共享边{} 独立边{}", navMeshData.getMapID(),getTriangleCont(), numTotalEdges, numConnectedEdges,
-				numDisconnectedEdges);
+		components = new int[getNodeCount()];
+		componentCount = GraphComponents.label(this, triangles, components);
+		LOGGER.debug("地图{} 三角形{} 总共边{} 共享边{} 独立边{} 连通分量{}", navMeshData.getMapID(),getTriangleCont(), numTotalEdges, numConnectedEdges,
+				numDisconnectedEdges, componentCount);
 	}
 
 	@SuppressWarnings("unchecked")
@@ -374,4 +381,154 @@ public class TriangleGraph implements IndexedGraph<Triangle> {
 	public int getTriangleCont() {
 		return triangles.size();
 	}
+
+	/**
+	 * 三角形所在连通分量编号
+	 * 
+	 * @param triangle
+	 * @return
+	 */
+	public int getComponent(Triangle triangle) {
+		return getComponents()[triangle.getIndex()];
+	}
+
+	/**
+	 * 两个三角形是否连通，O(1)，动态阻挡变化后第一次调用时重新标记
+	 * 
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	public boolean isConnected(Triangle from, Triangle to) {
+		int[] components = getComponents();
+		return components[from.getIndex()] == components[to.getIndex()];
+	}
+
+	public int getComponentCount() {
+		getComponents();
+		return componentCount;
+	}
+
+	/**
+	 * 当前版本的连通分量标记
+	 * 
+	 * @return
+	 */
+	private int[] getComponents() {
+		if (componentGeneration != generation) {
+			synchronized (this) {
+				if (componentGeneration != generation) {
+					int[] labels = new int[getNodeCount()];
+					componentCount = GraphComponents.label(this, triangles, labels);
+					components = labels;
+					componentGeneration = generation;
+				}
+			}
+		}
+		return components;
+	}
+
+	/**
+	 * 设置相邻三角形之间的共享边是否可通行（双向），开关门等使用
+	 * 
+	 * @param a
+	 * @param b
+	 * @param enabled
+	 * @return 不相邻返回false
+	 */
+	public synchronized boolean setConnectionEnabled(Triangle a, Triangle b, boolean enabled) {
+		List<TriangleEdge> edges = getEdges(a, b);
+		if (edges.isEmpty()) {
+			return false;
+		}
+		boolean changed = false;
+		for (TriangleEdge edge : edges) {
+			if (edge.enabled != enabled) {
+				edge.enabled = enabled;
+				changed = true;
+			}
+		}
+		if (changed) {
+			generation++;
+		}
+		return true;
+	}
+
+	/**
+	 * 设置相邻三角形之间共享边的消耗倍数（双向），沼泽、危险区域等使用
+	 * 
+	 * @param a
+	 * @param b
+	 * @param multiplier
+	 *            消耗倍数，小于1按1处理，保证启发式估值不超过实际消耗
+	 * @return 不相邻返回false
+	 */
+	public synchronized boolean setConnectionCostMultiplier(Triangle a, Triangle b, float multiplier) {
+		List<TriangleEdge> edges = getEdges(a, b);
+		if (edges.isEmpty()) {
+			return false;
+		}
+		multiplier = Math.max(1, multiplier);
+		boolean changed = false;
+		for (TriangleEdge edge : edges) {
+			if (edge.costMultiplier != multiplier) {
+				edge.costMultiplier = multiplier;
+				changed = true;
+			}
+		}
+		if (changed) {
+			generation++;
+		}
+		return true;
+	}
+
+	/**
+	 * 设置三角形阻挡，阻挡后所有共享边不可通行，放置建筑等使用
+	 * <p>
+	 * 位于阻挡三角形内的单位也无法寻路离开，需要先移出
+	 * </p>
+	 * 
+	 * @param triangle
+	 * @param blocked
+	 */
+	public synchronized void setBlocked(Triangle triangle, boolean blocked) {
+		if (triangle.blocked != blocked) {
+			triangle.blocked = blocked;
+			generation++;
+		}
+	}
+
+	/**
+	 * 两个相邻三角形之间双向的所有共享边
+	 * 
+	 * @param a
+	 * @param b
+	 * @return 不相邻返回空列表
+	 */
+	public List<TriangleEdge> getEdges(Triangle a, Triangle b) {
+		List<TriangleEdge> edges = new ArrayList<>();
+		for (Connection<Triangle> connection : getConnections(a)) {
+			if (connection.getToNode() == b) {
+				edges.add((TriangleEdge) connection);
+			}
+		}
+		for (Connection<Triangle> connection : getConnections(b)) {
+			if (connection.getToNode() == a) {
+				edges.add((TriangleEdge) connection);
+			}
+		}
+		return edges;
+	}
+
+	/**
+	 * 动态阻挡版本号，每次修改通行状态或消耗后递增
+	 * <p>
+	 * 缓存的路径、下一跳表、单位的路径走廊记录生成时的版本号，版本号变化后失效
+	 * </p>
+	 * 
+	 * @return
+	 */
+	public int getGeneration() {
+		return generation;
+	}
 }
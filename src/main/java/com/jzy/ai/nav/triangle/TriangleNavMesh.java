@@ -3,13 +3,13 @@ package com.jzy.ai.nav.triangle;
 
 import com.alibaba.fastjson.JSON;
 import com.jzy.ai.nav.NavMesh;
+import com.jzy.ai.pfa.ConnectionPathCache;
 import com.jzy.ai.pfa.IndexedAStarPathFinder;
 import com.jzy.javalib.math.geometry.Vector3;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
-import java.util.Optional;
 
 /**
  * 寻路网格
@@ -25,6 +25,9 @@ public class TriangleNavMesh extends NavMesh {
 	private final TriangleGraph graph; // 导航数据图
 	private final TriangleHeuristic heuristic; // 寻路消耗计算
 	private final IndexedAStarPathFinder<Triangle> pathFinder; // A*寻路算法
+	private volatile ConnectionPathCache<Triangle> pathCache; // 三角形路径缓存，默认关闭
+	private volatile int cacheGeneration; // 缓存对应的图动态阻挡版本号
+	private volatile float heightTolerance = 6; // 3D地图坐标和所在三角形表面的最大高度差
 
 	
 	public TriangleNavMesh(String navMeshStr) {
@@ -55,6 +58,24 @@ public class TriangleNavMesh extends NavMesh {
 		return pathFinder;
 	}
 
+	/**
+	 * 设置三角形路径缓存容量
+	 * 
+	 * @param capacity 最大缓存路径数，小于等于0关闭缓存
+	 */
+	public void setPathCacheCapacity(int capacity) {
+		pathCache = capacity > 0 ? new ConnectionPathCache<>(graph, capacity) : null;
+	}
+
+	/**
+	 * 三角形路径缓存，可获取命中统计
+	 * 
+	 * @return 未开启返回null
+	 */
+	public ConnectionPathCache<Triangle> getPathCache() {
+		return pathCache;
+	}
+
 	/**
 	 * 查询路径
 	 * 
@@ -65,7 +86,27 @@ public class TriangleNavMesh extends NavMesh {
 	private boolean findPath(Vector3 fromPoint, Vector3 toPoint, TriangleGraphPath path) {
 		path.clear();
 		Triangle fromTriangle = getTriangle(fromPoint);
-		if (pathFinder.searchConnectionPath(fromTriangle, getTriangle(toPoint), heuristic, path)) {
+		Triangle toTriangle = getTriangle(toPoint);
+		// 不连通，无需搜索
+		if (fromTriangle != null && toTriangle != null && !graph.isConnected(fromTriangle, toTriangle)) {
+			return false;
+		}
+		ConnectionPathCache<Triangle> cache = pathCache;
+		// 动态阻挡变化，缓存失效
+		if (cache != null && cacheGeneration != graph.getGeneration()) {
+			cacheGeneration = graph.getGeneration();
+			cache.clear();
+		}
+		if (cache != null && fromTriangle != null && toTriangle != null && cache.get(fromTriangle, toTriangle, path)) {
+			path.start = new Vector3(fromPoint);
+			path.end = new Vector3(toPoint);
+			path.startTri = fromTriangle;
+			return true;
+		}
+		if (pathFinder.searchConnectionPath(fromTriangle, toTriangle, heuristic, path)) {
+			if (cache != null) {
+				cache.put(fromTriangle, toTriangle, path);
+			}
 			path.start = new Vector3(fromPoint);
 			path.end = new Vector3(toPoint);
 			path.startTri = fromTriangle;
@@ -95,20 +136,69 @@ public class TriangleNavMesh extends NavMesh {
 
 	/**
 	 * 获取坐标点所在的三角形
+	 * <p>
+	 * 分层重叠时选择表面高度最接近坐标的三角形，3D地图高度差需在{@link #getHeightTolerance()}以内；
+	 * 只有平面坐标时使用{@link #getTriangle(float, float)}
+	 * </p>
 	 * 
 	 * @note 很耗时，迭代所有三角形寻找
 	 * @param point
 	 * @return
 	 */
 	public Triangle getTriangle(Vector3 point) {
-		//TODO 高度判断，有可能有分层重叠多边形
-		Optional<Triangle> optional = graph.getTriangles().stream().filter(t -> t.isInnerPoint(point)).findFirst();
-		if (optional.isPresent()) {
-			return optional.get();
+		float minDistance = graph.getNavMeshData().isThreeDimensional() ? heightTolerance : Float.POSITIVE_INFINITY;
+		Triangle result = null;
+		List<Triangle> triangles = graph.getTriangles();
+		for (int i = 0; i < triangles.size(); i++) {
+			Triangle triangle = triangles.get(i);
+			if (!triangle.isInnerPoint(point)) {
+				continue;
+			}
+			float distance = Math.abs(triangle.getHeight(point.x, point.z) - point.y);
+			if (distance <= minDistance) {
+				result = triangle;
+				minDistance = distance;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 获取xz平面坐标所在的三角形，没有高度，不按高度差过滤
+	 * <p>
+	 * 屏幕点击等只有平面坐标的查询使用，分层重叠时返回第一个包含坐标的三角形
+	 * </p>
+	 * 
+	 * @note 很耗时，迭代所有三角形寻找
+	 * @param x
+	 * @param z
+	 * @return
+	 */
+	public Triangle getTriangle(float x, float z) {
+		Vector3 point = new Vector3(x, z);
+		List<Triangle> triangles = graph.getTriangles();
+		for (int i = 0; i < triangles.size(); i++) {
+			Triangle triangle = triangles.get(i);
+			if (triangle.isInnerPoint(point)) {
+				return triangle;
+			}
 		}
 		return null;
 	}
 
+	/**
+	 * 设置3D地图坐标和所在三角形表面的最大高度差，需小于重叠层之间的高度差
+	 * 
+	 * @param heightTolerance
+	 */
+	public void setHeightTolerance(float heightTolerance) {
+		this.heightTolerance = heightTolerance;
+	}
+
+	public float getHeightTolerance() {
+		return heightTolerance;
+	}
+
 	/**
 	 * 或者在路径中的坐标点<br>
 	 * 屏幕输入坐标点
@@ -118,12 +208,12 @@ public class TriangleNavMesh extends NavMesh {
 	 * @return
 	 */
 	public Vector3 getPointInPath(float x, float z) {
-		Vector3 vector3 = new Vector3(x, z);
-		Triangle triangle = getTriangle(vector3);
+		Triangle triangle = getTriangle(x, z);
 		if (triangle == null) {
 			LOGGER.info("坐标{},{}不在路径中", x, z);
 			return null;
 		}
+		Vector3 vector3 = new Vector3(x, z);
 		vector3.y = triangle.y;
 		return vector3;
 	}
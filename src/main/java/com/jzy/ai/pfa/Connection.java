@@ -25,4 +25,20 @@ public interface Connection<N> {
 	/** Returns the node that this connection leads to */
 	public N getToNode();
 
+	/**
+	 * 是否可通行<br>
+	 * 动态阻挡（关门、放置建筑）时返回false，寻路跳过该连接
+	 */
+	public default boolean isEnabled() {
+		return true;
+	}
+
+	/**
+	 * 基础消耗，不受动态阻挡和消耗倍数影响，不大于{@link #getCost()}<br>
+	 * {@link LandmarkHeuristic}等预计算的下界使用，动态消耗变化后仍然成立
+	 */
+	public default float getBaseCost() {
+		return getCost();
+	}
+
 }
@@ -0,0 +1,178 @@
+package com.jzy.ai.pfa;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 连接路径缓存
+ * <br>
+ * 按(起点索引,终点索引)缓存A*查询结果，只保存每一步在当前节点连接列表中的序号，命中时按序号还原连接路径，
+ * 巡逻、脱战回出生点等重复路线无需再次搜索。
+ * <p>
+ * 容量固定，使用CLOCK（二次机会）算法淘汰：每个槽位有访问标记，指针扫过时清除标记，淘汰第一个未被访问的槽位。
+ * </p>
+ * 图的连接关系改变后需要调用{@link #clear()}。
+ *
+ * @param <N> Type of node
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class ConnectionPathCache<N> {
+	private final IndexedGraph<N> graph;
+	/** 槽位对应的key */
+	private final long[] keys;
+	/** 槽位对应的路径，每一步在节点连接列表中的序号 */
+	private final int[][] corridors;
+	/** 访问标记 */
+	private final boolean[] referenced;
+	/** key->槽位 */
+	private final Map<Long, Integer> slots;
+	/** 已使用槽位数 */
+	private int size;
+	/** CLOCK指针 */
+	private int hand;
+
+	/** 命中次数 */
+	private long hits;
+	/** 未命中次数 */
+	private long misses;
+
+	/**
+	 * @param graph    图
+	 * @param capacity 最大缓存路径数
+	 */
+	public ConnectionPathCache(IndexedGraph<N> graph, int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		this.graph = graph;
+		this.keys = new long[capacity];
+		this.corridors = new int[capacity][];
+		this.referenced = new boolean[capacity];
+		this.slots = new HashMap<>(capacity * 4 / 3 + 1);
+	}
+
+	private long key(N startNode, N endNode) {
+		return ((long) graph.getIndex(startNode) << 32) | (graph.getIndex(endNode) & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * 获取缓存的路径
+	 *
+	 * @param startNode 起点
+	 * @param endNode   终点
+	 * @param outPath   输出路径，未命中时不修改
+	 * @return true 命中
+	 */
+	public synchronized boolean get(N startNode, N endNode, GraphPath<Connection<N>> outPath) {
+		Integer slot = slots.get(key(startNode, endNode));
+		if (slot == null) {
+			misses++;
+			return false;
+		}
+		hits++;
+		referenced[slot] = true;
+		N node = startNode;
+		for (int connectionIndex : corridors[slot]) {
+			Connection<N> connection = graph.getConnections(node).get(connectionIndex);
+			outPath.add(connection);
+			node = connection.getToNode();
+		}
+		return true;
+	}
+
+	/**
+	 * 缓存路径
+	 *
+	 * @param startNode 起点
+	 * @param endNode   终点
+	 * @param path      查询到的连接路径
+	 */
+	public synchronized void put(N startNode, N endNode, GraphPath<Connection<N>> path) {
+		int[] corridor = new int[path.getCount()];
+		for (int i = 0; i < corridor.length; i++) {
+			Connection<N> connection = path.get(i);
+			List<Connection<N>> connections = graph.getConnections(connection.getFromNode());
+			int connectionIndex = connections.indexOf(connection);
+			if (connectionIndex < 0) {
+				return;
+			}
+			corridor[i] = connectionIndex;
+		}
+
+		long key = key(startNode, endNode);
+		Integer slot = slots.get(key);
+		if (slot == null) {
+			slot = nextSlot();
+			keys[slot] = key;
+			slots.put(key, slot);
+		}
+		corridors[slot] = corridor;
+		referenced[slot] = false;
+	}
+
+	/**
+	 * 获取空闲或淘汰的槽位
+	 *
+	 * @return
+	 */
+	private int nextSlot() {
+		if (size < keys.length) {
+			return size++;
+		}
+		while (referenced[hand]) {
+			referenced[hand] = false;
+			hand = (hand + 1) % keys.length;
+		}
+		int slot = hand;
+		slots.remove(keys[slot]);
+		corridors[slot] = null;
+		hand = (hand + 1) % keys.length;
+		return slot;
+	}
+
+	/**
+	 * 清空缓存，图变化时调用
+	 */
+	public synchronized void clear() {
+		slots.clear();
+		for (int i = 0; i < size; i++) {
+			corridors[i] = null;
+			referenced[i] = false;
+		}
+		size = 0;
+		hand = 0;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * 命中率
+	 *
+	 * @return
+	 */
+	public synchronized float getHitRate() {
+		long total = hits + misses;
+		return total == 0 ? 0 : (float) hits / total;
+	}
+
+	/**
+	 * 重置命中统计
+	 */
+	public synchronized void resetMetrics() {
+		hits = 0;
+		misses = 0;
+	}
+}
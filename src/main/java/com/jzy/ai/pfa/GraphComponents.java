@@ -0,0 +1,63 @@
+package com.jzy.ai.pfa;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * 图连通分量
+ * <br>
+ * 建图时为每个节点标记连通分量编号，寻路前比较编号即可O(1)判断是否可达，
+ * 避免不可达请求让A*展开整个连通区域后才失败。
+ * <p>
+ * 要求图的连接是对称的（navmesh共享边满足），此时连通分量即强连通分量。
+ * 不可通行的连接（{@link Connection#isEnabled()}）不计入连通关系，动态阻挡变化后需要重新标记。
+ * </p>
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public final class GraphComponents {
+
+	private GraphComponents() {
+	}
+
+	/**
+	 * 标记连通分量
+	 *
+	 * @param graph         图
+	 * @param nodes         图的所有节点
+	 * @param outComponents 输出，下标为节点索引，值为分量编号，长度不小于{@link IndexedGraph#getNodeCount()}
+	 * @return 连通分量个数
+	 */
+	public static <N> int label(IndexedGraph<N> graph, List<N> nodes, int[] outComponents) {
+		Arrays.fill(outComponents, -1);
+		Deque<N> queue = new ArrayDeque<>();
+		int count = 0;
+		for (N node : nodes) {
+			if (outComponents[graph.getIndex(node)] >= 0) {
+				continue;
+			}
+			outComponents[graph.getIndex(node)] = count;
+			queue.add(node);
+			while (!queue.isEmpty()) {
+				List<Connection<N>> connections = graph.getConnections(queue.poll());
+				for (int i = 0; i < connections.size(); i++) {
+					Connection<N> connection = connections.get(i);
+					if (!connection.isEnabled()) {
+						continue;
+					}
+					N neighbor = connection.getToNode();
+					int index = graph.getIndex(neighbor);
+					if (outComponents[index] < 0) {
+						outComponents[index] = count;
+						queue.add(neighbor);
+					}
+				}
+			}
+			count++;
+		}
+		return count;
+	}
+}
@@ -26,7 +26,7 @@ import java.util.List;
  * means that the close list is no longer needed. To know whether a node is open or closed, we use the {@link NodeRecord#category
  * category} of the node record. This makes the search step very fast indeed (in fact, there is no search, and we can go straight
  * to the information we need). Unfortunately, we can't get rid of the open list because we still need to be able to retrieve the
- * element with the lowest cost. However, we use a {@link NodeBinaryHeap} for the open list in order to keep performance as high as
+ * element with the lowest cost. However, we use a {@link NodeDaryHeap} for the open list in order to keep performance as high as
  * possible.
  * 
  * @param <N> Type of node
@@ -38,7 +38,7 @@ public class IndexedAStarPathFinder<N> implements PathFinder<N> {
 	private static final Logger LOGGER=LoggerFactory.getLogger(IndexedAStarPathFinder.class);
 	IndexedGraph<N> graph;	//图数据
 	NodeRecord<N>[] nodeRecords;
-	NodeBinaryHeap<NodeRecord<N>> openList;
+	NodeDaryHeap<NodeRecord<N>> openList;
 	NodeRecord<N> current;	//当前节点
 	public Metrics metrics;
 
@@ -57,7 +57,7 @@ public class IndexedAStarPathFinder<N> implements PathFinder<N> {
 	public IndexedAStarPathFinder (IndexedGraph<N> graph, boolean calculateMetrics) {
 		this.graph = graph;
 		this.nodeRecords = (NodeRecord<N>[])new NodeRecord[graph.getNodeCount()];
-		this.openList = new NodeBinaryHeap<NodeRecord<N>>();
+		this.openList = new NodeDaryHeap<NodeRecord<N>>();
 		if (calculateMetrics) this.metrics = new Metrics();
 	}
 
@@ -168,6 +168,8 @@ public class IndexedAStarPathFinder<N> implements PathFinder<N> {
 			if (metrics != null) metrics.visitedNodes++;
 
 			Connection<N> connection = connections.get(i);
+			// 动态阻挡
+			if (!connection.isEnabled()) continue;
 
 			// Get the cost estimate for the node
 			N node = connection.getToNode();	//周围目标节点
@@ -188,12 +190,15 @@ public class IndexedAStarPathFinder<N> implements PathFinder<N> {
 				// If our route is no better, then skip
 				if (nodeRecord.costSoFar <= nodeCost) continue;
 
-				// Remove it from the open list (it will be re-added with the new cost)
-				openList.remove(nodeRecord);
-
 				// We can use the node's old cost values to calculate its heuristic
 				// without calling the possibly expensive heuristic function
 				nodeHeuristic = nodeRecord.getEstimatedTotalCost() - nodeRecord.costSoFar;
+
+				// 原地减小开列表中的消耗，不需要先移除再添加
+				nodeRecord.costSoFar = nodeCost;
+				nodeRecord.connection = connection;
+				openList.setValue(nodeRecord, nodeCost + nodeHeuristic);
+				continue;
 			} else { // the node is unvisited
 
 				// We'll need to calculate the heuristic value using the function,
@@ -272,6 +277,7 @@ public class IndexedAStarPathFinder<N> implements PathFinder<N> {
 		NodeRecord<N> nr = nodeRecords[index];
 		if (nr != null) {
 			if (nr.searchId != searchId) {
+				nr.node = node;	//节点对象可能被替换（分块地图重新加载）
 				nr.category = UNVISITED;
 				nr.searchId = searchId;
 			}
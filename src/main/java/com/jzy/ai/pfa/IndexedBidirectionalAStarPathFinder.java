@@ -0,0 +1,331 @@
+package com.jzy.ai.pfa;
+
+import java.util.List;
+
+import com.jzy.ai.pfa.IndexedAStarPathFinder.NodeRecord;
+
+/**
+ * 双向A*寻路
+ * <br>
+ * 从起点正向、从终点反向同时搜索，每次展开开列表较小的一侧，两侧相遇后得到路径。
+ * 长距离寻路时单向A*在终点附近会展开很大的搜索前沿，双向搜索两侧前沿都较小，展开节点更少。
+ * <p>
+ * 使用平均势函数保证最优：pf(v) = (h(v,终点) - h(v,起点)) / 2，反向势函数 pr(v) = -pf(v)，
+ * 正向开列表按 g(v) + pf(v) 排序，反向开列表按 g'(v) + pr(v) 排序，
+ * 两侧开列表最小值之和不小于当前最短相遇路径时结束。启发式需要一致（满足三角不等式），
+ * 多边形中心直线距离、{@link LandmarkHeuristic}满足该条件。
+ * </p>
+ * <p>
+ * 反向搜索需要逆向连接：要求图的连接是对称的（存在A到B的连接则存在B到A的连接，且消耗相同），
+ * navmesh的多边形和三角形共享边满足该条件。
+ * </p>
+ * 和{@link IndexedAStarPathFinder}一样，节点记录数组在多次搜索间复用，用searchId区分；
+ * 统计数据使用{@link IndexedAStarPathFinder.Metrics}，方便直接对比。
+ *
+ * @param <N> Type of node
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class IndexedBidirectionalAStarPathFinder<N> implements PathFinder<N> {
+	IndexedGraph<N> graph;
+	/** 正向搜索节点记录 */
+	NodeRecord<N>[] forwardRecords;
+	/** 反向搜索节点记录，connection为从该节点指向终点方向的连接 */
+	NodeRecord<N>[] backwardRecords;
+	NodeDaryHeap<NodeRecord<N>> forwardOpenList;
+	NodeDaryHeap<NodeRecord<N>> backwardOpenList;
+	public IndexedAStarPathFinder.Metrics metrics;
+
+	/** The unique ID for each search run. Used to mark nodes. */
+	private int searchId;
+
+	private N startNode;
+	private N endNode;
+	private Heuristic<N> heuristic;
+	/** 当前最短相遇路径消耗 */
+	private float bestCost;
+	/** 最短路径相遇节点 */
+	private N meetNode;
+
+	private static final int UNVISITED = 0;
+	private static final int OPEN = 1;
+	private static final int CLOSED = 2;
+
+	public IndexedBidirectionalAStarPathFinder(IndexedGraph<N> graph) {
+		this(graph, false);
+	}
+
+	@SuppressWarnings("unchecked")
+	public IndexedBidirectionalAStarPathFinder(IndexedGraph<N> graph, boolean calculateMetrics) {
+		this.graph = graph;
+		this.forwardRecords = (NodeRecord<N>[]) new NodeRecord[graph.getNodeCount()];
+		this.backwardRecords = (NodeRecord<N>[]) new NodeRecord[graph.getNodeCount()];
+		this.forwardOpenList = new NodeDaryHeap<NodeRecord<N>>();
+		this.backwardOpenList = new NodeDaryHeap<NodeRecord<N>>();
+		if (calculateMetrics) this.metrics = new IndexedAStarPathFinder.Metrics();
+	}
+
+	@Override
+	public boolean searchConnectionPath(N startNode, N endNode, Heuristic<N> heuristic,
+			GraphPath<Connection<N>> outPath) {
+		if (startNode == null || endNode == null) {
+			return false;
+		}
+		boolean found = search(startNode, endNode, heuristic);
+		if (found) {
+			generateConnectionPath(outPath);
+		}
+		clearSearch();
+		return found;
+	}
+
+	@Override
+	public boolean searchNodePath(N startNode, N endNode, Heuristic<N> heuristic, GraphPath<N> outPath) {
+		if (startNode == null || endNode == null) {
+			return false;
+		}
+		boolean found = search(startNode, endNode, heuristic);
+		if (found) {
+			generateNodePath(outPath);
+		}
+		clearSearch();
+		return found;
+	}
+
+	/**
+	 * 搜寻路径
+	 *
+	 * @param startNode
+	 * @param endNode
+	 * @param heuristic
+	 * @return <code>true</code> 查找到路径
+	 */
+	protected boolean search(N startNode, N endNode, Heuristic<N> heuristic) {
+		initSearch(startNode, endNode, heuristic);
+		if (startNode == endNode) {
+			meetNode = startNode;
+			return true;
+		}
+
+		while (forwardOpenList.size > 0 && backwardOpenList.size > 0) {
+			// 两侧最小排序值之和不小于最短相遇路径，已是最优
+			if (forwardOpenList.peek().getValue() + backwardOpenList.peek().getValue() >= bestCost) {
+				break;
+			}
+			if (forwardOpenList.size <= backwardOpenList.size) {
+				expand(forwardOpenList.pop(), true);
+			} else {
+				expand(backwardOpenList.pop(), false);
+			}
+		}
+		return meetNode != null;
+	}
+
+	/**
+	 * 初始化查询
+	 *
+	 * @param startNode
+	 * @param endNode
+	 * @param heuristic
+	 */
+	protected void initSearch(N startNode, N endNode, Heuristic<N> heuristic) {
+		if (metrics != null) metrics.reset();
+
+		// Increment the search id
+		if (++searchId < 0) searchId = 1;
+
+		this.startNode = startNode;
+		this.endNode = endNode;
+		this.heuristic = heuristic;
+		this.bestCost = Float.POSITIVE_INFINITY;
+		this.meetNode = null;
+
+		forwardOpenList.clear();
+		backwardOpenList.clear();
+
+		NodeRecord<N> startRecord = getNodeRecord(forwardRecords, startNode);
+		startRecord.connection = null;
+		startRecord.costSoFar = 0;
+		addToOpenList(forwardOpenList, startRecord, potential(startNode, true));
+
+		NodeRecord<N> endRecord = getNodeRecord(backwardRecords, endNode);
+		endRecord.connection = null;
+		endRecord.costSoFar = 0;
+		addToOpenList(backwardOpenList, endRecord, potential(endNode, false));
+	}
+
+	/**
+	 * 展开节点
+	 *
+	 * @param current 当前节点记录
+	 * @param forward 是否正向搜索
+	 */
+	protected void expand(NodeRecord<N> current, boolean forward) {
+		current.category = CLOSED;
+		NodeRecord<N>[] records = forward ? forwardRecords : backwardRecords;
+		NodeRecord<N>[] otherRecords = forward ? backwardRecords : forwardRecords;
+		NodeDaryHeap<NodeRecord<N>> openList = forward ? forwardOpenList : backwardOpenList;
+
+		List<Connection<N>> connections = graph.getConnections(current.node);
+		for (int i = 0; i < connections.size(); i++) {
+			if (metrics != null) metrics.visitedNodes++;
+			Connection<N> connection = connections.get(i);
+			if (forward && !connection.isEnabled()) continue;
+			N node = connection.getToNode();
+			// 对称连接，正反消耗相同
+			float nodeCost = current.costSoFar + connection.getCost();
+
+			NodeRecord<N> nodeRecord = getNodeRecord(records, node);
+			// 势函数一致，关闭的节点已是最短消耗
+			if (nodeRecord.category == CLOSED) continue;
+			if (nodeRecord.category == OPEN && nodeRecord.costSoFar <= nodeCost) continue;
+
+			Connection<N> nodeConnection = connection;
+			if (!forward) {
+				// 反向搜索记录从该节点指向终点方向的连接
+				nodeConnection = getReverseConnection(node, current.node);
+				if (nodeConnection == null || !nodeConnection.isEnabled()) continue;
+			}
+
+			float nodePotential;
+			if (nodeRecord.category == OPEN) {
+				nodePotential = nodeRecord.getValue() - nodeRecord.costSoFar;
+				nodeRecord.costSoFar = nodeCost;
+				nodeRecord.connection = nodeConnection;
+				openList.setValue(nodeRecord, nodeCost + nodePotential);
+			} else {
+				nodePotential = potential(node, forward);
+				nodeRecord.costSoFar = nodeCost;
+				nodeRecord.connection = nodeConnection;
+				addToOpenList(openList, nodeRecord, nodeCost + nodePotential);
+			}
+
+			// 另一侧已到达该节点，更新最短相遇路径
+			NodeRecord<N> otherRecord = otherRecords[graph.getIndex(node)];
+			if (otherRecord != null && otherRecord.searchId == searchId && otherRecord.category != UNVISITED) {
+				float cost = nodeCost + otherRecord.costSoFar;
+				if (cost < bestCost) {
+					bestCost = cost;
+					meetNode = node;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 平均势函数
+	 *
+	 * @param node
+	 * @param forward 是否正向搜索
+	 * @return
+	 */
+	protected float potential(N node, boolean forward) {
+		float potential = (heuristic.estimate(node, endNode) - heuristic.estimate(node, startNode)) * 0.5f;
+		return forward ? potential : -potential;
+	}
+
+	/**
+	 * 获取逆向连接
+	 *
+	 * @param fromNode
+	 * @param toNode
+	 * @return 不存在返回null
+	 */
+	protected Connection<N> getReverseConnection(N fromNode, N toNode) {
+		List<Connection<N>> connections = graph.getConnections(fromNode);
+		for (int i = 0; i < connections.size(); i++) {
+			Connection<N> connection = connections.get(i);
+			if (connection.getToNode() == toNode) {
+				return connection;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 生成链接关系路径
+	 *
+	 * @param outPath
+	 */
+	protected void generateConnectionPath(GraphPath<Connection<N>> outPath) {
+		// 起点到相遇节点
+		NodeRecord<N> record = forwardRecords[graph.getIndex(meetNode)];
+		while (record.node != startNode) {
+			outPath.add(record.connection);
+			record = forwardRecords[graph.getIndex(record.connection.getFromNode())];
+		}
+		outPath.reverse();
+
+		// 相遇节点到终点
+		record = backwardRecords[graph.getIndex(meetNode)];
+		while (record.node != endNode) {
+			outPath.add(record.connection);
+			record = backwardRecords[graph.getIndex(record.connection.getToNode())];
+		}
+	}
+
+	/**
+	 * 生成链接节点路径
+	 *
+	 * @param outPath
+	 */
+	protected void generateNodePath(GraphPath<N> outPath) {
+		NodeRecord<N> record = forwardRecords[graph.getIndex(meetNode)];
+		while (record.node != startNode) {
+			outPath.add(record.node);
+			record = forwardRecords[graph.getIndex(record.connection.getFromNode())];
+		}
+		outPath.add(startNode);
+		outPath.reverse();
+
+		if (meetNode == endNode) {
+			return;
+		}
+		record = backwardRecords[graph.getIndex(meetNode)];
+		do {
+			record = backwardRecords[graph.getIndex(record.connection.getToNode())];
+			outPath.add(record.node);
+		} while (record.node != endNode);
+	}
+
+	/**
+	 * 释放本次查询引用的对象
+	 */
+	private void clearSearch() {
+		startNode = null;
+		endNode = null;
+		heuristic = null;
+		meetNode = null;
+	}
+
+	protected void addToOpenList(NodeDaryHeap<NodeRecord<N>> openList, NodeRecord<N> nodeRecord, float value) {
+		openList.add(nodeRecord, value);
+		nodeRecord.category = OPEN;
+		if (metrics != null) {
+			metrics.openListAdditions++;
+			metrics.openListPeak = Math.max(metrics.openListPeak, forwardOpenList.size + backwardOpenList.size);
+		}
+	}
+
+	protected NodeRecord<N> getNodeRecord(NodeRecord<N>[] records, N node) {
+		int index = graph.getIndex(node);
+		NodeRecord<N> nr = records[index];
+		if (nr != null) {
+			if (nr.searchId != searchId) {
+				nr.node = node;
+				nr.category = UNVISITED;
+				nr.searchId = searchId;
+			}
+			return nr;
+		}
+		nr = records[index] = new NodeRecord<N>();
+		nr.node = node;
+		nr.searchId = searchId;
+		return nr;
+	}
+
+	public IndexedGraph<N> getGraph() {
+		return graph;
+	}
+}
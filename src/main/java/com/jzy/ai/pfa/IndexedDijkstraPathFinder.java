@@ -0,0 +1,185 @@
+package com.jzy.ai.pfa;
+
+import java.util.List;
+
+/**
+ * 一对多反向Dijkstra寻路
+ * <br>
+ * 从目标节点出发执行一次反向Dijkstra搜索，生成{@link NextHopTable}，所有起点共享同一次搜索结果。
+ * 适用于大量单位追击同一目标（召唤援军、整营怪物追击同一玩家）的情况，代替每个单位各自执行一次A*。
+ * <p>
+ * 反向搜索需要逆向连接：要求图的连接是对称的（存在A到B的连接则存在B到A的连接，且消耗相同），
+ * navmesh的多边形和三角形共享边满足该条件。
+ * </p>
+ * 和{@link IndexedAStarPathFinder}一样，节点记录数组在多次搜索间复用，用searchId区分。
+ *
+ * @param <N> Type of node
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class IndexedDijkstraPathFinder<N> implements PathFinder<N> {
+	IndexedGraph<N> graph;
+	DijkstraRecord<N>[] nodeRecords;
+	NodeDaryHeap<DijkstraRecord<N>> openList;
+	public IndexedAStarPathFinder.Metrics metrics;
+
+	/** The unique ID for each search run. Used to mark nodes. */
+	private int searchId;
+
+	public IndexedDijkstraPathFinder(IndexedGraph<N> graph) {
+		this(graph, false);
+	}
+
+	@SuppressWarnings("unchecked")
+	public IndexedDijkstraPathFinder(IndexedGraph<N> graph, boolean calculateMetrics) {
+		this.graph = graph;
+		this.nodeRecords = (DijkstraRecord<N>[]) new DijkstraRecord[graph.getNodeCount()];
+		this.openList = new NodeDaryHeap<DijkstraRecord<N>>();
+		if (calculateMetrics) this.metrics = new IndexedAStarPathFinder.Metrics();
+	}
+
+	/**
+	 * 创建和图大小匹配的下一跳表
+	 *
+	 * @return
+	 */
+	public NextHopTable<N> createTable() {
+		return new NextHopTable<N>(graph.getNodeCount());
+	}
+
+	/**
+	 * 从目标节点反向搜索整个图
+	 *
+	 * @param goalNode 目标节点
+	 * @param outTable 输出的下一跳表，会被重置
+	 */
+	public void search(N goalNode, NextHopTable<N> outTable) {
+		if (metrics != null) metrics.reset();
+		if (++searchId < 0) searchId = 1;
+
+		outTable.reset();
+		outTable.goal = goalNode;
+		outTable.createTime = System.currentTimeMillis();
+		float[] costs = outTable.costs;
+		Connection<N>[] nextConnections = outTable.nextConnections;
+
+		openList.clear();
+		costs[graph.getIndex(goalNode)] = 0;
+		addToOpenList(getNodeRecord(goalNode), 0);
+
+		while (openList.size > 0) {
+			DijkstraRecord<N> current = openList.pop();
+			current.open = false;
+			N node = current.node;
+			float cost = costs[graph.getIndex(node)];
+
+			List<Connection<N>> connections = graph.getConnections(node);
+			for (int i = 0; i < connections.size(); i++) {
+				if (metrics != null) metrics.visitedNodes++;
+				Connection<N> connection = connections.get(i);
+				N neighbor = connection.getToNode();
+				int index = graph.getIndex(neighbor);
+				// 对称连接，正反消耗相同
+				float neighborCost = cost + connection.getCost();
+				if (neighborCost >= costs[index]) continue;
+
+				Connection<N> reverse = getReverseConnection(neighbor, node);
+				if (reverse == null || !reverse.isEnabled()) continue;
+
+				costs[index] = neighborCost;
+				nextConnections[index] = reverse;
+				DijkstraRecord<N> record = getNodeRecord(neighbor);
+				if (record.open) {
+					openList.setValue(record, neighborCost);
+				} else {
+					addToOpenList(record, neighborCost);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 获取逆向连接
+	 *
+	 * @param fromNode
+	 * @param toNode
+	 * @return 不存在返回null
+	 */
+	protected Connection<N> getReverseConnection(N fromNode, N toNode) {
+		List<Connection<N>> connections = graph.getConnections(fromNode);
+		for (int i = 0; i < connections.size(); i++) {
+			Connection<N> connection = connections.get(i);
+			if (connection.getToNode() == toNode) {
+				return connection;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 单次查询，结果不缓存，一般使用{@link #search(Object, NextHopTable)}生成的表多次查询
+	 */
+	@Override
+	public boolean searchConnectionPath(N startNode, N endNode, Heuristic<N> heuristic,
+			GraphPath<Connection<N>> outPath) {
+		NextHopTable<N> table = createTable();
+		search(endNode, table);
+		return table.getConnectionPath(graph, startNode, outPath);
+	}
+
+	/**
+	 * 单次查询，结果不缓存，一般使用{@link #search(Object, NextHopTable)}生成的表多次查询
+	 */
+	@Override
+	public boolean searchNodePath(N startNode, N endNode, Heuristic<N> heuristic, GraphPath<N> outPath) {
+		NextHopTable<N> table = createTable();
+		search(endNode, table);
+		return table.getNodePath(graph, startNode, outPath);
+	}
+
+	protected void addToOpenList(DijkstraRecord<N> nodeRecord, float cost) {
+		openList.add(nodeRecord, cost);
+		nodeRecord.open = true;
+		if (metrics != null) {
+			metrics.openListAdditions++;
+			metrics.openListPeak = Math.max(metrics.openListPeak, openList.size);
+		}
+	}
+
+	protected DijkstraRecord<N> getNodeRecord(N node) {
+		int index = graph.getIndex(node);
+		DijkstraRecord<N> nr = nodeRecords[index];
+		if (nr == null) {
+			nr = nodeRecords[index] = new DijkstraRecord<N>();
+			nr.node = node;
+		}
+		if (nr.searchId != searchId) {
+			nr.node = node;
+			nr.open = false;
+			nr.searchId = searchId;
+		}
+		return nr;
+	}
+
+	public IndexedGraph<N> getGraph() {
+		return graph;
+	}
+
+	/**
+	 * 搜索节点记录
+	 *
+	 * @param <N> Type of node
+	 */
+	static class DijkstraRecord<N> extends NodeBinaryHeap.Node {
+		N node;
+		/** 是否在开列表中 */
+		boolean open;
+		/** ID of the current search. */
+		int searchId;
+
+		public DijkstraRecord() {
+			super(0);
+		}
+	}
+}
@@ -0,0 +1,217 @@
+package com.jzy.ai.pfa;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 地标（ALT）启发式消耗
+ * <br>
+ * 预先计算K个地标节点到所有节点的最短距离 distances[K][nodeCount]，根据三角不等式
+ * |d(L,goal) - d(L,node)| &lt;= d(node,goal) 得到下界，取所有地标的最大值。
+ * 迷宫类地图上比直线距离准确得多，A*展开的节点大幅减少。
+ * <p>
+ * 要求图的连接是对称的（navmesh共享边满足）。和可选的基础启发式取最大值，两者都可采纳时结果仍可采纳。
+ * 距离表按{@link Connection#getBaseCost()}计算，忽略{@link Connection#isEnabled()}：动态阻挡和消耗倍数只会增大实际消耗，
+ * 距离表计算之后阻挡、解除阻挡或修改倍数，下界仍然成立。
+ * </p>
+ * 地标按最远点策略选取：第一个地标为最远离首节点的节点，之后每次选取离已有地标最远的节点。
+ * 距离表可通过{@link #getDistances()}导出保存到地图文件，加载时用{@link #LandmarkHeuristic(IndexedGraph, float[][], Heuristic)}还原。
+ *
+ * @param <N> Type of node
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class LandmarkHeuristic<N> implements Heuristic<N> {
+	private final IndexedGraph<N> graph;
+	/** 基础启发式，可为null */
+	private final Heuristic<N> baseHeuristic;
+	/** 地标到各节点的最短距离，不可达为{@link Float#POSITIVE_INFINITY} */
+	private final float[][] distances;
+
+	/**
+	 * 计算地标距离表
+	 *
+	 * @param graph         图
+	 * @param nodes         图的所有节点，下标和{@link IndexedGraph#getIndex(Object)}一致
+	 * @param landmarkCount 地标个数，一般4~16
+	 * @param baseHeuristic 基础启发式，可为null
+	 */
+	public LandmarkHeuristic(IndexedGraph<N> graph, List<N> nodes, int landmarkCount, Heuristic<N> baseHeuristic) {
+		this(graph, createDistances(graph, nodes, landmarkCount), baseHeuristic);
+	}
+
+	/**
+	 * 使用已有的地标距离表
+	 *
+	 * @param graph         图
+	 * @param distances     地标距离表 [地标][节点索引]
+	 * @param baseHeuristic 基础启发式，可为null
+	 */
+	public LandmarkHeuristic(IndexedGraph<N> graph, float[][] distances, Heuristic<N> baseHeuristic) {
+		this.graph = graph;
+		this.distances = distances;
+		this.baseHeuristic = baseHeuristic;
+	}
+
+	@Override
+	public float estimate(N node, N endNode) {
+		int nodeIndex = graph.getIndex(node);
+		int endIndex = graph.getIndex(endNode);
+		float estimate = baseHeuristic == null ? 0 : baseHeuristic.estimate(node, endNode);
+		for (int i = 0; i < distances.length; i++) {
+			float[] landmark = distances[i];
+			float toNode = landmark[nodeIndex];
+			float toEnd = landmark[endIndex];
+			// 和地标不连通，不能提供下界
+			if (toNode == Float.POSITIVE_INFINITY || toEnd == Float.POSITIVE_INFINITY) {
+				continue;
+			}
+			float bound = Math.abs(toEnd - toNode);
+			if (bound > estimate) {
+				estimate = bound;
+			}
+		}
+		return estimate;
+	}
+
+	/**
+	 * 选取地标并计算距离表，按所有连接可通行、基础消耗计算
+	 *
+	 * @param graph
+	 * @param nodes
+	 * @param landmarkCount
+	 * @return
+	 */
+	public static <N> float[][] createDistances(IndexedGraph<N> graph, List<N> nodes, int landmarkCount) {
+		int count = Math.min(landmarkCount, nodes.size());
+		float[][] distances = new float[count][];
+		if (count == 0) {
+			return distances;
+		}
+		IndexedDijkstraPathFinder<N> pathFinder = new IndexedDijkstraPathFinder<>(new BaseCostGraph<>(graph));
+		NextHopTable<N> table = pathFinder.createTable();
+		// 离已有地标的最小距离
+		float[] minDistances = new float[graph.getNodeCount()];
+
+		// 首个地标：离首节点最远的节点
+		pathFinder.search(nodes.get(0), table);
+		N landmark = farthest(nodes, graph, table.costs);
+		for (int i = 0; i < count; i++) {
+			pathFinder.search(landmark, table);
+			distances[i] = table.costs.clone();
+			for (int j = 0; j < minDistances.length; j++) {
+				minDistances[j] = i == 0 ? distances[i][j] : Math.min(minDistances[j], distances[i][j]);
+			}
+			landmark = farthest(nodes, graph, minDistances);
+		}
+		return distances;
+	}
+
+	/**
+	 * 距离最大的可达节点
+	 *
+	 * @param nodes
+	 * @param graph
+	 * @param costs
+	 * @return
+	 */
+	private static <N> N farthest(List<N> nodes, IndexedGraph<N> graph, float[] costs) {
+		N result = nodes.get(0);
+		float max = -1;
+		for (N node : nodes) {
+			float cost = costs[graph.getIndex(node)];
+			if (cost != Float.POSITIVE_INFINITY && cost > max) {
+				max = cost;
+				result = node;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 地标距离表，可保存到地图文件
+	 *
+	 * @return [地标][节点索引]
+	 */
+	public float[][] getDistances() {
+		return distances;
+	}
+
+	public int getLandmarkCount() {
+		return distances.length;
+	}
+
+	/**
+	 * 图的基础消耗视图，连接都可通行，消耗为{@link Connection#getBaseCost()}
+	 *
+	 * @param <N>
+	 */
+	private static final class BaseCostGraph<N> implements IndexedGraph<N> {
+		private final IndexedGraph<N> graph;
+		/** 节点索引-基础连接，延迟创建 */
+		private final List<Connection<N>>[] connections;
+
+		@SuppressWarnings("unchecked")
+		BaseCostGraph(IndexedGraph<N> graph) {
+			this.graph = graph;
+			this.connections = new List[graph.getNodeCount()];
+		}
+
+		@Override
+		public List<Connection<N>> getConnections(N fromNode) {
+			int index = graph.getIndex(fromNode);
+			List<Connection<N>> list = connections[index];
+			if (list == null) {
+				List<Connection<N>> source = graph.getConnections(fromNode);
+				list = new ArrayList<>(source.size());
+				for (int i = 0; i < source.size(); i++) {
+					list.add(new BaseConnection<>(source.get(i)));
+				}
+				connections[index] = list;
+			}
+			return list;
+		}
+
+		@Override
+		public int getIndex(N node) {
+			return graph.getIndex(node);
+		}
+
+		@Override
+		public int getNodeCount() {
+			return graph.getNodeCount();
+		}
+	}
+	/**
+	 * 连接的基础消耗视图，始终可通行
+	 *
+	 * @param <N>
+	 */
+	private static final class BaseConnection<N> implements Connection<N> {
+		private final N fromNode;
+		private final N toNode;
+		private final float cost;
+
+		BaseConnection(Connection<N> connection) {
+			this.fromNode = connection.getFromNode();
+			this.toNode = connection.getToNode();
+			this.cost = connection.getBaseCost();
+		}
+
+		@Override
+		public float getCost() {
+			return cost;
+		}
+
+		@Override
+		public N getFromNode() {
+			return fromNode;
+		}
+
+		@Override
+		public N getToNode() {
+			return toNode;
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package com.jzy.ai.pfa;
+
+import java.util.Arrays;
+
+/**
+ * 下一跳表
+ * <br>
+ * 一次反向Dijkstra搜索的结果，记录图中每个节点到目标节点的最小消耗和朝向目标的下一条连接。
+ * 任意起点可按连接依次前进得到路径，复杂度为路径长度。
+ *
+ * @param <N> Type of node
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class NextHopTable<N> {
+	/** 目标节点 */
+	N goal;
+	/** 各节点到目标的消耗 */
+	final float[] costs;
+	/** 各节点朝向目标的下一条连接 */
+	final Connection<N>[] nextConnections;
+	/** 生成时间 */
+	long createTime;
+
+	@SuppressWarnings("unchecked")
+	public NextHopTable(int nodeCount) {
+		this.costs = new float[nodeCount];
+		this.nextConnections = (Connection<N>[]) new Connection[nodeCount];
+		reset();
+	}
+
+	/**
+	 * 重置
+	 */
+	void reset() {
+		goal = null;
+		Arrays.fill(costs, Float.POSITIVE_INFINITY);
+		Arrays.fill(nextConnections, null);
+	}
+
+	public N getGoal() {
+		return goal;
+	}
+
+	public long getCreateTime() {
+		return createTime;
+	}
+
+	/**
+	 * 节点到目标的消耗
+	 *
+	 * @param index 节点索引 {@link IndexedGraph#getIndex(Object)}
+	 * @return 不可达返回{@link Float#POSITIVE_INFINITY}
+	 */
+	public float getCost(int index) {
+		return costs[index];
+	}
+
+	/**
+	 * 节点是否可到达目标
+	 *
+	 * @param index 节点索引
+	 * @return
+	 */
+	public boolean isReachable(int index) {
+		return costs[index] != Float.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * 节点朝向目标的下一条连接
+	 *
+	 * @param index 节点索引
+	 * @return 目标节点或不可达返回null
+	 */
+	public Connection<N> getNextConnection(int index) {
+		return nextConnections[index];
+	}
+
+	/**
+	 * 生成起点到目标的连接路径
+	 *
+	 * @param graph     生成该表的图
+	 * @param startNode 起点
+	 * @param outPath   输出路径，不可达时不修改
+	 * @return true 可到达
+	 */
+	public boolean getConnectionPath(IndexedGraph<N> graph, N startNode, GraphPath<Connection<N>> outPath) {
+		int index = graph.getIndex(startNode);
+		if (!isReachable(index)) {
+			return false;
+		}
+		Connection<N> connection = nextConnections[index];
+		while (connection != null) {
+			outPath.add(connection);
+			connection = nextConnections[graph.getIndex(connection.getToNode())];
+		}
+		return true;
+	}
+
+	/**
+	 * 生成起点到目标的节点路径
+	 *
+	 * @param graph     生成该表的图
+	 * @param startNode 起点
+	 * @param outPath   输出路径，不可达时不修改
+	 * @return true 可到达
+	 */
+	public boolean getNodePath(IndexedGraph<N> graph, N startNode, GraphPath<N> outPath) {
+		int index = graph.getIndex(startNode);
+		if (!isReachable(index)) {
+			return false;
+		}
+		outPath.add(startNode);
+		Connection<N> connection = nextConnections[index];
+		while (connection != null) {
+			outPath.add(connection.getToNode());
+			connection = nextConnections[graph.getIndex(connection.getToNode())];
+		}
+		return true;
+	}
+}
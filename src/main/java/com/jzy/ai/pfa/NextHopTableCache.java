@@ -0,0 +1,114 @@
+package com.jzy.ai.pfa;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 下一跳表缓存
+ * <br>
+ * 按目标节点缓存{@link NextHopTable}，超过有效时间重新搜索，超过容量淘汰最久未使用的目标。
+ * 热点目标（被大量单位追击的玩家、集合点）只需搜索一次。
+ *
+ * @param <N> Type of node
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class NextHopTableCache<N> {
+	private final IndexedDijkstraPathFinder<N> pathFinder;
+	/** 有效时间（毫秒） */
+	private final long ttl;
+	private final Map<Integer, NextHopTable<N>> tables;
+
+	/**
+	 * @param graph    图
+	 * @param ttl      有效时间（毫秒）
+	 * @param capacity 最大缓存目标数
+	 */
+	public NextHopTableCache(IndexedGraph<N> graph, long ttl, final int capacity) {
+		this.pathFinder = new IndexedDijkstraPathFinder<N>(graph);
+		this.ttl = ttl;
+		this.tables = new LinkedHashMap<Integer, NextHopTable<N>>(capacity, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, NextHopTable<N>> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * 获取目标节点的下一跳表
+	 * <p>
+	 * 返回的表创建后不再修改，可以跨线程读取。同一目标同时未命中时只搜索一次，其他调用者等待搜索完成后使用同一张表
+	 * </p>
+	 *
+	 * @param goalNode 目标节点
+	 * @return
+	 */
+	public NextHopTable<N> get(N goalNode) {
+		int index = pathFinder.getGraph().getIndex(goalNode);
+		NextHopTable<N> table = getValid(index);
+		if (table != null) {
+			return table;
+		}
+		synchronized (pathFinder) {
+			// 等待锁期间其他调用者可能已经搜索了同一目标
+			table = getValid(index);
+			if (table != null) {
+				return table;
+			}
+			table = pathFinder.createTable();
+			pathFinder.search(goalNode, table);
+			// 释放搜索锁前放入缓存，等待的调用者直接命中
+			synchronized (tables) {
+				tables.put(index, table);
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * 未过期的缓存表
+	 *
+	 * @param index 目标节点索引
+	 * @return 不存在或过期返回null
+	 */
+	private NextHopTable<N> getValid(int index) {
+		long now = System.currentTimeMillis();
+		synchronized (tables) {
+			NextHopTable<N> table = tables.get(index);
+			if (table != null && now - table.createTime < ttl) {
+				return table;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * 移除目标缓存
+	 *
+	 * @param goalNode
+	 */
+	public void invalidate(N goalNode) {
+		synchronized (tables) {
+			tables.remove(pathFinder.getGraph().getIndex(goalNode));
+		}
+	}
+
+	/**
+	 * 清空缓存，图发生变化时调用
+	 */
+	public void clear() {
+		synchronized (tables) {
+			tables.clear();
+		}
+	}
+
+	public int size() {
+		synchronized (tables) {
+			return tables.size();
+		}
+	}
+}
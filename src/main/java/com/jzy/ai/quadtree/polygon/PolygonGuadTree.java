@@ -23,6 +23,8 @@ import org.slf4j.LoggerFactory;
  */
 public class PolygonGuadTree extends QuadTree<Vector3, Polygon> {
 	private static final Logger LOGGER = LoggerFactory.getLogger(PolygonGuadTree.class);
+	/** 格子编码最大层数，x、z各占15位 */
+	private static final int MAX_CELL_DEPTH = 15;
 
 	private int depth = 5;
 	private int items = 10;
@@ -76,28 +78,115 @@ public class PolygonGuadTree extends QuadTree<Vector3, Polygon> {
 	}
 
 	/**
-	 * 获取当前坐标所在多边形
+	 * 获取当前坐标所在多边形，多层重叠时选择表面高度最接近坐标的多边形
 	 */
 	@Override
 	public Polygon get(Vector3 position, Polygon defaultValue) {
-		List<Polygon> polygons = getPolygons(position);
-		if (polygons == null || polygons.isEmpty()) {
-			return defaultValue;
-		}
-		if (polygons.size() == 1) {
-			return polygons.get(0);
+		Polygon polygon = get(position, Float.POSITIVE_INFINITY);
+		return polygon == null ? defaultValue : polygon;
+	}
+
+	/**
+	 * 获取当前坐标所在多边形，分层地图（桥、多层建筑）使用
+	 * <p>
+	 * 叶子节点内多边形按最低高度排序，二分查找跳过底部高于坐标的多边形，剩余多边形用表面插值高度判断
+	 * </p>
+	 * 
+	 * @param position
+	 * @param heightTolerance
+	 *            坐标和多边形表面的最大高度差
+	 * @return 不在行走层或高度差超出范围返回null
+	 */
+	public Polygon get(Vector3 position, float heightTolerance) {
+		Node<Polygon> node = find(this.root, position);
+		if (node == null || node.getDatas() == null) {
+			return null;
 		}
-		//获取最接近坐标点的多边形
-		float minDistance = Byte.MAX_VALUE;
-		Polygon p = defaultValue;
-		for (Polygon polygon : polygons) {
-			float distance = Math.abs(polygon.center.y - position.y);
-			if (distance < minDistance) {
-				p = polygon;
+		List<Data<Polygon>> datas = node.getDatas();
+		float top = position.y + heightTolerance;
+		float bottom = position.y - heightTolerance;
+		Polygon result = null;
+		float minDistance = heightTolerance;
+		for (int i = upperBound(datas, top) - 1; i >= 0; i--) {
+			Polygon polygon = datas.get(i).getValue();
+			if (polygon.maxY < bottom || !polygon.isInnerPoint(position)) {
+				continue;
+			}
+			float distance = Math.abs(polygon.getHeight(position.x, position.z) - position.y);
+			if (distance <= minDistance) {
+				result = polygon;
 				minDistance = distance;
 			}
 		}
-		return p;
+		return result;
+	}
+
+	/**
+	 * 查询范围内离坐标点最近的多边形（xz平面），坐标点投影到多边形内部或边上
+	 * <p>
+	 * 只遍历和查询范围相交的象限，找到更近的多边形后缩小范围；不创建对象，可每帧批量修正单位坐标
+	 * </p>
+	 * 
+	 * @param point
+	 *            坐标点
+	 * @param radius
+	 *            查询半径
+	 * @param heightTolerance
+	 *            坐标高度超出多边形高度范围该值以上的多边形不参与计算，不限制传{@link Float#POSITIVE_INFINITY}
+	 * @param out
+	 *            输出最近点，高度为多边形平均高度
+	 * @return 范围内没有多边形返回null
+	 */
+	public Polygon getNearest(Vector3 point, float radius, float heightTolerance, Vector3 out) {
+		return nearest(this.root, point, radius * radius, heightTolerance, null, out);
+	}
+
+	/**
+	 * 递归查询最近多边形，当前最近距离由out和point计算
+	 * 
+	 * @param node
+	 * @param point
+	 * @param radiusSq
+	 * @param heightTolerance
+	 * @param best
+	 *            当前最近多边形
+	 * @param out
+	 * @return
+	 */
+	private Polygon nearest(Node<Polygon> node, Vector3 point, float radiusSq, float heightTolerance, Polygon best,
+			Vector3 out) {
+		float bestDst2 = best == null ? radiusSq
+				: (out.x - point.x) * (out.x - point.x) + (out.z - point.z) * (out.z - point.z);
+		float dx = Math.max(Math.max(node.getX() - point.x, point.x - node.getX() - node.getW()), 0);
+		float dz = Math.max(Math.max(node.getZ() - point.z, point.z - node.getZ() - node.getH()), 0);
+		if (dx * dx + dz * dz > bestDst2) {
+			return best;
+		}
+		switch (node.getNodeType()) {
+		case LEAF:
+			List<Data<Polygon>> datas = node.getDatas();
+			for (int i = 0; i < datas.size(); i++) {
+				Polygon polygon = datas.get(i).getValue();
+				if (polygon == best || point.y < polygon.minY - heightTolerance
+						|| point.y > polygon.maxY + heightTolerance) {
+					continue;
+				}
+				float dst2 = polygon.getNearestPoint(point, null);
+				if (dst2 < bestDst2 || (best == null && dst2 <= bestDst2)) {
+					polygon.getNearestPoint(point, out);
+					best = polygon;
+					bestDst2 = dst2;
+				}
+			}
+			return best;
+		case POINTER:
+			best = nearest(node.getNw(), point, radiusSq, heightTolerance, best, out);
+			best = nearest(node.getNe(), point, radiusSq, heightTolerance, best, out);
+			best = nearest(node.getSw(), point, radiusSq, heightTolerance, best, out);
+			return nearest(node.getSe(), point, radiusSq, heightTolerance, best, out);
+		default:
+			return best;
+		}
 	}
 
 	/**
@@ -216,7 +305,9 @@ public class PolygonGuadTree extends QuadTree<Vector3, Polygon> {
 			throw new QuadTreeException("Can not set point for node of type POINTER");
 		}
 		node.setNodeType(NodeType.LEAF);
-		node.getDatas().add(point);
+		// 按最低高度有序插入
+		List<Data<Polygon>> datas = node.getDatas();
+		datas.add(upperBound(datas, point.getValue().minY), point);
 		realCount++;
 //		LOGGER.debug("多边形{} 加入节点深度{}，个数{}", point.getValue().getIndex(), node.getDepth(), node.getDatas().size());
 	}
@@ -285,6 +376,73 @@ public class PolygonGuadTree extends QuadTree<Vector3, Polygon> {
 		return nodes;
 	}
 
+	/**
+	 * 第一个最低高度大于height的多边形下标
+	 * 
+	 * @param datas
+	 *            按最低高度排序的多边形
+	 * @param height
+	 * @return
+	 */
+	private static int upperBound(List<Data<Polygon>> datas, float height) {
+		int low = 0;
+		int high = datas.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (datas.get(mid).getValue().minY <= height) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * 坐标所在格子的Morton编码
+	 * <p>
+	 * 四叉树每层按中点二分，编码相同的坐标位于同一象限，编码相近的坐标位于相邻象限；批量查询按编码分桶可提高缓存命中
+	 * </p>
+	 * 
+	 * @param x
+	 * @param z
+	 * @param level
+	 *            格子层数，不超过四叉树深度和{@value #MAX_CELL_DEPTH}
+	 * @return 编码，小于4^level
+	 */
+	public int getCellKey(float x, float z, int level) {
+		Node<Polygon> r = this.root;
+		level = Math.min(level, Math.min(depth, MAX_CELL_DEPTH));
+		int cells = 1 << level;
+		int cellX = Math.max(0, Math.min(cells - 1, (int) ((x - r.getX()) / r.getW() * cells)));
+		int cellZ = Math.max(0, Math.min(cells - 1, (int) ((z - r.getZ()) / r.getH() * cells)));
+		return spreadBits(cellX) | (spreadBits(cellZ) << 1);
+	}
+
+	/**
+	 * 低16位间隔一位展开
+	 * 
+	 * @param value
+	 * @return
+	 */
+	private static int spreadBits(int value) {
+		value &= 0xFFFF;
+		value = (value | (value << 8)) & 0x00FF00FF;
+		value = (value | (value << 4)) & 0x0F0F0F0F;
+		value = (value | (value << 2)) & 0x33333333;
+		value = (value | (value << 1)) & 0x55555555;
+		return value;
+	}
+
+	/**
+	 * 四叉树深度
+	 * 
+	 * @return
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
 	/**
 	 * 真实个数，包含重复多边形
 	 * 
@@ -0,0 +1,156 @@
+package com.jzy.ai.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 延迟直方图
+ * <p>
+ * 参考HdrHistogram的对数线性分桶：每个2的幂区间分为{@link #SUB_BUCKET_COUNT}个等宽桶，相对误差不超过1/32，
+ * 记录只做一次原子自增，不分配对象。超过{@link #MAX_VALUE}的值记录在最后一个桶
+ * </p>
+ * 线程安全
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 5;
+	/** 每个2的幂区间的桶数 */
+	public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 40;
+	/** 可精确记录的最大值，纳秒约18分钟 */
+	public static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+	private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong totalCount = new AtomicLong();
+	private final AtomicLong totalValue = new AtomicLong();
+	private final AtomicLong maxValue = new AtomicLong();
+
+	/**
+	 * 记录一个值
+	 *
+	 * @param value 小于0按0记录
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(bucketIndex(value));
+		totalCount.incrementAndGet();
+		totalValue.addAndGet(value);
+		long max = maxValue.get();
+		while (value > max && !maxValue.compareAndSet(max, value)) {
+			max = maxValue.get();
+		}
+	}
+
+	public long getCount() {
+		return totalCount.get();
+	}
+
+	public long getMax() {
+		return maxValue.get();
+	}
+
+	public double getMean() {
+		long count = totalCount.get();
+		return count == 0 ? 0 : (double) totalValue.get() / count;
+	}
+
+	/**
+	 * 百分位数，返回所在桶的最大值
+	 *
+	 * @param percentile 0-100
+	 * @return 没有记录返回0
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long count = 0;
+		long[] values = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			values[i] = counts.get(i);
+			count += values[i];
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+		long sum = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			sum += values[i];
+			if (sum >= target) {
+				return Math.min(highestValue(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * 复制当前数据，记录的同时复制可能有少量不一致
+	 *
+	 * @return
+	 */
+	public LatencyHistogram copy() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			long count = counts.get(i);
+			if (count != 0) {
+				histogram.counts.set(i, count);
+			}
+		}
+		histogram.totalCount.set(totalCount.get());
+		histogram.totalValue.set(totalValue.get());
+		histogram.maxValue.set(maxValue.get());
+		return histogram;
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts.set(i, 0);
+		}
+		totalCount.set(0);
+		totalValue.set(0);
+		maxValue.set(0);
+	}
+
+	/**
+	 * 值所在的桶，小于2*{@link #SUB_BUCKET_COUNT}的值每个值一个桶
+	 *
+	 * @param value
+	 * @return
+	 */
+	static int bucketIndex(long value) {
+		if (value < (SUB_BUCKET_COUNT << 1)) {
+			return (int) value;
+		}
+		if (value > MAX_VALUE) {
+			return BUCKET_COUNT - 1;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) - SUB_BUCKET_COUNT);
+	}
+
+	/**
+	 * 桶内的最大值
+	 *
+	 * @param index
+	 * @return
+	 */
+	static long highestValue(int index) {
+		if (index < (SUB_BUCKET_COUNT << 1)) {
+			return index;
+		}
+		int shift = (index >>> SUB_BUCKET_BITS) - 1;
+		long sub = (index & (SUB_BUCKET_COUNT - 1)) + SUB_BUCKET_COUNT;
+		return ((sub + 1) << shift) - 1;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d mean=%.0f p50=%d p90=%d p99=%d p999=%d max=%d", getCount(), getMean(),
+				getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99),
+				getValueAtPercentile(99.9), getMax());
+	}
+}
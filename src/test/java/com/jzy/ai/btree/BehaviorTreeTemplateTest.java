@@ -0,0 +1,90 @@
+package com.jzy.ai.btree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.jzy.javalib.math.geometry.Vector3;
+
+/**
+ * 行为树模板实例叶子创建
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class BehaviorTreeTemplateTest {
+
+	/**
+	 * 只有setter的属性和可变属性，按解析时的配置创建，每个实例独立
+	 */
+	@Test
+	public void configuredLeaf() {
+		LeafTaskFactory factory = LeafTaskFactory.get(RangeLeaf.class);
+		List<LeafTaskFactory.Property> properties = Arrays.asList(factory.getProperty("range"),
+				factory.getProperty("target"));
+		List<Object> values = Arrays.asList(properties.get(0).convert("7.5", null), new Vector3(1, 2, 3));
+		LeafTask<Object> leaf = factory.config(properties, values).create();
+		leaf.setName("range");
+
+		BehaviorTreeTemplate<Object> template = BehaviorTreeTemplate.compile(new BehaviorTree<>(leaf));
+		BehaviorTreeInstance<Object> first = template.newInstance(null);
+		BehaviorTreeInstance<Object> second = template.newInstance(null);
+		first.step();
+		assertEquals(Task.Status.SUCCEEDED, first.getStatus());
+
+		RangeLeaf firstLeaf = (RangeLeaf) template.getLeafTask(first, 0);
+		RangeLeaf secondLeaf = (RangeLeaf) template.getLeafTask(second, 0);
+		assertEquals(7.5f, firstLeaf.range, 0f);
+		assertEquals(7.5f, secondLeaf.range, 0f);
+		assertEquals("range", firstLeaf.getName());
+		assertNotSame(firstLeaf.target, secondLeaf.target);
+		assertNotSame(((RangeLeaf) leaf).target, firstLeaf.target);
+		firstLeaf.target.x = 9;
+		assertEquals(1f, secondLeaf.target.x, 0f);
+	}
+
+	/**
+	 * 代码创建的叶子没有配置，序列化复制
+	 */
+	@Test
+	public void codeLeaf() {
+		RangeLeaf leaf = new RangeLeaf();
+		leaf.setRange(7.5f);
+		leaf.setTarget(new Vector3(1, 2, 3));
+
+		BehaviorTreeTemplate<Object> template = BehaviorTreeTemplate.compile(new BehaviorTree<>(leaf));
+		BehaviorTreeInstance<Object> first = template.newInstance(null);
+		BehaviorTreeInstance<Object> second = template.newInstance(null);
+		RangeLeaf firstLeaf = (RangeLeaf) template.getLeafTask(first, 0);
+		RangeLeaf secondLeaf = (RangeLeaf) template.getLeafTask(second, 0);
+		assertEquals(7.5f, firstLeaf.range, 0f);
+		assertNotSame(firstLeaf.target, secondLeaf.target);
+		assertEquals(1f, secondLeaf.target.x, 0f);
+	}
+
+	/**
+	 * 属性只有setter的叶子
+	 */
+	public static class RangeLeaf extends LeafTask<Object> {
+		private static final long serialVersionUID = 1L;
+		float range;
+		Vector3 target;
+
+		public void setRange(float range) {
+			this.range = range;
+		}
+
+		public void setTarget(Vector3 target) {
+			this.target = target;
+		}
+
+		@Override
+		public Status execute() {
+			return range > 7 ? Status.SUCCEEDED : Status.FAILED;
+		}
+	}
+}
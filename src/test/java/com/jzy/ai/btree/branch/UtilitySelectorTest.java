@@ -0,0 +1,76 @@
+package com.jzy.ai.btree.branch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.jzy.ai.btree.BehaviorTree;
+import com.jzy.ai.btree.Blackboard;
+import com.jzy.ai.btree.BlackboardKey;
+import com.jzy.ai.btree.BlackboardSchema;
+import com.jzy.ai.btree.LeafTask;
+import com.jzy.ai.btree.Task;
+import com.jzy.ai.btree.branch.UtilitySelector.Consideration;
+
+/**
+ * 效用选择器
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class UtilitySelectorTest {
+
+	/**
+	 * 事件驱动模式下考虑因素的输入变化，切换到分数最高的孩子
+	 */
+	@Test
+	public void eventDrivenRescore() {
+		BlackboardSchema schema = new BlackboardSchema();
+		BlackboardKey hunger = schema.addKey("hunger", BlackboardKey.TYPE_FLOAT);
+		BlackboardKey fear = schema.addKey("fear", BlackboardKey.TYPE_FLOAT);
+		Blackboard blackboard = new Blackboard(schema);
+		blackboard.setFloat(hunger, 0.8f);
+		blackboard.setFloat(fear, 0.2f);
+
+		RunningLeaf eat = new RunningLeaf();
+		RunningLeaf flee = new RunningLeaf();
+		UtilitySelector<Object> selector = new UtilitySelector<>(eat, flee);
+		selector.addConsideration(0, new Consideration("hunger"));
+		selector.addConsideration(1, new Consideration("fear"));
+		BehaviorTree<Object> tree = new BehaviorTree<>(selector);
+		tree.setBlackboard(blackboard);
+		tree.setEventDriven(true);
+
+		tree.step();
+		tree.step();
+		assertSame(eat, selector.getSelectedChild(0));
+		assertEquals(Task.Status.RUNNING, eat.getStatus());
+		assertEquals(2, eat.executions);
+		assertEquals(0, flee.executions);
+
+		blackboard.setFloat(fear, 0.9f);
+		assertTrue(tree.notifyChanged("fear"));
+		tree.step();
+		assertSame(flee, selector.getSelectedChild(0));
+		assertEquals(Task.Status.CANCELLED, eat.getStatus());
+		assertEquals(Task.Status.RUNNING, flee.getStatus());
+		assertEquals(2, eat.executions);
+		assertEquals(1, flee.executions);
+	}
+
+	/**
+	 * 一直运行的叶子
+	 */
+	static class RunningLeaf extends LeafTask<Object> {
+		private static final long serialVersionUID = 1L;
+		int executions;
+
+		@Override
+		public Status execute() {
+			executions++;
+			return Status.RUNNING;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package com.jzy.ai.pfa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.jzy.ai.nav.polygon.Polygon;
+import com.jzy.ai.nav.polygon.PolygonGraph;
+import com.jzy.ai.nav.polygon.PolygonGraphPath;
+import com.jzy.ai.nav.polygon.PolygonHeuristic;
+import com.jzy.ai.nav.polygon.PolygonNavMesh;
+
+/**
+ * 地标启发式
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class LandmarkHeuristicTest {
+
+	/**
+	 * 地标在阻挡和消耗倍数生效时计算，解除后仍可采纳，A*结果和最短距离一致
+	 */
+	@Test
+	public void admissibleAfterUnblock() throws Exception {
+		PolygonNavMesh navMesh = new PolygonNavMesh(
+				new String(Files.readAllBytes(Paths.get("1.navmesh")), StandardCharsets.UTF_8));
+		PolygonGraph graph = navMesh.getGraph();
+		List<Polygon> polygons = graph.getPolygons();
+		IndexedAStarPathFinder<Polygon> pathFinder = new IndexedAStarPathFinder<>(graph);
+		PolygonHeuristic polygonHeuristic = new PolygonHeuristic();
+		Random random = new Random(7);
+
+		// 阻挡或加大长路径中间的共享边
+		List<Connection<Polygon>> changed = new ArrayList<>();
+		PolygonGraphPath path = new PolygonGraphPath();
+		while (changed.size() < 20) {
+			Polygon start = polygons.get(random.nextInt(polygons.size()));
+			Polygon end = polygons.get(random.nextInt(polygons.size()));
+			path.clear();
+			if (!pathFinder.searchConnectionPath(start, end, polygonHeuristic, path) || path.getCount() < 4) {
+				continue;
+			}
+			Connection<Polygon> connection = path.get(path.getCount() / 2);
+			if (changed.size() % 2 == 0) {
+				graph.setConnectionEnabled(connection.getFromNode(), connection.getToNode(), false);
+			} else {
+				graph.setConnectionCostMultiplier(connection.getFromNode(), connection.getToNode(), 20);
+			}
+			changed.add(connection);
+		}
+		LandmarkHeuristic<Polygon> heuristic = new LandmarkHeuristic<>(graph, polygons, 8, polygonHeuristic);
+		for (Connection<Polygon> connection : changed) {
+			graph.setConnectionEnabled(connection.getFromNode(), connection.getToNode(), true);
+			graph.setConnectionCostMultiplier(connection.getFromNode(), connection.getToNode(), 1);
+		}
+
+		IndexedDijkstraPathFinder<Polygon> dijkstra = new IndexedDijkstraPathFinder<>(graph);
+		NextHopTable<Polygon> table = dijkstra.createTable();
+		for (int i = 0; i < 20; i++) {
+			Polygon goal = polygons.get(random.nextInt(polygons.size()));
+			dijkstra.search(goal, table);
+			for (Polygon polygon : polygons) {
+				if (!table.isReachable(polygon.getIndex())) {
+					continue;
+				}
+				float cost = table.getCost(polygon.getIndex());
+				assertTrue(heuristic.estimate(polygon, goal) <= cost + 1e-3f * Math.max(1, cost),
+						"polygon " + polygon.getIndex() + " goal " + goal.getIndex());
+			}
+			for (int j = 0; j < 20; j++) {
+				Polygon start = polygons.get(random.nextInt(polygons.size()));
+				if (!table.isReachable(start.getIndex())) {
+					continue;
+				}
+				path.clear();
+				assertTrue(pathFinder.searchConnectionPath(start, goal, heuristic, path));
+				float cost = table.getCost(start.getIndex());
+				assertEquals(cost, cost(path), 1e-3f * Math.max(1, cost));
+			}
+		}
+	}
+
+	private static float cost(GraphPath<Connection<Polygon>> path) {
+		float cost = 0;
+		for (Connection<Polygon> connection : path) {
+			cost += connection.getCost();
+		}
+		return cost;
+	}
+}